@@ -0,0 +1,33 @@
+package com.qimu.qiapibackend.common;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/03 15:02:11
+ * @Version: 1.0
+ * @Description: 游标分页结果
+ */
+@Data
+public class CursorPage<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 当前页数据
+     */
+    private List<T> records;
+    /**
+     * 下一页游标，没有下一页时为空
+     */
+    private String nextCursor;
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+    /**
+     * 总数，仅在第一页且 searchCount 为 true 时返回
+     */
+    private Long total;
+}
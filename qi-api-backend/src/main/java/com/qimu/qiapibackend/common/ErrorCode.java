@@ -34,6 +34,10 @@ public enum ErrorCode {
      * 禁止访问
      */
     FORBIDDEN_ERROR(40300, "禁止访问"),
+    /**
+     * 请求过于频繁
+     */
+    TOO_MANY_REQUEST(42900, "请求过于频繁"),
     /**
      * 系统内部异常
      */
@@ -30,4 +30,14 @@ public class PageRequest {
      * 排序顺序（默认升序）
      */
     private String sortOrder = CommonConstant.SORT_ORDER_ASC;
+
+    /**
+     * 游标分页：上一页返回的 nextCursor，为空表示第一页
+     */
+    private String cursor;
+
+    /**
+     * 游标分页：第一页是否同时查询总数
+     */
+    private boolean searchCount;
 }
@@ -0,0 +1,36 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/29 09:12:30
+ * @Version: 1.0
+ * @Description: 无状态访问令牌配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.auth.token")
+@Data
+public class AuthTokenConfig {
+    /**
+     * 是否开启令牌登录，开启后登录接口同时返回令牌，请求头携带令牌时不再读取会话
+     */
+    private Boolean enabled = false;
+    /**
+     * 令牌有效期（秒）
+     */
+    private Long expireSeconds = 15 * 60L;
+    /**
+     * 当前用于签发的密钥id
+     */
+    private String activeKeyId;
+    /**
+     * 密钥id -> 密钥，轮换时先加入新密钥并切换 activeKeyId，旧密钥保留到已签发令牌全部过期后再删除
+     */
+    private Map<String, String> keys = new LinkedHashMap<>();
+}
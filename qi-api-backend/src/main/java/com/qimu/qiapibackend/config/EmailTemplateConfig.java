@@ -0,0 +1,21 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/31 10:15:37
+ * @Version: 1.0
+ * @Description: 邮件模板配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.mail.template")
+@Data
+public class EmailTemplateConfig {
+    /**
+     * 模板目录，存在同名文件时优先于 resources 下的模板，修改后自动重新加载；为空只使用 resources 下的模板
+     */
+    private String dir;
+}
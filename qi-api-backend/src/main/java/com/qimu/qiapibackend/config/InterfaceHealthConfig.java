@@ -0,0 +1,57 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/12 09:30:52
+ * @Version: 1.0
+ * @Description: 接口健康探测配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.interface.health")
+@Data
+public class InterfaceHealthConfig {
+    /**
+     * 是否定时探测已上线接口，需要配置探测账号
+     */
+    private Boolean enabled = false;
+    /**
+     * 探测间隔（毫秒）
+     */
+    private Long intervalMillis = 60 * 1000L;
+    /**
+     * 同时探测的接口数
+     */
+    private Integer parallelism = 4;
+    /**
+     * 每个接口保留的最近探测次数
+     */
+    private Integer windowSize = 20;
+    /**
+     * 样本数达到后才判断 SLO
+     */
+    private Integer minSamples = 10;
+    /**
+     * 窗口内最大失败率
+     */
+    private Double maxErrorRate = 0.5;
+    /**
+     * 窗口内 p95 耗时上限（毫秒）
+     */
+    private Long latencySloMillis = 3000L;
+    /**
+     * 超出 SLO 时是否自动下线接口
+     */
+    private Boolean autoOffline = false;
+    /**
+     * 探测账号的访问密钥，探测经网关调用，会按正常调用扣除该账号积分
+     */
+    private String accessKey;
+    /**
+     * 探测账号的秘密密钥
+     */
+    private String secretKey;
+}
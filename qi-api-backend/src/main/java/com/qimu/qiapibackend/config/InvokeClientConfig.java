@@ -0,0 +1,33 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/11 09:36:18
+ * @Version: 1.0
+ * @Description: 在线调试接口调用配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.invoke.client")
+@Data
+public class InvokeClientConfig {
+    /**
+     * 调用线程数
+     */
+    private Integer workerThreads = 8;
+    /**
+     * 等待队列容量，满时直接拒绝，不占用请求线程排队
+     */
+    private Integer queueCapacity = 64;
+    /**
+     * 单次调用超时（毫秒），同时作为连接和读取超时，超时返回错误
+     */
+    private Long timeoutMillis = 10000L;
+    /**
+     * 缓存的客户端数量（按 accessKey）
+     */
+    private Integer clientCapacity = 1000;
+}
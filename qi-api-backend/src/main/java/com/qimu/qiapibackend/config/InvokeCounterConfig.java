@@ -0,0 +1,21 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/23 10:12:37
+ * @Version: 1.0
+ * @Description: 接口调用次数计数配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.invoke.counter")
+@Data
+public class InvokeCounterConfig {
+    /**
+     * 是否异步回写调用次数，关闭后每次调用直接更新数据库
+     */
+    private Boolean writeBehind = true;
+}
@@ -0,0 +1,33 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/25 10:48:20
+ * @Version: 1.0
+ * @Description: 接口调用日志配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.invoke.log")
+@Data
+public class InvokeLogConfig {
+    /**
+     * 日志保留天数，过期分区整体删除
+     */
+    private Integer retentionDays = 30;
+    /**
+     * 提前创建分区的天数
+     */
+    private Integer preCreateDays = 3;
+    /**
+     * 分钟统计保留小时数
+     */
+    private Integer minuteRollupRetentionHours = 48;
+    /**
+     * 小时统计保留天数，天统计长期保留
+     */
+    private Integer hourRollupRetentionDays = 90;
+}
@@ -0,0 +1,60 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/30 09:25:40
+ * @Version: 1.0
+ * @Description: 邮件异步发送配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.mail.outbox")
+@Data
+public class MailOutboxConfig {
+    /**
+     * 发送线程数
+     */
+    private Integer workerThreads = 4;
+    /**
+     * 发送队列容量，满时邮件留在表中等下一轮
+     */
+    private Integer queueCapacity = 100;
+    /**
+     * 每轮最多取出的邮件数
+     */
+    private Integer batchSize = 50;
+    /**
+     * 最大重试次数，超过后进入死信
+     */
+    private Integer maxRetries = 5;
+    /**
+     * 首次重试间隔（毫秒），之后每次翻倍
+     */
+    private Long baseBackoffMillis = 2000L;
+    /**
+     * 最大重试间隔（毫秒）
+     */
+    private Long maxBackoffMillis = 10 * 60 * 1000L;
+    /**
+     * 每个收件域名每秒最多发送数
+     */
+    private Integer domainRatePerSecond = 5;
+    /**
+     * 按域名单独配置每秒最多发送数，如 qq.com: 10
+     */
+    private Map<String, Integer> domainRates = new HashMap<>();
+    /**
+     * 已发送邮件保留天数
+     */
+    private Integer sentRetentionDays = 7;
+    /**
+     * 发送失败（死信）邮件保留天数，留给人工排查
+     */
+    private Integer deadRetentionDays = 30;
+}
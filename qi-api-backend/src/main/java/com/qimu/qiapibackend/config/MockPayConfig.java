@@ -0,0 +1,49 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/16 09:35:12
+ * @Version: 1.0
+ * @Description: 模拟支付配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.pay.mock")
+@Data
+public class MockPayConfig {
+    /**
+     * 是否启用模拟支付，线上不要开启
+     */
+    private Boolean enabled = false;
+    /**
+     * 每次调用支付渠道的模拟耗时（毫秒）
+     */
+    private Long latencyMillis = 200L;
+    /**
+     * 模拟耗时的随机抖动上限（毫秒）
+     */
+    private Long latencyJitterMillis = 100L;
+    /**
+     * 下单、查单、关单调用失败的比例
+     */
+    private Double failureRate = 0.0;
+    /**
+     * 下单后用户完成支付的比例，未支付的订单等待超时关闭
+     */
+    private Double payRate = 0.9;
+    /**
+     * 支付完成后发送异步通知的延迟（毫秒）
+     */
+    private Long notifyDelayMillis = 2000L;
+    /**
+     * 异步通知地址，与真实渠道一样经订单通知接口回调
+     */
+    private String notifyUrl = "http://localhost:7529/api/order/notify/order";
+    /**
+     * 发送通知的线程数
+     */
+    private Integer notifyThreads = 2;
+}
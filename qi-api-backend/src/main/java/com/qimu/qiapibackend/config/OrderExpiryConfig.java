@@ -0,0 +1,57 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/17 09:12:05
+ * @Version: 1.0
+ * @Description: 订单到期处理配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.pay.expiry")
+@Data
+public class OrderExpiryConfig {
+    /**
+     * 分区数，订单号按哈希落入分区，存活节点轮流认领分区；调整后旧分区中的订单由兜底扫描重新入队
+     */
+    private Integer partitions = 16;
+    /**
+     * 节点心跳间隔（毫秒），超过三个间隔没有心跳的节点视为下线，其分区由其他节点接管
+     */
+    private Long heartbeatMillis = 5000L;
+    /**
+     * 每个节点并发查单、关单的线程数，即对支付渠道的并发上限
+     */
+    private Integer workerThreads = 4;
+    /**
+     * 每次从延迟队列取出的订单数
+     */
+    private Integer batchSize = 100;
+    /**
+     * 队列为空时最长等待（毫秒），有更早到期的订单时按到期时间唤醒
+     */
+    private Long idleMillis = 1000L;
+    /**
+     * 查单、关单失败后首次重试的延迟（毫秒），之后每次翻倍
+     */
+    private Long retryDelayMillis = 5000L;
+    /**
+     * 重试延迟上限（毫秒）
+     */
+    private Long maxRetryDelayMillis = 600000L;
+    /**
+     * 单个订单连续失败的最大重试次数，达到后不再重新入队，交给兜底扫描稍后重新处理
+     */
+    private Integer maxRetries = 20;
+    /**
+     * 统计窗口（毫秒），每个窗口结束时输出吞吐量和延迟
+     */
+    private Long statsWindowMillis = 60000L;
+    /**
+     * 兜底扫描只处理过期超过该时长仍未支付的订单（分钟），正常情况下这些订单已由延迟队列处理
+     */
+    private Integer sweepGraceMinutes = 10;
+}
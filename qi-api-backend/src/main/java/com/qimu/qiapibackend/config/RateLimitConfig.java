@@ -0,0 +1,46 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/02 14:12:48
+ * @Version: 1.0
+ * @Description: 登录、注册、验证码限流配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.rate-limit")
+@Data
+public class RateLimitConfig {
+    /**
+     * 是否开启
+     */
+    private Boolean enabled = true;
+    /**
+     * 按场景覆盖默认规则，键为场景值，如 captcha-email
+     */
+    private Map<String, Rule> rules = new HashMap<>();
+    /**
+     * 可信反向代理，支持单个 IP 和 IPv4 CIDR；只有对端是可信代理时才采用 X-Forwarded-For，为空时只用连接地址
+     */
+    private List<String> trustedProxies = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        /**
+         * 窗口内允许的次数
+         */
+        private Integer limit;
+        /**
+         * 窗口长度（秒）
+         */
+        private Integer windowSeconds;
+    }
+}
@@ -0,0 +1,21 @@
+package com.qimu.qiapibackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/18 10:26:43
+ * @Version: 1.0
+ * @Description: Redis 值序列化配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.redis.serializer")
+@Data
+public class RedisSerializerConfig {
+    /**
+     * 是否以紧凑编码写入，关闭时按 JDK 序列化写入；两种编码始终都能读取
+     */
+    private Boolean compactWrite = false;
+}
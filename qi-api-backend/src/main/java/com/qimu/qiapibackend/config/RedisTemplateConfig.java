@@ -1,5 +1,6 @@
 package com.qimu.qiapibackend.config;
 
+import com.qimu.qiapibackend.utils.CompactRedisSerializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -13,10 +14,15 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 public class RedisTemplateConfig {
 
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory, RedisSerializerConfig redisSerializerConfig) {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setConnectionFactory(connectionFactory);
         redisTemplate.setKeySerializer(RedisSerializer.string());
+        // 两种编码都能读取，是否以紧凑编码写入由配置决定，上线顺序见 CompactRedisSerializer
+        CompactRedisSerializer valueSerializer = new CompactRedisSerializer(getClass().getClassLoader(),
+                Boolean.TRUE.equals(redisSerializerConfig.getCompactWrite()));
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashValueSerializer(valueSerializer);
         return redisTemplate;
     }
 
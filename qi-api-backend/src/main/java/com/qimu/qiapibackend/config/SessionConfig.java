@@ -0,0 +1,39 @@
+package com.qimu.qiapibackend.config;
+
+import com.qimu.qiapibackend.utils.CompactRedisSerializer;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import javax.annotation.Resource;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/28 09:45:12
+ * @Version: 1.0
+ * @Description: Spring Session 序列化配置
+ */
+@Configuration
+public class SessionConfig implements BeanClassLoaderAware {
+
+    @Resource
+    private RedisSerializerConfig redisSerializerConfig;
+
+    private ClassLoader classLoader;
+
+    /**
+     * Spring Session 按名称查找该 Bean，两种编码都能读取，打开紧凑写入后会话属性和创建时间等字段都用紧凑编码
+     *
+     * @return {@link RedisSerializer}<{@link Object}>
+     */
+    @Bean("springSessionDefaultRedisSerializer")
+    public RedisSerializer<Object> springSessionDefaultRedisSerializer() {
+        return new CompactRedisSerializer(classLoader, Boolean.TRUE.equals(redisSerializerConfig.getCompactWrite()));
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+}
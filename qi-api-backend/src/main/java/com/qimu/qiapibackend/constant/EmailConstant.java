@@ -33,6 +33,11 @@ public interface EmailConstant {
      */
     String EMAIL_TITLE = "Qi-API 接口开放平台";
 
+    /**
+     * 支付成功电子邮件主题
+     */
+    String EMAIL_PAY_SUCCESS_SUBJECT = "【" + EMAIL_TITLE + "】感谢您的购买，请查收您的订单";
+
     /**
      * 电子邮件标题英语
      */
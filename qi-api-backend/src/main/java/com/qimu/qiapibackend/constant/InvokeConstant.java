@@ -0,0 +1,54 @@
+package com.qimu.qiapibackend.constant;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/21 09:30:16
+ * @Version: 1.0
+ * @Description: 接口调用常量
+ */
+public interface InvokeConstant {
+    /**
+     * 已计费请求id Key（幂等去重）
+     */
+    String INVOKE_REQUEST_ID_KEY = "api:invoke:requestId:";
+
+    /**
+     * 已计费请求id保留天数，需大于网关本地计费日志的最长积压时间
+     */
+    long INVOKE_REQUEST_ID_EXPIRE_DAYS = 7;
+
+    /**
+     * 请求id计费中的占位值，事务提交后才改为已计费
+     */
+    String INVOKE_REQUEST_ID_PENDING = "0";
+
+    /**
+     * 已计费请求id的值
+     */
+    String INVOKE_REQUEST_ID_DONE = "1";
+
+    /**
+     * 计费中占位的保留秒数，需大于计费事务的最长耗时，进程在提交前崩溃时到期后可重新计费
+     */
+    long INVOKE_REQUEST_ID_PENDING_SECONDS = 300;
+
+    /**
+     * 待落库的接口调用次数增量 Hash，field 为接口id
+     */
+    String INVOKE_PENDING_INTERFACE_KEY = "api:invoke:pending:interface";
+
+    /**
+     * 待落库的用户接口调用次数增量 Hash，field 为 userId_interfaceId
+     */
+    String INVOKE_PENDING_USER_INTERFACE_KEY = "api:invoke:pending:userInterface";
+
+    /**
+     * 正在落库的增量 Key 后缀
+     */
+    String INVOKE_FLUSHING_SUFFIX = ":flushing";
+
+    /**
+     * 正在落库的批次id，与处理中的增量一起删除
+     */
+    String INVOKE_FLUSH_BATCH_KEY = "api:invoke:pending:batch";
+}
@@ -12,6 +12,27 @@ public interface UserConstant {
      */
     String USER_LOGIN_STATE = "userLoginState";
 
+    /**
+     * 用户信息版本号键，封禁、改角色、改余额等变更时自增，各节点本地缓存据此失效
+     * 不设过期时间，过期后从 0 重新计数可能与本地缓存中的旧版本号相同
+     */
+    String USER_VERSION_KEY = "api:user:version:";
+
+    /**
+     * 访问令牌请求头
+     */
+    String AUTH_TOKEN_HEADER = "Authorization";
+
+    /**
+     * 访问令牌前缀
+     */
+    String AUTH_TOKEN_PREFIX = "Bearer ";
+
+    /**
+     * 令牌黑名单（ZSET，score 为条目过期时间），注销的令牌和被封禁用户在此之前签发的令牌
+     */
+    String AUTH_TOKEN_DENYLIST_KEY = "api:auth:denylist";
+
     /**
      * 系统用户 id（虚拟用户）
      */
@@ -0,0 +1,29 @@
+package com.qimu.qiapibackend.constant;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/24 09:50:26
+ * @Version: 1.0
+ * @Description: 钱包常量
+ */
+public interface WalletConstant {
+    /**
+     * 用户实时余额缓存 Key
+     */
+    String WALLET_BALANCE_KEY = "api:wallet:balance:";
+
+    /**
+     * 用户余额版本号 Key，每次流水提交后递增，回源填充缓存前后版本号不变才写入
+     */
+    String WALLET_BALANCE_VERSION_KEY = "api:wallet:balanceVersion:";
+
+    /**
+     * 余额缓存过期时间（秒）
+     */
+    long WALLET_BALANCE_EXPIRE_SECONDS = 10 * 60;
+
+    /**
+     * 每批合并的流水条数
+     */
+    int WALLET_COMPACT_BATCH_SIZE = 1000;
+}
@@ -6,6 +6,7 @@ import com.qimu.qiapibackend.common.ErrorCode;
 import com.qimu.qiapibackend.common.ResultUtils;
 import com.qimu.qiapibackend.exception.BusinessException;
 import com.qimu.qiapibackend.model.entity.DailyCheckIn;
+import com.qimu.qiapibackend.model.enums.WalletLedgerBizTypeEnum;
 import com.qimu.qiapibackend.model.vo.UserVO;
 import com.qimu.qiapibackend.service.DailyCheckInService;
 import com.qimu.qiapibackend.service.UserService;
@@ -63,7 +64,7 @@ public class DailyCheckInController {
             dailyCheckIn.setUserId(loginUser.getId());
             dailyCheckIn.setAddPoints(10);
             boolean dailyCheckInResult = dailyCheckInService.save(dailyCheckIn);
-            boolean addWalletBalance = userService.addWalletBalance(loginUser.getId(), dailyCheckIn.getAddPoints());
+            boolean addWalletBalance = userService.addWalletBalance(loginUser.getId(), dailyCheckIn.getAddPoints(), WalletLedgerBizTypeEnum.CHECK_IN);
             boolean result = dailyCheckInResult & addWalletBalance;
             if (!result) {
                 throw new BusinessException(ErrorCode.OPERATION_ERROR);
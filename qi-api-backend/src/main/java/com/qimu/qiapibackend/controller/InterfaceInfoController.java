@@ -4,35 +4,47 @@ import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.CollectionUtils;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
 import com.qimu.qiapibackend.annotation.AuthCheck;
 import com.qimu.qiapibackend.common.*;
 import com.qimu.qiapibackend.constant.CommonConstant;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.CatalogResponseCache;
+import com.qimu.qiapibackend.manager.CatalogSearchManager;
+import com.qimu.qiapibackend.manager.CatalogSnapshot;
+import com.qimu.qiapibackend.manager.CatalogSnapshotManager;
+import com.qimu.qiapibackend.manager.InterfaceHealthManager;
+import com.qimu.qiapibackend.manager.InvokeClientManager;
+import com.qimu.qiapibackend.manager.InvokeCounterManager;
 import com.qimu.qiapibackend.model.dto.interfaceinfo.*;
 import com.qimu.qiapibackend.model.entity.User;
 import com.qimu.qiapibackend.model.enums.InterfaceStatusEnum;
+import com.qimu.qiapibackend.model.vo.InterfaceHealthVo;
+import com.qimu.qiapibackend.model.vo.InvokeRollupVo;
+import com.qimu.qiapibackend.model.vo.InvokeTopUserVo;
 import com.qimu.qiapibackend.model.vo.UserVO;
+import com.qimu.qiapibackend.service.InterfaceInvokeRollupService;
 import com.qimu.qiapibackend.service.InterfaceInfoService;
 import com.qimu.qiapibackend.service.UserService;
+import com.qimu.qiapibackend.utils.KeysetPageUtil;
 import com.qimu.qiapicommon.model.entity.InterfaceInfo;
-import icu.qimuu.qiapisdk.client.QiApiClient;
 import icu.qimuu.qiapisdk.model.request.CurrencyRequest;
-import icu.qimuu.qiapisdk.model.response.ResultResponse;
-import icu.qimuu.qiapisdk.service.ApiService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeanUtils;
+import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.qimu.qiapibackend.constant.UserConstant.ADMIN_ROLE;
@@ -46,14 +58,35 @@ import static com.qimu.qiapibackend.constant.UserConstant.ADMIN_ROLE;
 @RequestMapping("/interfaceInfo")
 @Slf4j
 public class InterfaceInfoController {
+    /**
+     * 游标分页允许的排序列，只放有索引的列，否则每页都要排序全表
+     */
+    private static final Map<String, Function<InterfaceInfo, Object>> CURSOR_SORT_FIELDS = new LinkedHashMap<>();
+
+    static {
+        CURSOR_SORT_FIELDS.put("id", InterfaceInfo::getId);
+        CURSOR_SORT_FIELDS.put("createTime", InterfaceInfo::getCreateTime);
+    }
+
     @Resource
     private InterfaceInfoService interfaceInfoService;
     @Resource
+    private CatalogSearchManager catalogSearchManager;
+    @Resource
+    private CatalogSnapshotManager catalogSnapshotManager;
+    @Resource
+    private CatalogResponseCache catalogResponseCache;
+    @Resource
     private UserService userService;
     @Resource
-    private ApiService apiService;
+    private InvokeClientManager invokeClientManager;
+    @Resource
+    private InterfaceHealthManager interfaceHealthManager;
+    @Resource
+    private InvokeCounterManager invokeCounterManager;
+    @Resource
+    private InterfaceInvokeRollupService interfaceInvokeRollupService;
 
-    private final Gson gson = new Gson();
     // region 增删改查
 
     /**
@@ -188,16 +221,28 @@ public class InterfaceInfoController {
     /**
      * 通过id获取接口信息
      *
-     * @param id id
-     * @return {@link BaseResponse}<{@link InterfaceInfo}>
+     * @param id         id
+     * @param webRequest 网络请求，携带 If-None-Match / If-Modified-Since 时可能直接返回 304
+     * @return {@link BaseResponse}<{@link InterfaceInfo}> 的预编码响应体
      */
     @GetMapping("/get")
-    public BaseResponse<InterfaceInfo> getInterfaceInfoById(long id) {
+    public ResponseEntity<byte[]> getInterfaceInfoById(long id, WebRequest webRequest) {
         if (id <= 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        InterfaceInfo interfaceInfo = interfaceInfoService.getById(id);
-        return ResultUtils.success(interfaceInfo);
+        // 接口的任何变更都会推进目录版本，版本不变时直接用内存中的 ETag 回答条件请求
+        CatalogSnapshot.Data<InterfaceInfo> snapshot = catalogSnapshotManager.currentInterfaces();
+        return catalogResponseCache.respond(webRequest, "interface:get:" + id, snapshot.getGeneration(), snapshot.getLoadedAt(), () -> {
+            InterfaceInfo interfaceInfo = catalogSnapshotManager.findInterface(snapshot, id);
+            if (interfaceInfo == null) {
+                // 未上线的接口不在快照中，回查数据库
+                interfaceInfo = interfaceInfoService.getById(id);
+            }
+            if (interfaceInfo != null) {
+                invokeCounterManager.mergePendingTotalInvokes(Collections.singletonList(interfaceInfo));
+            }
+            return interfaceInfo;
+        });
     }
 
     /**
@@ -217,6 +262,7 @@ public class InterfaceInfoController {
 
         QueryWrapper<InterfaceInfo> queryWrapper = new QueryWrapper<>(interfaceInfoQuery);
         List<InterfaceInfo> interfaceInfoList = interfaceInfoService.list(queryWrapper);
+        invokeCounterManager.mergePendingTotalInvokes(interfaceInfoList);
         return ResultUtils.success(interfaceInfoList);
     }
 
@@ -225,10 +271,11 @@ public class InterfaceInfoController {
      *
      * @param interfaceInfoQueryRequest 接口信息查询请求
      * @param request                   请求
+     * @param webRequest                网络请求，非管理员携带 If-None-Match / If-Modified-Since 时可能直接返回 304
      * @return {@link BaseResponse}<{@link Page}<{@link InterfaceInfo}>>
      */
     @GetMapping("/list/page")
-    public BaseResponse<Page<InterfaceInfo>> listInterfaceInfoByPage(InterfaceInfoQueryRequest interfaceInfoQueryRequest, HttpServletRequest request) {
+    public ResponseEntity<?> listInterfaceInfoByPage(InterfaceInfoQueryRequest interfaceInfoQueryRequest, HttpServletRequest request, WebRequest webRequest) {
         if (interfaceInfoQueryRequest == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
@@ -251,6 +298,17 @@ public class InterfaceInfoController {
         if (size > 50) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        User user = userService.isTourist(request);
+        // 不是管理员只能查看已经上线的，从已上线接口快照中分页，不查询数据库；同一版本同一查询只序列化一次
+        if (user == null || !user.getUserRole().equals(ADMIN_ROLE)) {
+            CatalogSnapshot.Data<InterfaceInfo> snapshot = catalogSnapshotManager.currentInterfaces();
+            String cacheKey = catalogResponseCache.toCacheKey("interface:page:", interfaceInfoQueryRequest);
+            return catalogResponseCache.respond(webRequest, cacheKey, snapshot.getGeneration(), snapshot.getLoadedAt(), () -> {
+                Page<InterfaceInfo> interfaceInfoPage = catalogSnapshotManager.pageInterfaces(snapshot, interfaceInfoQueryRequest);
+                invokeCounterManager.mergePendingTotalInvokes(interfaceInfoPage.getRecords());
+                return interfaceInfoPage;
+            });
+        }
         QueryWrapper<InterfaceInfo> queryWrapper = new QueryWrapper<>();
         queryWrapper.like(StringUtils.isNotBlank(name), "name", name)
                 .like(StringUtils.isNotBlank(description), "description", description)
@@ -261,14 +319,46 @@ public class InterfaceInfoController {
                 .eq(ObjectUtils.isNotEmpty(reduceScore), "reduceScore", reduceScore);
         queryWrapper.orderBy(StringUtils.isNotBlank(sortField), sortOrder.equals(CommonConstant.SORT_ORDER_ASC), sortField);
         Page<InterfaceInfo> interfaceInfoPage = interfaceInfoService.page(new Page<>(current, size), queryWrapper);
+        invokeCounterManager.mergePendingTotalInvokes(interfaceInfoPage.getRecords());
+        return ResponseEntity.ok(ResultUtils.success(interfaceInfoPage));
+    }
+
+    /**
+     * 游标分页获取列表，翻页深度不影响查询速度
+     *
+     * @param interfaceInfoQueryRequest 接口信息查询请求，cursor 传上一页返回的 nextCursor
+     * @param request                   请求
+     * @return {@link BaseResponse}<{@link CursorPage}<{@link InterfaceInfo}>>
+     */
+    @GetMapping("/list/cursor")
+    public BaseResponse<CursorPage<InterfaceInfo>> listInterfaceInfoByCursor(InterfaceInfoQueryRequest interfaceInfoQueryRequest, HttpServletRequest request) {
+        if (interfaceInfoQueryRequest == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        String name = interfaceInfoQueryRequest.getName();
+        String url = interfaceInfoQueryRequest.getUrl();
+        String method = interfaceInfoQueryRequest.getMethod();
+        String description = interfaceInfoQueryRequest.getDescription();
+        Integer status = interfaceInfoQueryRequest.getStatus();
+        Integer reduceScore = interfaceInfoQueryRequest.getReduceScore();
+        String returnFormat = interfaceInfoQueryRequest.getReturnFormat();
+        QueryWrapper<InterfaceInfo> queryWrapper = new QueryWrapper<>();
+        queryWrapper.like(StringUtils.isNotBlank(name), "name", name)
+                .like(StringUtils.isNotBlank(description), "description", description)
+                .like(StringUtils.isNotBlank(url), "url", url)
+                .like(StringUtils.isNotBlank(returnFormat), "returnFormat", returnFormat)
+                .eq(StringUtils.isNotBlank(method), "method", method)
+                .eq(ObjectUtils.isNotEmpty(status), "status", status)
+                .eq(ObjectUtils.isNotEmpty(reduceScore), "reduceScore", reduceScore);
         User user = userService.isTourist(request);
-        // 不是管理员只能查看已经上线的
+        // 不是管理员只能查看已经上线的，条件放在查询里，每页条数才准确
         if (user == null || !user.getUserRole().equals(ADMIN_ROLE)) {
-            List<InterfaceInfo> interfaceInfoList = interfaceInfoPage.getRecords().stream()
-                    .filter(interfaceInfo -> interfaceInfo.getStatus().equals(InterfaceStatusEnum.ONLINE.getValue())).collect(Collectors.toList());
-            interfaceInfoPage.setRecords(interfaceInfoList);
+            queryWrapper.eq("status", InterfaceStatusEnum.ONLINE.getValue());
         }
-        return ResultUtils.success(interfaceInfoPage);
+        CursorPage<InterfaceInfo> cursorPage = KeysetPageUtil.page(interfaceInfoService, queryWrapper, interfaceInfoQueryRequest,
+                CURSOR_SORT_FIELDS, "id", 50);
+        invokeCounterManager.mergePendingTotalInvokes(cursorPage.getRecords());
+        return ResultUtils.success(cursorPage);
     }
 
     /**
@@ -291,22 +381,75 @@ public class InterfaceInfoController {
         long current = interfaceInfoQueryRequest.getCurrent();
         String sortField = interfaceInfoQueryRequest.getSortField();
         String sortOrder = interfaceInfoQueryRequest.getSortOrder();
-
+        // 有搜索词时走内存索引，按相关度排序
+        if (StringUtils.isNotBlank(searchText)) {
+            if (current <= 0 || size <= 0 || size > 50) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR);
+            }
+            Page<InterfaceInfo> interfaceInfoPage = catalogSearchManager.searchInterface(searchText, !userService.isAdmin(request), current, size);
+            invokeCounterManager.mergePendingTotalInvokes(interfaceInfoPage.getRecords());
+            return ResultUtils.success(interfaceInfoPage);
+        }
         QueryWrapper<InterfaceInfo> queryWrapper = new QueryWrapper<>();
-        queryWrapper.like(StringUtils.isNotBlank(searchText), "name", searchText)
-                .or()
-                .like(StringUtils.isNotBlank(searchText), "description", searchText);
+        // 不是管理员只能查看已经上线的，在查询中过滤，每页条数才准确
+        queryWrapper.eq(!userService.isAdmin(request), "status", InterfaceStatusEnum.ONLINE.getValue());
         queryWrapper.orderBy(StringUtils.isNotBlank(sortField), sortOrder.equals(CommonConstant.SORT_ORDER_ASC), sortField);
         Page<InterfaceInfo> interfaceInfoPage = interfaceInfoService.page(new Page<>(current, size), queryWrapper);
-        // 不是管理员只能查看已经上线的
-        if (!userService.isAdmin(request)) {
-            List<InterfaceInfo> interfaceInfoList = interfaceInfoPage.getRecords().stream()
-                    .filter(interfaceInfo -> interfaceInfo.getStatus().equals(InterfaceStatusEnum.ONLINE.getValue())).collect(Collectors.toList());
-            interfaceInfoPage.setRecords(interfaceInfoList);
-        }
+        invokeCounterManager.mergePendingTotalInvokes(interfaceInfoPage.getRecords());
         return ResultUtils.success(interfaceInfoPage);
     }
 
+    /**
+     * 接口调用趋势，非管理员只能查看本人的调用
+     *
+     * @param queryRequest 调用统计查询请求
+     * @param request      请求
+     * @return {@link BaseResponse}<{@link List}<{@link InvokeRollupVo}>>
+     */
+    @GetMapping("/analytics/trend")
+    public BaseResponse<List<InvokeRollupVo>> getInvokeTrend(InvokeAnalyticsQueryRequest queryRequest, HttpServletRequest request) {
+        if (queryRequest == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        UserVO loginUser = userService.getLoginUser(request);
+        if (!ADMIN_ROLE.equals(loginUser.getUserRole())) {
+            queryRequest.setUserId(loginUser.getId());
+        }
+        return ResultUtils.success(interfaceInvokeRollupService.listTrend(queryRequest));
+    }
+
+    /**
+     * 调用量排行（仅管理员可使用）
+     *
+     * @param queryRequest 调用统计查询请求
+     * @return {@link BaseResponse}<{@link List}<{@link InvokeTopUserVo}>>
+     */
+    @AuthCheck(mustRole = ADMIN_ROLE)
+    @GetMapping("/analytics/topUsers")
+    public BaseResponse<List<InvokeTopUserVo>> listTopInvokeUsers(InvokeAnalyticsQueryRequest queryRequest) {
+        if (queryRequest == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        return ResultUtils.success(interfaceInvokeRollupService.listTopUsers(queryRequest));
+    }
+
+    /**
+     * 接口健康状况，来自定时探测，未探测过的接口不返回
+     *
+     * @param ids 接口id，为空时返回所有已上线接口
+     * @return {@link BaseResponse}<{@link List}<{@link InterfaceHealthVo}>>
+     */
+    @GetMapping("/health")
+    public BaseResponse<List<InterfaceHealthVo>> listInterfaceHealth(@RequestParam(required = false) List<Long> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            ids = catalogSnapshotManager.currentInterfaces().getItems().stream().map(InterfaceInfo::getId).collect(Collectors.toList());
+        }
+        if (ids.size() > 200) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        return ResultUtils.success(interfaceHealthManager.listHealth(ids));
+    }
+
     /**
      * 发布
      *
@@ -353,15 +496,14 @@ public class InterfaceInfoController {
     // endregion
 
     /**
-     * 调用接口
+     * 调用接口，在独立线程池中异步执行，不占用请求线程和数据库连接
      *
      * @param invokeRequest id请求
      * @param request       请求
-     * @return {@link BaseResponse}<{@link Object}>
+     * @return {@link DeferredResult}<{@link BaseResponse}<{@link Object}>>
      */
     @PostMapping("/invoke")
-    @Transactional(rollbackFor = Exception.class)
-    public BaseResponse<Object> invokeInterface(@RequestBody InvokeRequest invokeRequest, HttpServletRequest request) {
+    public DeferredResult<BaseResponse<Object>> invokeInterface(@RequestBody InvokeRequest invokeRequest, HttpServletRequest request) {
         if (ObjectUtils.anyNull(invokeRequest, invokeRequest.getId()) || invokeRequest.getId() <= 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
@@ -375,29 +517,17 @@ public class InterfaceInfoController {
         }
         // 构建请求参数
         List<InvokeRequest.Field> fieldList = invokeRequest.getRequestParams();
-        String requestParams = "{}";
-        if (fieldList != null && fieldList.size() > 0) {
-            JsonObject jsonObject = new JsonObject();
+        Map<String, Object> params = new LinkedHashMap<>();
+        if (fieldList != null) {
             for (InvokeRequest.Field field : fieldList) {
-                jsonObject.addProperty(field.getFieldName(), field.getValue());
+                params.put(field.getFieldName(), field.getValue());
             }
-            requestParams = gson.toJson(jsonObject);
         }
-        Map<String, Object> params = new Gson().fromJson(requestParams, new TypeToken<Map<String, Object>>() {
-        }.getType());
         UserVO loginUser = userService.getLoginUser(request);
-        String accessKey = loginUser.getAccessKey();
-        String secretKey = loginUser.getSecretKey();
-        try {
-            QiApiClient qiApiClient = new QiApiClient(accessKey, secretKey);
-            CurrencyRequest currencyRequest = new CurrencyRequest();
-            currencyRequest.setMethod(interfaceInfo.getMethod());
-            currencyRequest.setPath(interfaceInfo.getUrl());
-            currencyRequest.setRequestParams(params);
-            ResultResponse response = apiService.request(qiApiClient, currencyRequest);
-            return ResultUtils.success(response.getData());
-        } catch (Exception e) {
-            throw new BusinessException(ErrorCode.SYSTEM_ERROR, e.getMessage());
-        }
+        CurrencyRequest currencyRequest = new CurrencyRequest();
+        currencyRequest.setMethod(interfaceInfo.getMethod());
+        currencyRequest.setPath(interfaceInfo.getUrl());
+        currencyRequest.setRequestParams(params);
+        return invokeClientManager.invoke(loginUser.getAccessKey(), loginUser.getSecretKey(), currencyRequest);
     }
 }
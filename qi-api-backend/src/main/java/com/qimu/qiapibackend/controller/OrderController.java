@@ -3,15 +3,18 @@ package com.qimu.qiapibackend.controller;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.qimu.qiapibackend.annotation.AuthCheck;
 import com.qimu.qiapibackend.common.BaseResponse;
 import com.qimu.qiapibackend.common.ErrorCode;
 import com.qimu.qiapibackend.common.ResultUtils;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.OrderReconcileWorker;
 import com.qimu.qiapibackend.model.dto.pay.PayCreateRequest;
 import com.qimu.qiapibackend.model.dto.productorder.ProductOrderQueryRequest;
 import com.qimu.qiapibackend.model.entity.ProductInfo;
 import com.qimu.qiapibackend.model.entity.ProductOrder;
 import com.qimu.qiapibackend.model.enums.PaymentStatusEnum;
+import com.qimu.qiapibackend.model.vo.OrderReconcileStatsVo;
 import com.qimu.qiapibackend.model.vo.OrderVo;
 import com.qimu.qiapibackend.model.vo.ProductOrderVo;
 import com.qimu.qiapibackend.model.vo.UserVO;
@@ -34,6 +37,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.qimu.qiapibackend.constant.PayConstant.QUERY_ORDER_STATUS;
+import static com.qimu.qiapibackend.constant.UserConstant.ADMIN_ROLE;
 import static com.qimu.qiapibackend.model.enums.PaymentStatusEnum.SUCCESS;
 
 
@@ -55,6 +59,8 @@ public class OrderController {
     private OrderService orderService;
     @Resource
     private RedisTemplate<String, Boolean> redisTemplate;
+    @Resource
+    private OrderReconcileWorker orderReconcileWorker;
 
     // region 增删改查
 
@@ -217,6 +223,17 @@ public class OrderController {
         return ResultUtils.success(false);
     }
 
+    /**
+     * 到期订单对账统计（当前节点）
+     *
+     * @return {@link BaseResponse}<{@link OrderReconcileStatsVo}>
+     */
+    @GetMapping("/reconcile/stats")
+    @AuthCheck(mustRole = ADMIN_ROLE)
+    public BaseResponse<OrderReconcileStatsVo> getReconcileStats() {
+        return ResultUtils.success(orderReconcileWorker.getStats());
+    }
+
     /**
      * 解析订单通知结果
      * 通知频率为15s/15s/30s/3m/10m/20m/30m/30m/30m/60m/3h/3h/3h/6h/6h - 总计 24h4m
@@ -6,26 +6,36 @@ import com.qimu.qiapibackend.annotation.AuthCheck;
 import com.qimu.qiapibackend.common.*;
 import com.qimu.qiapibackend.constant.CommonConstant;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.CatalogResponseCache;
+import com.qimu.qiapibackend.manager.CatalogSearchManager;
+import com.qimu.qiapibackend.manager.CatalogSnapshot;
+import com.qimu.qiapibackend.manager.CatalogSnapshotManager;
 import com.qimu.qiapibackend.model.dto.productinfo.ProductInfoAddRequest;
 import com.qimu.qiapibackend.model.dto.productinfo.ProductInfoQueryRequest;
 import com.qimu.qiapibackend.model.dto.productinfo.ProductInfoSearchTextRequest;
 import com.qimu.qiapibackend.model.dto.productinfo.ProductInfoUpdateRequest;
 import com.qimu.qiapibackend.model.entity.ProductInfo;
+import com.qimu.qiapibackend.model.entity.User;
 import com.qimu.qiapibackend.model.enums.ProductInfoStatusEnum;
 import com.qimu.qiapibackend.model.vo.UserVO;
 import com.qimu.qiapibackend.service.ProductInfoService;
 import com.qimu.qiapibackend.service.UserService;
+import com.qimu.qiapibackend.utils.KeysetPageUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeanUtils;
+import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.Function;
 
 import static com.qimu.qiapibackend.constant.UserConstant.ADMIN_ROLE;
 
@@ -39,8 +49,24 @@ import static com.qimu.qiapibackend.constant.UserConstant.ADMIN_ROLE;
 @Slf4j
 public class ProductInfoController {
 
+    /**
+     * 游标分页允许的排序列，只放有索引的列，否则每页都要排序全表
+     */
+    private static final Map<String, Function<ProductInfo, Object>> CURSOR_SORT_FIELDS = new LinkedHashMap<>();
+
+    static {
+        CURSOR_SORT_FIELDS.put("id", ProductInfo::getId);
+        CURSOR_SORT_FIELDS.put("createTime", ProductInfo::getCreateTime);
+    }
+
     @Resource
     private ProductInfoService productInfoService;
+    @Resource
+    private CatalogSearchManager catalogSearchManager;
+    @Resource
+    private CatalogSnapshotManager catalogSnapshotManager;
+    @Resource
+    private CatalogResponseCache catalogResponseCache;
 
     @Resource
     private UserService userService;
@@ -179,10 +205,11 @@ public class ProductInfoController {
      *
      * @param productInfoQueryRequest 接口信息查询请求
      * @param request                 请求
+     * @param webRequest              网络请求，非管理员携带 If-None-Match / If-Modified-Since 时可能直接返回 304
      * @return {@link BaseResponse}<{@link Page}<{@link ProductInfo}>>
      */
     @GetMapping("/list/page")
-    public BaseResponse<Page<ProductInfo>> listProductInfoByPage(ProductInfoQueryRequest productInfoQueryRequest, HttpServletRequest request) {
+    public ResponseEntity<?> listProductInfoByPage(ProductInfoQueryRequest productInfoQueryRequest, HttpServletRequest request, WebRequest webRequest) {
         if (productInfoQueryRequest == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
@@ -203,6 +230,13 @@ public class ProductInfoController {
         if (size > 50) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        // 不是管理员只能查看已经上线的，从已上线产品快照中分页，同一版本同一查询只序列化一次
+        if (!userService.isAdmin(request)) {
+            CatalogSnapshot.Data<ProductInfo> snapshot = catalogSnapshotManager.currentProducts();
+            String cacheKey = catalogResponseCache.toCacheKey("product:page:", productInfoQueryRequest);
+            return catalogResponseCache.respond(webRequest, cacheKey, snapshot.getGeneration(), snapshot.getLoadedAt(),
+                    () -> catalogSnapshotManager.pageProducts(snapshot, productInfoQueryRequest));
+        }
         QueryWrapper<ProductInfo> queryWrapper = new QueryWrapper<>();
         queryWrapper.like(StringUtils.isNotBlank(name), "name", name)
                 .like(StringUtils.isNotBlank(description), "description", description)
@@ -212,13 +246,39 @@ public class ProductInfoController {
         // 根据金额升序排列
         queryWrapper.orderByAsc("total");
         Page<ProductInfo> productInfoPage = productInfoService.page(new Page<>(current, size), queryWrapper);
-        // 不是管理员只能查看已经上线的
-        if (!userService.isAdmin(request)) {
-            List<ProductInfo> productInfoList = productInfoPage.getRecords().stream()
-                    .filter(productInfo -> productInfo.getStatus().equals(ProductInfoStatusEnum.ONLINE.getValue())).collect(Collectors.toList());
-            productInfoPage.setRecords(productInfoList);
+        return ResponseEntity.ok(ResultUtils.success(productInfoPage));
+    }
+
+    /**
+     * 游标分页获取列表，翻页深度不影响查询速度
+     *
+     * @param productInfoQueryRequest 产品信息查询请求，cursor 传上一页返回的 nextCursor
+     * @param request                 请求
+     * @return {@link BaseResponse}<{@link CursorPage}<{@link ProductInfo}>>
+     */
+    @GetMapping("/list/cursor")
+    public BaseResponse<CursorPage<ProductInfo>> listProductInfoByCursor(ProductInfoQueryRequest productInfoQueryRequest, HttpServletRequest request) {
+        if (productInfoQueryRequest == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        return ResultUtils.success(productInfoPage);
+        String name = productInfoQueryRequest.getName();
+        String description = productInfoQueryRequest.getDescription();
+        String productType = productInfoQueryRequest.getProductType();
+        Integer addPoints = productInfoQueryRequest.getAddPoints();
+        Integer total = productInfoQueryRequest.getTotal();
+        QueryWrapper<ProductInfo> queryWrapper = new QueryWrapper<>();
+        queryWrapper.like(StringUtils.isNotBlank(name), "name", name)
+                .like(StringUtils.isNotBlank(description), "description", description)
+                .eq(StringUtils.isNotBlank(productType), "productType", productType)
+                .eq(ObjectUtils.isNotEmpty(addPoints), "addPoints", addPoints)
+                .eq(ObjectUtils.isNotEmpty(total), "total", total);
+        User user = userService.isTourist(request);
+        // 不是管理员只能查看已经上线的，条件放在查询里，每页条数才准确
+        if (user == null || !user.getUserRole().equals(ADMIN_ROLE)) {
+            queryWrapper.eq("status", ProductInfoStatusEnum.ONLINE.getValue());
+        }
+        return ResultUtils.success(KeysetPageUtil.page(productInfoService, queryWrapper, productInfoQueryRequest,
+                CURSOR_SORT_FIELDS, "id", 50));
     }
 
     /**
@@ -241,19 +301,18 @@ public class ProductInfoController {
         long current = productInfoQueryRequest.getCurrent();
         String sortField = productInfoQueryRequest.getSortField();
         String sortOrder = productInfoQueryRequest.getSortOrder();
-
+        // 有搜索词时走内存索引，按相关度排序
+        if (StringUtils.isNotBlank(searchText)) {
+            if (current <= 0 || size <= 0 || size > 50) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR);
+            }
+            return ResultUtils.success(catalogSearchManager.searchProduct(searchText, !userService.isAdmin(request), current, size));
+        }
         QueryWrapper<ProductInfo> queryWrapper = new QueryWrapper<>();
-        queryWrapper.like(StringUtils.isNotBlank(searchText), "name", searchText)
-                .or()
-                .like(StringUtils.isNotBlank(searchText), "description", searchText);
+        // 不是管理员只能查看已经上线的，在查询中过滤，每页条数才准确
+        queryWrapper.eq(!userService.isAdmin(request), "status", ProductInfoStatusEnum.ONLINE.getValue());
         queryWrapper.orderBy(StringUtils.isNotBlank(sortField), sortOrder.equals(CommonConstant.SORT_ORDER_ASC), sortField);
         Page<ProductInfo> productInfoPage = productInfoService.page(new Page<>(current, size), queryWrapper);
-        // 不是管理员只能查看已经上线的
-        if (!userService.isAdmin(request)) {
-            List<ProductInfo> productInfoList = productInfoPage.getRecords().stream()
-                    .filter(productInfo -> productInfo.getStatus().equals(ProductInfoStatusEnum.ONLINE.getValue())).collect(Collectors.toList());
-            productInfoPage.setRecords(productInfoList);
-        }
         return ResultUtils.success(productInfoPage);
     }
 
@@ -8,35 +8,41 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.plugins.pagination.PageDTO;
 import com.qimu.qiapibackend.annotation.AuthCheck;
 import com.qimu.qiapibackend.common.*;
-import com.qimu.qiapibackend.config.EmailConfig;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.AuthTokenManager;
+import com.qimu.qiapibackend.manager.EmailTemplateRegistry;
+import com.qimu.qiapibackend.manager.SlidingWindowRateLimiter;
+import com.qimu.qiapibackend.manager.UserCacheManager;
 import com.qimu.qiapibackend.model.dto.user.*;
 import com.qimu.qiapibackend.model.entity.User;
+import com.qimu.qiapibackend.model.enums.RateLimitSceneEnum;
 import com.qimu.qiapibackend.model.enums.UserAccountStatusEnum;
+import com.qimu.qiapibackend.model.enums.WalletLedgerBizTypeEnum;
 import com.qimu.qiapibackend.model.vo.UserVO;
+import com.qimu.qiapibackend.service.MailOutboxService;
 import com.qimu.qiapibackend.service.UserService;
+import com.qimu.qiapibackend.service.WalletLedgerService;
+import com.qimu.qiapibackend.utils.KeysetPageUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
-import javax.mail.MessagingException;
-import javax.mail.internet.MimeMessage;
 import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static com.qimu.qiapibackend.constant.EmailConstant.*;
 import static com.qimu.qiapibackend.constant.UserConstant.ADMIN_ROLE;
-import static com.qimu.qiapibackend.utils.EmailUtil.buildEmailContent;
 
 /**
  * 用户接口
@@ -47,13 +53,31 @@ import static com.qimu.qiapibackend.utils.EmailUtil.buildEmailContent;
 @RequestMapping("/user")
 @Slf4j
 public class UserController {
-    @Resource
-    private EmailConfig emailConfig;
+    /**
+     * 游标分页允许的排序列，只放有索引的列，否则每页都要排序全表
+     */
+    private static final Map<String, Function<User, Object>> CURSOR_SORT_FIELDS = new LinkedHashMap<>();
+
+    static {
+        CURSOR_SORT_FIELDS.put("id", User::getId);
+        CURSOR_SORT_FIELDS.put("createTime", User::getCreateTime);
+    }
+
     @Resource
     private UserService userService;
+    @Resource
+    private WalletLedgerService walletLedgerService;
+    @Resource
+    private UserCacheManager userCacheManager;
+    @Resource
+    private AuthTokenManager authTokenManager;
 
     @Resource
-    private JavaMailSender mailSender;
+    private MailOutboxService mailOutboxService;
+    @Resource
+    private EmailTemplateRegistry emailTemplateRegistry;
+    @Resource
+    private SlidingWindowRateLimiter slidingWindowRateLimiter;
 
     @Resource
     private RedisTemplate<String, String> redisTemplate;
@@ -64,13 +88,15 @@ public class UserController {
      * 用户注册
      *
      * @param userRegisterRequest 用户注册请求
+     * @param request             请求
      * @return {@link BaseResponse}<{@link Long}>
      */
     @PostMapping("/register")
-    public BaseResponse<Long> userRegister(@RequestBody UserRegisterRequest userRegisterRequest) {
+    public BaseResponse<Long> userRegister(@RequestBody UserRegisterRequest userRegisterRequest, HttpServletRequest request) {
         if (userRegisterRequest == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        slidingWindowRateLimiter.check(RateLimitSceneEnum.REGISTER_IP, slidingWindowRateLimiter.getClientIp(request));
         long result = userService.userRegister(userRegisterRequest);
         return ResultUtils.success(result);
     }
@@ -92,7 +118,18 @@ public class UserController {
         if (StringUtils.isAnyBlank(userAccount, userPassword)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        UserVO user = userService.userLogin(userAccount, userPassword, request);
+        String clientIp = slidingWindowRateLimiter.getClientIp(request);
+        slidingWindowRateLimiter.check(RateLimitSceneEnum.LOGIN_IP, clientIp);
+        // 按 IP + 账号只统计失败次数，别人反复尝试不会锁住该账号
+        String failureKey = clientIp + ":" + userAccount;
+        slidingWindowRateLimiter.checkFailures(RateLimitSceneEnum.LOGIN_ACCOUNT, failureKey);
+        UserVO user;
+        try {
+            user = userService.userLogin(userAccount, userPassword, request);
+        } catch (BusinessException e) {
+            slidingWindowRateLimiter.recordFailure(RateLimitSceneEnum.LOGIN_ACCOUNT, failureKey);
+            throw e;
+        }
         return ResultUtils.success(user);
     }
 
@@ -108,7 +145,22 @@ public class UserController {
         if (userEmailLoginRequest == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        UserVO user = userService.userEmailLogin(userEmailLoginRequest, request);
+        String clientIp = slidingWindowRateLimiter.getClientIp(request);
+        slidingWindowRateLimiter.check(RateLimitSceneEnum.LOGIN_IP, clientIp);
+        String emailAccount = userEmailLoginRequest.getEmailAccount();
+        String failureKey = StringUtils.isBlank(emailAccount) ? null : clientIp + ":" + emailAccount;
+        slidingWindowRateLimiter.checkFailures(RateLimitSceneEnum.LOGIN_EMAIL, failureKey);
+        UserVO user;
+        try {
+            user = userService.userEmailLogin(userEmailLoginRequest, request);
+        } catch (BusinessException e) {
+            slidingWindowRateLimiter.recordFailure(RateLimitSceneEnum.LOGIN_EMAIL, failureKey);
+            // 同一邮箱累计失败达到上限时作废验证码，不论来自哪个 IP，需重新获取
+            if (slidingWindowRateLimiter.recordFailureReachLimit(RateLimitSceneEnum.LOGIN_EMAIL_CAPTCHA, emailAccount)) {
+                redisTemplate.delete(CAPTCHA_CACHE_KEY + emailAccount);
+            }
+            throw e;
+        }
         redisTemplate.delete(CAPTCHA_CACHE_KEY + userEmailLoginRequest.getEmailAccount());
         return ResultUtils.success(user);
     }
@@ -150,13 +202,15 @@ public class UserController {
      * 用户电子邮件注册
      *
      * @param userEmailRegisterRequest 用户电子邮件注册请求
+     * @param request                  请求
      * @return {@link BaseResponse}<{@link UserVO}>
      */
     @PostMapping("/email/register")
-    public BaseResponse<Long> userEmailRegister(@RequestBody UserEmailRegisterRequest userEmailRegisterRequest) {
+    public BaseResponse<Long> userEmailRegister(@RequestBody UserEmailRegisterRequest userEmailRegisterRequest, HttpServletRequest request) {
         if (userEmailRegisterRequest == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        slidingWindowRateLimiter.check(RateLimitSceneEnum.REGISTER_IP, slidingWindowRateLimiter.getClientIp(request));
         long result = userService.userEmailRegister(userEmailRegisterRequest);
         redisTemplate.delete(CAPTCHA_CACHE_KEY + userEmailRegisterRequest.getEmailAccount());
         return ResultUtils.success(result);
@@ -166,10 +220,11 @@ public class UserController {
      * 获取验证码
      *
      * @param emailAccount 电子邮件帐户
+     * @param request      请求
      * @return {@link BaseResponse}<{@link String}>
      */
     @GetMapping("/getCaptcha")
-    public BaseResponse<Boolean> getCaptcha(String emailAccount) {
+    public BaseResponse<Boolean> getCaptcha(String emailAccount, HttpServletRequest request) {
         if (StringUtils.isBlank(emailAccount)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
@@ -177,9 +232,12 @@ public class UserController {
         if (!Pattern.matches(emailPattern, emailAccount)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "不合法的邮箱地址！");
         }
+        slidingWindowRateLimiter.check(RateLimitSceneEnum.CAPTCHA_IP, slidingWindowRateLimiter.getClientIp(request));
+        slidingWindowRateLimiter.check(RateLimitSceneEnum.CAPTCHA_EMAIL, emailAccount);
         String captcha = RandomUtil.randomNumbers(6);
         try {
-            sendEmail(emailAccount, captcha);
+            // 邮件写入待发表后由后台线程发送，接口不等待 SMTP
+            mailOutboxService.enqueue(emailAccount, EMAIL_SUBJECT, emailTemplateRegistry.buildEmailContent(captcha));
             redisTemplate.opsForValue().set(CAPTCHA_CACHE_KEY + emailAccount, captcha, 5, TimeUnit.MINUTES);
             return ResultUtils.success(true);
         } catch (Exception e) {
@@ -188,17 +246,6 @@ public class UserController {
         }
     }
 
-    private void sendEmail(String emailAccount, String captcha) throws MessagingException {
-        MimeMessage message = mailSender.createMimeMessage();
-        // 邮箱发送内容组成
-        MimeMessageHelper helper = new MimeMessageHelper(message, true);
-        helper.setSubject(EMAIL_SUBJECT);
-        helper.setText(buildEmailContent(EMAIL_HTML_CONTENT_PATH, captcha), true);
-        helper.setTo(emailAccount);
-        helper.setFrom(EMAIL_TITLE + '<' + emailConfig.getEmailFrom() + '>');
-        mailSender.send(message);
-    }
-
     /**
      * 用户注销
      *
@@ -270,6 +317,7 @@ public class UserController {
         if (ObjectUtils.anyNull(deleteRequest, deleteRequest.getId()) || deleteRequest.getId() <= 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        authTokenManager.denyUser(deleteRequest.getId());
         return ResultUtils.success(userService.removeById(deleteRequest.getId()));
     }
 
@@ -306,16 +354,38 @@ public class UserController {
         BeanUtils.copyProperties(userUpdateRequest, user);
         // 参数校验
         userService.validUser(user, false);
+        // 余额通过流水调整，记录为管理员调整
+        Integer balance = user.getBalance();
+        user.setBalance(null);
+        if (ObjectUtils.isNotEmpty(balance)) {
+            int delta = balance - walletLedgerService.getBalance(user.getId());
+            if (delta != 0) {
+                userService.addWalletBalance(user.getId(), delta, WalletLedgerBizTypeEnum.ADMIN);
+            }
+        }
 
-        LambdaUpdateWrapper<User> userLambdaUpdateWrapper = new LambdaUpdateWrapper<>();
-        userLambdaUpdateWrapper.eq(User::getId, user.getId());
-
-        boolean result = userService.update(user, userLambdaUpdateWrapper);
-        if (!result) {
-            throw new BusinessException(ErrorCode.OPERATION_ERROR, "更新失败");
+        User onlyIdUser = new User();
+        onlyIdUser.setId(user.getId());
+        // 只调整余额时没有需要更新的字段
+        if (!onlyIdUser.equals(user)) {
+            LambdaUpdateWrapper<User> userLambdaUpdateWrapper = new LambdaUpdateWrapper<>();
+            userLambdaUpdateWrapper.eq(User::getId, user.getId());
+
+            boolean result = userService.update(user, userLambdaUpdateWrapper);
+            if (!result) {
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "更新失败");
+            }
+        }
+        // 角色、状态、余额等变更后使各节点的用户缓存失效
+        userCacheManager.invalidate(user.getId());
+        // 改角色、改状态、改密码后之前签发的令牌作废
+        if (StringUtils.isNotBlank(userUpdateRequest.getUserRole()) || userUpdateRequest.getStatus() != null
+                || StringUtils.isNotBlank(userUpdateRequest.getUserPassword())) {
+            authTokenManager.denyUser(user.getId());
         }
         UserVO userVO = new UserVO();
         BeanUtils.copyProperties(userService.getById(user.getId()), userVO);
+        userVO.setBalance(walletLedgerService.getBalance(user.getId()));
         return ResultUtils.success(userVO);
     }
 
@@ -401,6 +471,40 @@ public class UserController {
         return ResultUtils.success(userVoPage);
     }
 
+    /**
+     * 游标分页获取用户列表，翻页深度不影响查询速度
+     *
+     * @param userQueryRequest 用户查询请求，cursor 传上一页返回的 nextCursor
+     * @return {@link BaseResponse}<{@link CursorPage}<{@link UserVO}>>
+     */
+    @GetMapping("/list/cursor")
+    @AuthCheck(mustRole = ADMIN_ROLE)
+    public BaseResponse<CursorPage<UserVO>> listUserByCursor(UserQueryRequest userQueryRequest) {
+        if (userQueryRequest == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        String userName = userQueryRequest.getUserName();
+        String userAccount = userQueryRequest.getUserAccount();
+        String gender = userQueryRequest.getGender();
+        String userRole = userQueryRequest.getUserRole();
+        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+        queryWrapper.like(StringUtils.isNotBlank(userName), "userName", userName)
+                .eq(StringUtils.isNotBlank(userAccount), "userAccount", userAccount)
+                .eq(StringUtils.isNotBlank(gender), "gender", gender)
+                .eq(StringUtils.isNotBlank(userRole), "userRole", userRole);
+        CursorPage<User> userPage = KeysetPageUtil.page(userService, queryWrapper, userQueryRequest, CURSOR_SORT_FIELDS, "id", 100);
+        CursorPage<UserVO> userVoPage = new CursorPage<>();
+        userVoPage.setRecords(userPage.getRecords().stream().map(user -> {
+            UserVO userVO = new UserVO();
+            BeanUtils.copyProperties(user, userVO);
+            return userVO;
+        }).collect(Collectors.toList()));
+        userVoPage.setNextCursor(userPage.getNextCursor());
+        userVoPage.setHasMore(userPage.isHasMore());
+        userVoPage.setTotal(userPage.getTotal());
+        return ResultUtils.success(userVoPage);
+    }
+
     @PostMapping("/update/voucher")
     public BaseResponse<UserVO> updateVoucher(HttpServletRequest request) {
         if (request == null) {
@@ -447,13 +551,7 @@ public class UserController {
         if (ObjectUtils.anyNull(idRequest, idRequest.getId()) || idRequest.getId() <= 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        Long id = idRequest.getId();
-        User user = userService.getById(id);
-        if (user == null) {
-            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR);
-        }
-        user.setStatus(UserAccountStatusEnum.NORMAL.getValue());
-        return ResultUtils.success(userService.updateById(user));
+        return ResultUtils.success(updateStatus(idRequest.getId(), UserAccountStatusEnum.NORMAL));
     }
 
     /**
@@ -469,13 +567,27 @@ public class UserController {
         if (ObjectUtils.anyNull(idRequest, idRequest.getId()) || idRequest.getId() <= 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        Long id = idRequest.getId();
-        User user = userService.getById(id);
-        if (user == null) {
+        return ResultUtils.success(updateStatus(idRequest.getId(), UserAccountStatusEnum.BAN));
+    }
+
+    /**
+     * 只更新状态，余额等其他列可能正被流水合并修改，不能整行写回
+     *
+     * @param id     用户id
+     * @param status 状态
+     * @return boolean
+     */
+    private boolean updateStatus(Long id, UserAccountStatusEnum status) {
+        if (userService.getById(id) == null) {
             throw new BusinessException(ErrorCode.NOT_FOUND_ERROR);
         }
-        user.setStatus(UserAccountStatusEnum.BAN.getValue());
-        return ResultUtils.success(userService.updateById(user));
+        User user = new User();
+        user.setId(id);
+        user.setStatus(status.getValue());
+        // updateById 成功后会使各节点的用户缓存失效
+        boolean result = userService.updateById(user);
+        authTokenManager.denyUser(id);
+        return result;
     }
     // endregion
 }
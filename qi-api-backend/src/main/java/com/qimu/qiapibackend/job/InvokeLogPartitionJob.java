@@ -0,0 +1,72 @@
+package com.qimu.qiapibackend.job;
+
+import cn.hutool.core.date.DatePattern;
+import cn.hutool.core.date.DateUtil;
+import com.qimu.qiapibackend.config.InvokeLogConfig;
+import com.qimu.qiapibackend.mapper.InterfaceInvokeLogMapper;
+import com.qimu.qiapibackend.utils.RedissonLockUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/25 11:15:32
+ * @Version: 1.0
+ * @Description: 调用日志分区维护任务：提前创建按天分区，过期分区整体删除
+ */
+@Slf4j
+@Component
+public class InvokeLogPartitionJob {
+    private static final String PARTITION_PREFIX = "p";
+    @Resource
+    private InterfaceInvokeLogMapper interfaceInvokeLogMapper;
+    @Resource
+    private InvokeLogConfig invokeLogConfig;
+    @Resource
+    private RedissonLockUtil redissonLockUtil;
+
+    /**
+     * 启动后执行一次，之后每小时检查一次
+     */
+    @Scheduled(initialDelay = 10000, fixedDelay = 60 * 60 * 1000)
+    public void maintainPartitions() {
+        redissonLockUtil.redissonDistributedLocks("invokeLogPartition", () -> {
+            List<String> partitionNames = interfaceInvokeLogMapper.listPartitionNames();
+            Set<String> existing = new HashSet<>(partitionNames);
+            Date today = DateUtil.beginOfDay(new Date());
+            for (int i = 0; i <= invokeLogConfig.getPreCreateDays(); i++) {
+                Date day = DateUtil.offsetDay(today, i);
+                String partitionName = toPartitionName(day);
+                if (!existing.contains(partitionName)) {
+                    interfaceInvokeLogMapper.addPartition(partitionName,
+                            DateUtil.format(DateUtil.offsetDay(day, 1), DatePattern.NORM_DATE_PATTERN));
+                    log.info("创建调用日志分区 {}", partitionName);
+                }
+            }
+            String expiredBefore = toPartitionName(DateUtil.offsetDay(today, -invokeLogConfig.getRetentionDays()));
+            for (String partitionName : partitionNames) {
+                // 分区名 p+yyyyMMdd 可直接按字符串比较
+                if (isDayPartition(partitionName) && partitionName.compareTo(expiredBefore) < 0) {
+                    interfaceInvokeLogMapper.dropPartition(partitionName);
+                    log.info("删除过期调用日志分区 {}", partitionName);
+                }
+            }
+        });
+    }
+
+    private static String toPartitionName(Date day) {
+        return PARTITION_PREFIX + DateUtil.format(day, DatePattern.PURE_DATE_PATTERN);
+    }
+
+    private static boolean isDayPartition(String partitionName) {
+        return partitionName.length() == 9 && partitionName.startsWith(PARTITION_PREFIX)
+                && partitionName.substring(1).chars().allMatch(Character::isDigit);
+    }
+}
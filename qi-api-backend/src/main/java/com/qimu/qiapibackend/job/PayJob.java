@@ -1,5 +1,7 @@
 package com.qimu.qiapibackend.job;
 
+import com.qimu.qiapibackend.config.OrderExpiryConfig;
+import com.qimu.qiapibackend.manager.OrderExpiryQueue;
 import com.qimu.qiapibackend.model.entity.ProductOrder;
 import com.qimu.qiapibackend.service.OrderService;
 import com.qimu.qiapibackend.service.ProductOrderService;
@@ -9,11 +11,9 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.Date;
 import java.util.List;
 
-import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.ALIPAY;
-import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.WX;
-
 /**
  * @Author: QiMu
  * @Date: 2023年08月24日 09:24
@@ -23,51 +23,36 @@ import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.WX;
 @Slf4j
 @Component
 public class PayJob {
+    /**
+     * 订单有效期（分钟），与下单时设置的过期时间一致
+     */
+    private static final int ORDER_EXPIRE_MINUTES = 5;
     @Resource
     private ProductOrderService productOrderService;
     @Resource
     private OrderService orderService;
     @Resource
     private RedissonLockUtil redissonLockUtil;
+    @Resource
+    private OrderExpiryQueue orderExpiryQueue;
+    @Resource
+    private OrderExpiryConfig orderExpiryConfig;
 
     /**
-     * 微信订单确认
-     * 每25s查询一次超过5分钟过期的订单,并且未支付
+     * 兜底扫描：到期订单由延迟队列处理，这里只把过期较久仍未支付的订单重新入队，
+     * 覆盖入队失败、取出后节点宕机等情况
+     * 每5分钟执行一次
      */
-    @Scheduled(cron = "0/25 * * * * ?")
-    public void wxOrderConfirm() {
-        redissonLockUtil.redissonDistributedLocks("wxOrderConfirm", () -> {
-            List<ProductOrder> orderList = orderService.getNoPayOrderByDuration(5, false, WX.getValue());
-            ProductOrderService productOrderService = orderService.getProductOrderServiceByPayType(WX.getValue());
+    @Scheduled(cron = "0 0/5 * * * ?")
+    public void expiredOrderSweep() {
+        redissonLockUtil.redissonDistributedLocks("expiredOrderSweep", () -> {
+            List<ProductOrder> orderList = orderService.getNoPayOrderByDuration(ORDER_EXPIRE_MINUTES + orderExpiryConfig.getSweepGraceMinutes(), false, "");
+            Date now = new Date();
             for (ProductOrder productOrder : orderList) {
-                String orderNo = productOrder.getOrderNo();
-                try {
-                    productOrderService.processingTimedOutOrders(productOrder);
-                } catch (Exception e) {
-                    log.error("微信超时订单,{},确认异常：{}", orderNo, e.getMessage());
-                    break;
-                }
+                orderExpiryQueue.schedule(productOrder.getOrderNo(), now);
             }
-        });
-    }
-
-    /**
-     * 支付宝订单确认
-     * 每20s查询一次超过5分钟过期的订单,并且未支付
-     */
-    @Scheduled(cron = "0/20 * * * * ?")
-    public void aliPayOrderConfirm() {
-        redissonLockUtil.redissonDistributedLocks("aliPayOrderConfirm", () -> {
-            List<ProductOrder> orderList = orderService.getNoPayOrderByDuration(5, false, ALIPAY.getValue());
-            ProductOrderService productOrderService = orderService.getProductOrderServiceByPayType(ALIPAY.getValue());
-            for (ProductOrder productOrder : orderList) {
-                String orderNo = productOrder.getOrderNo();
-                try {
-                    productOrderService.processingTimedOutOrders(productOrder);
-                } catch (Exception e) {
-                    log.error("支付宝超时订单,{},确认异常：{}", orderNo, e.getMessage());
-                    break;
-                }
+            if (!orderList.isEmpty()) {
+                log.warn("兜底扫描发现 {} 个过期未处理的订单，已重新入队", orderList.size());
             }
         });
     }
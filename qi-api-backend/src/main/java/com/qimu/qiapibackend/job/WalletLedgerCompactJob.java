@@ -0,0 +1,44 @@
+package com.qimu.qiapibackend.job;
+
+import com.qimu.qiapibackend.service.WalletLedgerService;
+import com.qimu.qiapibackend.utils.RedissonLockUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+import static com.qimu.qiapibackend.constant.WalletConstant.WALLET_COMPACT_BATCH_SIZE;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/24 10:40:55
+ * @Version: 1.0
+ * @Description: 钱包流水合并任务
+ */
+@Slf4j
+@Component
+public class WalletLedgerCompactJob {
+    @Resource
+    private WalletLedgerService walletLedgerService;
+    @Resource
+    private RedissonLockUtil redissonLockUtil;
+
+    /**
+     * 每5s把未合并的流水合并到用户余额
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void compactWalletLedger() {
+        redissonLockUtil.redissonDistributedLocks("compactWalletLedger", () -> {
+            int total = 0;
+            int compacted;
+            do {
+                compacted = walletLedgerService.compact(WALLET_COMPACT_BATCH_SIZE);
+                total += compacted;
+            } while (compacted == WALLET_COMPACT_BATCH_SIZE);
+            if (total > 0) {
+                log.info("合并钱包流水 {} 条", total);
+            }
+        });
+    }
+}
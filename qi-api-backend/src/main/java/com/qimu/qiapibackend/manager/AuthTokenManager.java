@@ -0,0 +1,273 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.core.util.IdUtil;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.config.AuthTokenConfig;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.model.dto.user.AuthTokenClaims;
+import com.qimu.qiapibackend.model.entity.User;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.qimu.qiapibackend.constant.UserConstant.AUTH_TOKEN_DENYLIST_KEY;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/29 09:30:16
+ * @Version: 1.0
+ * @Description: 无状态访问令牌
+ * <p>
+ * 令牌格式：密钥id.载荷.签名，载荷为 令牌id|用户id|角色|版本号|签发时间|过期时间 的 Base64Url，签名为 HMAC-SHA256。
+ * 校验只在本机完成；注销和封禁写入 Redis 黑名单，各节点每秒同步一份到本地，校验时只查本地。
+ * 黑名单中同时带有用户信息变更标记，令牌请求据此判断本地缓存的用户是否可信。
+ */
+@Slf4j
+@Component
+public class AuthTokenManager {
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String TOKEN_MEMBER_PREFIX = "t:";
+    private static final String USER_MEMBER_PREFIX = "u:";
+    private static final String CHANGED_MEMBER_PREFIX = "c:";
+    /**
+     * 用户信息变更标记的保留时长，不短于用户本地缓存的过期时间，同步中断期间错过的标记恢复后仍能看到
+     */
+    private static final long USER_CHANGE_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    @Resource
+    private AuthTokenConfig authTokenConfig;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private Map<String, SecretKeySpec> keys = Collections.emptyMap();
+    /**
+     * 已注销的令牌id -> 过期时间
+     */
+    private volatile Map<String, Long> deniedTokens = new ConcurrentHashMap<>();
+    /**
+     * 用户id -> 该时间之前签发的令牌全部作废
+     */
+    private volatile Map<Long, Long> deniedUsers = new ConcurrentHashMap<>();
+    /**
+     * 用户id -> 最近一次变更标记的写入时间
+     */
+    private volatile Map<Long, Long> userChangeMarks = new ConcurrentHashMap<>();
+    /**
+     * 用户id -> 本机看到最近一次变更的时间（本机时钟），之前加载的用户缓存不再可信
+     */
+    private volatile Map<Long, Long> userChangedAt = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        Map<String, SecretKeySpec> keySpecs = new HashMap<>();
+        authTokenConfig.getKeys().forEach((keyId, secret) ->
+                keySpecs.put(keyId, new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM)));
+        if (!keySpecs.containsKey(authTokenConfig.getActiveKeyId())) {
+            throw new IllegalStateException("qi.auth.token.active-key-id 未在 qi.auth.token.keys 中配置");
+        }
+        keys = keySpecs;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(authTokenConfig.getEnabled());
+    }
+
+    /**
+     * 签发令牌
+     *
+     * @param user    用户
+     * @param version 用户信息版本号
+     * @return {@link String}
+     */
+    public String issue(User user, long version) {
+        long now = System.currentTimeMillis();
+        String payload = String.join("|", IdUtil.fastSimpleUUID(), String.valueOf(user.getId()), user.getUserRole(),
+                String.valueOf(version), String.valueOf(now), String.valueOf(now + authTokenConfig.getExpireSeconds() * 1000));
+        String keyId = authTokenConfig.getActiveKeyId();
+        String unsigned = keyId + "." + ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return unsigned + "." + ENCODER.encodeToString(sign(keys.get(keyId), unsigned));
+    }
+
+    /**
+     * 校验令牌
+     *
+     * @param token 令牌
+     * @return {@link AuthTokenClaims} 无效、过期或已注销时为 null
+     */
+    public AuthTokenClaims verify(String token) {
+        if (!isEnabled() || StringUtils.isBlank(token)) {
+            return null;
+        }
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        if (first <= 0 || last <= first) {
+            return null;
+        }
+        SecretKeySpec key = keys.get(token.substring(0, first));
+        if (key == null) {
+            return null;
+        }
+        try {
+            byte[] signature = DECODER.decode(token.substring(last + 1));
+            if (!MessageDigest.isEqual(signature, sign(key, token.substring(0, last)))) {
+                return null;
+            }
+            String[] parts = new String(DECODER.decode(token.substring(first + 1, last)), StandardCharsets.UTF_8).split("\\|");
+            if (parts.length != 6) {
+                return null;
+            }
+            AuthTokenClaims claims = new AuthTokenClaims();
+            claims.setTokenId(parts[0]);
+            claims.setUserId(Long.valueOf(parts[1]));
+            claims.setUserRole(parts[2]);
+            claims.setVersion(Long.valueOf(parts[3]));
+            claims.setIssuedAt(Long.valueOf(parts[4]));
+            claims.setExpireAt(Long.valueOf(parts[5]));
+            if (claims.getExpireAt() <= System.currentTimeMillis() || isDenied(claims)) {
+                return null;
+            }
+            return claims;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 注销令牌
+     *
+     * @param claims 令牌信息
+     */
+    public void denyToken(AuthTokenClaims claims) {
+        deniedTokens.put(claims.getTokenId(), claims.getExpireAt());
+        stringRedisTemplate.opsForZSet().add(AUTH_TOKEN_DENYLIST_KEY, TOKEN_MEMBER_PREFIX + claims.getTokenId(), claims.getExpireAt());
+    }
+
+    /**
+     * 作废用户此前签发的全部令牌，用于封禁、解封、改角色、改密码
+     *
+     * @param userId 用户id
+     */
+    public void denyUser(long userId) {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        deniedUsers.merge(userId, now, Math::max);
+        // 此后签发的令牌不受影响，条目保留一个令牌有效期即可
+        stringRedisTemplate.opsForZSet().add(AUTH_TOKEN_DENYLIST_KEY, USER_MEMBER_PREFIX + userId + ":" + now,
+                now + authTokenConfig.getExpireSeconds() * 1000);
+    }
+
+    /**
+     * 标记用户信息已变更，随黑名单同步到各节点，令牌请求据此淘汰本地缓存的用户，不必每次读取版本号
+     *
+     * @param userId 用户id
+     */
+    public void markUserChanged(long userId) {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        userChangedAt.put(userId, now);
+        stringRedisTemplate.opsForZSet().add(AUTH_TOKEN_DENYLIST_KEY, CHANGED_MEMBER_PREFIX + userId + ":" + now,
+                now + USER_CHANGE_RETENTION_MILLIS);
+    }
+
+    /**
+     * 本机看到用户最近一次变更的时间，早于该时间加载的用户缓存需要重新加载
+     *
+     * @param userId 用户id
+     * @return {@link Long} 保留期内没有变更时为 null
+     */
+    public Long getUserChangedAt(long userId) {
+        return userChangedAt.get(userId);
+    }
+
+    /**
+     * 同步 Redis 黑名单到本地
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void syncDenylist() {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<ZSetOperations.TypedTuple<String>> entries;
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(AUTH_TOKEN_DENYLIST_KEY, 0, now);
+            entries = stringRedisTemplate.opsForZSet().rangeByScoreWithScores(AUTH_TOKEN_DENYLIST_KEY, now, Double.MAX_VALUE);
+        } catch (Exception e) {
+            // Redis 不可用时沿用上次同步的结果
+            log.warn("同步令牌黑名单失败：{}", e.getMessage());
+            return;
+        }
+        Map<String, Long> tokens = new ConcurrentHashMap<>();
+        Map<Long, Long> users = new ConcurrentHashMap<>();
+        Map<Long, Long> changeMarks = new ConcurrentHashMap<>();
+        if (entries != null) {
+            for (ZSetOperations.TypedTuple<String> entry : entries) {
+                String member = entry.getValue();
+                if (member == null || entry.getScore() == null) {
+                    continue;
+                }
+                if (member.startsWith(TOKEN_MEMBER_PREFIX)) {
+                    tokens.put(member.substring(TOKEN_MEMBER_PREFIX.length()), entry.getScore().longValue());
+                } else if (member.startsWith(USER_MEMBER_PREFIX)) {
+                    String[] parts = member.substring(USER_MEMBER_PREFIX.length()).split(":");
+                    users.merge(Long.valueOf(parts[0]), Long.valueOf(parts[1]), Math::max);
+                } else if (member.startsWith(CHANGED_MEMBER_PREFIX)) {
+                    String[] parts = member.substring(CHANGED_MEMBER_PREFIX.length()).split(":");
+                    changeMarks.merge(Long.valueOf(parts[0]), Long.valueOf(parts[1]), Math::max);
+                }
+            }
+        }
+        // 变更时间取本机看到新标记的时刻，不依赖各节点时钟一致
+        Map<Long, Long> previousMarks = userChangeMarks;
+        Map<Long, Long> previousChangedAt = userChangedAt;
+        Map<Long, Long> changedAt = new ConcurrentHashMap<>();
+        changeMarks.forEach((userId, markedAt) -> {
+            Long seenAt = previousChangedAt.get(userId);
+            changedAt.put(userId, seenAt != null && markedAt.equals(previousMarks.get(userId)) ? seenAt : now);
+        });
+        deniedTokens = tokens;
+        deniedUsers = users;
+        userChangeMarks = changeMarks;
+        userChangedAt = changedAt;
+    }
+
+    private boolean isDenied(AuthTokenClaims claims) {
+        if (deniedTokens.containsKey(claims.getTokenId())) {
+            return true;
+        }
+        Long deniedBefore = deniedUsers.get(claims.getUserId());
+        return deniedBefore != null && claims.getIssuedAt() <= deniedBefore;
+    }
+
+    private static byte[] sign(SecretKeySpec key, String content) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(content.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "令牌签名失败");
+        }
+    }
+}
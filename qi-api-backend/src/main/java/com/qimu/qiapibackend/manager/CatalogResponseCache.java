@@ -0,0 +1,95 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.common.ResultUtils;
+import com.qimu.qiapibackend.exception.BusinessException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.annotation.Resource;
+import java.util.function.Supplier;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/09 10:40:27
+ * @Version: 1.0
+ * @Description: 目录读接口的条件请求与响应缓存
+ * <p>
+ * ETag 由快照代号和请求参数组成：请求头 If-None-Match 命中时直接返回 304，不读快照内容也不序列化；
+ * 未命中时按 (请求参数) 缓存当前代号下序列化好的响应字节，同一代号内的重复请求直接写出字节。
+ * <p>
+ * 接口的调用次数在序列化时合并未落库的增量，之后在同一代号内不再变化（304 也是如此）。快照最长 60 秒重新加载一次，
+ * 每次加载都会换代号，所以目录中展示的调用次数最多落后一分钟；需要实时次数的地方不要走这里。
+ */
+@Component
+public class CatalogResponseCache {
+    private static final int CAPACITY = 2000;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private final LRUCache<String, Encoded> cache = CacheUtil.newLRUCache(CAPACITY);
+
+    /**
+     * 生成条件请求响应
+     *
+     * @param webRequest   请求
+     * @param cacheKey     请求参数组成的缓存键
+     * @param generation   快照代号
+     * @param lastModified 快照加载时间
+     * @param dataSupplier 缓存未命中时生成响应数据，其中随时间变化的字段（如调用次数）在本代号内保持生成时的值
+     * @return {@link ResponseEntity}<{@link byte[]}> 未修改时返回 null，由框架写出 304
+     */
+    public ResponseEntity<byte[]> respond(WebRequest webRequest, String cacheKey, String generation, long lastModified, Supplier<Object> dataSupplier) {
+        String etag = "\"" + generation + "-" + Integer.toHexString(cacheKey.hashCode()) + "\"";
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return null;
+        }
+        Encoded encoded = cache.get(cacheKey, false);
+        if (encoded == null || !encoded.etag.equals(etag)) {
+            try {
+                encoded = new Encoded(etag, objectMapper.writeValueAsBytes(ResultUtils.success(dataSupplier.get())));
+            } catch (JsonProcessingException e) {
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, e.getMessage());
+            }
+            cache.put(cacheKey, encoded);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache())
+                .header(HttpHeaders.VARY, HttpHeaders.COOKIE, HttpHeaders.AUTHORIZATION)
+                .body(encoded.bytes);
+    }
+
+    /**
+     * 请求参数转为缓存键
+     *
+     * @param prefix       接口前缀
+     * @param queryRequest 请求参数
+     * @return {@link String}
+     */
+    public String toCacheKey(String prefix, Object queryRequest) {
+        try {
+            return prefix + objectMapper.writeValueAsString(queryRequest);
+        } catch (JsonProcessingException e) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+    }
+
+    private static class Encoded {
+        private final String etag;
+        private final byte[] bytes;
+
+        private Encoded(String etag, byte[] bytes) {
+            this.etag = etag;
+            this.bytes = bytes;
+        }
+    }
+}
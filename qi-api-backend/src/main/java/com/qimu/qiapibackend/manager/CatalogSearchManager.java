@@ -0,0 +1,209 @@
+package com.qimu.qiapibackend.manager;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.qimu.qiapibackend.mapper.InterfaceInfoMapper;
+import com.qimu.qiapibackend.mapper.ProductInfoMapper;
+import com.qimu.qiapibackend.model.entity.ProductInfo;
+import com.qimu.qiapibackend.model.enums.InterfaceStatusEnum;
+import com.qimu.qiapibackend.model.enums.ProductInfoStatusEnum;
+import com.qimu.qiapibackend.utils.Bm25Index;
+import com.qimu.qiapibackend.utils.SearchTokenizer;
+import com.qimu.qiapicommon.model.entity.InterfaceInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/05 11:02:37
+ * @Version: 1.0
+ * @Description: 接口、产品目录搜索
+ * <p>
+ * 启动时把全部接口和产品的名称、描述（接口另有地址）建成内存倒排索引，本节点的增删改在事务提交后按 id 重新加载单条；
+ * 其他节点的修改由定时全量重建兜底。索引只负责排序出 id，当前页的数据按主键回表，保证字段是最新的；
+ * 只要上线的先按数据库当前状态过滤全部命中再分页，其他节点刚下线、删除的数据在重建前也不会返回，总数也不会算上它们。
+ */
+@Slf4j
+@Component
+public class CatalogSearchManager {
+    /**
+     * 名称命中比描述更重要，名称分词重复计入
+     */
+    private static final int NAME_WEIGHT = 3;
+    @Resource
+    private InterfaceInfoMapper interfaceInfoMapper;
+    @Resource
+    private ProductInfoMapper productInfoMapper;
+
+    private final Bm25Index<InterfaceInfo> interfaceIndex = new Bm25Index<>();
+    private final Bm25Index<ProductInfo> productIndex = new Bm25Index<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("目录搜索索引构建失败，等待定时重建", e);
+        }
+    }
+
+    @Scheduled(initialDelay = 300000, fixedDelay = 300000)
+    public void rebuild() {
+        List<InterfaceInfo> interfaceInfoList = interfaceInfoMapper.selectList(new QueryWrapper<InterfaceInfo>()
+                .select("id", "name", "description", "url", "status"));
+        interfaceIndex.replaceAll(
+                interfaceInfoList.stream().collect(Collectors.toMap(InterfaceInfo::getId, Function.identity())),
+                interfaceInfoList.stream().collect(Collectors.toMap(InterfaceInfo::getId, CatalogSearchManager::tokenize)));
+        List<ProductInfo> productInfoList = productInfoMapper.selectList(new QueryWrapper<ProductInfo>()
+                .select("id", "name", "description", "status"));
+        productIndex.replaceAll(
+                productInfoList.stream().collect(Collectors.toMap(ProductInfo::getId, Function.identity())),
+                productInfoList.stream().collect(Collectors.toMap(ProductInfo::getId, CatalogSearchManager::tokenize)));
+    }
+
+    /**
+     * 接口新增、修改、删除后调用，事务提交后重新加载该接口
+     *
+     * @param id 接口id
+     */
+    public void refreshInterface(long id) {
+        afterCommit(() -> {
+            InterfaceInfo interfaceInfo = interfaceInfoMapper.selectById(id);
+            if (interfaceInfo == null) {
+                interfaceIndex.remove(id);
+            } else {
+                interfaceIndex.put(id, interfaceInfo, tokenize(interfaceInfo));
+            }
+        });
+    }
+
+    /**
+     * 产品新增、修改、删除后调用，事务提交后重新加载该产品
+     *
+     * @param id 产品id
+     */
+    public void refreshProduct(long id) {
+        afterCommit(() -> {
+            ProductInfo productInfo = productInfoMapper.selectById(id);
+            if (productInfo == null) {
+                productIndex.remove(id);
+            } else {
+                productIndex.put(id, productInfo, tokenize(productInfo));
+            }
+        });
+    }
+
+    /**
+     * 搜索接口
+     *
+     * @param searchText 搜索词
+     * @param onlineOnly 是否只返回已上线的
+     * @param current    当前页
+     * @param size       每页条数
+     * @return {@link Page}<{@link InterfaceInfo}>
+     */
+    public Page<InterfaceInfo> searchInterface(String searchText, boolean onlineOnly, long current, long size) {
+        Predicate<InterfaceInfo> filter = onlineOnly ? interfaceInfo -> Objects.equals(interfaceInfo.getStatus(), InterfaceStatusEnum.ONLINE.getValue()) : null;
+        List<Long> ids = interfaceIndex.search(SearchTokenizer.tokenizeForQuery(searchText), filter);
+        if (filter != null) {
+            ids = refilter(ids, hitIds -> interfaceInfoMapper.selectList(new QueryWrapper<InterfaceInfo>().select("id", "status").in("id", hitIds)),
+                    InterfaceInfo::getId, filter);
+        }
+        return toPage(ids, current, size, interfaceInfoMapper::selectBatchIds, InterfaceInfo::getId);
+    }
+
+    /**
+     * 搜索产品
+     *
+     * @param searchText 搜索词
+     * @param onlineOnly 是否只返回已上线的
+     * @param current    当前页
+     * @param size       每页条数
+     * @return {@link Page}<{@link ProductInfo}>
+     */
+    public Page<ProductInfo> searchProduct(String searchText, boolean onlineOnly, long current, long size) {
+        Predicate<ProductInfo> filter = onlineOnly ? productInfo -> Objects.equals(productInfo.getStatus(), ProductInfoStatusEnum.ONLINE.getValue()) : null;
+        List<Long> ids = productIndex.search(SearchTokenizer.tokenizeForQuery(searchText), filter);
+        if (filter != null) {
+            ids = refilter(ids, hitIds -> productInfoMapper.selectList(new QueryWrapper<ProductInfo>().select("id", "status").in("id", hitIds)),
+                    ProductInfo::getId, filter);
+        }
+        return toPage(ids, current, size, productInfoMapper::selectBatchIds, ProductInfo::getId);
+    }
+
+    /**
+     * 索引中的状态可能落后，按数据库当前状态重新过滤命中结果，总数按过滤后计算
+     *
+     * @param ids      按得分排序的命中id
+     * @param loader   查询命中行的当前状态，已被删除的不会查出
+     * @param idGetter id
+     * @param filter   过滤条件
+     * @return {@link List}<{@link Long}> 仍然满足条件的id，保持得分顺序
+     */
+    private static <T> List<Long> refilter(List<Long> ids, Function<Collection<Long>, List<T>> loader, Function<T, Long> idGetter, Predicate<T> filter) {
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        Set<Long> matchedIds = loader.apply(ids).stream().filter(filter).map(idGetter).collect(Collectors.toSet());
+        return ids.stream().filter(matchedIds::contains).collect(Collectors.toList());
+    }
+
+    private static <T> Page<T> toPage(List<Long> ids, long current, long size, Function<Collection<Long>, List<T>> loader, Function<T, Long> idGetter) {
+        Page<T> page = new Page<>(current, size, ids.size());
+        long from = (current - 1) * size;
+        if (from >= ids.size()) {
+            page.setRecords(Collections.emptyList());
+            return page;
+        }
+        List<Long> pageIds = ids.subList((int) from, (int) Math.min(from + size, ids.size()));
+        Map<Long, T> rowMap = loader.apply(pageIds).stream().collect(Collectors.toMap(idGetter, Function.identity()));
+        // 按得分顺序返回，回表时已被删除的跳过
+        page.setRecords(pageIds.stream().map(rowMap::get).filter(Objects::nonNull).collect(Collectors.toList()));
+        return page;
+    }
+
+    private static List<String> tokenize(InterfaceInfo interfaceInfo) {
+        List<String> tokens = weightedName(interfaceInfo.getName());
+        tokens.addAll(SearchTokenizer.tokenizeForIndex(interfaceInfo.getDescription()));
+        tokens.addAll(SearchTokenizer.tokenizeForIndex(interfaceInfo.getUrl()));
+        return tokens;
+    }
+
+    private static List<String> tokenize(ProductInfo productInfo) {
+        List<String> tokens = weightedName(productInfo.getName());
+        tokens.addAll(SearchTokenizer.tokenizeForIndex(productInfo.getDescription()));
+        return tokens;
+    }
+
+    private static List<String> weightedName(String name) {
+        List<String> nameTokens = SearchTokenizer.tokenizeForIndex(name);
+        List<String> tokens = new ArrayList<>(nameTokens.size() * NAME_WEIGHT);
+        for (int i = 0; i < NAME_WEIGHT; i++) {
+            tokens.addAll(nameTokens);
+        }
+        return tokens;
+    }
+
+    private static void afterCommit(Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runnable.run();
+                }
+            });
+        } else {
+            runnable.run();
+        }
+    }
+}
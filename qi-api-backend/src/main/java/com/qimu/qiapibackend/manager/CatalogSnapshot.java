@@ -0,0 +1,133 @@
+package com.qimu.qiapibackend.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/09 10:05:31
+ * @Version: 1.0
+ * @Description: 带版本号的本机数据快照
+ * <p>
+ * 数据修改时事务提交后递增 Redis 中的版本号；读取时最多每秒比对一次版本，版本变化或超过最长时间才重新加载。
+ * 每次加载生成新的代号（版本号-加载时间），可直接用作 ETag。
+ */
+@Slf4j
+public class CatalogSnapshot<T> {
+    private static final long VERSION_CHECK_MILLIS = 1000L;
+    private final String versionKey;
+    private final long maxAgeMillis;
+    private final Supplier<List<T>> loader;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private volatile Data<T> data;
+    private volatile long versionCheckedAt;
+
+    public CatalogSnapshot(String versionKey, long maxAgeMillis, Supplier<List<T>> loader, StringRedisTemplate stringRedisTemplate) {
+        this.versionKey = versionKey;
+        this.maxAgeMillis = maxAgeMillis;
+        this.loader = loader;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 获取当前快照
+     *
+     * @return {@link Data}<{@link T}>
+     */
+    public Data<T> current() {
+        Data<T> current = data;
+        if (isFresh(current, System.currentTimeMillis())) {
+            return current;
+        }
+        synchronized (this) {
+            current = data;
+            long now = System.currentTimeMillis();
+            if (isFresh(current, now)) {
+                return current;
+            }
+            long version = readVersion();
+            versionCheckedAt = now;
+            // Redis 不可用时（version < 0）在最长时间内继续使用旧快照
+            if (current != null && now - current.loadedAt < maxAgeMillis && (version < 0 || version == current.version)) {
+                return current;
+            }
+            data = new Data<>(version, now, Collections.unmodifiableList(loader.get()));
+            return data;
+        }
+    }
+
+    /**
+     * 数据有修改时调用，事务提交后递增版本号，所有节点在一秒内重新加载
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpVersion();
+                }
+            });
+        } else {
+            bumpVersion();
+        }
+    }
+
+    private void bumpVersion() {
+        data = null;
+        try {
+            stringRedisTemplate.opsForValue().increment(versionKey);
+        } catch (Exception e) {
+            log.warn("递增快照版本号 {} 失败，其他节点最迟 {} 秒后刷新：{}", versionKey, maxAgeMillis / 1000, e.getMessage());
+        }
+    }
+
+    private boolean isFresh(Data<T> current, long now) {
+        return current != null && now - current.loadedAt < maxAgeMillis && now - versionCheckedAt < VERSION_CHECK_MILLIS;
+    }
+
+    private long readVersion() {
+        try {
+            String version = stringRedisTemplate.opsForValue().get(versionKey);
+            return version == null ? 0 : Long.parseLong(version);
+        } catch (Exception e) {
+            log.warn("读取快照版本号 {} 失败：{}", versionKey, e.getMessage());
+            return -1;
+        }
+    }
+
+    public static class Data<T> {
+        private final long version;
+        private final long loadedAt;
+        private final List<T> items;
+
+        private Data(long version, long loadedAt, List<T> items) {
+            this.version = version;
+            this.loadedAt = loadedAt;
+            this.items = items;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+
+        /**
+         * 快照代号，每次重新加载都会变化
+         *
+         * @return {@link String}
+         */
+        public String getGeneration() {
+            return version + "-" + Long.toString(loadedAt, 36);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.qimu.qiapibackend.manager;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.mapper.InterfaceInfoMapper;
+import com.qimu.qiapibackend.mapper.ProductInfoMapper;
+import com.qimu.qiapibackend.model.dto.interfaceinfo.InterfaceInfoQueryRequest;
+import com.qimu.qiapibackend.model.dto.productinfo.ProductInfoQueryRequest;
+import com.qimu.qiapibackend.model.entity.ProductInfo;
+import com.qimu.qiapibackend.model.enums.InterfaceStatusEnum;
+import com.qimu.qiapibackend.model.enums.ProductInfoStatusEnum;
+import com.qimu.qiapicommon.model.entity.InterfaceInfo;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.qimu.qiapibackend.constant.CommonConstant.SORT_ORDER_ASC;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/08 09:40:12
+ * @Version: 1.0
+ * @Description: 已上线接口、产品目录快照
+ * <p>
+ * 非管理员浏览目录时只能看到已上线的数据，这部分数据量小、读多写少：本机各缓存一份快照，
+ * 筛选、排序、分页都在内存中完成，只在版本变化或快照超过最长时间（调用次数会变）时按 (status, isDelete) 索引重新加载。
+ */
+@Component
+public class CatalogSnapshotManager {
+    private static final String INTERFACE_VERSION_KEY = "api:interface:catalog:version";
+    private static final String PRODUCT_VERSION_KEY = "api:product:catalog:version";
+    private static final long MAX_AGE_MILLIS = 60 * 1000L;
+    private static final Map<String, Comparator<InterfaceInfo>> INTERFACE_SORT_COMPARATORS = new HashMap<>();
+
+    static {
+        INTERFACE_SORT_COMPARATORS.put("id", Comparator.comparing(InterfaceInfo::getId));
+        INTERFACE_SORT_COMPARATORS.put("name", Comparator.comparing(InterfaceInfo::getName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        INTERFACE_SORT_COMPARATORS.put("totalInvokes", Comparator.comparing(InterfaceInfo::getTotalInvokes, Comparator.nullsFirst(Comparator.naturalOrder())));
+        INTERFACE_SORT_COMPARATORS.put("reduceScore", Comparator.comparing(InterfaceInfo::getReduceScore, Comparator.nullsFirst(Comparator.naturalOrder())));
+        INTERFACE_SORT_COMPARATORS.put("createTime", Comparator.comparing(InterfaceInfo::getCreateTime, Comparator.nullsFirst(Comparator.naturalOrder())));
+        INTERFACE_SORT_COMPARATORS.put("updateTime", Comparator.comparing(InterfaceInfo::getUpdateTime, Comparator.nullsFirst(Comparator.naturalOrder())));
+    }
+
+    @Resource
+    private InterfaceInfoMapper interfaceInfoMapper;
+    @Resource
+    private ProductInfoMapper productInfoMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private CatalogSnapshot<InterfaceInfo> interfaceSnapshot;
+    private CatalogSnapshot<ProductInfo> productSnapshot;
+
+    @PostConstruct
+    public void init() {
+        interfaceSnapshot = new CatalogSnapshot<>(INTERFACE_VERSION_KEY, MAX_AGE_MILLIS, () -> interfaceInfoMapper.selectList(
+                new QueryWrapper<InterfaceInfo>().eq("status", InterfaceStatusEnum.ONLINE.getValue()).orderByAsc("id")), stringRedisTemplate);
+        // 与分页接口一致按金额升序
+        productSnapshot = new CatalogSnapshot<>(PRODUCT_VERSION_KEY, MAX_AGE_MILLIS, () -> productInfoMapper.selectList(
+                new QueryWrapper<ProductInfo>().eq("status", ProductInfoStatusEnum.ONLINE.getValue()).orderByAsc("total", "id")), stringRedisTemplate);
+    }
+
+    public CatalogSnapshot.Data<InterfaceInfo> currentInterfaces() {
+        return interfaceSnapshot.current();
+    }
+
+    public CatalogSnapshot.Data<ProductInfo> currentProducts() {
+        return productSnapshot.current();
+    }
+
+    /**
+     * 接口有修改时调用
+     */
+    public void invalidateInterfaces() {
+        interfaceSnapshot.invalidate();
+    }
+
+    /**
+     * 产品有修改时调用
+     */
+    public void invalidateProducts() {
+        productSnapshot.invalidate();
+    }
+
+    /**
+     * 分页查询已上线接口，筛选条件与数据库查询一致
+     *
+     * @param snapshot     接口快照
+     * @param queryRequest 查询请求
+     * @return {@link Page}<{@link InterfaceInfo}> 记录为快照的副本，可以修改
+     */
+    public Page<InterfaceInfo> pageInterfaces(CatalogSnapshot.Data<InterfaceInfo> snapshot, InterfaceInfoQueryRequest queryRequest) {
+        String sortField = queryRequest.getSortField();
+        Comparator<InterfaceInfo> comparator = null;
+        if (StringUtils.isNotBlank(sortField)) {
+            comparator = INTERFACE_SORT_COMPARATORS.get(sortField);
+            if (comparator == null) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的排序字段");
+            }
+            if (!SORT_ORDER_ASC.equals(queryRequest.getSortOrder())) {
+                comparator = comparator.reversed();
+            }
+        }
+        Integer status = queryRequest.getStatus();
+        boolean statusMatched = status == null || status == InterfaceStatusEnum.ONLINE.getValue();
+        return toPage(snapshot.getItems(), queryRequest.getCurrent(), queryRequest.getPageSize(), comparator, InterfaceInfo::new,
+                interfaceInfo -> statusMatched
+                        && containsIgnoreCase(interfaceInfo.getName(), queryRequest.getName())
+                        && containsIgnoreCase(interfaceInfo.getDescription(), queryRequest.getDescription())
+                        && containsIgnoreCase(interfaceInfo.getUrl(), queryRequest.getUrl())
+                        && containsIgnoreCase(interfaceInfo.getReturnFormat(), queryRequest.getReturnFormat())
+                        && (StringUtils.isBlank(queryRequest.getMethod()) || queryRequest.getMethod().equalsIgnoreCase(interfaceInfo.getMethod()))
+                        && (queryRequest.getReduceScore() == null || queryRequest.getReduceScore().equals(interfaceInfo.getReduceScore())));
+    }
+
+    /**
+     * 分页查询已上线产品，筛选条件与数据库查询一致
+     *
+     * @param snapshot     产品快照
+     * @param queryRequest 查询请求
+     * @return {@link Page}<{@link ProductInfo}> 记录为快照的副本，可以修改
+     */
+    public Page<ProductInfo> pageProducts(CatalogSnapshot.Data<ProductInfo> snapshot, ProductInfoQueryRequest queryRequest) {
+        return toPage(snapshot.getItems(), queryRequest.getCurrent(), queryRequest.getPageSize(), null, ProductInfo::new,
+                productInfo -> containsIgnoreCase(productInfo.getName(), queryRequest.getName())
+                        && containsIgnoreCase(productInfo.getDescription(), queryRequest.getDescription())
+                        && (StringUtils.isBlank(queryRequest.getProductType()) || queryRequest.getProductType().equalsIgnoreCase(productInfo.getProductType()))
+                        && (queryRequest.getAddPoints() == null || queryRequest.getAddPoints().equals(productInfo.getAddPoints()))
+                        && (queryRequest.getTotal() == null || queryRequest.getTotal().equals(productInfo.getTotal())));
+    }
+
+    /**
+     * 从接口快照中查找，不在快照中（未上线）返回 null
+     *
+     * @param snapshot 接口快照
+     * @param id       接口id
+     * @return {@link InterfaceInfo} 副本
+     */
+    public InterfaceInfo findInterface(CatalogSnapshot.Data<InterfaceInfo> snapshot, long id) {
+        for (InterfaceInfo interfaceInfo : snapshot.getItems()) {
+            if (interfaceInfo.getId() == id) {
+                InterfaceInfo copy = new InterfaceInfo();
+                BeanUtils.copyProperties(interfaceInfo, copy);
+                return copy;
+            }
+        }
+        return null;
+    }
+
+    private static <T> Page<T> toPage(List<T> items, long current, long size, Comparator<T> comparator, Supplier<T> copyFactory, Predicate<T> filter) {
+        if (current <= 0 || size <= 0) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        List<T> matched = items.stream().filter(filter).collect(Collectors.toList());
+        if (comparator != null) {
+            matched.sort(comparator);
+        }
+        Page<T> page = new Page<>(current, size, matched.size());
+        long from = (current - 1) * size;
+        if (from >= matched.size()) {
+            page.setRecords(Collections.emptyList());
+            return page;
+        }
+        page.setRecords(matched.subList((int) from, (int) Math.min(from + size, matched.size())).stream().map(item -> {
+            T copy = copyFactory.get();
+            BeanUtils.copyProperties(item, copy);
+            return copy;
+        }).collect(Collectors.toList()));
+        return page;
+    }
+
+    private static boolean containsIgnoreCase(String value, String keyword) {
+        return StringUtils.isBlank(keyword) || StringUtils.containsIgnoreCase(value, keyword);
+    }
+}
@@ -0,0 +1,70 @@
+package com.qimu.qiapibackend.manager;
+
+import com.qimu.qiapicommon.model.emums.ChangeEntityTypeEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+
+import static com.qimu.qiapicommon.model.dto.ChangeEvent.*;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/10 09:42:13
+ * @Version: 1.0
+ * @Description: 变更事件发布，网关订阅后增量更新本地缓存
+ * <p>
+ * 在事务提交后发布，避免网关回源时读到未提交的数据；发布失败只记录日志，由网关的定时全量刷新兜底。
+ */
+@Slf4j
+@Component
+public class ChangeEventPublisher {
+    /**
+     * 事件流保留的大致条数，网关只从最新位置开始消费，不需要保留太多
+     */
+    private static final int STREAM_MAX_LEN = 10000;
+    /**
+     * 版本号和写入在同一脚本中完成，保证流中的版本号按写入顺序连续递增
+     */
+    private static final DefaultRedisScript<Long> PUBLISH_SCRIPT = new DefaultRedisScript<>(
+            "local version = redis.call('incr', KEYS[2]) " +
+                    "redis.call('xadd', KEYS[1], 'MAXLEN', '~', ARGV[3], '*', " +
+                    "'" + FIELD_ENTITY_TYPE + "', ARGV[1], '" + FIELD_ENTITY_ID + "', ARGV[2], '" + FIELD_VERSION + "', version) " +
+                    "return version",
+            Long.class);
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 发布变更事件，有事务时在提交后发布
+     *
+     * @param entityType 实体类型
+     * @param entityId   实体id
+     */
+    public void publish(ChangeEntityTypeEnum entityType, long entityId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doPublish(entityType, entityId);
+                }
+            });
+        } else {
+            doPublish(entityType, entityId);
+        }
+    }
+
+    private void doPublish(ChangeEntityTypeEnum entityType, long entityId) {
+        try {
+            stringRedisTemplate.execute(PUBLISH_SCRIPT, Arrays.asList(STREAM_KEY, VERSION_KEY),
+                    entityType.getValue(), String.valueOf(entityId), String.valueOf(STREAM_MAX_LEN));
+        } catch (Exception e) {
+            log.warn("发布变更事件失败 {}:{}：{}", entityType.getValue(), entityId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.qimu.qiapibackend.manager;
+
+import com.qimu.qiapibackend.config.EmailTemplateConfig;
+import com.qimu.qiapibackend.utils.EmailTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.qimu.qiapibackend.constant.EmailConstant.*;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/31 10:24:09
+ * @Version: 1.0
+ * @Description: 邮件模板注册表
+ * <p>
+ * 启动时加载并编译全部模板；配置了模板目录时定时检查文件修改时间，变化后重新编译替换，编译失败保留旧模板。
+ */
+@Slf4j
+@Component
+public class EmailTemplateRegistry {
+    private static final String[] TEMPLATE_NAMES = {EMAIL_HTML_CONTENT_PATH, EMAIL_HTML_PAY_SUCCESS_PATH};
+    @Resource
+    private EmailTemplateConfig emailTemplateConfig;
+
+    private final Map<String, EmailTemplate> templates = new ConcurrentHashMap<>();
+    /**
+     * 模板目录中文件的修改时间，0 表示文件不存在
+     */
+    private final Map<String, Long> lastModified = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (String name : TEMPLATE_NAMES) {
+            File file = getOverrideFile(name);
+            long modified = file == null ? 0 : file.lastModified();
+            templates.put(name, EmailTemplate.compile(load(name, file)));
+            lastModified.put(name, modified);
+        }
+    }
+
+    /**
+     * 生成验证码邮件内容
+     *
+     * @param captcha 验证码
+     * @return {@link String}
+     */
+    public String buildEmailContent(String captcha) {
+        return templates.get(EMAIL_HTML_CONTENT_PATH).render(captcha, EMAIL_TITLE, EMAIL_TITLE_ENGLISH, PLATFORM_RESPONSIBLE_PERSON, PLATFORM_ADDRESS);
+    }
+
+    /**
+     * 生成支付成功邮件内容
+     *
+     * @param orderName  订单名称
+     * @param orderTotal 订单总额
+     * @return {@link String}
+     */
+    public String buildPaySuccessEmailContent(String orderName, String orderTotal) {
+        return templates.get(EMAIL_HTML_PAY_SUCCESS_PATH).render(orderName, orderTotal, PLATFORM_RESPONSIBLE_PERSON, PATH_ADDRESS, EMAIL_TITLE);
+    }
+
+    @Scheduled(initialDelay = 5000, fixedDelay = 5000)
+    public void reloadChanged() {
+        if (StringUtils.isBlank(emailTemplateConfig.getDir())) {
+            return;
+        }
+        for (String name : TEMPLATE_NAMES) {
+            File file = getOverrideFile(name);
+            long modified = file == null ? 0 : file.lastModified();
+            if (modified == lastModified.get(name)) {
+                continue;
+            }
+            // 无论成功与否都记下修改时间，模板有误时不会每轮重复报错
+            lastModified.put(name, modified);
+            try {
+                templates.put(name, EmailTemplate.compile(load(name, file)));
+                log.info("邮件模板 {} 已重新加载", name);
+            } catch (Exception e) {
+                log.error("邮件模板 {} 重新加载失败，继续使用旧模板：{}", name, e.getMessage());
+            }
+        }
+    }
+
+    private File getOverrideFile(String name) {
+        if (StringUtils.isBlank(emailTemplateConfig.getDir())) {
+            return null;
+        }
+        File file = new File(emailTemplateConfig.getDir(), name);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * 读取模板，与原先逐行读取拼接一致，去掉换行
+     */
+    private static String load(String name, File file) {
+        try (InputStream inputStream = file == null ? new ClassPathResource(name).getInputStream() : Files.newInputStream(file.toPath());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.joining());
+        } catch (IOException e) {
+            throw new IllegalStateException("读取邮件模板失败：" + name, e);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.http.HttpUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.qimu.qiapibackend.config.InterfaceHealthConfig;
+import com.qimu.qiapibackend.model.entity.User;
+import com.qimu.qiapibackend.model.enums.InterfaceStatusEnum;
+import com.qimu.qiapibackend.model.enums.UserAccountStatusEnum;
+import com.qimu.qiapibackend.model.vo.InterfaceHealthVo;
+import com.qimu.qiapibackend.service.InterfaceInfoService;
+import com.qimu.qiapibackend.service.UserService;
+import com.qimu.qiapibackend.service.WalletLedgerService;
+import com.qimu.qiapibackend.utils.ProbeWindow;
+import com.qimu.qiapibackend.utils.RedissonLockUtil;
+import com.qimu.qiapicommon.model.entity.InterfaceInfo;
+import icu.qimuu.qiapisdk.client.QiApiClient;
+import icu.qimuu.qiapisdk.model.request.CurrencyRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/12 10:15:39
+ * @Version: 1.0
+ * @Description: 接口健康探测
+ * <p>
+ * 定时用请求示例经网关探测所有已上线接口，并发数有上限；每个接口最近 windowSize 次结果存放在 Redis 定长列表中，
+ * 由任意节点持锁探测，结果和汇总都在 Redis 中，各节点查询一致。超出失败率或 p95 耗时上限时可自动下线。
+ * <p>
+ * 只统计上游接口的错误：探测账号不存在、被封禁、密钥不一致或余额不足时整轮跳过，连不上网关的探测不计入样本；
+ * 一轮中探测到至少两个接口且全部失败时更可能是网关或网络的问题，这一轮的结果不计入，也不自动下线；
+ * 只探测到一个接口时无法区分，它的失败照常计入，避免唯一上线的接口故障时永远不会被发现。
+ */
+@Slf4j
+@Component
+public class InterfaceHealthManager {
+    private static final String SAMPLES_KEY = "api:interface:health:samples:";
+    private static final String HEALTH_KEY = "api:interface:health";
+    private static final int MAX_ERROR_LENGTH = 200;
+    /**
+     * 整轮全部失败时判定为网关故障所需的最少探测接口数
+     */
+    private static final int MIN_GATEWAY_FAILURE_SAMPLES = 2;
+    @Resource
+    private InterfaceHealthConfig interfaceHealthConfig;
+    @Resource
+    private CatalogSnapshotManager catalogSnapshotManager;
+    @Resource
+    private InterfaceInfoService interfaceInfoService;
+    @Resource
+    private UserService userService;
+    @Resource
+    private WalletLedgerService walletLedgerService;
+    @Resource
+    private InvokeClientManager invokeClientManager;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedissonLockUtil redissonLockUtil;
+
+    private QiApiClient probeClient;
+    private ExecutorService probePool;
+
+    @PostConstruct
+    public void init() {
+        if (!interfaceHealthConfig.getEnabled()) {
+            return;
+        }
+        if (StringUtils.isAnyBlank(interfaceHealthConfig.getAccessKey(), interfaceHealthConfig.getSecretKey())) {
+            log.warn("未配置探测账号，接口健康探测不启用");
+            return;
+        }
+        probeClient = new QiApiClient(interfaceHealthConfig.getAccessKey(), interfaceHealthConfig.getSecretKey());
+        AtomicInteger threadIndex = new AtomicInteger();
+        probePool = Executors.newFixedThreadPool(interfaceHealthConfig.getParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "interface-health-probe-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 定时探测已上线接口，一轮最长不超过探测间隔
+     */
+    @Scheduled(initialDelay = 30 * 1000, fixedDelayString = "${qi.interface.health.interval-millis:60000}")
+    public void probeAll() {
+        if (probePool == null) {
+            return;
+        }
+        redissonLockUtil.redissonDistributedLocks("interfaceHealthProbe", () -> {
+            String skipReason = checkProbeAccount();
+            if (skipReason != null) {
+                log.warn("探测账号不可用，跳过本轮接口健康探测：{}", skipReason);
+                return;
+            }
+            List<Callable<ProbeResult>> tasks = new ArrayList<>();
+            for (InterfaceInfo interfaceInfo : catalogSnapshotManager.currentInterfaces().getItems()) {
+                tasks.add(() -> probe(interfaceInfo));
+            }
+            List<Future<ProbeResult>> futures;
+            try {
+                futures = probePool.invokeAll(tasks, interfaceHealthConfig.getIntervalMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            List<ProbeResult> results = new ArrayList<>(futures.size());
+            for (Future<ProbeResult> future : futures) {
+                if (future.isCancelled()) {
+                    continue;
+                }
+                try {
+                    ProbeResult result = future.get();
+                    // 连不上网关的探测不计入样本
+                    if (result != null) {
+                        results.add(result);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    log.warn("接口健康探测异常：{}", e.getCause().getMessage());
+                }
+            }
+            // 只有一个样本时无法判断是不是网关的问题，照常计入
+            if (results.size() >= MIN_GATEWAY_FAILURE_SAMPLES && results.stream().allMatch(result -> result.error != null)) {
+                log.warn("本轮 {} 个接口探测全部失败，疑似网关故障，不计入样本：{}", results.size(), results.get(0).error);
+                return;
+            }
+            results.forEach(this::record);
+        });
+    }
+
+    /**
+     * 检查探测账号，网关会拒绝的情况直接跳过，不算作接口失败
+     *
+     * @return {@link String} 不可用的原因，可用时为 null
+     */
+    private String checkProbeAccount() {
+        User probeUser = userService.getOne(new LambdaQueryWrapper<User>().eq(User::getAccessKey, interfaceHealthConfig.getAccessKey()));
+        if (probeUser == null) {
+            return "账号不存在";
+        }
+        if (probeUser.getStatus().equals(UserAccountStatusEnum.BAN.getValue())) {
+            return "账号已封禁";
+        }
+        if (!interfaceHealthConfig.getSecretKey().equals(probeUser.getSecretKey())) {
+            return "secretKey 与账号不一致";
+        }
+        if (walletLedgerService.getBalance(probeUser.getId()) <= 0) {
+            return "余额不足";
+        }
+        return null;
+    }
+
+    /**
+     * 探测一个接口
+     *
+     * @param interfaceInfo 接口信息
+     * @return {@link ProbeResult} 连不上网关时为 null
+     */
+    private ProbeResult probe(InterfaceInfo interfaceInfo) {
+        CurrencyRequest currencyRequest = new CurrencyRequest();
+        currencyRequest.setMethod(interfaceInfo.getMethod());
+        currencyRequest.setPath(interfaceInfo.getUrl());
+        currencyRequest.setRequestParams(toProbeParams(interfaceInfo.getRequestExample()));
+        long start = System.currentTimeMillis();
+        String error = null;
+        try {
+            // 与在线调试使用同样的单次请求超时，不依赖 hutool 全局配置
+            invokeClientManager.request(probeClient, currencyRequest);
+        } catch (Exception e) {
+            if (isGatewayUnreachable(e)) {
+                return null;
+            }
+            error = StringUtils.abbreviate(StringUtils.defaultString(e.getMessage(), e.getClass().getSimpleName()), MAX_ERROR_LENGTH);
+        }
+        return new ProbeResult(interfaceInfo, start, System.currentTimeMillis() - start, error);
+    }
+
+    /**
+     * 连接被拒绝或域名解析失败，说明网关本身不可达
+     */
+    private static boolean isGatewayUnreachable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private void record(ProbeResult result) {
+        InterfaceInfo interfaceInfo = result.interfaceInfo;
+        String error = result.error;
+        Long id = interfaceInfo.getId();
+        String samplesKey = SAMPLES_KEY + id;
+        stringRedisTemplate.opsForList().leftPush(samplesKey, ProbeWindow.encode(result.start, result.latency, error == null));
+        stringRedisTemplate.opsForList().trim(samplesKey, 0, interfaceHealthConfig.getWindowSize() - 1);
+        stringRedisTemplate.expire(samplesKey, interfaceHealthConfig.getIntervalMillis() * interfaceHealthConfig.getWindowSize() * 2, TimeUnit.MILLISECONDS);
+        ProbeWindow window = ProbeWindow.of(stringRedisTemplate.opsForList().range(samplesKey, 0, -1));
+
+        InterfaceHealthVo interfaceHealthVo = new InterfaceHealthVo();
+        interfaceHealthVo.setInterfaceInfoId(id);
+        interfaceHealthVo.setSamples(window.getSamples());
+        interfaceHealthVo.setErrorRate(window.getErrorRate());
+        interfaceHealthVo.setP50Latency(window.getP50Latency());
+        interfaceHealthVo.setP95Latency(window.getP95Latency());
+        interfaceHealthVo.setLastProbeTime(new Date(window.getLastProbeTime()));
+        interfaceHealthVo.setLastLatency(window.getLastLatency());
+        interfaceHealthVo.setLastSuccess(window.isLastSuccess());
+        if (error == null) {
+            // 保留最近一次失败原因，便于排查
+            InterfaceHealthVo previous = getHealth(id);
+            interfaceHealthVo.setLastError(previous == null ? null : previous.getLastError());
+        } else {
+            interfaceHealthVo.setLastError(error);
+        }
+        boolean violated = window.violates(interfaceHealthConfig.getMinSamples(), interfaceHealthConfig.getMaxErrorRate(), interfaceHealthConfig.getLatencySloMillis());
+        interfaceHealthVo.setHealthy(!violated);
+        stringRedisTemplate.opsForHash().put(HEALTH_KEY, String.valueOf(id), JSONUtil.toJsonStr(interfaceHealthVo));
+
+        if (violated && interfaceHealthConfig.getAutoOffline()) {
+            InterfaceInfo offlineInterfaceInfo = new InterfaceInfo();
+            offlineInterfaceInfo.setId(id);
+            offlineInterfaceInfo.setStatus(InterfaceStatusEnum.OFFLINE.getValue());
+            interfaceInfoService.updateById(offlineInterfaceInfo);
+            // 清空窗口，重新上线后按新的探测结果判断
+            stringRedisTemplate.delete(samplesKey);
+            log.warn("接口 {}({}) 超出 SLO 自动下线：失败率 {}，p95 {}ms，最近错误 {}", interfaceInfo.getName(), id,
+                    window.getErrorRate(), window.getP95Latency(), interfaceHealthVo.getLastError());
+        }
+    }
+
+    /**
+     * 一次探测的结果，整轮探测结束后再统一计入
+     */
+    private static class ProbeResult {
+        private final InterfaceInfo interfaceInfo;
+        private final long start;
+        private final long latency;
+        /**
+         * 失败原因，成功时为 null
+         */
+        private final String error;
+
+        private ProbeResult(InterfaceInfo interfaceInfo, long start, long latency, String error) {
+            this.interfaceInfo = interfaceInfo;
+            this.start = start;
+            this.latency = latency;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 请求示例可以是带查询参数的地址，也可以是 JSON 对象
+     */
+    private static Map<String, Object> toProbeParams(String requestExample) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        if (StringUtils.isBlank(requestExample)) {
+            return params;
+        }
+        String example = requestExample.trim();
+        if (JSONUtil.isTypeJSONObject(example)) {
+            params.putAll(JSONUtil.parseObj(example));
+        } else if (example.contains("?")) {
+            params.putAll(HttpUtil.decodeParamMap(example, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * 获取接口健康状况
+     *
+     * @param id 接口id
+     * @return {@link InterfaceHealthVo}，未探测过返回 null
+     */
+    public InterfaceHealthVo getHealth(long id) {
+        Object value = stringRedisTemplate.opsForHash().get(HEALTH_KEY, String.valueOf(id));
+        return value == null ? null : JSONUtil.toBean(value.toString(), InterfaceHealthVo.class);
+    }
+
+    /**
+     * 批量获取接口健康状况
+     *
+     * @param ids 接口id
+     * @return {@link List}<{@link InterfaceHealthVo}> 未探测过的接口不返回
+     */
+    public List<InterfaceHealthVo> listHealth(Collection<Long> ids) {
+        List<Object> fields = new ArrayList<>(ids.size());
+        ids.forEach(id -> fields.add(String.valueOf(id)));
+        List<InterfaceHealthVo> healthList = new ArrayList<>(ids.size());
+        for (Object value : stringRedisTemplate.opsForHash().multiGet(HEALTH_KEY, fields)) {
+            if (value != null) {
+                healthList.add(JSONUtil.toBean(value.toString(), InterfaceHealthVo.class));
+            }
+        }
+        return healthList;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (probePool != null) {
+            probePool.shutdownNow();
+            probePool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.http.GlobalInterceptor;
+import com.qimu.qiapibackend.common.BaseResponse;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.common.ResultUtils;
+import com.qimu.qiapibackend.config.InvokeClientConfig;
+import com.qimu.qiapibackend.exception.BusinessException;
+import icu.qimuu.qiapisdk.client.QiApiClient;
+import icu.qimuu.qiapisdk.model.request.CurrencyRequest;
+import icu.qimuu.qiapisdk.model.response.ResultResponse;
+import icu.qimuu.qiapisdk.service.ApiService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/11 09:52:40
+ * @Version: 1.0
+ * @Description: 在线调试接口调用
+ * <p>
+ * 客户端按 accessKey 复用；调用在有界线程池中执行，请求线程立即归还，调用期间不持有数据库连接，
+ * 线程和队列都满时直接拒绝，慢接口最多占满本线程池，不会拖垮 Tomcat 线程和连接池。
+ * <p>
+ * SDK 基于 hutool 发送请求，超时只对本线程池发出的请求生效，不修改 hutool 的全局超时；
+ * 底层 HttpURLConnection 由 JVM 按目标地址复用长连接，每个地址保持的空闲连接数需在 JVM 启动参数中用 -Dhttp.maxConnections 设置。
+ */
+@Slf4j
+@Component
+public class InvokeClientManager {
+    /**
+     * 异步结果比调用超时多等一会，优先返回 HTTP 层的超时信息
+     */
+    private static final long RESULT_TIMEOUT_GRACE_MILLIS = 1000L;
+    /**
+     * 当前线程发出的 hutool 请求使用的超时时间，未设置时保持 hutool 默认
+     */
+    private static final ThreadLocal<Integer> REQUEST_TIMEOUT = new ThreadLocal<>();
+    @Resource
+    private InvokeClientConfig invokeClientConfig;
+    @Resource
+    private ApiService apiService;
+
+    private LRUCache<String, QiApiClient> clientCache;
+    private ThreadPoolExecutor invokePool;
+
+    @PostConstruct
+    public void init() {
+        clientCache = CacheUtil.newLRUCache(invokeClientConfig.getClientCapacity());
+        // 请求建立连接前按当前线程设置连接和读取超时，其他线程发出的请求不受影响
+        GlobalInterceptor.INSTANCE.addRequestInterceptor(httpRequest -> {
+            Integer timeout = REQUEST_TIMEOUT.get();
+            if (timeout != null) {
+                httpRequest.timeout(timeout);
+            }
+        });
+        AtomicInteger threadIndex = new AtomicInteger();
+        invokePool = new ThreadPoolExecutor(invokeClientConfig.getWorkerThreads(), invokeClientConfig.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(invokeClientConfig.getQueueCapacity()), runnable -> {
+            Thread thread = new Thread(runnable, "api-invoke-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 异步调用接口
+     *
+     * @param accessKey       访问密钥
+     * @param secretKey       秘密密钥
+     * @param currencyRequest 请求
+     * @return {@link DeferredResult}<{@link BaseResponse}<{@link Object}>>
+     */
+    public DeferredResult<BaseResponse<Object>> invoke(String accessKey, String secretKey, CurrencyRequest currencyRequest) {
+        QiApiClient qiApiClient = getClient(accessKey, secretKey);
+        DeferredResult<BaseResponse<Object>> deferredResult = new DeferredResult<>(invokeClientConfig.getTimeoutMillis() + RESULT_TIMEOUT_GRACE_MILLIS);
+        Future<?> future;
+        try {
+            future = invokePool.submit(() -> {
+                try {
+                    ResultResponse response = request(qiApiClient, currencyRequest);
+                    deferredResult.setResult(ResultUtils.success(response.getData()));
+                } catch (Exception e) {
+                    deferredResult.setErrorResult(new BusinessException(ErrorCode.SYSTEM_ERROR, e.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new BusinessException(ErrorCode.TOO_MANY_REQUEST, "调用人数过多，请稍后再试");
+        }
+        deferredResult.onTimeout(() -> {
+            future.cancel(true);
+            deferredResult.setErrorResult(new BusinessException(ErrorCode.SYSTEM_ERROR, "接口调用超时"));
+        });
+        return deferredResult;
+    }
+
+    /**
+     * 在当前线程同步调用接口，连接和读取超时只作用于这一次请求
+     *
+     * @param qiApiClient     客户端
+     * @param currencyRequest 请求
+     * @return {@link ResultResponse}
+     * @throws Exception 调用失败或超时
+     */
+    public ResultResponse request(QiApiClient qiApiClient, CurrencyRequest currencyRequest) throws Exception {
+        REQUEST_TIMEOUT.set(invokeClientConfig.getTimeoutMillis().intValue());
+        try {
+            return apiService.request(qiApiClient, currencyRequest);
+        } finally {
+            REQUEST_TIMEOUT.remove();
+        }
+    }
+
+    private QiApiClient getClient(String accessKey, String secretKey) {
+        // 更换凭证时 accessKey 同时变化，旧客户端自然被淘汰
+        QiApiClient qiApiClient = clientCache.get(accessKey, false);
+        if (qiApiClient == null) {
+            qiApiClient = new QiApiClient(accessKey, secretKey);
+            clientCache.put(accessKey, qiApiClient);
+        }
+        return qiApiClient;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (invokePool != null) {
+            invokePool.shutdownNow();
+            invokePool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
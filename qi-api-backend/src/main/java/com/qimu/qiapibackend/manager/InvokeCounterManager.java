@@ -0,0 +1,265 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.core.util.IdUtil;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.qimu.qiapibackend.mapper.UserInterfaceInvokeMapper;
+import com.qimu.qiapibackend.service.InterfaceInfoService;
+import com.qimu.qiapibackend.utils.RedissonLockUtil;
+import com.qimu.qiapicommon.model.entity.InterfaceInfo;
+import com.qimu.qiapicommon.model.entity.UserInterfaceInvoke;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.qimu.qiapibackend.constant.InvokeConstant.*;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/23 10:20:51
+ * @Version: 1.0
+ * @Description: 接口调用次数异步回写
+ * <p>
+ * 本机用 LongAdder 分段累加，每秒汇总到 Redis Hash（HINCRBY），多节点在 Redis 合并；
+ * 持锁节点每隔几秒把 Redis 中的增量一次性写回 interface_info 和 user_interface_invoke。
+ * 每批增量有批次id，与增量在同一事务中登记，落库后清理 Redis 失败时下次跳过该批次，不会重复累加。
+ */
+@Slf4j
+@Component
+public class InvokeCounterManager {
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedissonLockUtil redissonLockUtil;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private InterfaceInfoService interfaceInfoService;
+    @Resource
+    private UserInterfaceInvokeMapper userInterfaceInvokeMapper;
+
+    /**
+     * 落库批次保留天数，远大于清理 Redis 失败后的重试间隔
+     */
+    private static final int FLUSH_BATCH_RETENTION_DAYS = 7;
+
+    private final Map<String, Counter> interfaceCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> userInterfaceCounters = new ConcurrentHashMap<>();
+
+    /**
+     * 记录调用次数，处于事务中时提交后才计数
+     *
+     * @param userId      用户id
+     * @param interfaceId 接口id
+     * @param count       次数
+     */
+    public void increment(Long userId, Long interfaceId, long count) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doIncrement(userId, interfaceId, count);
+                }
+            });
+        } else {
+            doIncrement(userId, interfaceId, count);
+        }
+    }
+
+    private void doIncrement(Long userId, Long interfaceId, long count) {
+        interfaceCounters.computeIfAbsent(String.valueOf(interfaceId), key -> new Counter()).adder.add(count);
+        userInterfaceCounters.computeIfAbsent(userId + "_" + interfaceId, key -> new Counter()).adder.add(count);
+    }
+
+    /**
+     * 本机增量汇总到 Redis
+     */
+    @Scheduled(fixedDelay = 1000)
+    public synchronized void pushToRedis() {
+        Map<String, Long> interfaceDeltas = collectDeltas(interfaceCounters);
+        Map<String, Long> userInterfaceDeltas = collectDeltas(userInterfaceCounters);
+        if (interfaceDeltas.isEmpty() && userInterfaceDeltas.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+                interfaceDeltas.forEach((field, delta) -> stringRedisConnection.hIncrBy(INVOKE_PENDING_INTERFACE_KEY, field, delta));
+                userInterfaceDeltas.forEach((field, delta) -> stringRedisConnection.hIncrBy(INVOKE_PENDING_USER_INTERFACE_KEY, field, delta));
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("调用次数汇总到 Redis 失败，稍后重试：{}", e.getMessage());
+            return;
+        }
+        markPushed(interfaceCounters, interfaceDeltas);
+        markPushed(userInterfaceCounters, userInterfaceDeltas);
+    }
+
+    /**
+     * Redis 增量写回数据库，多节点只有一个执行
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushToDatabase() {
+        redissonLockUtil.redissonDistributedLocks("invokeCounterFlush", () -> {
+            // 有处理中的增量时只重试这一批，不并入新增量，否则该批已落库时新增量会随它一起被跳过
+            boolean resuming = Boolean.TRUE.equals(stringRedisTemplate.hasKey(INVOKE_PENDING_INTERFACE_KEY + INVOKE_FLUSHING_SUFFIX))
+                    || Boolean.TRUE.equals(stringRedisTemplate.hasKey(INVOKE_PENDING_USER_INTERFACE_KEY + INVOKE_FLUSHING_SUFFIX));
+            // 先确定批次再改名，改名后宕机时下次沿用同一批次
+            String batchId = getFlushBatchId(resuming);
+            Map<String, Long> interfaceDeltas = takePending(INVOKE_PENDING_INTERFACE_KEY, resuming);
+            Map<String, Long> userInterfaceDeltas = takePending(INVOKE_PENDING_USER_INTERFACE_KEY, resuming);
+            if (interfaceDeltas.isEmpty() && userInterfaceDeltas.isEmpty()) {
+                return;
+            }
+            List<UserInterfaceInvoke> userInterfaceInvokeList = new ArrayList<>();
+            new TreeMap<>(userInterfaceDeltas).forEach((field, delta) -> {
+                String[] ids = field.split("_");
+                UserInterfaceInvoke userInterfaceInvoke = new UserInterfaceInvoke();
+                userInterfaceInvoke.setId(IdWorker.getId());
+                userInterfaceInvoke.setUserId(Long.valueOf(ids[0]));
+                userInterfaceInvoke.setInterfaceId(Long.valueOf(ids[1]));
+                userInterfaceInvoke.setTotalInvokes(delta);
+                userInterfaceInvokeList.add(userInterfaceInvoke);
+            });
+            transactionTemplate.executeWithoutResult(status -> {
+                if (userInterfaceInvokeMapper.insertFlushBatch(batchId) == 0) {
+                    // 上次已落库，只是没来得及清理 Redis
+                    log.warn("调用次数批次 {} 已落库，跳过", batchId);
+                    return;
+                }
+                if (!userInterfaceInvokeList.isEmpty()) {
+                    userInterfaceInvokeMapper.batchUpsertTotalInvokes(userInterfaceInvokeList);
+                }
+                new TreeMap<>(interfaceDeltas).forEach((field, delta) -> interfaceInfoService.updateTotalInvokes(Long.parseLong(field), delta));
+            });
+            // 落库成功后才删除，失败时下次继续处理；批次id 一起删除，保证下一批使用新的批次id
+            stringRedisTemplate.delete(Arrays.asList(INVOKE_PENDING_INTERFACE_KEY + INVOKE_FLUSHING_SUFFIX,
+                    INVOKE_PENDING_USER_INTERFACE_KEY + INVOKE_FLUSHING_SUFFIX, INVOKE_FLUSH_BATCH_KEY));
+        });
+    }
+
+    /**
+     * 清理过期的落库批次
+     */
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void cleanFlushBatches() {
+        redissonLockUtil.redissonDistributedLocks("invokeFlushBatchClean", () -> {
+            Date before = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(FLUSH_BATCH_RETENTION_DAYS));
+            userInterfaceInvokeMapper.deleteFlushBatchBefore(before);
+        });
+    }
+
+    /**
+     * 获取落库批次id：重试处理中的增量时沿用原批次，否则总是新建，新增量不会用到已落库的批次id
+     *
+     * @param resuming 是否有处理中的增量
+     */
+    private String getFlushBatchId(boolean resuming) {
+        if (!resuming) {
+            String batchId = IdUtil.fastSimpleUUID();
+            stringRedisTemplate.opsForValue().set(INVOKE_FLUSH_BATCH_KEY, batchId);
+            return batchId;
+        }
+        stringRedisTemplate.opsForValue().setIfAbsent(INVOKE_FLUSH_BATCH_KEY, IdUtil.fastSimpleUUID());
+        return stringRedisTemplate.opsForValue().get(INVOKE_FLUSH_BATCH_KEY);
+    }
+
+    /**
+     * 合并未落库的调用次数，保证页面展示准确
+     *
+     * @param interfaceInfoList 接口信息
+     */
+    public void mergePendingTotalInvokes(List<InterfaceInfo> interfaceInfoList) {
+        if (interfaceInfoList == null || interfaceInfoList.isEmpty()) {
+            return;
+        }
+        List<Object> fields = new ArrayList<>();
+        for (InterfaceInfo interfaceInfo : interfaceInfoList) {
+            fields.add(String.valueOf(interfaceInfo.getId()));
+        }
+        List<Object> pending;
+        List<Object> flushing;
+        try {
+            pending = stringRedisTemplate.opsForHash().multiGet(INVOKE_PENDING_INTERFACE_KEY, fields);
+            flushing = stringRedisTemplate.opsForHash().multiGet(INVOKE_PENDING_INTERFACE_KEY + INVOKE_FLUSHING_SUFFIX, fields);
+        } catch (Exception e) {
+            log.warn("读取未落库调用次数失败：{}", e.getMessage());
+            return;
+        }
+        for (int i = 0; i < interfaceInfoList.size(); i++) {
+            InterfaceInfo interfaceInfo = interfaceInfoList.get(i);
+            Counter counter = interfaceCounters.get(String.valueOf(interfaceInfo.getId()));
+            long total = interfaceInfo.getTotalInvokes() == null ? 0 : interfaceInfo.getTotalInvokes();
+            total += parseLong(pending.get(i)) + parseLong(flushing.get(i));
+            if (counter != null) {
+                total += counter.adder.sum() - counter.pushed;
+            }
+            interfaceInfo.setTotalInvokes(total);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pushToRedis();
+    }
+
+    /**
+     * 取出待落库增量：上次未完成的优先处理，否则把当前增量原子地改名为处理中
+     *
+     * @param key      增量 key
+     * @param resuming 是否在重试处理中的批次，是则不取新增量
+     */
+    private Map<String, Long> takePending(String key, boolean resuming) {
+        String flushingKey = key + INVOKE_FLUSHING_SUFFIX;
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(flushingKey))) {
+            if (resuming || !Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+                return Collections.emptyMap();
+            }
+            stringRedisTemplate.rename(key, flushingKey);
+        }
+        Map<String, Long> deltas = new HashMap<>();
+        stringRedisTemplate.<String, String>opsForHash().entries(flushingKey)
+                .forEach((field, delta) -> deltas.put(field, Long.parseLong(delta)));
+        return deltas;
+    }
+
+    private static Map<String, Long> collectDeltas(Map<String, Counter> counters) {
+        Map<String, Long> deltas = new HashMap<>();
+        counters.forEach((field, counter) -> {
+            long delta = counter.adder.sum() - counter.pushed;
+            if (delta != 0) {
+                deltas.put(field, delta);
+            }
+        });
+        return deltas;
+    }
+
+    private static void markPushed(Map<String, Counter> counters, Map<String, Long> deltas) {
+        deltas.forEach((field, delta) -> counters.get(field).pushed += delta);
+    }
+
+    private static long parseLong(Object value) {
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    /**
+     * 累加器，pushed 只由汇总线程修改
+     */
+    private static class Counter {
+        private final LongAdder adder = new LongAdder();
+        private volatile long pushed;
+    }
+}
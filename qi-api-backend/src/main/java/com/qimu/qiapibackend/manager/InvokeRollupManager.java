@@ -0,0 +1,234 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.core.collection.CollUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.config.InvokeLogConfig;
+import com.qimu.qiapibackend.mapper.InterfaceInvokeRollupMapper;
+import com.qimu.qiapibackend.model.entity.InterfaceInvokeRollup;
+import com.qimu.qiapibackend.model.enums.RollupGranularityEnum;
+import com.qimu.qiapibackend.utils.LatencySketch;
+import com.qimu.qiapibackend.utils.RedissonLockUtil;
+import com.qimu.qiapicommon.model.entity.InterfaceInvokeLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 10:35:18
+ * @Version: 1.0
+ * @Description: 接口调用统计增量汇总
+ * <p>
+ * 调用日志入库时同时按 (粒度, 时间桶, 接口, 用户) 在内存中累加，用户维度之外再记一份 userId = 0 的接口总量；
+ * 每隔几秒持锁把本机增量与库中已有统计合并后写回，统计查询只读对应时间桶的行。
+ */
+@Slf4j
+@Component
+public class InvokeRollupManager {
+    /**
+     * 接口总量使用的用户id
+     */
+    public static final long ALL_USER_ID = 0L;
+    private static final String KEY_SEPARATOR = "|";
+    private static final int FLUSH_BATCH_SIZE = 500;
+    private static final int DELETE_BATCH_SIZE = 1000;
+    @Resource
+    private InterfaceInvokeRollupMapper interfaceInvokeRollupMapper;
+    @Resource
+    private RedissonLockUtil redissonLockUtil;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private InvokeLogConfig invokeLogConfig;
+
+    /**
+     * 累加时持读锁，切换时持写锁，保证切换后不会再有线程写入旧的累加器
+     */
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile Map<String, Accumulator> accumulators = new ConcurrentHashMap<>();
+
+    /**
+     * 把一批调用日志计入统计
+     *
+     * @param invokeLogList 调用日志
+     */
+    public void record(List<InterfaceInvokeLog> invokeLogList) {
+        swapLock.readLock().lock();
+        try {
+            for (InterfaceInvokeLog invokeLog : invokeLogList) {
+                boolean error = invokeLog.getStatusCode() == null || invokeLog.getStatusCode() >= 400;
+                long bytes = invokeLog.getResponseBytes() == null ? 0 : invokeLog.getResponseBytes();
+                long latency = invokeLog.getLatency() == null ? 0 : invokeLog.getLatency();
+                for (RollupGranularityEnum granularity : RollupGranularityEnum.values()) {
+                    long bucketTime = granularity.truncate(invokeLog.getCreateTime()).getTime();
+                    accumulate(toKey(granularity, bucketTime, invokeLog.getInterfaceId(), invokeLog.getUserId()), error, bytes, latency);
+                    accumulate(toKey(granularity, bucketTime, invokeLog.getInterfaceId(), ALL_USER_ID), error, bytes, latency);
+                }
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 本机增量写回数据库，写入失败时放回内存下次重试
+     */
+    @Scheduled(fixedDelay = 5000)
+    public synchronized void flush() {
+        Map<String, Accumulator> snapshot;
+        swapLock.writeLock().lock();
+        try {
+            snapshot = accumulators;
+            if (snapshot.isEmpty()) {
+                return;
+            }
+            accumulators = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        try {
+            // 多节点合并同一行需要读改写，持锁串行执行
+            redissonLockUtil.redissonDistributedLocks(3, TimeUnit.SECONDS, "invokeRollupFlush",
+                    () -> transactionTemplate.executeWithoutResult(status -> writeRollups(snapshot)),
+                    ErrorCode.OPERATION_ERROR, "调用统计写入失败");
+        } catch (Exception e) {
+            log.warn("调用统计写入失败，稍后重试：{}", e.getMessage());
+            restore(snapshot);
+        }
+    }
+
+    /**
+     * 清理过期的分钟、小时统计，天统计长期保留
+     */
+    @Scheduled(initialDelay = 60 * 1000, fixedDelay = 60 * 60 * 1000)
+    public void cleanExpired() {
+        redissonLockUtil.redissonDistributedLocks("invokeRollupClean", () -> {
+            Date now = new Date();
+            deleteExpired(RollupGranularityEnum.MINUTE,
+                    new Date(now.getTime() - TimeUnit.HOURS.toMillis(invokeLogConfig.getMinuteRollupRetentionHours())));
+            deleteExpired(RollupGranularityEnum.HOUR,
+                    new Date(now.getTime() - TimeUnit.DAYS.toMillis(invokeLogConfig.getHourRollupRetentionDays())));
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    private void deleteExpired(RollupGranularityEnum granularity, Date before) {
+        int deleted;
+        do {
+            deleted = interfaceInvokeRollupMapper.deleteExpired(granularity.getValue(), before, DELETE_BATCH_SIZE);
+        } while (deleted == DELETE_BATCH_SIZE);
+    }
+
+    private void accumulate(String key, boolean error, long bytes, long latency) {
+        accumulators.computeIfAbsent(key, k -> new Accumulator()).add(error, bytes, latency);
+    }
+
+    private void restore(Map<String, Accumulator> snapshot) {
+        swapLock.readLock().lock();
+        try {
+            snapshot.forEach((key, accumulator) -> accumulators.computeIfAbsent(key, k -> new Accumulator()).merge(accumulator));
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void writeRollups(Map<String, Accumulator> snapshot) {
+        // 按键排序，多节点写同一批行时加锁顺序一致
+        List<String> keys = new ArrayList<>(new TreeSet<>(snapshot.keySet()));
+        for (List<String> part : CollUtil.split(keys, FLUSH_BATCH_SIZE)) {
+            Map<String, InterfaceInvokeRollup> existing = loadExisting(part);
+            List<InterfaceInvokeRollup> rollupList = new ArrayList<>(part.size());
+            for (String key : part) {
+                Accumulator accumulator = snapshot.get(key);
+                InterfaceInvokeRollup rollup = existing.get(key);
+                if (rollup == null) {
+                    rollup = fromKey(key);
+                    rollup.setTotalCount(0L);
+                    rollup.setErrorCount(0L);
+                    rollup.setTotalBytes(0L);
+                }
+                LatencySketch sketch = LatencySketch.decode(rollup.getLatencySketch());
+                sketch.merge(accumulator.sketch);
+                rollup.setTotalCount(rollup.getTotalCount() + accumulator.count);
+                rollup.setErrorCount(rollup.getErrorCount() + accumulator.errors);
+                rollup.setTotalBytes(rollup.getTotalBytes() + accumulator.bytes);
+                rollup.setLatencySketch(sketch.encode());
+                rollupList.add(rollup);
+            }
+            interfaceInvokeRollupMapper.batchUpsert(rollupList);
+        }
+    }
+
+    /**
+     * 查出本批已存在的统计行，查询条件是各维度取值的并集，结果再按键精确匹配
+     */
+    private Map<String, InterfaceInvokeRollup> loadExisting(List<String> keys) {
+        List<InterfaceInvokeRollup> candidates = keys.stream().map(InvokeRollupManager::fromKey).collect(Collectors.toList());
+        LambdaQueryWrapper<InterfaceInvokeRollup> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.in(InterfaceInvokeRollup::getGranularity, candidates.stream().map(InterfaceInvokeRollup::getGranularity).collect(Collectors.toSet()));
+        queryWrapper.in(InterfaceInvokeRollup::getInterfaceId, candidates.stream().map(InterfaceInvokeRollup::getInterfaceId).collect(Collectors.toSet()));
+        queryWrapper.in(InterfaceInvokeRollup::getUserId, candidates.stream().map(InterfaceInvokeRollup::getUserId).collect(Collectors.toSet()));
+        queryWrapper.in(InterfaceInvokeRollup::getBucketTime, candidates.stream().map(InterfaceInvokeRollup::getBucketTime).collect(Collectors.toSet()));
+        Map<String, InterfaceInvokeRollup> existing = new HashMap<>();
+        for (InterfaceInvokeRollup rollup : interfaceInvokeRollupMapper.selectList(queryWrapper)) {
+            existing.put(toKey(RollupGranularityEnum.getEnumByValue(rollup.getGranularity()), rollup.getBucketTime().getTime(),
+                    rollup.getInterfaceId(), rollup.getUserId()), rollup);
+        }
+        return existing;
+    }
+
+    private static String toKey(RollupGranularityEnum granularity, long bucketTime, Long interfaceId, Long userId) {
+        return granularity.getValue() + KEY_SEPARATOR + bucketTime + KEY_SEPARATOR + interfaceId + KEY_SEPARATOR + userId;
+    }
+
+    private static InterfaceInvokeRollup fromKey(String key) {
+        String[] parts = key.split("\\|");
+        InterfaceInvokeRollup rollup = new InterfaceInvokeRollup();
+        rollup.setGranularity(parts[0]);
+        rollup.setBucketTime(new Date(Long.parseLong(parts[1])));
+        rollup.setInterfaceId(Long.valueOf(parts[2]));
+        rollup.setUserId(Long.valueOf(parts[3]));
+        return rollup;
+    }
+
+    /**
+     * 单个统计桶的本机增量
+     */
+    private static class Accumulator {
+        private long count;
+        private long errors;
+        private long bytes;
+        private final LatencySketch sketch = new LatencySketch();
+
+        private synchronized void add(boolean error, long bytes, long latency) {
+            this.count++;
+            if (error) {
+                this.errors++;
+            }
+            this.bytes += bytes;
+            this.sketch.add(latency);
+        }
+
+        private synchronized void merge(Accumulator other) {
+            this.count += other.count;
+            this.errors += other.errors;
+            this.bytes += other.bytes;
+            this.sketch.merge(other.sketch);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.qimu.qiapibackend.manager;
+
+import com.qimu.qiapibackend.config.EmailConfig;
+import com.qimu.qiapibackend.config.MailOutboxConfig;
+import com.qimu.qiapibackend.mapper.MailOutboxMapper;
+import com.qimu.qiapibackend.model.entity.MailOutbox;
+import com.qimu.qiapibackend.model.enums.MailOutboxStatusEnum;
+import com.qimu.qiapibackend.utils.RedissonLockUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RRateLimiter;
+import org.redisson.api.RateIntervalUnit;
+import org.redisson.api.RateType;
+import org.redisson.api.RedissonClient;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.mail.internet.MimeMessage;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.qimu.qiapibackend.constant.EmailConstant.EMAIL_TITLE;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/30 09:45:21
+ * @Version: 1.0
+ * @Description: 待发邮件发送
+ * <p>
+ * 调度线程从待发表中抢占到期邮件交给有界线程池发送，线程池满时邮件留在表中等下一轮；
+ * 发送前按收件域名限流，失败按指数退避重试，超过最大次数标记为发送失败（死信），需人工处理。
+ * SMTP 连接、读写超时在 spring.mail.properties 中配置，需远小于发送中超时，否则卡住的发送会被当作宕机重发。
+ * 已发送、发送失败的邮件按保留天数每天清理。
+ */
+@Slf4j
+@Component
+public class MailOutboxWorker {
+    private static final String DOMAIN_RATE_LIMITER_KEY = "api:mail:rate:";
+    /**
+     * 发送中超过该时长视为节点宕机，重新置为待发送
+     */
+    private static final long STUCK_MILLIS = 5 * 60 * 1000L;
+    /**
+     * 被限流时的延后时长
+     */
+    private static final long RATE_LIMITED_DELAY_MILLIS = 1000L;
+    private static final long IDLE_WAIT_MILLIS = 1000L;
+    private static final int MAX_ERROR_LENGTH = 512;
+    private static final int DELETE_BATCH_SIZE = 1000;
+    @Resource
+    private MailOutboxMapper mailOutboxMapper;
+    @Resource
+    private MailOutboxConfig mailOutboxConfig;
+    @Resource
+    private EmailConfig emailConfig;
+    @Resource
+    private JavaMailSender mailSender;
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private RedissonLockUtil redissonLockUtil;
+
+    private ThreadPoolExecutor senderPool;
+    private Thread dispatcherThread;
+    private volatile boolean running;
+    private final Semaphore wakeSignal = new Semaphore(0);
+    /**
+     * 已在 Redis 中设置过速率的域名
+     */
+    private final Set<String> rateInitializedDomains = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        senderPool = new ThreadPoolExecutor(mailOutboxConfig.getWorkerThreads(), mailOutboxConfig.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(mailOutboxConfig.getQueueCapacity()), runnable -> {
+            Thread thread = new Thread(runnable, "mail-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        dispatcherThread = new Thread(this::dispatchLoop, "mail-outbox-dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    /**
+     * 有新邮件入表时唤醒调度线程，不必等到下一轮轮询
+     */
+    public void wakeUp() {
+        if (wakeSignal.availablePermits() == 0) {
+            wakeSignal.release();
+        }
+    }
+
+    /**
+     * 发送中的邮件所在节点宕机后不会再回写状态，定时放回待发送
+     */
+    @Scheduled(initialDelay = 60000, fixedDelay = 60000)
+    public void releaseStuck() {
+        int released = mailOutboxMapper.releaseStuck(new Date(System.currentTimeMillis() - STUCK_MILLIS));
+        if (released > 0) {
+            log.warn("{} 封邮件发送超时，重新置为待发送", released);
+        }
+    }
+
+    /**
+     * 清理过期的已发送、发送失败邮件，避免待发表无限增长
+     */
+    @Scheduled(cron = "0 10 3 * * ?")
+    public void cleanFinished() {
+        redissonLockUtil.redissonDistributedLocks("mailOutboxClean", () -> {
+            long now = System.currentTimeMillis();
+            deleteFinished(MailOutboxStatusEnum.SENT, new Date(now - TimeUnit.DAYS.toMillis(mailOutboxConfig.getSentRetentionDays())));
+            deleteFinished(MailOutboxStatusEnum.DEAD, new Date(now - TimeUnit.DAYS.toMillis(mailOutboxConfig.getDeadRetentionDays())));
+        });
+    }
+
+    private void deleteFinished(MailOutboxStatusEnum status, Date before) {
+        int deleted;
+        do {
+            deleted = mailOutboxMapper.deleteFinished(status.getValue(), before, DELETE_BATCH_SIZE);
+        } while (deleted == DELETE_BATCH_SIZE);
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                // 取满一批说明还有积压，不等待直接进入下一轮
+                if (!dispatch()) {
+                    wakeSignal.tryAcquire(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    wakeSignal.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("邮件调度失败", e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(IDLE_WAIT_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 抢占一批到期邮件提交发送
+     *
+     * @return 是否取满了一批
+     */
+    private boolean dispatch() {
+        int free = senderPool.getQueue().remainingCapacity();
+        if (free <= 0) {
+            return false;
+        }
+        int limit = Math.min(mailOutboxConfig.getBatchSize(), free);
+        List<Long> dueIds = mailOutboxMapper.listDueIds(new Date(), limit);
+        for (Long id : dueIds) {
+            if (mailOutboxMapper.claim(id) == 0) {
+                continue;
+            }
+            MailOutbox mailOutbox = mailOutboxMapper.selectById(id);
+            if (mailOutbox == null) {
+                continue;
+            }
+            try {
+                senderPool.execute(() -> send(mailOutbox));
+            } catch (RejectedExecutionException e) {
+                reschedule(mailOutbox, 0, mailOutbox.getRetryCount(), null);
+                return false;
+            }
+        }
+        return dueIds.size() >= limit;
+    }
+
+    private void send(MailOutbox mailOutbox) {
+        String domain = StringUtils.substringAfterLast(mailOutbox.getToAddress(), "@").toLowerCase();
+        if (!tryAcquireDomainRate(domain)) {
+            // 限流不算失败，不增加重试次数
+            reschedule(mailOutbox, RATE_LIMITED_DELAY_MILLIS, mailOutbox.getRetryCount(), null);
+            return;
+        }
+        try {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, true);
+            helper.setSubject(mailOutbox.getSubject());
+            helper.setText(mailOutbox.getContent(), true);
+            helper.setTo(mailOutbox.getToAddress());
+            helper.setFrom(EMAIL_TITLE + '<' + emailConfig.getEmailFrom() + '>');
+            mailSender.send(message);
+        } catch (Exception e) {
+            onSendFailed(mailOutbox, e);
+            return;
+        }
+        MailOutbox update = new MailOutbox();
+        update.setId(mailOutbox.getId());
+        update.setStatus(MailOutboxStatusEnum.SENT.getValue());
+        mailOutboxMapper.updateById(update);
+    }
+
+    private void onSendFailed(MailOutbox mailOutbox, Exception e) {
+        int retryCount = mailOutbox.getRetryCount() + 1;
+        String error = StringUtils.abbreviate(e.getMessage(), MAX_ERROR_LENGTH);
+        if (retryCount >= mailOutboxConfig.getMaxRetries()) {
+            log.error("邮件 {} 发送 {} 次均失败，不再重试：{}", mailOutbox.getId(), retryCount, error);
+            MailOutbox update = new MailOutbox();
+            update.setId(mailOutbox.getId());
+            update.setStatus(MailOutboxStatusEnum.DEAD.getValue());
+            update.setRetryCount(retryCount);
+            update.setLastError(error);
+            mailOutboxMapper.updateById(update);
+            return;
+        }
+        long backoff = Math.min(mailOutboxConfig.getBaseBackoffMillis() << (retryCount - 1), mailOutboxConfig.getMaxBackoffMillis());
+        // 加一点随机抖动，避免同一时刻失败的邮件又同时重试
+        backoff += ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+        log.warn("邮件 {} 第 {} 次发送失败，{} 毫秒后重试：{}", mailOutbox.getId(), retryCount, backoff, error);
+        reschedule(mailOutbox, backoff, retryCount, error);
+    }
+
+    private void reschedule(MailOutbox mailOutbox, long delayMillis, int retryCount, String error) {
+        MailOutbox update = new MailOutbox();
+        update.setId(mailOutbox.getId());
+        update.setStatus(MailOutboxStatusEnum.PENDING.getValue());
+        update.setRetryCount(retryCount);
+        update.setNextRetryTime(new Date(System.currentTimeMillis() + delayMillis));
+        update.setLastError(error);
+        mailOutboxMapper.updateById(update);
+    }
+
+    /**
+     * 所有节点共享同一个域名的速率；Redis 不可用时不限流，避免邮件全部积压
+     */
+    private boolean tryAcquireDomainRate(String domain) {
+        Map<String, Integer> domainRates = mailOutboxConfig.getDomainRates();
+        int rate = domainRates.getOrDefault(domain, mailOutboxConfig.getDomainRatePerSecond());
+        if (rate <= 0) {
+            return true;
+        }
+        try {
+            RRateLimiter rateLimiter = redissonClient.getRateLimiter(DOMAIN_RATE_LIMITER_KEY + domain);
+            if (rateInitializedDomains.add(domain)) {
+                rateLimiter.trySetRate(RateType.OVERALL, rate, 1, RateIntervalUnit.SECONDS);
+            }
+            return rateLimiter.tryAcquire();
+        } catch (Exception e) {
+            log.warn("邮件域名限流失败，跳过限流：{}", e.getMessage());
+            return true;
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+        }
+        if (senderPool != null) {
+            // 未发完的邮件停留在发送中，由其他节点的超时释放重新发送
+            senderPool.shutdown();
+            senderPool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
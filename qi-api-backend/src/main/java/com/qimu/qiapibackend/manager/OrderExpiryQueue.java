@@ -0,0 +1,142 @@
+package com.qimu.qiapibackend.manager;
+
+import com.qimu.qiapibackend.config.OrderExpiryConfig;
+import com.qimu.qiapibackend.utils.OrderPartitioner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/17 09:30:48
+ * @Version: 1.0
+ * @Description: 订单到期延迟队列
+ * <p>
+ * 下单后按过期时间把订单号写入所在分区的 Redis 有序集合，由认领该分区的节点取出处理（见 {@link OrderReconcileWorker}）。
+ * 取出用脚本原子完成，取出即删除，分区重新分配的间隙里两个节点同时取同一分区也不会重复处理。
+ */
+@Slf4j
+@Component
+public class OrderExpiryQueue {
+    private static final String EXPIRY_KEY = "pay:order:expiry:";
+    /**
+     * 取出分数不大于当前时间的订单并删除，返回 订单号、到期时间 交替的列表
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local due = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, ARGV[2]) " +
+                    "for i = 1, #due, 2 do redis.call('zrem', KEYS[1], due[i]) end " +
+                    "return due",
+            List.class);
+    @Resource
+    private OrderExpiryConfig orderExpiryConfig;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 订单在过期时间入队，有事务时在提交后写入
+     *
+     * @param orderNo        订单号
+     * @param expirationTime 过期时间
+     */
+    public void schedule(String orderNo, Date expirationTime) {
+        if (expirationTime == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(orderNo, expirationTime.getTime());
+                }
+            });
+        } else {
+            add(orderNo, expirationTime.getTime());
+        }
+    }
+
+    /**
+     * 订单入队，已在队列中时更新到期时间
+     *
+     * @param orderNo 订单号
+     * @param dueTime 到期时间
+     */
+    public void add(String orderNo, long dueTime) {
+        try {
+            stringRedisTemplate.opsForZSet().add(partitionKey(partitionOf(orderNo)), orderNo, dueTime);
+        } catch (Exception e) {
+            // 写入失败由兜底扫描处理
+            log.warn("订单 {} 加入到期队列失败：{}", orderNo, e.getMessage());
+        }
+    }
+
+    /**
+     * 取出分区中已到期的订单
+     *
+     * @param partition 分区
+     * @param limit     最多取出数量
+     * @return {@link Map}<{@link String}, {@link Long}> 订单号 -> 到期时间，按到期时间排序
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Long> claim(int partition, int limit) {
+        List<String> due = stringRedisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(partitionKey(partition)),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(limit));
+        Map<String, Long> dueOrders = new LinkedHashMap<>();
+        if (due != null) {
+            for (int i = 0; i + 1 < due.size(); i += 2) {
+                dueOrders.put(due.get(i), (long) Double.parseDouble(due.get(i + 1)));
+            }
+        }
+        return dueOrders;
+    }
+
+    /**
+     * 分区中最早的到期时间
+     *
+     * @param partition 分区
+     * @return {@link Long}，分区为空时返回 null
+     */
+    public Long earliestDueTime(int partition) {
+        Set<ZSetOperations.TypedTuple<String>> earliest = stringRedisTemplate.opsForZSet().rangeWithScores(partitionKey(partition), 0, 0);
+        if (earliest == null || earliest.isEmpty()) {
+            return null;
+        }
+        Double score = earliest.iterator().next().getScore();
+        return score == null ? null : score.longValue();
+    }
+
+    /**
+     * 分区中已到期未取出的订单数
+     *
+     * @param partition 分区
+     * @return long
+     */
+    public long countDue(int partition) {
+        Long count = stringRedisTemplate.opsForZSet().count(partitionKey(partition), Double.NEGATIVE_INFINITY, System.currentTimeMillis());
+        return count == null ? 0 : count;
+    }
+
+    public int getPartitions() {
+        return orderExpiryConfig.getPartitions();
+    }
+
+    private int partitionOf(String orderNo) {
+        return OrderPartitioner.partitionOf(orderNo, orderExpiryConfig.getPartitions());
+    }
+
+    private static String partitionKey(int partition) {
+        return EXPIRY_KEY + partition;
+    }
+}
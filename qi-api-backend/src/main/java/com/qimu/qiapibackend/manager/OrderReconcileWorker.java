@@ -0,0 +1,386 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.IdUtil;
+import com.qimu.qiapibackend.config.OrderExpiryConfig;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.model.entity.ProductOrder;
+import com.qimu.qiapibackend.model.enums.PaymentStatusEnum;
+import com.qimu.qiapibackend.model.vo.OrderReconcileStatsVo;
+import com.qimu.qiapibackend.service.ProductOrderService;
+import com.qimu.qiapibackend.utils.LatencySketch;
+import com.qimu.qiapibackend.utils.OrderPartitioner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/18 10:05:31
+ * @Version: 1.0
+ * @Description: 到期订单对账
+ * <p>
+ * 各节点定时在 Redis 中登记心跳，按存活节点列表认领分区，只从自己的分区取出到期订单，交给有界线程池并发查单、关单。
+ * 单个订单失败只影响自己：按次数指数退避后重新入队，其余订单照常处理；连续失败达到最大重试次数后放弃并记录错误日志，
+ * 仍未支付的订单由兜底扫描稍后重新入队，失败次数从头计算。吞吐量和到期延迟按统计窗口输出到日志和统计接口。
+ */
+@Slf4j
+@Component
+public class OrderReconcileWorker {
+    private static final String NODES_KEY = "pay:order:reconcile:nodes";
+    /**
+     * 订单连续失败次数，每个订单一个 Key，成功或放弃时删除，漏删的由过期时间兜底
+     */
+    private static final String ATTEMPTS_KEY = "pay:order:reconcile:attempts:";
+    private static final long ATTEMPTS_EXPIRE_HOURS = 24;
+    /**
+     * 超过该数量的心跳间隔未登记的节点视为下线
+     */
+    private static final int HEARTBEAT_TIMEOUT_INTERVALS = 3;
+    /**
+     * 退避翻倍的次数上限，避免移位溢出
+     */
+    private static final int MAX_BACKOFF_SHIFT = 20;
+    @Resource
+    private OrderExpiryConfig orderExpiryConfig;
+    @Resource
+    private OrderExpiryQueue orderExpiryQueue;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ProductOrderService productOrderService;
+    @Resource
+    private PaymentProviderRegistry paymentProviderRegistry;
+
+    private final String nodeId = NetUtil.getLocalHostName() + "-" + IdUtil.fastSimpleUUID().substring(0, 8);
+    private ThreadPoolExecutor workerPool;
+    private Thread dispatcherThread;
+    private volatile boolean running;
+    private volatile List<Integer> ownedPartitions = Collections.emptyList();
+    private volatile int liveNodes;
+    private long lastHeartbeat;
+    /**
+     * 轮询分区的起始位置，避免总是先取前面的分区
+     */
+    private int partitionCursor;
+
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    /**
+     * 当前窗口，写入和切换都在 this 上同步
+     */
+    private StatsWindow currentWindow = new StatsWindow();
+    private volatile StatsWindow lastWindow;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        workerPool = new ThreadPoolExecutor(orderExpiryConfig.getWorkerThreads(), orderExpiryConfig.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(orderExpiryConfig.getBatchSize()), runnable -> {
+            Thread thread = new Thread(runnable, "order-reconcile-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        dispatcherThread = new Thread(this::dispatchLoop, "order-reconcile-dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                heartbeat();
+                // 取满一批说明还有积压，不等待直接进入下一轮
+                if (!dispatch()) {
+                    TimeUnit.MILLISECONDS.sleep(waitMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("到期订单调度失败", e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(orderExpiryConfig.getIdleMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 登记心跳并按存活节点重新计算认领的分区
+     */
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        long heartbeatMillis = orderExpiryConfig.getHeartbeatMillis();
+        if (now - lastHeartbeat < heartbeatMillis) {
+            return;
+        }
+        lastHeartbeat = now;
+        stringRedisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+        stringRedisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, Double.NEGATIVE_INFINITY, now - heartbeatMillis * HEARTBEAT_TIMEOUT_INTERVALS);
+        Set<String> nodes = stringRedisTemplate.opsForZSet().range(NODES_KEY, 0, -1);
+        if (nodes == null) {
+            return;
+        }
+        List<Integer> partitions = OrderPartitioner.ownedPartitions(nodes, nodeId, orderExpiryQueue.getPartitions());
+        if (!partitions.equals(ownedPartitions)) {
+            log.info("节点 {} 认领到期订单分区 {}，存活节点 {} 个", nodeId, partitions, nodes.size());
+        }
+        ownedPartitions = partitions;
+        liveNodes = nodes.size();
+    }
+
+    /**
+     * 依次从认领的分区取出到期订单提交处理
+     *
+     * @return 是否有分区取满了一批
+     */
+    private boolean dispatch() {
+        List<Integer> partitions = ownedPartitions;
+        boolean full = false;
+        for (int i = 0; i < partitions.size(); i++) {
+            int free = workerPool.getQueue().remainingCapacity();
+            if (free <= 0) {
+                return false;
+            }
+            int limit = Math.min(orderExpiryConfig.getBatchSize(), free);
+            int partition = partitions.get((partitionCursor + i) % partitions.size());
+            Map<String, Long> dueOrders = orderExpiryQueue.claim(partition, limit);
+            for (Map.Entry<String, Long> dueOrder : dueOrders.entrySet()) {
+                String orderNo = dueOrder.getKey();
+                long dueTime = dueOrder.getValue();
+                try {
+                    workerPool.execute(() -> process(orderNo, dueTime));
+                } catch (RejectedExecutionException e) {
+                    orderExpiryQueue.add(orderNo, dueTime);
+                }
+            }
+            full |= dueOrders.size() >= limit;
+        }
+        partitionCursor++;
+        return full;
+    }
+
+    /**
+     * 等到认领分区中最早的订单到期，最长 idleMillis
+     */
+    private long waitMillis() {
+        long waitMillis = orderExpiryConfig.getIdleMillis();
+        long now = System.currentTimeMillis();
+        for (Integer partition : ownedPartitions) {
+            Long dueTime = orderExpiryQueue.earliestDueTime(partition);
+            if (dueTime != null) {
+                waitMillis = Math.min(waitMillis, dueTime - now);
+            }
+        }
+        return Math.max(1L, waitMillis);
+    }
+
+    private void process(String orderNo, long dueTime) {
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            if (reconcile(orderNo)) {
+                succeeded.incrementAndGet();
+            } else {
+                skipped.incrementAndGet();
+            }
+            stringRedisTemplate.delete(ATTEMPTS_KEY + orderNo);
+            success = true;
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            onFailed(orderNo, e);
+        } finally {
+            long end = System.currentTimeMillis();
+            synchronized (this) {
+                currentWindow.record(Math.max(0, start - dueTime), end - start, success);
+            }
+        }
+    }
+
+    /**
+     * 按失败次数退避后重新入队，达到最大重试次数后放弃，由兜底扫描稍后重新入队
+     *
+     * @param orderNo 订单号
+     * @param e       异常
+     */
+    private void onFailed(String orderNo, Exception e) {
+        String attemptsKey = ATTEMPTS_KEY + orderNo;
+        Long attempt = stringRedisTemplate.opsForValue().increment(attemptsKey);
+        stringRedisTemplate.expire(attemptsKey, ATTEMPTS_EXPIRE_HOURS, TimeUnit.HOURS);
+        long attempts = attempt == null ? 1 : attempt;
+        if (attempts >= orderExpiryConfig.getMaxRetries()) {
+            stringRedisTemplate.delete(attemptsKey);
+            log.error("到期订单 {} 连续 {} 次处理失败，不再重试，需人工排查：{}", orderNo, attempts, e.getMessage());
+            return;
+        }
+        long delay = backoffMillis(attempts);
+        log.error("到期订单 {} 第 {} 次处理失败，{}ms 后重试：{}", orderNo, attempts, delay, e.getMessage());
+        orderExpiryQueue.add(orderNo, System.currentTimeMillis() + delay);
+    }
+
+    /**
+     * 查单、关单
+     *
+     * @param orderNo 订单号
+     * @return 是否调用了支付渠道，订单已支付、已关闭或支付方式不可用时返回 false
+     */
+    private boolean reconcile(String orderNo) {
+        ProductOrder productOrder = productOrderService.getProductOrderByOutTradeNo(orderNo);
+        // 已支付、已关闭或已删除
+        if (productOrder == null || !PaymentStatusEnum.NOTPAY.getValue().equals(productOrder.getStatus())) {
+            return false;
+        }
+        ProductOrderService provider;
+        try {
+            provider = paymentProviderRegistry.getProvider(productOrder.getPayType());
+        } catch (BusinessException e) {
+            log.warn("到期订单 {} 的支付方式 {} 不可用，跳过", orderNo, productOrder.getPayType());
+            return false;
+        }
+        provider.processingTimedOutOrders(productOrder);
+        return true;
+    }
+
+    private long backoffMillis(long attempt) {
+        long shift = Math.min(Math.max(attempt - 1, 0), MAX_BACKOFF_SHIFT);
+        return Math.min(orderExpiryConfig.getMaxRetryDelayMillis(), orderExpiryConfig.getRetryDelayMillis() << shift);
+    }
+
+    /**
+     * 切换统计窗口，窗口内有处理或有积压时输出日志
+     */
+    @Scheduled(initialDelayString = "${qi.pay.expiry.stats-window-millis:60000}", fixedDelayString = "${qi.pay.expiry.stats-window-millis:60000}")
+    public void rotateStats() {
+        StatsWindow window;
+        synchronized (this) {
+            window = currentWindow;
+            currentWindow = new StatsWindow();
+        }
+        window.end = System.currentTimeMillis();
+        lastWindow = window;
+        long backlog = backlog();
+        if (window.processed > 0 || backlog > 0) {
+            log.info("到期订单对账：{}s 内处理 {} 个（失败 {}），{}/s，延迟 p50 {}ms p95 {}ms，处理耗时 p95 {}ms，积压 {}",
+                    window.seconds(), window.processed, window.failed, String.format("%.2f", window.throughput()),
+                    window.lag.quantile(0.5), window.lag.quantile(0.95), window.process.quantile(0.95), backlog);
+        }
+    }
+
+    private long backlog() {
+        long backlog = 0;
+        for (Integer partition : ownedPartitions) {
+            backlog += orderExpiryQueue.countDue(partition);
+        }
+        return backlog;
+    }
+
+    /**
+     * 获取当前节点的对账统计
+     *
+     * @return {@link OrderReconcileStatsVo}
+     */
+    public OrderReconcileStatsVo getStats() {
+        List<Integer> partitions = ownedPartitions;
+        long now = System.currentTimeMillis();
+        long oldestLag = 0;
+        for (Integer partition : partitions) {
+            Long dueTime = orderExpiryQueue.earliestDueTime(partition);
+            if (dueTime != null) {
+                oldestLag = Math.max(oldestLag, now - dueTime);
+            }
+        }
+        OrderReconcileStatsVo statsVo = new OrderReconcileStatsVo();
+        statsVo.setNodeId(nodeId);
+        statsVo.setLiveNodes(liveNodes);
+        statsVo.setOwnedPartitions(partitions);
+        statsVo.setBacklog(backlog());
+        statsVo.setOldestLagMillis(oldestLag);
+        statsVo.setInFlight(workerPool.getActiveCount() + workerPool.getQueue().size());
+        StatsWindow window = lastWindow;
+        if (window != null) {
+            statsVo.setWindowSeconds(window.seconds());
+            statsVo.setThroughput(window.throughput());
+            statsVo.setLagP50(window.lag.quantile(0.5));
+            statsVo.setLagP95(window.lag.quantile(0.95));
+            statsVo.setProcessP95(window.process.quantile(0.95));
+        }
+        statsVo.setSucceeded(succeeded.get());
+        statsVo.setFailed(failed.get());
+        statsVo.setSkipped(skipped.get());
+        return statsVo;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+        }
+        try {
+            // 主动下线，分区立即由其他节点接管
+            stringRedisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+        } catch (Exception e) {
+            log.warn("节点 {} 注销失败：{}", nodeId, e.getMessage());
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            workerPool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 统计窗口
+     */
+    private static class StatsWindow {
+        private final long start = System.currentTimeMillis();
+        private long end;
+        private long processed;
+        private long failed;
+        /**
+         * 到期到开始处理的延迟
+         */
+        private final LatencySketch lag = new LatencySketch();
+        /**
+         * 查单、关单耗时
+         */
+        private final LatencySketch process = new LatencySketch();
+
+        private void record(long lagMillis, long processMillis, boolean success) {
+            processed++;
+            if (!success) {
+                failed++;
+            }
+            lag.add(lagMillis);
+            process.add(processMillis);
+        }
+
+        private long seconds() {
+            return Math.max(1L, (end - start) / 1000);
+        }
+
+        private double throughput() {
+            return (double) processed / seconds();
+        }
+    }
+}
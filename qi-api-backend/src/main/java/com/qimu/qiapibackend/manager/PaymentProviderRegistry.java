@@ -0,0 +1,81 @@
+package com.qimu.qiapibackend.manager;
+
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.model.enums.PayTypeStatusEnum;
+import com.qimu.qiapibackend.service.ProductOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/16 09:21:45
+ * @Version: 1.0
+ * @Description: 支付渠道注册表
+ * <p>
+ * 启动时按实现类上的 @Qualifier 把各支付渠道登记到 EnumMap，之后按支付类型直接取，不再逐个反射注解。
+ * 注解从目标类上读取，事务代理不影响；未知或重复的支付类型启动即失败。
+ */
+@Slf4j
+@Component
+public class PaymentProviderRegistry {
+    @Resource
+    private List<ProductOrderService> productOrderServices;
+
+    private final Map<PayTypeStatusEnum, ProductOrderService> providers = new EnumMap<>(PayTypeStatusEnum.class);
+
+    @PostConstruct
+    public void init() {
+        for (ProductOrderService productOrderService : productOrderServices) {
+            Class<?> targetClass = AopUtils.getTargetClass(productOrderService);
+            Qualifier qualifier = AnnotationUtils.findAnnotation(targetClass, Qualifier.class);
+            if (qualifier == null) {
+                continue;
+            }
+            PayTypeStatusEnum payType = PayTypeStatusEnum.getEnumByValue(qualifier.value());
+            if (payType == null) {
+                throw new IllegalStateException("未知的支付类型：" + qualifier.value() + "，" + targetClass.getName());
+            }
+            ProductOrderService previous = providers.put(payType, productOrderService);
+            if (previous != null) {
+                throw new IllegalStateException("支付类型重复：" + payType.getValue() + "，" + targetClass.getName()
+                        + " 与 " + AopUtils.getTargetClass(previous).getName());
+            }
+        }
+        log.info("已注册支付渠道：{}", providers.keySet());
+    }
+
+    /**
+     * 按支付类型获取支付渠道
+     *
+     * @param payType 支付类型
+     * @return {@link ProductOrderService}
+     */
+    public ProductOrderService getProvider(String payType) {
+        PayTypeStatusEnum payTypeStatusEnum = PayTypeStatusEnum.getEnumByValue(payType);
+        ProductOrderService productOrderService = payTypeStatusEnum == null ? null : providers.get(payTypeStatusEnum);
+        if (productOrderService == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "暂无该支付方式");
+        }
+        return productOrderService;
+    }
+
+    /**
+     * 支付渠道是否可用
+     *
+     * @param payType 支付类型
+     * @return boolean
+     */
+    public boolean isAvailable(PayTypeStatusEnum payType) {
+        return providers.containsKey(payType);
+    }
+}
@@ -0,0 +1,194 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.util.IdUtil;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.config.RateLimitConfig;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.model.enums.RateLimitSceneEnum;
+import com.qimu.qiapibackend.utils.ClientIpResolver;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/02 14:20:16
+ * @Version: 1.0
+ * @Description: 滑动窗口限流
+ * <p>
+ * 每个 (场景, 键) 在 Redis 中用一个有序集合记录窗口内每次请求的时间，判断与写入在一个脚本里完成，多节点共享计数；
+ * 被拒绝后本机记住解封时间，解封前的请求直接在本机拒绝，不再访问 Redis。
+ * 登录按 IP + 账号只记失败次数，其他人无法通过反复尝试锁住某个账号。
+ * 邮箱登录另按邮箱累计失败次数，不论来源 IP，达到上限即作废验证码，换 IP 也无法继续猜测同一个验证码。
+ */
+@Slf4j
+@Component
+public class SlidingWindowRateLimiter {
+    private static final String RATE_LIMIT_KEY = "api:rate:";
+    private static final int LOCAL_CAPACITY = 10000;
+    /**
+     * 先清掉窗口外的记录，未超限时写入本次请求并返回 0，超限时返回还需等待的毫秒数
+     */
+    private static final DefaultRedisScript<Long> SLIDING_WINDOW_SCRIPT = new DefaultRedisScript<>(
+            "local now = tonumber(ARGV[1]) local window = tonumber(ARGV[2]) " +
+                    "redis.call('zremrangebyscore', KEYS[1], 0, now - window) " +
+                    "if redis.call('zcard', KEYS[1]) >= tonumber(ARGV[3]) then " +
+                    "local oldest = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES') " +
+                    "return math.max(tonumber(oldest[2]) + window - now, 1) end " +
+                    "redis.call('zadd', KEYS[1], now, ARGV[4]) " +
+                    "redis.call('pexpire', KEYS[1], window) " +
+                    "return 0",
+            Long.class);
+    /**
+     * 只检查不计数，超限时返回还需等待的毫秒数
+     */
+    private static final DefaultRedisScript<Long> PEEK_WINDOW_SCRIPT = new DefaultRedisScript<>(
+            "local now = tonumber(ARGV[1]) local window = tonumber(ARGV[2]) " +
+                    "redis.call('zremrangebyscore', KEYS[1], 0, now - window) " +
+                    "if redis.call('zcard', KEYS[1]) >= tonumber(ARGV[3]) then " +
+                    "local oldest = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES') " +
+                    "return math.max(tonumber(oldest[2]) + window - now, 1) end " +
+                    "return 0",
+            Long.class);
+    /**
+     * 只计数不检查
+     */
+    private static final DefaultRedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('zremrangebyscore', KEYS[1], 0, tonumber(ARGV[1]) - tonumber(ARGV[2])) " +
+                    "redis.call('zadd', KEYS[1], ARGV[1], ARGV[4]) " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "return 0",
+            Long.class);
+    /**
+     * 计数后达到上限则清空计数并返回 1
+     */
+    private static final DefaultRedisScript<Long> RECORD_AND_RESET_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('zremrangebyscore', KEYS[1], 0, tonumber(ARGV[1]) - tonumber(ARGV[2])) " +
+                    "redis.call('zadd', KEYS[1], ARGV[1], ARGV[4]) " +
+                    "if redis.call('zcard', KEYS[1]) >= tonumber(ARGV[3]) then " +
+                    "redis.call('del', KEYS[1]) return 1 end " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "return 0",
+            Long.class);
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RateLimitConfig rateLimitConfig;
+
+    /**
+     * 本机已知被拒绝的键及其解封时间
+     */
+    private final LRUCache<String, Long> blockedUntil = CacheUtil.newLRUCache(LOCAL_CAPACITY);
+
+    /**
+     * 计入一次请求，超过限制时抛出异常
+     *
+     * @param scene 场景
+     * @param key   限流键，如邮箱、账号、IP，为空时不限流
+     */
+    public void check(RateLimitSceneEnum scene, String key) {
+        execute(SLIDING_WINDOW_SCRIPT, scene, key);
+    }
+
+    /**
+     * 只检查窗口内的失败次数是否超限，不计数，配合 {@link #recordFailure} 使用
+     *
+     * @param scene 场景
+     * @param key   限流键，为空时不限流
+     */
+    public void checkFailures(RateLimitSceneEnum scene, String key) {
+        execute(PEEK_WINDOW_SCRIPT, scene, key);
+    }
+
+    /**
+     * 记录一次失败
+     *
+     * @param scene 场景
+     * @param key   限流键，为空时不记录
+     */
+    public void recordFailure(RateLimitSceneEnum scene, String key) {
+        execute(RECORD_SCRIPT, scene, key);
+    }
+
+    /**
+     * 记录一次失败，窗口内失败次数达到上限时清空计数，由调用方作废对应的凭据（如验证码）
+     *
+     * @param scene 场景
+     * @param key   限流键，为空时不记录
+     * @return boolean 是否达到上限
+     */
+    public boolean recordFailureReachLimit(RateLimitSceneEnum scene, String key) {
+        if (!rateLimitConfig.getEnabled() || StringUtils.isBlank(key)) {
+            return false;
+        }
+        Long reached = eval(RECORD_AND_RESET_SCRIPT, scene, redisKey(scene, key), System.currentTimeMillis());
+        return reached != null && reached > 0;
+    }
+
+    /**
+     * 客户端 IP，只在对端是可信代理时采用转发头
+     *
+     * @param request 请求
+     * @return {@link String}
+     */
+    public String getClientIp(HttpServletRequest request) {
+        return ClientIpResolver.resolve(request.getRemoteAddr(), request.getHeader("X-Forwarded-For"), rateLimitConfig.getTrustedProxies());
+    }
+
+    private void execute(DefaultRedisScript<Long> script, RateLimitSceneEnum scene, String key) {
+        if (!rateLimitConfig.getEnabled() || StringUtils.isBlank(key)) {
+            return;
+        }
+        String redisKey = redisKey(scene, key);
+        long now = System.currentTimeMillis();
+        if (script != RECORD_SCRIPT) {
+            Long localBlockedUntil = blockedUntil.get(redisKey, false);
+            if (localBlockedUntil != null && localBlockedUntil > now) {
+                throw tooManyRequest(localBlockedUntil - now);
+            }
+        }
+        Long retryAfterMillis = eval(script, scene, redisKey, now);
+        if (retryAfterMillis != null && retryAfterMillis > 0) {
+            blockedUntil.put(redisKey, now + retryAfterMillis, retryAfterMillis);
+            throw tooManyRequest(retryAfterMillis);
+        }
+    }
+
+    private static String redisKey(RateLimitSceneEnum scene, String key) {
+        return RATE_LIMIT_KEY + scene.getValue() + ":" + key.trim().toLowerCase();
+    }
+
+    /**
+     * 按场景规则执行脚本，Redis 不可用时返回 null
+     */
+    private Long eval(DefaultRedisScript<Long> script, RateLimitSceneEnum scene, String redisKey, long now) {
+        int limit = scene.getLimit();
+        long windowMillis = scene.getWindowSeconds() * 1000L;
+        RateLimitConfig.Rule rule = rateLimitConfig.getRules().get(scene.getValue());
+        if (rule != null) {
+            limit = rule.getLimit() == null ? limit : rule.getLimit();
+            windowMillis = rule.getWindowSeconds() == null ? windowMillis : rule.getWindowSeconds() * 1000L;
+        }
+        try {
+            return stringRedisTemplate.execute(script, Collections.singletonList(redisKey),
+                    String.valueOf(now), String.valueOf(windowMillis), String.valueOf(limit), now + ":" + IdUtil.fastSimpleUUID());
+        } catch (Exception e) {
+            // Redis 不可用时放行，避免登录整体不可用
+            log.warn("限流检查失败，跳过限流：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static BusinessException tooManyRequest(long retryAfterMillis) {
+        long seconds = Math.max(1, (retryAfterMillis + 999) / 1000);
+        return new BusinessException(ErrorCode.TOO_MANY_REQUEST, "请求过于频繁，请 " + seconds + " 秒后再试");
+    }
+}
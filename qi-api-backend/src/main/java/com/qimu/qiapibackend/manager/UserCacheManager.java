@@ -0,0 +1,192 @@
+package com.qimu.qiapibackend.manager;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.qimu.qiapibackend.mapper.UserMapper;
+import com.qimu.qiapibackend.model.entity.User;
+import com.qimu.qiapicommon.model.emums.ChangeEntityTypeEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.TimeUnit;
+
+import static com.qimu.qiapibackend.constant.UserConstant.USER_VERSION_KEY;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/27 09:36:52
+ * @Version: 1.0
+ * @Description: 用户信息缓存
+ * <p>
+ * 两级：请求内缓存保证一次请求只加载一次用户；节点本地缓存按用户id缓存 User，
+ * 同时记录加载时 Redis 中的版本号，版本号变化说明用户信息已变更，本地缓存作废后重新查库。
+ * 令牌请求不读取版本号：变更提交后写入令牌黑名单中的变更标记，各节点每秒同步，本地缓存加载时间早于看到标记的时间才重新查库，
+ * 因此其他节点上的变更最多晚约一秒可见；封禁、改角色、改密码另会作废令牌。Redis 不可用时沿用上次同步结果，最长由本地缓存过期兜底。
+ */
+@Slf4j
+@Component
+public class UserCacheManager {
+    /**
+     * 请求内缓存的属性名
+     */
+    public static final String REQUEST_USER_ATTR = UserCacheManager.class.getName() + ".user";
+    public static final String REQUEST_LOGIN_USER_ATTR = UserCacheManager.class.getName() + ".loginUser";
+    private static final int LOCAL_CAPACITY = 10000;
+    /**
+     * 本地缓存过期时间，兜底版本号未能及时自增的情况
+     */
+    private static final long LOCAL_EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private UserMapper userMapper;
+    @Resource
+    private ChangeEventPublisher changeEventPublisher;
+    @Resource
+    private AuthTokenManager authTokenManager;
+
+    private final LRUCache<Long, CachedUser> localCache = CacheUtil.newLRUCache(LOCAL_CAPACITY, LOCAL_EXPIRE_MILLIS);
+
+    /**
+     * 获取当前请求的用户，同一请求内只加载一次
+     * 会话登录时本地缓存与 Redis 中的当前版本号比对；令牌登录时只按同步到本地的变更标记判断，不访问 Redis
+     *
+     * @param request    请求
+     * @param userId     用户id
+     * @param tokenLogin 是否为令牌登录
+     * @return {@link User}
+     */
+    public User getRequestUser(HttpServletRequest request, long userId, boolean tokenLogin) {
+        Object memo = request.getAttribute(REQUEST_USER_ATTR);
+        if (memo instanceof User && ((User) memo).getId() == userId) {
+            return (User) memo;
+        }
+        User user = tokenLogin ? getTrustedLocalUser(userId) : null;
+        if (user == null) {
+            user = getUser(userId);
+        }
+        if (user != null) {
+            request.setAttribute(REQUEST_USER_ATTR, user);
+        }
+        return user;
+    }
+
+    /**
+     * 本机看到该用户最近一次变更之后加载的本地缓存
+     *
+     * @param userId 用户id
+     * @return {@link User} 副本，没有可信的本地缓存时为 null
+     */
+    private User getTrustedLocalUser(long userId) {
+        CachedUser cachedUser = localCache.get(userId, false);
+        if (cachedUser == null) {
+            return null;
+        }
+        Long changedAt = authTokenManager.getUserChangedAt(userId);
+        if (changedAt != null && cachedUser.loadedAt <= changedAt) {
+            return null;
+        }
+        return copyOf(cachedUser.user);
+    }
+
+    /**
+     * 根据id获取用户，本地缓存版本号与 Redis 一致时不查库
+     *
+     * @param userId 用户id
+     * @return {@link User} 副本，可以修改
+     */
+    public User getUser(long userId) {
+        Long version;
+        try {
+            String value = stringRedisTemplate.opsForValue().get(USER_VERSION_KEY + userId);
+            version = value == null ? 0L : Long.parseLong(value);
+        } catch (Exception e) {
+            // 拿不到版本号无法判断本地缓存是否有效，直接查库
+            log.warn("读取用户版本号失败：{}", e.getMessage());
+            version = null;
+        }
+        if (version != null) {
+            CachedUser cachedUser = localCache.get(userId, false);
+            if (cachedUser != null && cachedUser.version == version) {
+                return copyOf(cachedUser.user);
+            }
+        }
+        // 先读版本号再查库，期间若有变更，缓存的是旧版本号，下次读取会发现不一致；加载时间同理取查库之前
+        long loadedAt = System.currentTimeMillis();
+        User user = userMapper.selectById(userId);
+        if (user != null && version != null) {
+            localCache.put(userId, new CachedUser(copyOf(user), version, loadedAt));
+        }
+        return user;
+    }
+
+    /**
+     * 获取用户信息当前版本号
+     *
+     * @param userId 用户id
+     * @return long 从未变更过时为 0
+     */
+    public long getVersion(long userId) {
+        String value = stringRedisTemplate.opsForValue().get(USER_VERSION_KEY + userId);
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    /**
+     * 用户信息变更后调用，处于事务中时提交后才使缓存失效
+     *
+     * @param userId 用户id
+     */
+    public void invalidate(long userId) {
+        localCache.remove(userId);
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.removeAttribute(REQUEST_USER_ATTR, RequestAttributes.SCOPE_REQUEST);
+            requestAttributes.removeAttribute(REQUEST_LOGIN_USER_ATTR, RequestAttributes.SCOPE_REQUEST);
+        }
+        // 网关按 accessKey 缓存调用用户，更换密钥、封禁后通知网关淘汰
+        changeEventPublisher.publish(ChangeEntityTypeEnum.USER, userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpVersion(userId);
+                }
+            });
+        } else {
+            bumpVersion(userId);
+        }
+    }
+
+    private void bumpVersion(long userId) {
+        // 提交前本节点可能又按旧版本号缓存了旧数据，这里再清一次
+        localCache.remove(userId);
+        stringRedisTemplate.opsForValue().increment(USER_VERSION_KEY + userId);
+        authTokenManager.markUserChanged(userId);
+    }
+
+    private static User copyOf(User user) {
+        User copy = new User();
+        BeanUtils.copyProperties(user, copy);
+        return copy;
+    }
+
+    private static class CachedUser {
+        private final User user;
+        private final long version;
+        private final long loadedAt;
+
+        private CachedUser(User user, long version, long loadedAt) {
+            this.user = user;
+            this.version = version;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
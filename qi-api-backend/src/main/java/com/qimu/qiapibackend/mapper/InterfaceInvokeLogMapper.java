@@ -0,0 +1,63 @@
+package com.qimu.qiapibackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.qimu.qiapicommon.model.entity.InterfaceInvokeLog;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/25 10:52:07
+ * @Version: 1.0
+ * @Description: 接口调用日志映射器
+ */
+public interface InterfaceInvokeLogMapper extends BaseMapper<InterfaceInvokeLog> {
+
+    /**
+     * 多行插入调用日志
+     *
+     * @param invokeLogList 调用日志
+     * @return int
+     */
+    @Insert({"<script>",
+            "insert into interface_invoke_log (id, requestId, interfaceId, userId, method, statusCode, latency, responseBytes, clientIp, createTime) values ",
+            "<foreach collection='invokeLogList' item='item' separator=','>",
+            "(#{item.id}, #{item.requestId}, #{item.interfaceId}, #{item.userId}, #{item.method}, #{item.statusCode}, ",
+            "#{item.latency}, #{item.responseBytes}, #{item.clientIp}, #{item.createTime})",
+            "</foreach>",
+            "</script>"})
+    int insertBatch(@Param("invokeLogList") List<InterfaceInvokeLog> invokeLogList);
+
+    /**
+     * 查询已有分区名
+     *
+     * @return {@link List}<{@link String}>
+     */
+    @Select("select partition_name from information_schema.partitions " +
+            "where table_schema = database() and table_name = 'interface_invoke_log' and partition_name is not null " +
+            "order by partition_ordinal_position")
+    List<String> listPartitionNames();
+
+    /**
+     * 从 pmax 中拆出一个按天分区
+     *
+     * @param partitionName 分区名，如 p20231225
+     * @param lessThanDay   分区上界（不含），yyyy-MM-dd
+     */
+    @Update("alter table interface_invoke_log reorganize partition pmax into (" +
+            "partition ${partitionName} values less than (to_days('${lessThanDay}')), " +
+            "partition pmax values less than maxvalue)")
+    void addPartition(@Param("partitionName") String partitionName, @Param("lessThanDay") String lessThanDay);
+
+    /**
+     * 删除分区
+     *
+     * @param partitionName 分区名
+     */
+    @Update("alter table interface_invoke_log drop partition ${partitionName}")
+    void dropPartition(@Param("partitionName") String partitionName);
+}
@@ -0,0 +1,71 @@
+package com.qimu.qiapibackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.qimu.qiapibackend.model.entity.InterfaceInvokeRollup;
+import com.qimu.qiapibackend.model.vo.InvokeTopUserVo;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 10:02:51
+ * @Version: 1.0
+ * @Description: 接口调用统计映射器
+ */
+public interface InterfaceInvokeRollupMapper extends BaseMapper<InterfaceInvokeRollup> {
+
+    /**
+     * 批量写入统计，已存在时覆盖为合并后的值
+     * 依赖唯一键 uni_granularity_interfaceId_userId_bucketTime
+     *
+     * @param rollupList 统计
+     * @return int
+     */
+    @Insert({"<script>",
+            "insert into interface_invoke_rollup (granularity, bucketTime, interfaceId, userId, totalCount, errorCount, totalBytes, latencySketch) values ",
+            "<foreach collection='rollupList' item='item' separator=','>",
+            "(#{item.granularity}, #{item.bucketTime}, #{item.interfaceId}, #{item.userId}, ",
+            "#{item.totalCount}, #{item.errorCount}, #{item.totalBytes}, #{item.latencySketch})",
+            "</foreach>",
+            " on duplicate key update totalCount = values(totalCount), errorCount = values(errorCount), ",
+            "totalBytes = values(totalBytes), latencySketch = values(latencySketch)",
+            "</script>"})
+    int batchUpsert(@Param("rollupList") List<InterfaceInvokeRollup> rollupList);
+
+    /**
+     * 按用户汇总调用量排行
+     *
+     * @param granularity 统计粒度
+     * @param interfaceId 接口id，为空时统计全部接口
+     * @param startTime   开始时间
+     * @param endTime     结束时间
+     * @param limit       条数
+     * @return {@link List}<{@link InvokeTopUserVo}>
+     */
+    @Select({"<script>",
+            "select userId, sum(totalCount) as totalCount, sum(errorCount) as errorCount, sum(totalBytes) as totalBytes ",
+            "from interface_invoke_rollup ",
+            "where granularity = #{granularity} and bucketTime &gt;= #{startTime} and bucketTime &lt; #{endTime} and userId &gt; 0 ",
+            "<if test='interfaceId != null'> and interfaceId = #{interfaceId} </if>",
+            "group by userId order by totalCount desc limit #{limit}",
+            "</script>"})
+    List<InvokeTopUserVo> selectTopUsers(@Param("granularity") String granularity, @Param("interfaceId") Long interfaceId,
+                                         @Param("startTime") Date startTime, @Param("endTime") Date endTime,
+                                         @Param("limit") int limit);
+
+    /**
+     * 删除过期统计
+     *
+     * @param granularity 统计粒度
+     * @param before      该时间之前的统计
+     * @param limit       单次删除条数
+     * @return int
+     */
+    @Delete("delete from interface_invoke_rollup where granularity = #{granularity} and bucketTime < #{before} limit #{limit}")
+    int deleteExpired(@Param("granularity") String granularity, @Param("before") Date before, @Param("limit") int limit);
+}
@@ -0,0 +1,59 @@
+package com.qimu.qiapibackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.qimu.qiapibackend.model.entity.MailOutbox;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/30 09:20:13
+ * @Version: 1.0
+ * @Description: 待发邮件映射器
+ */
+public interface MailOutboxMapper extends BaseMapper<MailOutbox> {
+
+    /**
+     * 查询到期待发送的邮件id
+     *
+     * @param now   当前时间
+     * @param limit 条数
+     * @return {@link List}<{@link Long}>
+     */
+    @Select("select id from mail_outbox where status = 0 and nextRetryTime <= #{now} order by nextRetryTime limit #{limit}")
+    List<Long> listDueIds(@Param("now") Date now, @Param("limit") int limit);
+
+    /**
+     * 抢占一封待发送邮件，多节点只有一个能更新成功
+     *
+     * @param id id
+     * @return int
+     */
+    @Update("update mail_outbox set status = 1 where id = #{id} and status = 0")
+    int claim(@Param("id") long id);
+
+    /**
+     * 发送中超时（节点宕机）的邮件重新置为待发送
+     *
+     * @param before 该时间之前进入发送中的邮件
+     * @return int
+     */
+    @Update("update mail_outbox set status = 0, nextRetryTime = now() where status = 1 and updateTime < #{before}")
+    int releaseStuck(@Param("before") Date before);
+
+    /**
+     * 删除过期的已结束邮件
+     *
+     * @param status 状态，只能是已发送或发送失败
+     * @param before 该时间之前最后更新的邮件
+     * @param limit  单次删除条数
+     * @return int
+     */
+    @Delete("delete from mail_outbox where status = #{status} and updateTime < #{before} limit #{limit}")
+    int deleteFinished(@Param("status") int status, @Param("before") Date before, @Param("limit") int limit);
+}
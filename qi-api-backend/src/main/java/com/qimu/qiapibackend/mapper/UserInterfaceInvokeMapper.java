@@ -2,6 +2,12 @@ package com.qimu.qiapibackend.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.qimu.qiapicommon.model.entity.UserInterfaceInvoke;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
 
 
 /**
@@ -12,8 +18,53 @@ import com.qimu.qiapicommon.model.entity.UserInterfaceInvoke;
  */
 public interface UserInterfaceInvokeMapper extends BaseMapper<UserInterfaceInvoke> {
 
-}
-
+    /**
+     * 累加调用次数，(userId, interfaceId) 不存在时插入
+     * 依赖唯一键 uni_userId_interfaceId
+     *
+     * @param id          新记录id
+     * @param userId      用户id
+     * @param interfaceId 接口id
+     * @param count       增加次数
+     * @return int
+     */
+    @Insert("insert into user_interface_invoke (id, userId, interfaceId, totalInvokes) " +
+            "values (#{id}, #{userId}, #{interfaceId}, #{count}) " +
+            "on duplicate key update totalInvokes = totalInvokes + values(totalInvokes)")
+    int upsertTotalInvokes(@Param("id") long id, @Param("userId") long userId,
+                           @Param("interfaceId") long interfaceId, @Param("count") long count);
 
+    /**
+     * 批量累加调用次数，(userId, interfaceId) 不存在时插入
+     * 依赖唯一键 uni_userId_interfaceId
+     *
+     * @param invokeList 调用次数增量
+     * @return int
+     */
+    @Insert({"<script>",
+            "insert into user_interface_invoke (id, userId, interfaceId, totalInvokes) values ",
+            "<foreach collection='invokeList' item='item' separator=','>",
+            "(#{item.id}, #{item.userId}, #{item.interfaceId}, #{item.totalInvokes})",
+            "</foreach>",
+            " on duplicate key update totalInvokes = totalInvokes + values(totalInvokes)",
+            "</script>"})
+    int batchUpsertTotalInvokes(@Param("invokeList") List<UserInterfaceInvoke> invokeList);
 
+    /**
+     * 登记调用次数落库批次，与增量在同一事务中执行
+     *
+     * @param batchId 批次id
+     * @return int 批次已登记过时返回 0
+     */
+    @Insert("insert ignore into invoke_flush_batch (batchId) values (#{batchId})")
+    int insertFlushBatch(@Param("batchId") String batchId);
 
+    /**
+     * 删除过期的落库批次
+     *
+     * @param before 该时间之前的批次
+     * @return int
+     */
+    @Delete("delete from invoke_flush_batch where createTime < #{before}")
+    int deleteFlushBatchBefore(@Param("before") Date before);
+}
@@ -0,0 +1,37 @@
+package com.qimu.qiapibackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.qimu.qiapibackend.model.entity.WalletLedger;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/24 09:45:03
+ * @Version: 1.0
+ * @Description: 钱包流水映射器
+ */
+public interface WalletLedgerMapper extends BaseMapper<WalletLedger> {
+
+    /**
+     * 查询实时余额：已合并余额 + 未合并流水，单条语句保证与合并任务读到同一快照
+     *
+     * @param userId 用户id
+     * @return {@link Long}
+     */
+    @Select("select u.balance + coalesce(sum(l.amount), 0) from user u " +
+            "left join wallet_ledger l on l.userId = u.id and l.compacted = 0 " +
+            "where u.id = #{userId} and u.isDelete = 0 group by u.id, u.balance")
+    Long selectEffectiveBalance(@Param("userId") long userId);
+
+    /**
+     * 把流水增量合并到用户余额
+     *
+     * @param userId 用户id
+     * @param amount 增量
+     * @return int
+     */
+    @Update("update user set balance = balance + #{amount} where id = #{userId}")
+    int addUserBalance(@Param("userId") long userId, @Param("amount") long amount);
+}
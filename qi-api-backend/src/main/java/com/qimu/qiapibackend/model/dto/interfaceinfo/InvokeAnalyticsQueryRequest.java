@@ -0,0 +1,40 @@
+package com.qimu.qiapibackend.model.dto.interfaceinfo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 10:25:47
+ * @Version: 1.0
+ * @Description: 调用统计查询请求
+ */
+@Data
+public class InvokeAnalyticsQueryRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 接口id，排行查询时可为空
+     */
+    private Long interfaceId;
+    /**
+     * 用户id，仅管理员可指定，0 或为空表示全部用户
+     */
+    private Long userId;
+    /**
+     * 统计粒度 MINUTE/HOUR/DAY
+     */
+    private String granularity;
+    /**
+     * 开始时间（毫秒时间戳）
+     */
+    private Long startTime;
+    /**
+     * 结束时间（毫秒时间戳）
+     */
+    private Long endTime;
+    /**
+     * 排行条数
+     */
+    private Integer limit;
+}
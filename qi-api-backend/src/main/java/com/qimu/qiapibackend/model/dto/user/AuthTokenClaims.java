@@ -0,0 +1,37 @@
+package com.qimu.qiapibackend.model.dto.user;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/29 09:18:44
+ * @Version: 1.0
+ * @Description: 访问令牌携带的信息
+ */
+@Data
+public class AuthTokenClaims implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * 令牌id
+     */
+    private String tokenId;
+
+    private Long userId;
+
+    private String userRole;
+    /**
+     * 签发时的用户信息版本号
+     */
+    private Long version;
+    /**
+     * 签发时间（毫秒）
+     */
+    private Long issuedAt;
+    /**
+     * 过期时间（毫秒）
+     */
+    private Long expireAt;
+}
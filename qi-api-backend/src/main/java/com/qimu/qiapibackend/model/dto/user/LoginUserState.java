@@ -0,0 +1,25 @@
+package com.qimu.qiapibackend.model.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/28 09:20:41
+ * @Version: 1.0
+ * @Description: 会话中的登录态，只保存用户id和登录时的用户信息版本号，用户信息每次按id从缓存读取
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginUserState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long userId;
+
+    private Long version;
+}
@@ -0,0 +1,64 @@
+package com.qimu.qiapibackend.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 09:55:40
+ * @Version: 1.0
+ * @Description: 接口调用统计表（分钟/小时/天）
+ */
+@TableName(value = "interface_invoke_rollup")
+@Data
+public class InterfaceInvokeRollup implements Serializable {
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+    /**
+     * id
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    /**
+     * 统计粒度 MINUTE/HOUR/DAY
+     */
+    private String granularity;
+    /**
+     * 统计桶开始时间
+     */
+    private Date bucketTime;
+    /**
+     * 接口id
+     */
+    private Long interfaceId;
+    /**
+     * 用户id，0 表示该接口全部用户
+     */
+    private Long userId;
+    /**
+     * 调用次数
+     */
+    private Long totalCount;
+    /**
+     * 失败次数（状态码 >= 400）
+     */
+    private Long errorCount;
+    /**
+     * 响应字节数
+     */
+    private Long totalBytes;
+    /**
+     * 耗时分布
+     */
+    private String latencySketch;
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+}
@@ -0,0 +1,64 @@
+package com.qimu.qiapibackend.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/30 09:14:52
+ * @Version: 1.0
+ * @Description: 待发邮件表
+ */
+@TableName(value = "mail_outbox")
+@Data
+public class MailOutbox implements Serializable {
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+    /**
+     * id
+     */
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+    /**
+     * 收件人
+     */
+    private String toAddress;
+    /**
+     * 主题
+     */
+    private String subject;
+    /**
+     * 正文（html）
+     */
+    private String content;
+    /**
+     * 状态 0-待发送 1-发送中 2-已发送 3-发送失败
+     */
+    private Integer status;
+    /**
+     * 已重试次数
+     */
+    private Integer retryCount;
+    /**
+     * 下次发送时间
+     */
+    private Date nextRetryTime;
+    /**
+     * 最近一次失败原因
+     */
+    private String lastError;
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+}
@@ -0,0 +1,48 @@
+package com.qimu.qiapibackend.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/24 09:40:12
+ * @Version: 1.0
+ * @Description: 钱包流水表（只追加）
+ */
+@TableName(value = "wallet_ledger")
+@Data
+public class WalletLedger implements Serializable {
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+    /**
+     * id
+     */
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+    /**
+     * 用户id
+     */
+    private Long userId;
+    /**
+     * 变动积分，增加为正，扣除为负
+     */
+    private Integer amount;
+    /**
+     * 业务类型
+     */
+    private String bizType;
+    /**
+     * 是否已合并到用户余额（0- 未合并 1- 已合并）
+     */
+    private Integer compacted;
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+}
@@ -0,0 +1,57 @@
+package com.qimu.qiapibackend.model.enums;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/30 09:10:26
+ * @Version: 1.0
+ * @Description: 待发邮件状态枚举
+ */
+public enum MailOutboxStatusEnum {
+
+    /**
+     * 待发送
+     */
+    PENDING("待发送", 0),
+    /**
+     * 发送中
+     */
+    SENDING("发送中", 1),
+    /**
+     * 已发送
+     */
+    SENT("已发送", 2),
+    /**
+     * 重试耗尽，进入死信
+     */
+    DEAD("发送失败", 3);
+
+    private final String text;
+
+    private final int value;
+
+    MailOutboxStatusEnum(String text, int value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 获取值
+     *
+     * @return {@link List}<{@link Integer}>
+     */
+    public static List<Integer> getValues() {
+        return Arrays.stream(values()).map(item -> item.value).collect(Collectors.toList());
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
@@ -19,7 +19,11 @@ public enum PayTypeStatusEnum {
     /**
      * 支付宝支付
      */
-    ALIPAY("支付宝支付", "ALIPAY");
+    ALIPAY("支付宝支付", "ALIPAY"),
+    /**
+     * 模拟支付，仅用于本地联调和压测，需开启 qi.pay.mock.enabled
+     */
+    MOCK("模拟支付", "MOCK");
 
     private final String text;
 
@@ -40,6 +44,21 @@ public enum PayTypeStatusEnum {
         return Arrays.stream(values()).map(item -> item.value).collect(Collectors.toList());
     }
 
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 值
+     * @return {@link PayTypeStatusEnum}
+     */
+    public static PayTypeStatusEnum getEnumByValue(String value) {
+        for (PayTypeStatusEnum anEnum : values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+
     public String getValue() {
         return value;
     }
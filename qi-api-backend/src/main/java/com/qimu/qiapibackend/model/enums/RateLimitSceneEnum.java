@@ -0,0 +1,68 @@
+package com.qimu.qiapibackend.model.enums;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/02 14:05:33
+ * @Version: 1.0
+ * @Description: 限流场景枚举，默认规则可在 qi.rate-limit.rules 中按 value 覆盖；登录失败场景只统计失败次数
+ */
+public enum RateLimitSceneEnum {
+
+    CAPTCHA_EMAIL("验证码-邮箱", "captcha-email", 1, 60),
+    CAPTCHA_IP("验证码-IP", "captcha-ip", 10, 600),
+    LOGIN_ACCOUNT("登录失败-IP+账号", "login-account", 10, 600),
+    LOGIN_EMAIL("登录失败-IP+邮箱", "login-email", 10, 600),
+    LOGIN_EMAIL_CAPTCHA("登录失败-邮箱验证码", "login-email-captcha", 5, 600),
+    LOGIN_IP("登录-IP", "login-ip", 30, 60),
+    REGISTER_IP("注册-IP", "register-ip", 10, 3600);
+
+    private final String text;
+
+    private final String value;
+
+    /**
+     * 窗口内允许的次数
+     */
+    private final int limit;
+
+    /**
+     * 窗口长度（秒）
+     */
+    private final int windowSeconds;
+
+    RateLimitSceneEnum(String text, String value, int limit, int windowSeconds) {
+        this.text = text;
+        this.value = value;
+        this.limit = limit;
+        this.windowSeconds = windowSeconds;
+    }
+
+    /**
+     * 获取值列表
+     *
+     * @return {@link List}<{@link String}>
+     */
+    public static List<String> getValues() {
+        return Arrays.stream(values()).map(item -> item.value).collect(Collectors.toList());
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+}
@@ -0,0 +1,92 @@
+package com.qimu.qiapibackend.model.enums;
+
+import cn.hutool.core.date.DateField;
+import cn.hutool.core.date.DateUtil;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 09:48:26
+ * @Version: 1.0
+ * @Description: 调用统计粒度枚举
+ */
+public enum RollupGranularityEnum {
+
+    /**
+     * 分钟
+     */
+    MINUTE("分钟", "MINUTE", DateField.MINUTE, 60 * 1000L),
+    /**
+     * 小时
+     */
+    HOUR("小时", "HOUR", DateField.HOUR_OF_DAY, 60 * 60 * 1000L),
+    /**
+     * 天
+     */
+    DAY("天", "DAY", DateField.DAY_OF_MONTH, 24 * 60 * 60 * 1000L);
+
+    private final String text;
+
+    private final String value;
+
+    private final DateField dateField;
+
+    private final long millis;
+
+    RollupGranularityEnum(String text, String value, DateField dateField, long millis) {
+        this.text = text;
+        this.value = value;
+        this.dateField = dateField;
+        this.millis = millis;
+    }
+
+    /**
+     * 获取值列表
+     *
+     * @return {@link List}<{@link String}>
+     */
+    public static List<String> getValues() {
+        return Arrays.stream(values()).map(item -> item.value).collect(Collectors.toList());
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 值
+     * @return {@link RollupGranularityEnum}
+     */
+    public static RollupGranularityEnum getEnumByValue(String value) {
+        for (RollupGranularityEnum anEnum : values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 截断到所在统计桶的开始时间
+     *
+     * @param date 时间
+     * @return {@link Date}
+     */
+    public Date truncate(Date date) {
+        return DateUtil.truncate(date, dateField);
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+}
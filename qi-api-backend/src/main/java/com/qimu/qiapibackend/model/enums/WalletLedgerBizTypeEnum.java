@@ -0,0 +1,61 @@
+package com.qimu.qiapibackend.model.enums;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/24 09:42:30
+ * @Version: 1.0
+ * @Description: 钱包流水业务类型枚举
+ */
+public enum WalletLedgerBizTypeEnum {
+
+    /**
+     * 充值
+     */
+    RECHARGE("充值", "RECHARGE"),
+    /**
+     * 接口调用
+     */
+    INVOKE("接口调用", "INVOKE"),
+    /**
+     * 每日签到
+     */
+    CHECK_IN("每日签到", "CHECK_IN"),
+    /**
+     * 邀请奖励
+     */
+    INVITE("邀请奖励", "INVITE"),
+    /**
+     * 管理员调整
+     */
+    ADMIN("管理员调整", "ADMIN");
+
+    private final String text;
+
+    private final String value;
+
+    WalletLedgerBizTypeEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 获取值列表
+     *
+     * @return {@link List}<{@link String}>
+     */
+    public static List<String> getValues() {
+        return Arrays.stream(values()).map(item -> item.value).collect(Collectors.toList());
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,57 @@
+package com.qimu.qiapibackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/12 10:02:17
+ * @Version: 1.0
+ * @Description: 接口健康状况
+ */
+@Data
+public class InterfaceHealthVo implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 接口id
+     */
+    private Long interfaceInfoId;
+    /**
+     * 窗口内探测次数
+     */
+    private Integer samples;
+    /**
+     * 窗口内失败率
+     */
+    private Double errorRate;
+    /**
+     * 耗时 p50（毫秒）
+     */
+    private Long p50Latency;
+    /**
+     * 耗时 p95（毫秒）
+     */
+    private Long p95Latency;
+    /**
+     * 最近一次探测时间
+     */
+    private Date lastProbeTime;
+    /**
+     * 最近一次探测耗时（毫秒）
+     */
+    private Long lastLatency;
+    /**
+     * 最近一次探测是否成功
+     */
+    private Boolean lastSuccess;
+    /**
+     * 最近一次失败原因
+     */
+    private String lastError;
+    /**
+     * 是否满足 SLO
+     */
+    private Boolean healthy;
+}
@@ -0,0 +1,41 @@
+package com.qimu.qiapibackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 10:20:33
+ * @Version: 1.0
+ * @Description: 调用趋势
+ */
+@Data
+public class InvokeRollupVo implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 统计桶开始时间
+     */
+    private Date bucketTime;
+    /**
+     * 调用次数
+     */
+    private Long totalCount;
+    /**
+     * 失败次数
+     */
+    private Long errorCount;
+    /**
+     * 响应字节数
+     */
+    private Long totalBytes;
+    /**
+     * 耗时 p50（毫秒）
+     */
+    private Long p50Latency;
+    /**
+     * 耗时 p95（毫秒）
+     */
+    private Long p95Latency;
+}
@@ -0,0 +1,32 @@
+package com.qimu.qiapibackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 10:22:10
+ * @Version: 1.0
+ * @Description: 调用量排行
+ */
+@Data
+public class InvokeTopUserVo implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 用户id
+     */
+    private Long userId;
+    /**
+     * 调用次数
+     */
+    private Long totalCount;
+    /**
+     * 失败次数
+     */
+    private Long errorCount;
+    /**
+     * 响应字节数
+     */
+    private Long totalBytes;
+}
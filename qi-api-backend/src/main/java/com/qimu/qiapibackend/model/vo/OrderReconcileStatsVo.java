@@ -0,0 +1,73 @@
+package com.qimu.qiapibackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/18 09:52:40
+ * @Version: 1.0
+ * @Description: 到期订单处理统计（当前节点）
+ */
+@Data
+public class OrderReconcileStatsVo implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 节点id
+     */
+    private String nodeId;
+    /**
+     * 存活节点数
+     */
+    private Integer liveNodes;
+    /**
+     * 当前节点认领的分区
+     */
+    private List<Integer> ownedPartitions;
+    /**
+     * 认领分区中已到期未取出的订单数
+     */
+    private Long backlog;
+    /**
+     * 认领分区中最早到期订单已等待的时长（毫秒），没有积压时为 0
+     */
+    private Long oldestLagMillis;
+    /**
+     * 正在处理和排队的订单数
+     */
+    private Integer inFlight;
+    /**
+     * 最近一个统计窗口的时长（秒）
+     */
+    private Long windowSeconds;
+    /**
+     * 最近一个窗口每秒处理订单数
+     */
+    private Double throughput;
+    /**
+     * 最近一个窗口从到期到开始处理的延迟 p50（毫秒）
+     */
+    private Long lagP50;
+    /**
+     * 最近一个窗口延迟 p95（毫秒）
+     */
+    private Long lagP95;
+    /**
+     * 最近一个窗口查单、关单耗时 p95（毫秒）
+     */
+    private Long processP95;
+    /**
+     * 启动以来处理完成的订单数
+     */
+    private Long succeeded;
+    /**
+     * 启动以来处理失败并重新入队的次数
+     */
+    private Long failed;
+    /**
+     * 启动以来无需处理的订单数（已支付、已关闭、支付方式不可用）
+     */
+    private Long skipped;
+}
@@ -75,4 +75,8 @@ public class UserVO implements Serializable {
      * 更新时间
      */
     private Date updateTime;
+    /**
+     * 访问令牌，仅开启令牌登录时在登录接口返回
+     */
+    private String token;
 }
\ No newline at end of file
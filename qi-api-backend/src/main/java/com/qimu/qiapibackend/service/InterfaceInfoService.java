@@ -27,4 +27,13 @@ public interface InterfaceInfoService extends IService<InterfaceInfo> {
      * @return boolean
      */
     boolean updateTotalInvokes(long interfaceId);
+
+    /**
+     * 批量增加总调用数
+     *
+     * @param interfaceId 接口id
+     * @param count       增加次数
+     * @return boolean
+     */
+    boolean updateTotalInvokes(long interfaceId, long count);
 }
@@ -0,0 +1,34 @@
+package com.qimu.qiapibackend.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.qimu.qiapibackend.model.dto.interfaceinfo.InvokeAnalyticsQueryRequest;
+import com.qimu.qiapibackend.model.entity.InterfaceInvokeRollup;
+import com.qimu.qiapibackend.model.vo.InvokeRollupVo;
+import com.qimu.qiapibackend.model.vo.InvokeTopUserVo;
+
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 11:05:09
+ * @Version: 1.0
+ * @Description: 接口调用统计服务
+ */
+public interface InterfaceInvokeRollupService extends IService<InterfaceInvokeRollup> {
+
+    /**
+     * 查询调用趋势，每个时间桶一行
+     *
+     * @param queryRequest 查询请求，需指定接口id
+     * @return {@link List}<{@link InvokeRollupVo}>
+     */
+    List<InvokeRollupVo> listTrend(InvokeAnalyticsQueryRequest queryRequest);
+
+    /**
+     * 查询调用量最高的用户
+     *
+     * @param queryRequest 查询请求
+     * @return {@link List}<{@link InvokeTopUserVo}>
+     */
+    List<InvokeTopUserVo> listTopUsers(InvokeAnalyticsQueryRequest queryRequest);
+}
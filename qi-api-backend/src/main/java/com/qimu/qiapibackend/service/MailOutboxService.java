@@ -0,0 +1,22 @@
+package com.qimu.qiapibackend.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.qimu.qiapibackend.model.entity.MailOutbox;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/30 09:32:05
+ * @Version: 1.0
+ * @Description: 待发邮件服务
+ */
+public interface MailOutboxService extends IService<MailOutbox> {
+
+    /**
+     * 邮件写入待发表后立即返回，由后台线程发送；在事务中调用时随事务一起提交
+     *
+     * @param toAddress 收件人
+     * @param subject   主题
+     * @param content   正文（html）
+     */
+    void enqueue(String toAddress, String subject, String content);
+}
@@ -4,6 +4,7 @@ package com.qimu.qiapibackend.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.qimu.qiapibackend.model.dto.user.*;
 import com.qimu.qiapibackend.model.entity.User;
+import com.qimu.qiapibackend.model.enums.WalletLedgerBizTypeEnum;
 import com.qimu.qiapibackend.model.vo.UserVO;
 
 import javax.servlet.http.HttpServletRequest;
@@ -53,7 +54,7 @@ public interface UserService extends IService<User> {
 
     /**
      * 是管理
-     * 是否为管理员
+     * 是否为管理员，未登录返回 false
      *
      * @param request 请求
      * @return boolean
@@ -112,6 +113,16 @@ public interface UserService extends IService<User> {
      */
     boolean reduceWalletBalance(Long userId, Integer reduceScore);
 
+    /**
+     * 添加钱包余额
+     *
+     * @param userId    用户id
+     * @param addPoints 添加点
+     * @param bizType   业务类型
+     * @return boolean
+     */
+    boolean addWalletBalance(Long userId, Integer addPoints, WalletLedgerBizTypeEnum bizType);
+
     /**
      * 用户电子邮件登录
      *
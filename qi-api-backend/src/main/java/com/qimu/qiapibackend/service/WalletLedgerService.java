@@ -0,0 +1,50 @@
+package com.qimu.qiapibackend.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.qimu.qiapibackend.model.entity.WalletLedger;
+import com.qimu.qiapibackend.model.enums.WalletLedgerBizTypeEnum;
+
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/24 09:52:41
+ * @Version: 1.0
+ * @Description: 钱包流水服务
+ */
+public interface WalletLedgerService extends IService<WalletLedger> {
+
+    /**
+     * 追加一条流水
+     *
+     * @param userId  用户id
+     * @param amount  变动积分，增加为正，扣除为负
+     * @param bizType 业务类型
+     * @return boolean
+     */
+    boolean append(Long userId, Integer amount, WalletLedgerBizTypeEnum bizType);
+
+    /**
+     * 批量追加流水
+     *
+     * @param walletLedgerList 流水
+     * @return boolean
+     */
+    boolean appendBatch(List<WalletLedger> walletLedgerList);
+
+    /**
+     * 获取实时余额（优先读缓存）
+     *
+     * @param userId 用户id
+     * @return int
+     */
+    int getBalance(Long userId);
+
+    /**
+     * 把一批未合并的流水合并到用户余额
+     *
+     * @param batchSize 批大小
+     * @return int 合并条数
+     */
+    int compact(int batchSize);
+}
@@ -20,8 +20,8 @@ import com.ijpay.alipay.AliPayApi;
 import com.ijpay.alipay.AliPayApiConfigKit;
 import com.qimu.qiapibackend.common.ErrorCode;
 import com.qimu.qiapibackend.config.AliPayAccountConfig;
-import com.qimu.qiapibackend.config.EmailConfig;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.EmailTemplateRegistry;
 import com.qimu.qiapibackend.mapper.ProductOrderMapper;
 import com.qimu.qiapibackend.model.alipay.AliPayAsyncResponse;
 import com.qimu.qiapibackend.model.entity.ProductInfo;
@@ -33,18 +33,17 @@ import com.qimu.qiapibackend.model.enums.PaymentStatusEnum;
 import com.qimu.qiapibackend.model.vo.PaymentInfoVo;
 import com.qimu.qiapibackend.model.vo.ProductOrderVo;
 import com.qimu.qiapibackend.model.vo.UserVO;
+import com.qimu.qiapibackend.service.MailOutboxService;
 import com.qimu.qiapibackend.service.PaymentInfoService;
 import com.qimu.qiapibackend.service.ProductOrderService;
 import com.qimu.qiapibackend.service.RechargeActivityService;
 import com.qimu.qiapibackend.service.UserService;
-import com.qimu.qiapibackend.utils.EmailUtil;
 import com.qimu.qiapibackend.utils.RedissonLockUtil;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -55,6 +54,7 @@ import java.math.RoundingMode;
 import java.util.Date;
 import java.util.Map;
 
+import static com.qimu.qiapibackend.constant.EmailConstant.EMAIL_PAY_SUCCESS_SUBJECT;
 import static com.qimu.qiapibackend.constant.PayConstant.*;
 import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.ALIPAY;
 import static com.qimu.qiapibackend.model.enums.PaymentStatusEnum.*;
@@ -71,9 +71,9 @@ import static com.qimu.qiapibackend.model.enums.PaymentStatusEnum.*;
 @Qualifier("ALIPAY")
 public class AlipayOrderServiceImpl extends ServiceImpl<ProductOrderMapper, ProductOrder> implements ProductOrderService {
     @Resource
-    private EmailConfig emailConfig;
+    private MailOutboxService mailOutboxService;
     @Resource
-    private JavaMailSender mailSender;
+    private EmailTemplateRegistry emailTemplateRegistry;
     @Resource
     private AliPayAccountConfig aliPayAccountConfig;
     @Resource
@@ -271,9 +271,9 @@ public class AlipayOrderServiceImpl extends ServiceImpl<ProductOrderMapper, Prod
         if (StringUtils.isNotBlank(user.getEmail())) {
             try {
                 ProductOrder productOrderByOutTradeNo = this.getProductOrderByOutTradeNo(productOrder.getOrderNo());
-                new EmailUtil().sendPaySuccessEmail(user.getEmail(), mailSender, emailConfig, productOrderByOutTradeNo.getOrderName(),
-                        String.valueOf(orderTotal));
-                log.info("发送邮件：{}，成功", user.getEmail());
+                mailOutboxService.enqueue(user.getEmail(), EMAIL_PAY_SUCCESS_SUBJECT, emailTemplateRegistry.buildPaySuccessEmailContent(
+                        productOrderByOutTradeNo.getOrderName(), String.valueOf(orderTotal)));
+                log.info("邮件：{}，已加入待发送", user.getEmail());
             } catch (Exception e) {
                 log.error("发送邮件：{}，失败：{}", user.getEmail(), e.getMessage());
             }
@@ -4,13 +4,20 @@ import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.qimu.qiapibackend.common.ErrorCode;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.CatalogSearchManager;
+import com.qimu.qiapibackend.manager.CatalogSnapshotManager;
+import com.qimu.qiapibackend.manager.ChangeEventPublisher;
 import com.qimu.qiapibackend.mapper.InterfaceInfoMapper;
 import com.qimu.qiapibackend.service.InterfaceInfoService;
+import com.qimu.qiapicommon.model.emums.ChangeEntityTypeEnum;
 import com.qimu.qiapicommon.model.entity.InterfaceInfo;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.io.Serializable;
+
 /**
  * @Author: QiMu
  * @Date: 2023/09/08 08:52:13
@@ -19,6 +26,13 @@ import org.springframework.stereotype.Service;
  */
 @Service
 public class InterfaceInfoServiceImpl extends ServiceImpl<InterfaceInfoMapper, InterfaceInfo> implements InterfaceInfoService {
+    @Resource
+    private CatalogSearchManager catalogSearchManager;
+    @Resource
+    private CatalogSnapshotManager catalogSnapshotManager;
+    @Resource
+    private ChangeEventPublisher changeEventPublisher;
+
     @Override
     public void validInterfaceInfo(InterfaceInfo interfaceInfo, boolean add) {
         if (interfaceInfo == null) {
@@ -63,13 +77,47 @@ public class InterfaceInfoServiceImpl extends ServiceImpl<InterfaceInfoMapper, I
 
     @Override
     public boolean updateTotalInvokes(long interfaceId) {
+        return updateTotalInvokes(interfaceId, 1);
+    }
+
+    @Override
+    public boolean updateTotalInvokes(long interfaceId, long count) {
         LambdaUpdateWrapper<InterfaceInfo> invokeLambdaUpdateWrapper = new LambdaUpdateWrapper<>();
         invokeLambdaUpdateWrapper.eq(InterfaceInfo::getId, interfaceId);
-        invokeLambdaUpdateWrapper.setSql("totalInvokes = totalInvokes + 1");
+        invokeLambdaUpdateWrapper.setSql("totalInvokes = totalInvokes + " + count);
         return this.update(invokeLambdaUpdateWrapper);
     }
-}
-
 
+    @Override
+    public boolean save(InterfaceInfo interfaceInfo) {
+        boolean result = super.save(interfaceInfo);
+        if (result) {
+            catalogSnapshotManager.invalidateInterfaces();
+            catalogSearchManager.refreshInterface(interfaceInfo.getId());
+            changeEventPublisher.publish(ChangeEntityTypeEnum.INTERFACE, interfaceInfo.getId());
+        }
+        return result;
+    }
 
+    @Override
+    public boolean updateById(InterfaceInfo interfaceInfo) {
+        boolean result = super.updateById(interfaceInfo);
+        if (result) {
+            catalogSnapshotManager.invalidateInterfaces();
+            catalogSearchManager.refreshInterface(interfaceInfo.getId());
+            changeEventPublisher.publish(ChangeEntityTypeEnum.INTERFACE, interfaceInfo.getId());
+        }
+        return result;
+    }
 
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean result = super.removeById(id);
+        if (result) {
+            catalogSnapshotManager.invalidateInterfaces();
+            catalogSearchManager.refreshInterface(Long.parseLong(id.toString()));
+            changeEventPublisher.publish(ChangeEntityTypeEnum.INTERFACE, Long.parseLong(id.toString()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+package com.qimu.qiapibackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.mapper.InterfaceInvokeRollupMapper;
+import com.qimu.qiapibackend.model.dto.interfaceinfo.InvokeAnalyticsQueryRequest;
+import com.qimu.qiapibackend.model.entity.InterfaceInvokeRollup;
+import com.qimu.qiapibackend.model.enums.RollupGranularityEnum;
+import com.qimu.qiapibackend.model.vo.InvokeRollupVo;
+import com.qimu.qiapibackend.model.vo.InvokeTopUserVo;
+import com.qimu.qiapibackend.service.InterfaceInvokeRollupService;
+import com.qimu.qiapibackend.utils.LatencySketch;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.qimu.qiapibackend.manager.InvokeRollupManager.ALL_USER_ID;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 11:10:42
+ * @Version: 1.0
+ * @Description: 接口调用统计服务impl
+ */
+@Service
+public class InterfaceInvokeRollupServiceImpl extends ServiceImpl<InterfaceInvokeRollupMapper, InterfaceInvokeRollup>
+        implements InterfaceInvokeRollupService {
+    /**
+     * 单次查询最多时间桶数
+     */
+    private static final int MAX_BUCKETS = 1440;
+    /**
+     * 未指定时间范围时默认查询的时间桶数
+     */
+    private static final int DEFAULT_BUCKETS = 60;
+    private static final int DEFAULT_TOP_LIMIT = 10;
+    private static final int MAX_TOP_LIMIT = 100;
+
+    @Override
+    public List<InvokeRollupVo> listTrend(InvokeAnalyticsQueryRequest queryRequest) {
+        if (queryRequest.getInterfaceId() == null || queryRequest.getInterfaceId() <= 0) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "请指定接口");
+        }
+        RollupGranularityEnum granularity = getGranularity(queryRequest);
+        Date[] range = getTimeRange(queryRequest, granularity);
+        long userId = queryRequest.getUserId() == null ? ALL_USER_ID : queryRequest.getUserId();
+        // 命中唯一键 (granularity, interfaceId, userId, bucketTime) 的范围扫描，每个时间桶一行
+        LambdaQueryWrapper<InterfaceInvokeRollup> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(InterfaceInvokeRollup::getGranularity, granularity.getValue())
+                .eq(InterfaceInvokeRollup::getInterfaceId, queryRequest.getInterfaceId())
+                .eq(InterfaceInvokeRollup::getUserId, userId)
+                .ge(InterfaceInvokeRollup::getBucketTime, range[0])
+                .lt(InterfaceInvokeRollup::getBucketTime, range[1])
+                .orderByAsc(InterfaceInvokeRollup::getBucketTime);
+        List<InvokeRollupVo> trend = new ArrayList<>();
+        for (InterfaceInvokeRollup rollup : this.list(queryWrapper)) {
+            LatencySketch sketch = LatencySketch.decode(rollup.getLatencySketch());
+            InvokeRollupVo rollupVo = new InvokeRollupVo();
+            rollupVo.setBucketTime(rollup.getBucketTime());
+            rollupVo.setTotalCount(rollup.getTotalCount());
+            rollupVo.setErrorCount(rollup.getErrorCount());
+            rollupVo.setTotalBytes(rollup.getTotalBytes());
+            rollupVo.setP50Latency(sketch.quantile(0.5));
+            rollupVo.setP95Latency(sketch.quantile(0.95));
+            trend.add(rollupVo);
+        }
+        return trend;
+    }
+
+    @Override
+    public List<InvokeTopUserVo> listTopUsers(InvokeAnalyticsQueryRequest queryRequest) {
+        RollupGranularityEnum granularity = getGranularity(queryRequest);
+        Date[] range = getTimeRange(queryRequest, granularity);
+        int limit = queryRequest.getLimit() == null || queryRequest.getLimit() <= 0 ? DEFAULT_TOP_LIMIT
+                : Math.min(queryRequest.getLimit(), MAX_TOP_LIMIT);
+        return baseMapper.selectTopUsers(granularity.getValue(), queryRequest.getInterfaceId(), range[0], range[1], limit);
+    }
+
+    private static RollupGranularityEnum getGranularity(InvokeAnalyticsQueryRequest queryRequest) {
+        if (queryRequest.getGranularity() == null) {
+            return RollupGranularityEnum.HOUR;
+        }
+        RollupGranularityEnum granularity = RollupGranularityEnum.getEnumByValue(queryRequest.getGranularity());
+        if (granularity == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "统计粒度不存在");
+        }
+        return granularity;
+    }
+
+    /**
+     * 时间范围，开始对齐到时间桶，最多 MAX_BUCKETS 个桶
+     */
+    private static Date[] getTimeRange(InvokeAnalyticsQueryRequest queryRequest, RollupGranularityEnum granularity) {
+        long endTime = queryRequest.getEndTime() == null ? System.currentTimeMillis() : queryRequest.getEndTime();
+        long startTime = queryRequest.getStartTime() == null ? endTime - DEFAULT_BUCKETS * granularity.getMillis()
+                : queryRequest.getStartTime();
+        if (startTime >= endTime) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "开始时间必须早于结束时间");
+        }
+        if ((endTime - startTime) / granularity.getMillis() > MAX_BUCKETS) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "查询范围过大，请使用更大的统计粒度");
+        }
+        return new Date[]{granularity.truncate(new Date(startTime)), new Date(endTime)};
+    }
+}
@@ -0,0 +1,58 @@
+package com.qimu.qiapibackend.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.MailOutboxWorker;
+import com.qimu.qiapibackend.mapper.MailOutboxMapper;
+import com.qimu.qiapibackend.model.entity.MailOutbox;
+import com.qimu.qiapibackend.model.enums.MailOutboxStatusEnum;
+import com.qimu.qiapibackend.service.MailOutboxService;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.Date;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/30 09:36:47
+ * @Version: 1.0
+ * @Description: 待发邮件服务impl
+ */
+@Service
+public class MailOutboxServiceImpl extends ServiceImpl<MailOutboxMapper, MailOutbox>
+        implements MailOutboxService {
+    @Resource
+    private MailOutboxWorker mailOutboxWorker;
+
+    @Override
+    public void enqueue(String toAddress, String subject, String content) {
+        if (StringUtils.isAnyBlank(toAddress, subject, content)) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        MailOutbox mailOutbox = new MailOutbox();
+        mailOutbox.setToAddress(toAddress);
+        mailOutbox.setSubject(subject);
+        mailOutbox.setContent(content);
+        mailOutbox.setStatus(MailOutboxStatusEnum.PENDING.getValue());
+        mailOutbox.setRetryCount(0);
+        mailOutbox.setNextRetryTime(new Date());
+        if (!this.save(mailOutbox)) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "邮件发送失败");
+        }
+        // 事务提交后才能被发送线程查到，提交前唤醒没有意义
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    mailOutboxWorker.wakeUp();
+                }
+            });
+        } else {
+            mailOutboxWorker.wakeUp();
+        }
+    }
+}
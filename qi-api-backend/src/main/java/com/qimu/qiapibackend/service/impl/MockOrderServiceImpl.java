@@ -0,0 +1,365 @@
+package com.qimu.qiapibackend.service.impl;
+
+import cn.hutool.core.date.DateField;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.http.HttpRequest;
+import cn.hutool.http.HttpUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.binarywang.wxpay.bean.result.WxPayOrderQueryV3Result;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.config.MockPayConfig;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.mapper.ProductOrderMapper;
+import com.qimu.qiapibackend.model.entity.ProductInfo;
+import com.qimu.qiapibackend.model.entity.ProductOrder;
+import com.qimu.qiapibackend.model.entity.RechargeActivity;
+import com.qimu.qiapibackend.model.enums.PaymentStatusEnum;
+import com.qimu.qiapibackend.model.vo.PaymentInfoVo;
+import com.qimu.qiapibackend.model.vo.ProductOrderVo;
+import com.qimu.qiapibackend.model.vo.UserVO;
+import com.qimu.qiapibackend.service.PaymentInfoService;
+import com.qimu.qiapibackend.service.ProductOrderService;
+import com.qimu.qiapibackend.service.RechargeActivityService;
+import com.qimu.qiapibackend.service.UserService;
+import com.qimu.qiapibackend.utils.RedissonLockUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.qimu.qiapibackend.constant.PayConstant.ORDER_PREFIX;
+import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.MOCK;
+import static com.qimu.qiapibackend.model.enums.PaymentStatusEnum.*;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/16 09:48:30
+ * @Version: 1.0
+ * @Description: 模拟支付渠道，用于不接真实微信、支付宝时跑通并压测完整下单流程
+ * <p>
+ * 下单、查单、关单按配置模拟耗时和失败；渠道侧交易状态存放在 Redis，多节点一致。下单后按 payRate 模拟用户支付，
+ * 延迟后向订单通知接口发送异步通知，通知只在渠道侧交易已支付且金额一致时生效。不发送支付成功邮件。
+ */
+@Slf4j
+@Service
+@Qualifier("MOCK")
+@ConditionalOnProperty(prefix = "qi.pay.mock", name = "enabled", havingValue = "true")
+public class MockOrderServiceImpl extends ServiceImpl<ProductOrderMapper, ProductOrder> implements ProductOrderService {
+    /**
+     * 通知参数以此开头，订单通知接口据此识别模拟支付
+     */
+    public static final String NOTIFY_PREFIX = "mock_trade_no=";
+    private static final String TRADE_KEY = "pay:mock:trade:";
+    private static final long TRADE_EXPIRE_HOURS = 24;
+
+    @Resource
+    private MockPayConfig mockPayConfig;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ProductInfoServiceImpl productInfoService;
+    @Resource
+    private UserService userService;
+    @Resource
+    private PaymentInfoService paymentInfoService;
+    @Resource
+    private RechargeActivityService rechargeActivityService;
+    @Resource
+    private RedissonLockUtil redissonLockUtil;
+
+    private ScheduledExecutorService notifyScheduler;
+
+    @PostConstruct
+    public void init() {
+        log.warn("模拟支付已启用，仅用于本地联调和压测");
+        AtomicInteger threadIndex = new AtomicInteger();
+        notifyScheduler = Executors.newScheduledThreadPool(mockPayConfig.getNotifyThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "mock-pay-notify-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public ProductOrderVo getProductOrder(Long productId, UserVO loginUser, String payType) {
+        LambdaQueryWrapper<ProductOrder> lambdaQueryWrapper = new LambdaQueryWrapper<>();
+        lambdaQueryWrapper.eq(ProductOrder::getProductId, productId);
+        lambdaQueryWrapper.eq(ProductOrder::getStatus, NOTPAY.getValue());
+        lambdaQueryWrapper.eq(ProductOrder::getPayType, payType);
+        lambdaQueryWrapper.eq(ProductOrder::getUserId, loginUser.getId());
+        lambdaQueryWrapper.gt(ProductOrder::getExpirationTime, DateUtil.date(System.currentTimeMillis()));
+        ProductOrder oldOrder = this.getOne(lambdaQueryWrapper);
+        if (oldOrder == null) {
+            return null;
+        }
+        ProductOrderVo productOrderVo = new ProductOrderVo();
+        BeanUtils.copyProperties(oldOrder, productOrderVo);
+        productOrderVo.setProductInfo(JSONUtil.toBean(oldOrder.getProductInfo(), ProductInfo.class));
+        productOrderVo.setTotal(oldOrder.getTotal().toString());
+        return productOrderVo;
+    }
+
+    @Override
+    public ProductOrderVo saveProductOrder(Long productId, UserVO loginUser) {
+        ProductInfo productInfo = productInfoService.getById(productId);
+        if (productInfo == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "商品不存在");
+        }
+        // 5分钟有效期
+        Date date = DateUtil.date(System.currentTimeMillis());
+        Date expirationTime = DateUtil.offset(date, DateField.MINUTE, 5);
+        String orderNo = ORDER_PREFIX + RandomUtil.randomNumbers(20);
+
+        // 渠道下单
+        simulateCall("下单");
+        String codeUrl = "mock://pay/" + orderNo;
+        stringRedisTemplate.opsForValue().set(TRADE_KEY + orderNo, NOTPAY.getValue(), TRADE_EXPIRE_HOURS, TimeUnit.HOURS);
+
+        ProductOrder productOrder = new ProductOrder();
+        productOrder.setUserId(loginUser.getId());
+        productOrder.setOrderNo(orderNo);
+        productOrder.setProductId(productInfo.getId());
+        productOrder.setOrderName(productInfo.getName());
+        productOrder.setTotal(productInfo.getTotal());
+        productOrder.setStatus(NOTPAY.getValue());
+        productOrder.setPayType(MOCK.getValue());
+        productOrder.setExpirationTime(expirationTime);
+        productOrder.setCodeUrl(codeUrl);
+        productOrder.setProductInfo(JSONUtil.toJsonPrettyStr(productInfo));
+        productOrder.setAddPoints(productInfo.getAddPoints());
+        boolean saveResult = this.save(productOrder);
+        if (!saveResult) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR);
+        }
+        if (ThreadLocalRandom.current().nextDouble() < mockPayConfig.getPayRate()) {
+            schedulePayment(orderNo, productOrder.getTotal());
+        }
+
+        ProductOrderVo productOrderVo = new ProductOrderVo();
+        BeanUtils.copyProperties(productOrder, productOrderVo);
+        productOrderVo.setProductInfo(productInfo);
+        productOrderVo.setTotal(productInfo.getTotal().toString());
+        return productOrderVo;
+    }
+
+    /**
+     * 模拟用户支付，订单提交后延迟发送异步通知
+     */
+    private void schedulePayment(String orderNo, Integer total) {
+        Runnable payment = () -> notifyScheduler.schedule(() -> {
+            stringRedisTemplate.opsForValue().set(TRADE_KEY + orderNo, SUCCESS.getValue(), TRADE_EXPIRE_HOURS, TimeUnit.HOURS);
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("mock_trade_no", IdUtil.fastSimpleUUID());
+            params.put("out_trade_no", orderNo);
+            params.put("total", total);
+            params.put("trade_state", SUCCESS.getValue());
+            try {
+                String result = HttpRequest.post(mockPayConfig.getNotifyUrl())
+                        .body(HttpUtil.toParams(params), "text/plain")
+                        .timeout(10000)
+                        .execute()
+                        .body();
+                log.info("模拟支付通知 {}：{}", orderNo, result);
+            } catch (Exception e) {
+                // 通知失败由超时订单处理按查单结果补偿
+                log.warn("模拟支付通知 {} 发送失败：{}", orderNo, e.getMessage());
+            }
+        }, mockPayConfig.getNotifyDelayMillis(), TimeUnit.MILLISECONDS);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    payment.run();
+                }
+            });
+        } else {
+            payment.run();
+        }
+    }
+
+    @Override
+    public boolean updateProductOrder(ProductOrder productOrder) {
+        String codeUrl = productOrder.getCodeUrl();
+        Long id = productOrder.getId();
+        ProductOrder updateCodeUrl = new ProductOrder();
+        updateCodeUrl.setCodeUrl(codeUrl);
+        updateCodeUrl.setId(id);
+        return this.updateById(updateCodeUrl);
+    }
+
+    @Override
+    public boolean updateOrderStatusByOrderNo(String outTradeNo, String orderStatus) {
+        ProductOrder productOrder = new ProductOrder();
+        productOrder.setStatus(orderStatus);
+        LambdaQueryWrapper<ProductOrder> lambdaQueryWrapper = new LambdaQueryWrapper<>();
+        lambdaQueryWrapper.eq(ProductOrder::getOrderNo, outTradeNo);
+        return this.update(productOrder, lambdaQueryWrapper);
+    }
+
+    @Override
+    public void closedOrderByOrderNo(String outTradeNo) {
+        simulateCall("关单");
+        String tradeKey = TRADE_KEY + outTradeNo;
+        if (SUCCESS.getValue().equals(stringRedisTemplate.opsForValue().get(tradeKey))) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "订单已支付，不能关闭");
+        }
+        stringRedisTemplate.opsForValue().set(tradeKey, CLOSED.getValue(), TRADE_EXPIRE_HOURS, TimeUnit.HOURS);
+    }
+
+    @Override
+    public ProductOrder getProductOrderByOutTradeNo(String outTradeNo) {
+        LambdaQueryWrapper<ProductOrder> lambdaQueryWrapper = new LambdaQueryWrapper<>();
+        lambdaQueryWrapper.eq(ProductOrder::getOrderNo, outTradeNo);
+        return this.getOne(lambdaQueryWrapper);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void processingTimedOutOrders(ProductOrder productOrder) {
+        String orderNo = productOrder.getOrderNo();
+        // 查单
+        simulateCall("查单");
+        String tradeState = stringRedisTemplate.opsForValue().get(TRADE_KEY + orderNo);
+        if (SUCCESS.getValue().equals(tradeState)) {
+            // 通知丢失，按查单结果补发积分
+            redissonLockUtil.redissonDistributedLocks("notify:MockOrder:lock:" + orderNo, () -> {
+                doPaid(this.getProductOrderByOutTradeNo(orderNo), IdUtil.fastSimpleUUID());
+            });
+            log.info("超时订单{},更新成功", orderNo);
+            return;
+        }
+        if (tradeState != null) {
+            closedOrderByOrderNo(orderNo);
+        }
+        this.updateOrderStatusByOrderNo(orderNo, CLOSED.getValue());
+        log.info("超时订单{},关闭成功", orderNo);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public String doPaymentNotify(String notifyData, HttpServletRequest request) {
+        Map<String, String> params = HttpUtil.decodeParamMap(notifyData, StandardCharsets.UTF_8);
+        String outTradeNo = params.get("out_trade_no");
+        if (StringUtils.isBlank(outTradeNo)) {
+            return "failure";
+        }
+        return redissonLockUtil.redissonDistributedLocks("notify:MockOrder:lock:" + outTradeNo, "【模拟支付异步回调异常】:", () -> {
+            // 相当于验签：渠道侧交易须已支付
+            if (!SUCCESS.getValue().equals(stringRedisTemplate.opsForValue().get(TRADE_KEY + outTradeNo))) {
+                log.error("模拟支付交易未支付：{}", outTradeNo);
+                return "failure";
+            }
+            ProductOrder productOrder = this.getProductOrderByOutTradeNo(outTradeNo);
+            if (productOrder == null || !MOCK.getValue().equals(productOrder.getPayType())) {
+                log.error("订单不存在");
+                return "failure";
+            }
+            if (!String.valueOf(productOrder.getTotal()).equals(params.get("total"))) {
+                log.error("订单金额不一致");
+                return "failure";
+            }
+            doPaid(productOrder, params.get("mock_trade_no"));
+            return "success";
+        });
+    }
+
+    /**
+     * 订单支付成功：更新订单状态、发放积分、保存支付记录和充值活动，重复调用直接返回
+     */
+    private void doPaid(ProductOrder productOrder, String transactionId) {
+        String outTradeNo = productOrder.getOrderNo();
+        if (SUCCESS.getValue().equals(productOrder.getStatus())) {
+            return;
+        }
+        boolean updateOrderStatus = this.updateOrderStatusByOrderNo(outTradeNo, SUCCESS.getValue());
+        boolean addWalletBalance = userService.addWalletBalance(productOrder.getUserId(), productOrder.getAddPoints());
+        PaymentInfoVo paymentInfoVo = new PaymentInfoVo();
+        paymentInfoVo.setOutTradeNo(outTradeNo);
+        paymentInfoVo.setTransactionId(transactionId);
+        paymentInfoVo.setTradeType("模拟支付");
+        paymentInfoVo.setTradeState(SUCCESS.getValue());
+        paymentInfoVo.setTradeStateDesc("支付成功");
+        paymentInfoVo.setSuccessTime(DateUtil.now());
+        WxPayOrderQueryV3Result.Amount amount = new WxPayOrderQueryV3Result.Amount();
+        amount.setTotal(productOrder.getTotal());
+        amount.setPayerTotal(productOrder.getTotal());
+        amount.setCurrency("CNY");
+        amount.setPayerCurrency("CNY");
+        paymentInfoVo.setAmount(amount);
+        boolean paymentResult = paymentInfoService.createPaymentInfo(paymentInfoVo);
+        boolean rechargeActivity = saveRechargeActivity(productOrder);
+        if (!(updateOrderStatus && addWalletBalance && paymentResult && rechargeActivity)) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR);
+        }
+        log.info("【模拟支付处理成功】{}", outTradeNo);
+    }
+
+    /**
+     * 保存充值活动
+     *
+     * @param productOrder 产品订单
+     * @return boolean
+     */
+    private boolean saveRechargeActivity(ProductOrder productOrder) {
+        RechargeActivity rechargeActivity = new RechargeActivity();
+        rechargeActivity.setUserId(productOrder.getUserId());
+        rechargeActivity.setProductId(productOrder.getProductId());
+        rechargeActivity.setOrderNo(productOrder.getOrderNo());
+        boolean save = rechargeActivityService.save(rechargeActivity);
+        if (!save) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "保存失败");
+        }
+        return true;
+    }
+
+    /**
+     * 模拟一次渠道调用：按配置耗时，按失败率抛出异常
+     *
+     * @param action 调用名称
+     */
+    private void simulateCall(String action) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = mockPayConfig.getLatencyMillis();
+        if (mockPayConfig.getLatencyJitterMillis() > 0) {
+            latency += random.nextLong(mockPayConfig.getLatencyJitterMillis() + 1);
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "模拟支付" + action + "被中断");
+        }
+        if (random.nextDouble() < mockPayConfig.getFailureRate()) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "模拟支付" + action + "失败");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        notifyScheduler.shutdownNow();
+    }
+}
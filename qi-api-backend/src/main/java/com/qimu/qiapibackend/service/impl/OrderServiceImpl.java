@@ -3,6 +3,8 @@ package com.qimu.qiapibackend.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.qimu.qiapibackend.common.ErrorCode;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.OrderExpiryQueue;
+import com.qimu.qiapibackend.manager.PaymentProviderRegistry;
 import com.qimu.qiapibackend.model.entity.ProductInfo;
 import com.qimu.qiapibackend.model.entity.ProductOrder;
 import com.qimu.qiapibackend.model.entity.RechargeActivity;
@@ -16,7 +18,6 @@ import com.qimu.qiapibackend.service.RechargeActivityService;
 import com.qimu.qiapibackend.utils.RedissonLockUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -27,7 +28,9 @@ import java.time.Instant;
 import java.util.List;
 
 import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.ALIPAY;
+import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.MOCK;
 import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.WX;
+import static com.qimu.qiapibackend.service.impl.MockOrderServiceImpl.NOTIFY_PREFIX;
 
 /**
  * @Author: QiMu
@@ -43,7 +46,10 @@ public class OrderServiceImpl implements OrderService {
     private ProductOrderService productOrderService;
 
     @Resource
-    private List<ProductOrderService> productOrderServices;
+    private PaymentProviderRegistry paymentProviderRegistry;
+
+    @Resource
+    private OrderExpiryQueue orderExpiryQueue;
 
     @Resource
     private RechargeActivityService rechargeActivityService;
@@ -62,13 +68,7 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public ProductOrderService getProductOrderServiceByPayType(String payType) {
-        return productOrderServices.stream()
-                .filter(s -> {
-                    Qualifier qualifierAnnotation = s.getClass().getAnnotation(Qualifier.class);
-                    return qualifierAnnotation != null && qualifierAnnotation.value().equals(payType);
-                })
-                .findFirst()
-                .orElseThrow(() -> new BusinessException(ErrorCode.PARAMS_ERROR, "暂无该支付方式"));
+        return paymentProviderRegistry.getProvider(payType);
     }
 
     @Override
@@ -87,12 +87,15 @@ public class OrderServiceImpl implements OrderService {
         }
         redissonLock = ("createOrder_" + loginUser.getUserAccount()).intern();
         // 分布式锁工具
-        return redissonLockUtil.redissonDistributedLocks(redissonLock, () -> {
+        ProductOrderVo productOrderVo = redissonLockUtil.redissonDistributedLocks(redissonLock, () -> {
             // 检查是否购买充值活动
             checkBuyRechargeActivity(loginUser.getId(), productId);
             // 保存订单,返回vo信息
             return productOrderService.saveProductOrder(productId, loginUser);
         });
+        // 到期时查单、关单
+        orderExpiryQueue.schedule(productOrderVo.getOrderNo(), productOrderVo.getExpirationTime());
+        return productOrderVo;
     }
 
     /**
@@ -159,6 +162,8 @@ public class OrderServiceImpl implements OrderService {
         String payType;
         if (notifyData.startsWith("gmt_create=") && notifyData.contains("gmt_create") && notifyData.contains("sign_type") && notifyData.contains("notify_type")) {
             payType = ALIPAY.getValue();
+        } else if (notifyData.startsWith(NOTIFY_PREFIX) && paymentProviderRegistry.isAvailable(MOCK)) {
+            payType = MOCK.getValue();
         } else {
             payType = WX.getValue();
         }
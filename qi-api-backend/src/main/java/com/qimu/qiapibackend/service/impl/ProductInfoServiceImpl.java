@@ -3,12 +3,16 @@ package com.qimu.qiapibackend.service.impl;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.qimu.qiapibackend.common.ErrorCode;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.CatalogSearchManager;
+import com.qimu.qiapibackend.manager.CatalogSnapshotManager;
 import com.qimu.qiapibackend.mapper.ProductInfoMapper;
 import com.qimu.qiapibackend.model.entity.ProductInfo;
 import com.qimu.qiapibackend.service.ProductInfoService;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.io.Serializable;
 import java.util.Date;
 
 /**
@@ -20,6 +24,11 @@ import java.util.Date;
 @Service
 public class ProductInfoServiceImpl extends ServiceImpl<ProductInfoMapper, ProductInfo>
         implements ProductInfoService {
+    @Resource
+    private CatalogSearchManager catalogSearchManager;
+    @Resource
+    private CatalogSnapshotManager catalogSnapshotManager;
+
     @Override
     public void validProductInfo(ProductInfo productInfo, boolean add) {
         if (productInfo == null) {
@@ -44,8 +53,34 @@ public class ProductInfoServiceImpl extends ServiceImpl<ProductInfoMapper, Produ
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "售卖金额不能为负数");
         }
     }
-}
-
 
+    @Override
+    public boolean save(ProductInfo productInfo) {
+        boolean result = super.save(productInfo);
+        if (result) {
+            catalogSnapshotManager.invalidateProducts();
+            catalogSearchManager.refreshProduct(productInfo.getId());
+        }
+        return result;
+    }
 
+    @Override
+    public boolean updateById(ProductInfo productInfo) {
+        boolean result = super.updateById(productInfo);
+        if (result) {
+            catalogSnapshotManager.invalidateProducts();
+            catalogSearchManager.refreshProduct(productInfo.getId());
+        }
+        return result;
+    }
 
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean result = super.removeById(id);
+        if (result) {
+            catalogSnapshotManager.invalidateProducts();
+            catalogSearchManager.refreshProduct(Long.parseLong(id.toString()));
+        }
+        return result;
+    }
+}
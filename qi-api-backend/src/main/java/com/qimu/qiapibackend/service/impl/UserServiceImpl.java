@@ -4,16 +4,19 @@ package com.qimu.qiapibackend.service.impl;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.qimu.qiapibackend.common.ErrorCode;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.AuthTokenManager;
+import com.qimu.qiapibackend.manager.UserCacheManager;
 import com.qimu.qiapibackend.mapper.UserMapper;
 import com.qimu.qiapibackend.model.dto.user.*;
 import com.qimu.qiapibackend.model.entity.User;
 import com.qimu.qiapibackend.model.enums.UserAccountStatusEnum;
+import com.qimu.qiapibackend.model.enums.WalletLedgerBizTypeEnum;
 import com.qimu.qiapibackend.model.vo.UserVO;
 import com.qimu.qiapibackend.service.UserService;
+import com.qimu.qiapibackend.service.WalletLedgerService;
 import com.qimu.qiapibackend.utils.RedissonLockUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
@@ -26,6 +29,8 @@ import org.springframework.util.DigestUtils;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.regex.Pattern;
@@ -52,6 +57,20 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Resource
     private RedissonLockUtil redissonLockUtil;
 
+    @Resource
+    private WalletLedgerService walletLedgerService;
+
+    @Resource
+    private UserCacheManager userCacheManager;
+
+    @Resource
+    private AuthTokenManager authTokenManager;
+
+    /**
+     * 请求内缓存的令牌信息属性名
+     */
+    private static final String REQUEST_TOKEN_CLAIMS_ATTR = UserServiceImpl.class.getName() + ".tokenClaims";
+
     /**
      * 用户寄存器
      *
@@ -124,7 +143,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             user.setSecretKey(secretKey);
             if (invitationCodeUser != null) {
                 user.setBalance(100);
-                this.addWalletBalance(invitationCodeUser.getId(), 100);
+                this.addWalletBalance(invitationCodeUser.getId(), 100, WalletLedgerBizTypeEnum.INVITE);
             }
             user.setInvitationCode(generateRandomString(8));
             boolean saveResult = this.save(user);
@@ -200,7 +219,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             user.setSecretKey(secretKey);
             if (invitationCodeUser != null) {
                 user.setBalance(100);
-                this.addWalletBalance(invitationCodeUser.getId(), 100);
+                this.addWalletBalance(invitationCodeUser.getId(), 100, WalletLedgerBizTypeEnum.INVITE);
             }
             user.setInvitationCode(generateRandomString(8));
             boolean saveResult = this.save(user);
@@ -256,7 +275,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         UserVO userVO = new UserVO();
         BeanUtils.copyProperties(user, userVO);
         // 3. 记录用户的登录态
-        request.getSession().setAttribute(USER_LOGIN_STATE, userVO);
+        long version = saveLoginState(request, user.getId());
+        if (authTokenManager.isEnabled()) {
+            userVO.setToken(authTokenManager.issue(user, version));
+        }
         return userVO;
     }
 
@@ -303,7 +325,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         UserVO userVO = new UserVO();
         BeanUtils.copyProperties(user, userVO);
         // 3. 记录用户的登录态
-        request.getSession().setAttribute(USER_LOGIN_STATE, userVO);
+        long version = saveLoginState(request, user.getId());
+        if (authTokenManager.isEnabled()) {
+            userVO.setToken(authTokenManager.issue(user, version));
+        }
         return userVO;
     }
 
@@ -396,14 +421,18 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Override
     public UserVO getLoginUser(HttpServletRequest request) {
         // 先判断是否已登录
-        Object userObj = request.getSession().getAttribute(USER_LOGIN_STATE);
-        UserVO currentUser = (UserVO) userObj;
-        if (currentUser == null || currentUser.getId() == null) {
+        Long loginUserId = getLoginUserId(request);
+        if (loginUserId == null) {
             throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR);
         }
-        // 从数据库查询（追求性能的话可以注释，直接走缓存）
-        long userId = currentUser.getId();
-        User user = this.getById(userId);
+        long userId = loginUserId;
+        // 同一请求内鉴权切面、控制器可能多次调用，只查一次
+        Object memo = request.getAttribute(UserCacheManager.REQUEST_LOGIN_USER_ATTR);
+        if (memo instanceof UserVO && ((UserVO) memo).getId() == userId) {
+            return (UserVO) memo;
+        }
+        // 本地缓存，用户信息变更后版本号自增，缓存随之失效；令牌登录按同步的变更标记判断
+        User user = userCacheManager.getRequestUser(request, userId, getTokenClaims(request) != null);
         if (user == null) {
             throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR);
         }
@@ -412,6 +441,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         }
         UserVO userVO = new UserVO();
         BeanUtils.copyProperties(user, userVO);
+        userVO.setBalance(walletLedgerService.getBalance(userId));
+        request.setAttribute(UserCacheManager.REQUEST_LOGIN_USER_ATTR, userVO);
         return userVO;
     }
 
@@ -423,27 +454,94 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      */
     @Override
     public boolean isAdmin(HttpServletRequest request) {
-        Object userObj = request.getSession().getAttribute(USER_LOGIN_STATE);
-        UserVO currentUser = (UserVO) userObj;
-        if (currentUser == null || currentUser.getId() == null) {
-            throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR);
+        Long userId = getLoginUserId(request);
+        // 未登录不是管理员，公开接口中游客也会调用
+        if (userId == null) {
+            return false;
         }
-        // 从数据库查询（追求性能的话可以注释，直接走缓存）
-        long userId = currentUser.getId();
-        User user = this.getById(userId);
+        // 改角色会作废之前签发的令牌，令牌中的角色可以直接使用
+        AuthTokenClaims claims = getTokenClaims(request);
+        if (claims != null) {
+            return ADMIN_ROLE.equals(claims.getUserRole());
+        }
+        User user = userCacheManager.getRequestUser(request, userId, false);
         return user != null && ADMIN_ROLE.equals(user.getUserRole());
     }
 
     @Override
     public User isTourist(HttpServletRequest request) {
-        Object userObj = request.getSession().getAttribute(USER_LOGIN_STATE);
-        UserVO currentUser = (UserVO) userObj;
-        if (currentUser == null || currentUser.getId() == null) {
+        Long userId = getLoginUserId(request);
+        if (userId == null) {
+            return null;
+        }
+        return userCacheManager.getRequestUser(request, userId, getTokenClaims(request) != null);
+    }
+
+    /**
+     * 记录登录态，会话中只保存用户id和当前版本号
+     *
+     * @param request 请求
+     * @param userId  用户id
+     * @return long 用户信息当前版本号
+     */
+    private long saveLoginState(HttpServletRequest request, long userId) {
+        long version = userCacheManager.getVersion(userId);
+        request.getSession().setAttribute(USER_LOGIN_STATE, new LoginUserState(userId, version));
+        return version;
+    }
+
+    /**
+     * 解析请求头中的访问令牌，未开启令牌登录或令牌无效时为 null
+     *
+     * @param request 请求
+     * @return {@link AuthTokenClaims}
+     */
+    private AuthTokenClaims getTokenClaims(HttpServletRequest request) {
+        if (!authTokenManager.isEnabled()) {
             return null;
         }
-        // 从数据库查询（追求性能的话可以注释，直接走缓存）
-        long userId = currentUser.getId();
-        return this.getById(userId);
+        Object memo = request.getAttribute(REQUEST_TOKEN_CLAIMS_ATTR);
+        if (memo instanceof AuthTokenClaims) {
+            return (AuthTokenClaims) memo;
+        }
+        String header = request.getHeader(AUTH_TOKEN_HEADER);
+        if (header == null || !header.startsWith(AUTH_TOKEN_PREFIX)) {
+            return null;
+        }
+        AuthTokenClaims claims = authTokenManager.verify(header.substring(AUTH_TOKEN_PREFIX.length()).trim());
+        if (claims != null) {
+            request.setAttribute(REQUEST_TOKEN_CLAIMS_ATTR, claims);
+        }
+        return claims;
+    }
+
+    /**
+     * 取出登录用户id，优先使用访问令牌，其次从会话中读取，未登录时不创建会话
+     * 旧会话中保存的是完整的 UserVO，读到时改写为新的登录态
+     *
+     * @param request 请求
+     * @return {@link Long} 未登录时为 null
+     */
+    private Long getLoginUserId(HttpServletRequest request) {
+        // 携带有效令牌时不读取会话，不访问 Redis
+        AuthTokenClaims claims = getTokenClaims(request);
+        if (claims != null) {
+            return claims.getUserId();
+        }
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        Object loginState = session.getAttribute(USER_LOGIN_STATE);
+        if (loginState instanceof LoginUserState) {
+            return ((LoginUserState) loginState).getUserId();
+        }
+        if (loginState instanceof UserVO && ((UserVO) loginState).getId() != null) {
+            long userId = ((UserVO) loginState).getId();
+            saveLoginState(request, userId);
+            return userId;
+        }
+        return null;
     }
 
     /**
@@ -454,11 +552,18 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      */
     @Override
     public boolean userLogout(HttpServletRequest request) {
-        if (request.getSession().getAttribute(USER_LOGIN_STATE) == null) {
+        if (getLoginUserId(request) == null) {
             throw new BusinessException(ErrorCode.OPERATION_ERROR, "未登录");
         }
+        AuthTokenClaims claims = getTokenClaims(request);
+        if (claims != null) {
+            authTokenManager.denyToken(claims);
+        }
         // 移除登录态
-        request.getSession().removeAttribute(USER_LOGIN_STATE);
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            session.removeAttribute(USER_LOGIN_STATE);
+        }
         return true;
     }
 
@@ -509,7 +614,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         String secretKey = DigestUtils.md5DigestAsHex((SALT + VOUCHER + Arrays.toString(RandomUtil.randomBytes(10))).getBytes());
         loginUser.setAccessKey(accessKey);
         loginUser.setSecretKey(secretKey);
-        boolean result = this.updateById(loginUser);
+        // 只更新密钥，loginUser 中的余额是含未合并流水的实时余额，不能写回
+        User voucherUser = new User();
+        voucherUser.setId(loginUser.getId());
+        voucherUser.setAccessKey(accessKey);
+        voucherUser.setSecretKey(secretKey);
+        boolean result = this.updateById(voucherUser);
         if (!result) {
             throw new BusinessException(ErrorCode.OPERATION_ERROR);
         }
@@ -518,20 +628,37 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         return userVO;
     }
 
+    @Override
+    public boolean updateById(User user) {
+        boolean result = super.updateById(user);
+        if (result) {
+            userCacheManager.invalidate(user.getId());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean result = super.removeById(id);
+        if (result) {
+            userCacheManager.invalidate(Long.parseLong(id.toString()));
+        }
+        return result;
+    }
+
     @Override
     public boolean addWalletBalance(Long userId, Integer addPoints) {
-        LambdaUpdateWrapper<User> userLambdaUpdateWrapper = new LambdaUpdateWrapper<>();
-        userLambdaUpdateWrapper.eq(User::getId, userId);
-        userLambdaUpdateWrapper.setSql("balance = balance + " + addPoints);
-        return this.update(userLambdaUpdateWrapper);
+        return addWalletBalance(userId, addPoints, WalletLedgerBizTypeEnum.RECHARGE);
+    }
+
+    @Override
+    public boolean addWalletBalance(Long userId, Integer addPoints, WalletLedgerBizTypeEnum bizType) {
+        return walletLedgerService.append(userId, addPoints, bizType);
     }
 
     @Override
     public boolean reduceWalletBalance(Long userId, Integer reduceScore) {
-        LambdaUpdateWrapper<User> userLambdaUpdateWrapper = new LambdaUpdateWrapper<>();
-        userLambdaUpdateWrapper.eq(User::getId, userId);
-        userLambdaUpdateWrapper.setSql("balance = balance - " + reduceScore);
-        return this.update(userLambdaUpdateWrapper);
+        return walletLedgerService.append(userId, -reduceScore, WalletLedgerBizTypeEnum.INVOKE);
     }
 
     /**
@@ -0,0 +1,162 @@
+package com.qimu.qiapibackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.mapper.WalletLedgerMapper;
+import com.qimu.qiapibackend.model.entity.WalletLedger;
+import com.qimu.qiapibackend.model.enums.WalletLedgerBizTypeEnum;
+import com.qimu.qiapibackend.service.WalletLedgerService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.qimu.qiapibackend.constant.WalletConstant.*;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/24 10:05:18
+ * @Version: 1.0
+ * @Description: 钱包流水服务impl
+ * <p>
+ * 余额变动只插入流水，不再更新 user 行；后台任务定期把流水合并到 user.balance。
+ * 实时余额 = user.balance + 未合并流水之和，缓存在 Redis，流水提交后对已存在的缓存做增量更新。
+ * 流水提交后同时递增余额版本号；回源时先读版本号，写入缓存前版本号已变说明期间有流水提交，放弃写入，避免缓存旧余额。
+ */
+@Slf4j
+@Service
+public class WalletLedgerServiceImpl extends ServiceImpl<WalletLedgerMapper, WalletLedger>
+        implements WalletLedgerService {
+    /**
+     * 版本号保留时长（秒），远大于一次回源的耗时，每次递增时续期
+     */
+    private static final long BALANCE_VERSION_EXPIRE_SECONDS = WALLET_BALANCE_EXPIRE_SECONDS * 2;
+    /**
+     * 递增版本号；缓存存在时才累加，不存在时等下次读取回源
+     */
+    private static final DefaultRedisScript<Long> INCR_IF_EXISTS_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('incr', KEYS[2]) redis.call('expire', KEYS[2], ARGV[2]) " +
+                    "if redis.call('exists', KEYS[1]) == 1 then return redis.call('incrby', KEYS[1], ARGV[1]) end return nil",
+            Long.class);
+    /**
+     * 版本号与回源前读到的一致时才写入缓存
+     */
+    private static final DefaultRedisScript<Long> FILL_IF_VERSION_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[2]) or '0') ~= ARGV[2] then return 0 end " +
+                    "if redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[3], 'NX') then return 1 end return 0",
+            Long.class);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public boolean append(Long userId, Integer amount, WalletLedgerBizTypeEnum bizType) {
+        WalletLedger walletLedger = new WalletLedger();
+        walletLedger.setUserId(userId);
+        walletLedger.setAmount(amount);
+        walletLedger.setBizType(bizType.getValue());
+        return appendBatch(Collections.singletonList(walletLedger));
+    }
+
+    @Override
+    public boolean appendBatch(List<WalletLedger> walletLedgerList) {
+        if (walletLedgerList == null || walletLedgerList.isEmpty()) {
+            return true;
+        }
+        Map<Long, Long> userAmountMap = new HashMap<>();
+        for (WalletLedger walletLedger : walletLedgerList) {
+            if (walletLedger.getUserId() == null || walletLedger.getAmount() == null || StringUtils.isBlank(walletLedger.getBizType())) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR);
+            }
+            walletLedger.setCompacted(0);
+            userAmountMap.merge(walletLedger.getUserId(), walletLedger.getAmount().longValue(), Long::sum);
+        }
+        boolean result = walletLedgerList.size() == 1 ? this.save(walletLedgerList.get(0)) : this.saveBatch(walletLedgerList);
+        if (result) {
+            afterCommit(() -> userAmountMap.forEach(this::incrementCachedBalance));
+        }
+        return result;
+    }
+
+    @Override
+    public int getBalance(Long userId) {
+        String key = WALLET_BALANCE_KEY + userId;
+        String cachedBalance = stringRedisTemplate.opsForValue().get(key);
+        if (cachedBalance != null) {
+            return Integer.parseInt(cachedBalance);
+        }
+        // 先读版本号再查库，期间有流水提交时版本号会变化
+        String versionKey = WALLET_BALANCE_VERSION_KEY + userId;
+        String version = StringUtils.defaultString(stringRedisTemplate.opsForValue().get(versionKey), "0");
+        Long balance = this.baseMapper.selectEffectiveBalance(userId);
+        if (balance == null) {
+            return 0;
+        }
+        stringRedisTemplate.execute(FILL_IF_VERSION_SCRIPT, Arrays.asList(key, versionKey),
+                String.valueOf(balance), version, String.valueOf(WALLET_BALANCE_EXPIRE_SECONDS));
+        return balance.intValue();
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int compact(int batchSize) {
+        LambdaQueryWrapper<WalletLedger> ledgerLambdaQueryWrapper = new LambdaQueryWrapper<>();
+        ledgerLambdaQueryWrapper.eq(WalletLedger::getCompacted, 0);
+        ledgerLambdaQueryWrapper.orderByAsc(WalletLedger::getId);
+        ledgerLambdaQueryWrapper.last("limit " + batchSize);
+        List<WalletLedger> walletLedgerList = this.list(ledgerLambdaQueryWrapper);
+        if (walletLedgerList.isEmpty()) {
+            return 0;
+        }
+        // 按用户id排序更新，避免与其它事务死锁
+        Map<Long, Long> userAmountMap = walletLedgerList.stream()
+                .collect(Collectors.groupingBy(WalletLedger::getUserId, TreeMap::new,
+                        Collectors.summingLong(walletLedger -> walletLedger.getAmount().longValue())));
+        userAmountMap.forEach((userId, amount) -> {
+            if (amount != 0) {
+                this.baseMapper.addUserBalance(userId, amount);
+            }
+        });
+        LambdaUpdateWrapper<WalletLedger> ledgerLambdaUpdateWrapper = new LambdaUpdateWrapper<>();
+        ledgerLambdaUpdateWrapper.in(WalletLedger::getId, walletLedgerList.stream().map(WalletLedger::getId).collect(Collectors.toList()));
+        ledgerLambdaUpdateWrapper.eq(WalletLedger::getCompacted, 0);
+        ledgerLambdaUpdateWrapper.set(WalletLedger::getCompacted, 1);
+        this.update(ledgerLambdaUpdateWrapper);
+        return walletLedgerList.size();
+    }
+
+    private void incrementCachedBalance(Long userId, Long amount) {
+        try {
+            stringRedisTemplate.execute(INCR_IF_EXISTS_SCRIPT, Arrays.asList(WALLET_BALANCE_KEY + userId, WALLET_BALANCE_VERSION_KEY + userId),
+                    String.valueOf(amount), String.valueOf(BALANCE_VERSION_EXPIRE_SECONDS));
+        } catch (Exception e) {
+            // 增量失败时删除缓存，下次读取回源
+            log.warn("更新余额缓存失败：{}", e.getMessage());
+            stringRedisTemplate.delete(WALLET_BALANCE_KEY + userId);
+        }
+    }
+
+    private static void afterCommit(Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runnable.run();
+                }
+            });
+        } else {
+            runnable.run();
+        }
+    }
+}
@@ -16,8 +16,8 @@ import com.github.binarywang.wxpay.constant.WxPayConstants;
 import com.github.binarywang.wxpay.exception.WxPayException;
 import com.github.binarywang.wxpay.service.WxPayService;
 import com.qimu.qiapibackend.common.ErrorCode;
-import com.qimu.qiapibackend.config.EmailConfig;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.EmailTemplateRegistry;
 import com.qimu.qiapibackend.mapper.ProductOrderMapper;
 import com.qimu.qiapibackend.model.entity.ProductInfo;
 import com.qimu.qiapibackend.model.entity.ProductOrder;
@@ -26,11 +26,11 @@ import com.qimu.qiapibackend.model.entity.User;
 import com.qimu.qiapibackend.model.vo.PaymentInfoVo;
 import com.qimu.qiapibackend.model.vo.ProductOrderVo;
 import com.qimu.qiapibackend.model.vo.UserVO;
+import com.qimu.qiapibackend.service.MailOutboxService;
 import com.qimu.qiapibackend.service.PaymentInfoService;
 import com.qimu.qiapibackend.service.ProductOrderService;
 import com.qimu.qiapibackend.service.RechargeActivityService;
 import com.qimu.qiapibackend.service.UserService;
-import com.qimu.qiapibackend.utils.EmailUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.redisson.api.RLock;
@@ -39,7 +39,6 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -50,6 +49,7 @@ import java.math.RoundingMode;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
+import static com.qimu.qiapibackend.constant.EmailConstant.EMAIL_PAY_SUCCESS_SUBJECT;
 import static com.qimu.qiapibackend.constant.PayConstant.ORDER_PREFIX;
 import static com.qimu.qiapibackend.constant.PayConstant.QUERY_ORDER_STATUS;
 import static com.qimu.qiapibackend.model.enums.PayTypeStatusEnum.WX;
@@ -80,9 +80,9 @@ public class WxOrderServiceImpl extends ServiceImpl<ProductOrderMapper, ProductO
     @Resource
     private WxPayService wxPayService;
     @Resource
-    private EmailConfig emailConfig;
+    private MailOutboxService mailOutboxService;
     @Resource
-    private JavaMailSender mailSender;
+    private EmailTemplateRegistry emailTemplateRegistry;
     @Resource
     private UserService userService;
     @Resource
@@ -360,9 +360,9 @@ public class WxOrderServiceImpl extends ServiceImpl<ProductOrderMapper, ProductO
         User user = userService.getById(productOrder.getUserId());
         if (StringUtils.isNotBlank(user.getEmail())) {
             try {
-                new EmailUtil().sendPaySuccessEmail(user.getEmail(), mailSender, emailConfig, productOrder.getOrderName(),
-                        String.valueOf(new BigDecimal(productOrder.getTotal()).divide(new BigDecimal("100"), 2, RoundingMode.HALF_UP)));
-                log.info("发送邮件：{}，成功", user.getEmail());
+                mailOutboxService.enqueue(user.getEmail(), EMAIL_PAY_SUCCESS_SUBJECT, emailTemplateRegistry.buildPaySuccessEmailContent(
+                        productOrder.getOrderName(), String.valueOf(new BigDecimal(productOrder.getTotal()).divide(new BigDecimal("100"), 2, RoundingMode.HALF_UP))));
+                log.info("邮件：{}，已加入待发送", user.getEmail());
             } catch (Exception e) {
                 log.error("发送邮件：{}，失败：{}", user.getEmail(), e.getMessage());
             }
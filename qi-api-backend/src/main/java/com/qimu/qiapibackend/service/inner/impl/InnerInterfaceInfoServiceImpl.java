@@ -8,6 +8,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.dubbo.config.annotation.DubboService;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * @Author: QiMu
@@ -39,4 +40,14 @@ public class InnerInterfaceInfoServiceImpl implements InnerInterfaceInfoService
         lambdaQueryWrapper.like(InterfaceInfo::getUrl, path);
         return interfaceInfoService.getOne(lambdaQueryWrapper);
     }
+
+    @Override
+    public List<InterfaceInfo> listInterfaceInfo() {
+        return interfaceInfoService.list();
+    }
+
+    @Override
+    public InterfaceInfo getInterfaceInfoById(long id) {
+        return interfaceInfoService.getById(id);
+    }
 }
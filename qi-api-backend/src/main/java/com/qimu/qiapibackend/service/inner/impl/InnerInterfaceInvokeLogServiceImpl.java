@@ -0,0 +1,55 @@
+package com.qimu.qiapibackend.service.inner.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.qimu.qiapibackend.manager.InvokeRollupManager;
+import com.qimu.qiapibackend.mapper.InterfaceInvokeLogMapper;
+import com.qimu.qiapicommon.model.entity.InterfaceInvokeLog;
+import com.qimu.qiapicommon.service.inner.InnerInterfaceInvokeLogService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboService;
+
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/25 11:02:45
+ * @Version: 1.0
+ * @Description: 接口调用日志服务
+ */
+@DubboService
+@Slf4j
+public class InnerInterfaceInvokeLogServiceImpl implements InnerInterfaceInvokeLogService {
+    /**
+     * 单条 insert 语句最多写入行数
+     */
+    private static final int INSERT_BATCH_SIZE = 500;
+    @Resource
+    private InterfaceInvokeLogMapper interfaceInvokeLogMapper;
+    @Resource
+    private InvokeRollupManager invokeRollupManager;
+
+    @Override
+    public int saveInvokeLogBatch(List<InterfaceInvokeLog> invokeLogList) {
+        if (CollUtil.isEmpty(invokeLogList)) {
+            return 0;
+        }
+        for (InterfaceInvokeLog invokeLog : invokeLogList) {
+            if (invokeLog.getId() == null) {
+                invokeLog.setId(IdWorker.getId());
+            }
+            if (invokeLog.getCreateTime() == null) {
+                invokeLog.setCreateTime(new Date());
+            }
+        }
+        int total = 0;
+        for (List<InterfaceInvokeLog> part : CollUtil.split(invokeLogList, INSERT_BATCH_SIZE)) {
+            total += interfaceInvokeLogMapper.insertBatch(part);
+        }
+        // 入库成功后计入分钟/小时/天统计
+        invokeRollupManager.record(invokeLogList);
+        return total;
+    }
+}
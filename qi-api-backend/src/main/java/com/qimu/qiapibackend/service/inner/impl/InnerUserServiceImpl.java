@@ -3,8 +3,11 @@ package com.qimu.qiapibackend.service.inner.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.qimu.qiapibackend.common.ErrorCode;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.mapper.UserInterfaceInvokeMapper;
 import com.qimu.qiapibackend.model.entity.User;
 import com.qimu.qiapibackend.service.UserService;
+import com.qimu.qiapibackend.service.WalletLedgerService;
+import com.qimu.qiapicommon.model.entity.UserInterfaceInvoke;
 import com.qimu.qiapicommon.model.vo.UserVO;
 import com.qimu.qiapicommon.service.inner.InnerUserService;
 import org.apache.commons.lang3.StringUtils;
@@ -12,6 +15,11 @@ import org.apache.dubbo.config.annotation.DubboService;
 import org.springframework.beans.BeanUtils;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @Author: QiMu
@@ -23,6 +31,10 @@ import javax.annotation.Resource;
 public class InnerUserServiceImpl implements InnerUserService {
     @Resource
     private UserService userService;
+    @Resource
+    private UserInterfaceInvokeMapper userInterfaceInvokeMapper;
+    @Resource
+    private WalletLedgerService walletLedgerService;
 
     @Override
     public UserVO getInvokeUserByAccessKey(String accessKey) {
@@ -34,6 +46,32 @@ public class InnerUserServiceImpl implements InnerUserService {
         User user = userService.getOne(userLambdaQueryWrapper);
         UserVO userVO = new UserVO();
         BeanUtils.copyProperties(user, userVO);
+        userVO.setBalance(walletLedgerService.getBalance(user.getId()));
         return userVO;
     }
+
+    @Override
+    public List<UserVO> listRecentlyActiveInvokeUsers(int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        LambdaQueryWrapper<UserInterfaceInvoke> invokeLambdaQueryWrapper = new LambdaQueryWrapper<>();
+        invokeLambdaQueryWrapper.select(UserInterfaceInvoke::getUserId);
+        invokeLambdaQueryWrapper.orderByDesc(UserInterfaceInvoke::getUpdateTime);
+        invokeLambdaQueryWrapper.last("limit " + limit * 4);
+        Set<Long> userIds = userInterfaceInvokeMapper.selectList(invokeLambdaQueryWrapper).stream()
+                .map(UserInterfaceInvoke::getUserId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return userService.listByIds(userIds.stream().limit(limit).collect(Collectors.toList())).stream()
+                .filter(user -> StringUtils.isNotBlank(user.getAccessKey()))
+                .map(user -> {
+                    UserVO userVO = new UserVO();
+                    BeanUtils.copyProperties(user, userVO);
+                    userVO.setBalance(walletLedgerService.getBalance(user.getId()));
+                    return userVO;
+                }).collect(Collectors.toList());
+    }
 }
@@ -1,19 +1,34 @@
 package com.qimu.qiapibackend.service.inner.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.config.InvokeCounterConfig;
 import com.qimu.qiapibackend.exception.BusinessException;
+import com.qimu.qiapibackend.manager.InvokeCounterManager;
 import com.qimu.qiapibackend.mapper.UserInterfaceInvokeMapper;
 import com.qimu.qiapibackend.service.InterfaceInfoService;
+import com.qimu.qiapibackend.model.entity.WalletLedger;
+import com.qimu.qiapibackend.model.enums.WalletLedgerBizTypeEnum;
 import com.qimu.qiapibackend.service.UserService;
+import com.qimu.qiapibackend.service.WalletLedgerService;
+import com.qimu.qiapicommon.model.dto.InvokeRecord;
 import com.qimu.qiapicommon.model.entity.UserInterfaceInvoke;
 import com.qimu.qiapicommon.service.inner.InnerUserInterfaceInvokeService;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.dubbo.config.annotation.DubboService;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.qimu.qiapibackend.constant.InvokeConstant.*;
 
 /**
  * @Author: QiMu
@@ -28,29 +43,219 @@ public class UserInterfaceInvokeServiceImpl extends ServiceImpl<UserInterfaceInv
     private InterfaceInfoService interfaceInfoService;
     @Resource
     private UserService userService;
+    @Resource
+    private RedisTemplate<String, String> redisTemplate;
+    @Resource
+    private InvokeCounterManager invokeCounterManager;
+    @Resource
+    private InvokeCounterConfig invokeCounterConfig;
+    @Resource
+    private WalletLedgerService walletLedgerService;
 
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean invoke(Long interfaceInfoId, Long userId, Integer reduceScore) {
-        LambdaQueryWrapper<UserInterfaceInvoke> invokeLambdaQueryWrapper = new LambdaQueryWrapper<>();
-        invokeLambdaQueryWrapper.eq(UserInterfaceInvoke::getInterfaceId, interfaceInfoId);
-        invokeLambdaQueryWrapper.eq(UserInterfaceInvoke::getUserId, userId);
-        UserInterfaceInvoke userInterfaceInvoke = this.getOne(invokeLambdaQueryWrapper);
-        // 不存在就创建一条记录
-        boolean invokeResult;
-        if (userInterfaceInvoke == null) {
-            userInterfaceInvoke = new UserInterfaceInvoke();
-            userInterfaceInvoke.setInterfaceId(interfaceInfoId);
-            userInterfaceInvoke.setUserId(userId);
-            userInterfaceInvoke.setTotalInvokes(1L);
-            invokeResult = this.save(userInterfaceInvoke);
-        } else {
-            LambdaUpdateWrapper<UserInterfaceInvoke> invokeLambdaUpdateWrapper = new LambdaUpdateWrapper<>();
-            invokeLambdaUpdateWrapper.eq(UserInterfaceInvoke::getInterfaceId, interfaceInfoId);
-            invokeLambdaUpdateWrapper.eq(UserInterfaceInvoke::getUserId, userId);
-            invokeLambdaUpdateWrapper.setSql("totalInvokes = totalInvokes + 1");
-            invokeResult = this.update(invokeLambdaUpdateWrapper);
+        return doInvoke(interfaceInfoId, userId, reduceScore);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean invoke(InvokeRecord invokeRecord) {
+        validInvokeRecord(invokeRecord);
+        String requestIdKey = INVOKE_REQUEST_ID_KEY + invokeRecord.getRequestId();
+        Boolean firstInvoke = redisTemplate.opsForValue().setIfAbsent(requestIdKey, INVOKE_REQUEST_ID_PENDING,
+                INVOKE_REQUEST_ID_PENDING_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(firstInvoke)) {
+            // 已经计过费，直接视为成功；仍在计费中则返回失败，由调用方稍后重试
+            return !INVOKE_REQUEST_ID_PENDING.equals(redisTemplate.opsForValue().get(requestIdKey));
+        }
+        confirmRequestIdsAfterCommit(Collections.singletonList(requestIdKey));
+        return doInvoke(invokeRecord.getInterfaceInfoId(), invokeRecord.getUserId(), invokeRecord.getReduceScore());
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean invokeBatch(List<InvokeRecord> invokeRecords) {
+        if (invokeRecords == null || invokeRecords.isEmpty()) {
+            return true;
+        }
+        // 批内按 requestId 去重
+        Map<String, InvokeRecord> invokeRecordMap = new LinkedHashMap<>();
+        for (InvokeRecord invokeRecord : invokeRecords) {
+            // 先校验整批，不合法的记录在占用幂等键和扣费之前拒绝
+            validInvokeRecord(invokeRecord);
+            invokeRecordMap.putIfAbsent(invokeRecord.getRequestId(), invokeRecord);
+        }
+        List<InvokeRecord> pendingInvokeRecords = new ArrayList<>();
+        List<InvokeRecord> newInvokeRecords = filterInvokedRecords(new ArrayList<>(invokeRecordMap.values()), pendingInvokeRecords);
+        // 仍在其他事务中计费的记录不算成功，调用方稍后重试整批，已提交的部分会被去重
+        boolean allConfirmed = pendingInvokeRecords.isEmpty();
+        if (newInvokeRecords.isEmpty()) {
+            return allConfirmed;
+        }
+        // 按 用户+接口、接口、用户 聚合，TreeMap 保证加锁顺序一致，避免并发批次互相死锁；扣费只插入流水，不加行锁
+        Map<String, UserInterfaceInvoke> userInterfaceInvokeMap = new TreeMap<>();
+        Map<Long, Long> interfaceInvokeMap = new TreeMap<>();
+        Map<Long, Integer> userReduceScoreMap = new LinkedHashMap<>();
+        for (InvokeRecord invokeRecord : newInvokeRecords) {
+            Long interfaceInfoId = invokeRecord.getInterfaceInfoId();
+            Long userId = invokeRecord.getUserId();
+            UserInterfaceInvoke userInterfaceInvoke = userInterfaceInvokeMap.computeIfAbsent(userId + "_" + interfaceInfoId, key -> {
+                UserInterfaceInvoke invoke = new UserInterfaceInvoke();
+                invoke.setId(IdWorker.getId());
+                invoke.setUserId(userId);
+                invoke.setInterfaceId(interfaceInfoId);
+                invoke.setTotalInvokes(0L);
+                return invoke;
+            });
+            userInterfaceInvoke.setTotalInvokes(userInterfaceInvoke.getTotalInvokes() + 1);
+            interfaceInvokeMap.merge(interfaceInfoId, 1L, Long::sum);
+            userReduceScoreMap.merge(userId, invokeRecord.getReduceScore(), Integer::sum);
+        }
+        if (!Boolean.TRUE.equals(invokeCounterConfig.getWriteBehind())) {
+            this.baseMapper.batchUpsertTotalInvokes(new ArrayList<>(userInterfaceInvokeMap.values()));
+            for (Map.Entry<Long, Long> entry : interfaceInvokeMap.entrySet()) {
+                if (!interfaceInfoService.updateTotalInvokes(entry.getKey(), entry.getValue())) {
+                    throw new BusinessException(ErrorCode.OPERATION_ERROR, "调用失败");
+                }
+            }
+        }
+        // 每个用户一条扣费流水，批量插入
+        List<WalletLedger> walletLedgerList = new ArrayList<>();
+        userReduceScoreMap.forEach((userId, reduceScore) -> {
+            WalletLedger walletLedger = new WalletLedger();
+            walletLedger.setUserId(userId);
+            walletLedger.setAmount(-reduceScore);
+            walletLedger.setBizType(WalletLedgerBizTypeEnum.INVOKE.getValue());
+            walletLedgerList.add(walletLedger);
+        });
+        if (!walletLedgerService.appendBatch(walletLedgerList)) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "调用失败");
+        }
+        if (Boolean.TRUE.equals(invokeCounterConfig.getWriteBehind())) {
+            // 扣费成功后登记，事务提交后才计数，回滚时不会多计
+            userInterfaceInvokeMap.values().forEach(invoke ->
+                    invokeCounterManager.increment(invoke.getUserId(), invoke.getInterfaceId(), invoke.getTotalInvokes()));
+        }
+        return allConfirmed;
+    }
+
+    /**
+     * 校验调用记录，未设置扣除积分的按免费处理
+     *
+     * @param invokeRecord 调用记录
+     */
+    private static void validInvokeRecord(InvokeRecord invokeRecord) {
+        if (invokeRecord == null || StringUtils.isBlank(invokeRecord.getRequestId())
+                || invokeRecord.getInterfaceInfoId() == null || invokeRecord.getUserId() == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        if (invokeRecord.getReduceScore() == null) {
+            invokeRecord.setReduceScore(0);
+        }
+        if (invokeRecord.getReduceScore() < 0) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "扣除积分个数不能为负数");
+        }
+    }
+
+    /**
+     * 过滤已计费的记录，并为新记录占用幂等键
+     * <p>
+     * 占位只保留一小段时间，事务提交后才改为已计费并延长到保留天数，未提交时立即释放。
+     * 进程在提交前崩溃时占位到期自动失效，重放时重新计费，不会因为去重键已写入而丢失扣费。
+     *
+     * @param invokeRecords        调用记录
+     * @param pendingInvokeRecords 仍在计费中的记录
+     * @return {@link List}<{@link InvokeRecord}> 需要计费的新记录
+     */
+    @SuppressWarnings("unchecked")
+    private List<InvokeRecord> filterInvokedRecords(List<InvokeRecord> invokeRecords, List<InvokeRecord> pendingInvokeRecords) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> redisOperations = (RedisOperations<String, String>) operations;
+                for (InvokeRecord invokeRecord : invokeRecords) {
+                    redisOperations.opsForValue().setIfAbsent(INVOKE_REQUEST_ID_KEY + invokeRecord.getRequestId(),
+                            INVOKE_REQUEST_ID_PENDING, INVOKE_REQUEST_ID_PENDING_SECONDS, TimeUnit.SECONDS);
+                }
+                return null;
+            }
+        });
+        List<InvokeRecord> newInvokeRecords = new ArrayList<>();
+        List<String> requestIdKeys = new ArrayList<>();
+        List<InvokeRecord> invokedRecords = new ArrayList<>();
+        for (int i = 0; i < invokeRecords.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                newInvokeRecords.add(invokeRecords.get(i));
+                requestIdKeys.add(INVOKE_REQUEST_ID_KEY + invokeRecords.get(i).getRequestId());
+            } else {
+                invokedRecords.add(invokeRecords.get(i));
+            }
+        }
+        if (!invokedRecords.isEmpty()) {
+            List<String> invokedKeys = new ArrayList<>();
+            invokedRecords.forEach(invokeRecord -> invokedKeys.add(INVOKE_REQUEST_ID_KEY + invokeRecord.getRequestId()));
+            List<String> values = redisTemplate.opsForValue().multiGet(invokedKeys);
+            for (int i = 0; i < invokedRecords.size(); i++) {
+                if (values != null && INVOKE_REQUEST_ID_PENDING.equals(values.get(i))) {
+                    pendingInvokeRecords.add(invokedRecords.get(i));
+                }
+            }
+        }
+        if (!requestIdKeys.isEmpty()) {
+            confirmRequestIdsAfterCommit(requestIdKeys);
+        }
+        return newInvokeRecords;
+    }
+
+    /**
+     * 事务提交后把占位改为已计费，未提交时释放占位，保证可以重试
+     *
+     * @param requestIdKeys 幂等键
+     */
+    private void confirmRequestIdsAfterCommit(List<String> requestIdKeys) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    redisTemplate.delete(requestIdKeys);
+                    return;
+                }
+                redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        RedisOperations<String, String> redisOperations = (RedisOperations<String, String>) operations;
+                        for (String requestIdKey : requestIdKeys) {
+                            redisOperations.opsForValue().set(requestIdKey, INVOKE_REQUEST_ID_DONE, INVOKE_REQUEST_ID_EXPIRE_DAYS, TimeUnit.DAYS);
+                        }
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 更新调用次数并扣除积分，需在事务中调用
+     *
+     * @param interfaceInfoId 接口信息id
+     * @param userId          用户id
+     * @param reduceScore     扣除积分
+     * @return boolean
+     */
+    private boolean doInvoke(Long interfaceInfoId, Long userId, Integer reduceScore) {
+        // 调用次数异步回写，这里只扣除积分
+        if (Boolean.TRUE.equals(invokeCounterConfig.getWriteBehind())) {
+            if (!userService.reduceWalletBalance(userId, reduceScore)) {
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "调用失败");
+            }
+            // 事务提交后才计数，回滚时不会多计
+            invokeCounterManager.increment(userId, interfaceInfoId, 1);
+            return true;
         }
+        // 一条语句完成插入或累加，并发首次调用不会产生重复记录
+        boolean invokeResult = this.baseMapper.upsertTotalInvokes(IdWorker.getId(), userId, interfaceInfoId, 1) > 0;
         // 更新接口总调用次数
         boolean interfaceUpdateInvokeSave = interfaceInfoService.updateTotalInvokes(interfaceInfoId);
         // 更新用户钱包积分
@@ -0,0 +1,154 @@
+package com.qimu.qiapibackend.utils;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/05 10:30:18
+ * @Version: 1.0
+ * @Description: 内存倒排索引，按 BM25 打分
+ * <p>
+ * 每个文档保存分词后的词频和一份原始对象（用于过滤），支持单个文档增删和整体替换；读写锁保护，查询之间互不阻塞。
+ */
+public class Bm25Index<T> {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private Map<Long, Doc<T>> docs = new HashMap<>();
+    private long totalLength;
+
+    /**
+     * 新增或替换文档
+     *
+     * @param id     文档id
+     * @param source 原始对象
+     * @param tokens 分词结果，字段加权可通过重复词实现
+     */
+    public void put(long id, T source, List<String> tokens) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            Doc<T> doc = new Doc<>(source, tokens);
+            docs.put(id, doc);
+            totalLength += doc.length;
+            doc.termFrequencies.forEach((term, tf) -> postings.computeIfAbsent(term, key -> new HashMap<>()).put(id, tf));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除文档
+     *
+     * @param id 文档id
+     */
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 用一批文档整体替换索引，构建过程不持锁
+     *
+     * @param sources 文档id -> 原始对象
+     * @param tokens  文档id -> 分词结果
+     */
+    public void replaceAll(Map<Long, T> sources, Map<Long, List<String>> tokens) {
+        Bm25Index<T> rebuilt = new Bm25Index<>();
+        sources.forEach((id, source) -> rebuilt.put(id, source, tokens.getOrDefault(id, Collections.emptyList())));
+        lock.writeLock().lock();
+        try {
+            postings = rebuilt.postings;
+            docs = rebuilt.docs;
+            totalLength = rebuilt.totalLength;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查询，按得分降序、同分按 id 升序
+     *
+     * @param queryTokens 查询分词
+     * @param filter      过滤条件，为空不过滤
+     * @return 命中的文档id
+     */
+    public List<Long> search(List<String> queryTokens, Predicate<T> filter) {
+        lock.readLock().lock();
+        try {
+            if (docs.isEmpty()) {
+                return Collections.emptyList();
+            }
+            double avgLength = (double) totalLength / docs.size();
+            Map<Long, Double> scores = new HashMap<>();
+            for (String term : new LinkedHashSet<>(queryTokens)) {
+                Map<Long, Integer> posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (docs.size() - posting.size() + 0.5) / (posting.size() + 0.5));
+                posting.forEach((id, tf) -> {
+                    double norm = K1 * (1 - B + B * docs.get(id).length / avgLength);
+                    scores.merge(id, idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+                });
+            }
+            List<Map.Entry<Long, Double>> hits = new ArrayList<>(scores.size());
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                if (filter == null || filter.test(docs.get(entry.getKey()).source)) {
+                    hits.add(entry);
+                }
+            }
+            hits.sort(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+            List<Long> ids = new ArrayList<>(hits.size());
+            hits.forEach(hit -> ids.add(hit.getKey()));
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeInternal(long id) {
+        Doc<T> old = docs.remove(id);
+        if (old == null) {
+            return;
+        }
+        totalLength -= old.length;
+        for (String term : old.termFrequencies.keySet()) {
+            Map<Long, Integer> posting = postings.get(term);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private static class Doc<T> {
+        private final T source;
+        private final int length;
+        private final Map<String, Integer> termFrequencies = new HashMap<>();
+
+        private Doc(T source, List<String> tokens) {
+            this.source = source;
+            this.length = tokens.size();
+            tokens.forEach(token -> termFrequencies.merge(token, 1, Integer::sum));
+        }
+    }
+}
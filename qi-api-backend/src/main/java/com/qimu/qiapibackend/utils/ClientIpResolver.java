@@ -0,0 +1,104 @@
+package com.qimu.qiapibackend.utils;
+
+import java.util.Collection;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/02 15:10:27
+ * @Version: 1.0
+ * @Description: 客户端 IP 解析
+ * <p>
+ * 默认只信任连接的对端地址；对端是配置的可信代理时，才从 X-Forwarded-For 从右往左跳过可信代理，取第一个不可信的地址。
+ * 客户端自己填写的转发头排在最左侧，不会被采用。
+ */
+public class ClientIpResolver {
+    private ClientIpResolver() {
+    }
+
+    /**
+     * 解析客户端 IP
+     *
+     * @param remoteAddr     连接的对端地址
+     * @param forwardedFor   X-Forwarded-For 请求头，可为空
+     * @param trustedProxies 可信代理，支持单个 IP 和 IPv4 CIDR，如 10.0.0.0/8
+     * @return {@link String}
+     */
+    public static String resolve(String remoteAddr, String forwardedFor, Collection<String> trustedProxies) {
+        if (forwardedFor == null || trustedProxies == null || !isTrusted(remoteAddr, trustedProxies)) {
+            return remoteAddr;
+        }
+        String[] hops = forwardedFor.split(",");
+        String client = remoteAddr;
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                continue;
+            }
+            client = hop;
+            if (!isTrusted(hop, trustedProxies)) {
+                break;
+            }
+        }
+        return client;
+    }
+
+    private static boolean isTrusted(String ip, Collection<String> trustedProxies) {
+        if (ip == null) {
+            return false;
+        }
+        for (String proxy : trustedProxies) {
+            if (proxy == null) {
+                continue;
+            }
+            proxy = proxy.trim();
+            if (proxy.equals(ip) || (proxy.contains("/") && inCidr(ip, proxy))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean inCidr(String ip, String cidr) {
+        int slash = cidr.indexOf('/');
+        long network = ipv4ToLong(cidr.substring(0, slash));
+        long address = ipv4ToLong(ip);
+        if (network < 0 || address < 0) {
+            return false;
+        }
+        int prefix;
+        try {
+            prefix = Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (prefix < 0 || prefix > 32) {
+            return false;
+        }
+        long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+        return (network & mask) == (address & mask);
+    }
+
+    /**
+     * IPv4 转为整数，不是 IPv4 时返回 -1
+     */
+    private static long ipv4ToLong(String ip) {
+        String[] parts = ip.split("\\.");
+        if (parts.length != 4) {
+            return -1;
+        }
+        long value = 0;
+        for (String part : parts) {
+            int octet;
+            try {
+                octet = Integer.parseInt(part);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            if (octet < 0 || octet > 255) {
+                return -1;
+            }
+            value = (value << 8) | octet;
+        }
+        return value;
+    }
+}
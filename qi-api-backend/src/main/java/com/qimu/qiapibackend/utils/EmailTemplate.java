@@ -0,0 +1,95 @@
+package com.qimu.qiapibackend.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/31 10:02:16
+ * @Version: 1.0
+ * @Description: 预编译的邮件模板
+ * <p>
+ * 兼容 MessageFormat 的 {n} 占位符与单引号转义（'' 输出单引号，'...' 内原样输出），
+ * 编译时切分为文本段和参数下标，渲染时只做一次拼接，不再每次解析模板。
+ */
+public final class EmailTemplate {
+    /**
+     * segments[i] 之后接参数 argIndexes[i]，最后一段之后没有参数
+     */
+    private final String[] segments;
+    private final int[] argIndexes;
+    private final int literalLength;
+
+    private EmailTemplate(String[] segments, int[] argIndexes) {
+        this.segments = segments;
+        this.argIndexes = argIndexes;
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * 编译模板
+     *
+     * @param pattern 模板内容
+     * @return {@link EmailTemplate}
+     */
+    public static EmailTemplate compile(String pattern) {
+        List<String> segments = new ArrayList<>();
+        List<Integer> argIndexes = new ArrayList<>();
+        StringBuilder literal = new StringBuilder(pattern.length());
+        boolean quoted = false;
+        int length = pattern.length();
+        for (int i = 0; i < length; i++) {
+            char ch = pattern.charAt(i);
+            if (ch == '\'') {
+                if (i + 1 < length && pattern.charAt(i + 1) == '\'') {
+                    literal.append('\'');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (ch == '{' && !quoted) {
+                int end = pattern.indexOf('}', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("模板占位符未闭合，位置：" + i);
+                }
+                String index = pattern.substring(i + 1, end).trim();
+                if (index.isEmpty() || !index.chars().allMatch(Character::isDigit)) {
+                    throw new IllegalArgumentException("模板只支持 {n} 占位符：" + pattern.substring(i, end + 1));
+                }
+                segments.add(literal.toString());
+                argIndexes.add(Integer.parseInt(index));
+                literal.setLength(0);
+                i = end;
+            } else {
+                literal.append(ch);
+            }
+        }
+        segments.add(literal.toString());
+        return new EmailTemplate(segments.toArray(new String[0]), argIndexes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * 渲染模板，缺少的参数与 MessageFormat 一样原样输出 {n}
+     *
+     * @param args 参数
+     * @return {@link String}
+     */
+    public String render(Object... args) {
+        String[] values = new String[argIndexes.length];
+        int length = literalLength;
+        for (int i = 0; i < argIndexes.length; i++) {
+            int argIndex = argIndexes[i];
+            values[i] = argIndex < args.length ? String.valueOf(args[argIndex]) : "{" + argIndex + "}";
+            length += values[i].length();
+        }
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < argIndexes.length; i++) {
+            builder.append(segments[i]).append(values[i]);
+        }
+        return builder.append(segments[segments.length - 1]).toString();
+    }
+}
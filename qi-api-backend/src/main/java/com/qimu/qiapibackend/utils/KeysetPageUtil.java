@@ -0,0 +1,96 @@
+package com.qimu.qiapibackend.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.qimu.qiapibackend.common.CursorPage;
+import com.qimu.qiapibackend.common.ErrorCode;
+import com.qimu.qiapibackend.common.PageRequest;
+import com.qimu.qiapibackend.exception.BusinessException;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.qimu.qiapibackend.constant.CommonConstant.SORT_ORDER_DESC;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/03 15:20:54
+ * @Version: 1.0
+ * @Description: 游标（keyset）分页
+ * <p>
+ * 按 (排序字段, id) 排序，下一页条件为 (排序字段, id) 大于（降序时小于）上一页最后一行，
+ * 走索引直接定位，不随页数加深变慢；默认不查询总数。排序字段必须是非空列，且只能从白名单中选择。
+ */
+public class KeysetPageUtil {
+    private static final String ID_COLUMN = "id";
+
+    private KeysetPageUtil() {
+    }
+
+    /**
+     * 游标分页查询
+     *
+     * @param service          服务
+     * @param queryWrapper     筛选条件，不要包含排序
+     * @param pageRequest      分页请求
+     * @param sortFields       允许排序的列及取值方法
+     * @param defaultSortField 未指定排序列时使用的列
+     * @param maxPageSize      单页最大条数
+     * @return {@link CursorPage}<{@link T}>
+     */
+    public static <T> CursorPage<T> page(IService<T> service, QueryWrapper<T> queryWrapper, PageRequest pageRequest,
+                                         Map<String, Function<T, Object>> sortFields, String defaultSortField, long maxPageSize) {
+        long size = pageRequest.getPageSize();
+        if (size <= 0 || size > maxPageSize) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "每页条数需在 1 到 " + maxPageSize + " 之间");
+        }
+        String sortField = StringUtils.defaultIfBlank(pageRequest.getSortField(), defaultSortField);
+        if (!sortFields.containsKey(sortField)) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的排序字段");
+        }
+        boolean ascending = !SORT_ORDER_DESC.trim().equals(StringUtils.trim(pageRequest.getSortOrder()));
+        PageCursor cursor = null;
+        if (StringUtils.isNotBlank(pageRequest.getCursor())) {
+            try {
+                cursor = PageCursor.decode(pageRequest.getCursor());
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "游标无效");
+            }
+            if (!cursor.getSortField().equals(sortField) || cursor.isAscending() != ascending) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "游标与排序条件不一致");
+            }
+        }
+        CursorPage<T> cursorPage = new CursorPage<>();
+        if (cursor == null && pageRequest.isSearchCount()) {
+            cursorPage.setTotal(service.count(queryWrapper));
+        }
+        if (cursor != null) {
+            Object lastValue = cursor.getLastValue();
+            long lastId = cursor.getLastId();
+            if (ID_COLUMN.equals(sortField)) {
+                queryWrapper.gt(ascending, ID_COLUMN, lastId).lt(!ascending, ID_COLUMN, lastId);
+            } else {
+                queryWrapper.and(wrapper -> wrapper
+                        .gt(ascending, sortField, lastValue).lt(!ascending, sortField, lastValue)
+                        .or(tie -> tie.eq(sortField, lastValue).gt(ascending, ID_COLUMN, lastId).lt(!ascending, ID_COLUMN, lastId)));
+            }
+        }
+        queryWrapper.orderBy(!ID_COLUMN.equals(sortField), ascending, sortField)
+                .orderBy(true, ascending, ID_COLUMN)
+                .last("limit " + (size + 1));
+        List<T> records = service.list(queryWrapper);
+        boolean hasMore = records.size() > size;
+        if (hasMore) {
+            records = records.subList(0, (int) size);
+            T last = records.get(records.size() - 1);
+            Object lastId = sortFields.get(ID_COLUMN).apply(last);
+            cursorPage.setNextCursor(new PageCursor(sortField, ascending, ((Number) lastId).longValue(),
+                    sortFields.get(sortField).apply(last)).encode());
+        }
+        cursorPage.setRecords(records);
+        cursorPage.setHasMore(hasMore);
+        return cursorPage;
+    }
+}
@@ -0,0 +1,128 @@
+package com.qimu.qiapibackend.utils;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/26 09:30:14
+ * @Version: 1.0
+ * @Description: 可合并的耗时分布（对数分桶）
+ * <p>
+ * 第 i 个桶覆盖 (γ^(i-1), γ^i] 毫秒，取值为桶内几何中点，分位数相对误差不超过 (γ-1)/(γ+1)，约 11%；
+ * 两个分布合并只需按桶相加，因此分钟、小时、天各级汇总可以直接累加。
+ */
+public class LatencySketch {
+    private static final double GAMMA = 1.25;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    /**
+     * 桶数，最后一个桶覆盖 1.25^62 ≈ 10^6 毫秒以上
+     */
+    private static final int BUCKET_COUNT = 64;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long total;
+
+    /**
+     * 记录一次耗时
+     *
+     * @param latency 耗时（毫秒）
+     */
+    public void add(long latency) {
+        counts[indexOf(latency)]++;
+        total++;
+    }
+
+    /**
+     * 合并另一个分布
+     *
+     * @param other 其他分布
+     */
+    public void merge(LatencySketch other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    /**
+     * 估算分位数
+     *
+     * @param quantile 分位，如 0.95
+     * @return long 耗时（毫秒），无数据时返回 0
+     */
+    public long quantile(double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(BUCKET_COUNT - 1);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * 编码为稀疏格式：桶下标:次数，逗号分隔
+     *
+     * @return {@link String}
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(i).append(':').append(counts[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 从稀疏格式解码
+     *
+     * @param encoded 编码
+     * @return {@link LatencySketch}
+     */
+    public static LatencySketch decode(String encoded) {
+        LatencySketch sketch = new LatencySketch();
+        if (StringUtils.isBlank(encoded)) {
+            return sketch;
+        }
+        for (String bucket : encoded.split(",")) {
+            int separator = bucket.indexOf(':');
+            int index = Integer.parseInt(bucket.substring(0, separator));
+            long count = Long.parseLong(bucket.substring(separator + 1));
+            if (index >= 0 && index < BUCKET_COUNT) {
+                sketch.counts[index] += count;
+                sketch.total += count;
+            }
+        }
+        return sketch;
+    }
+
+    static int indexOf(long latency) {
+        if (latency <= 1) {
+            return 0;
+        }
+        int index = (int) Math.ceil(Math.log(latency) / LOG_GAMMA);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    static long valueOf(int index) {
+        if (index == 0) {
+            return 1;
+        }
+        return Math.round(2 * Math.pow(GAMMA, index) / (GAMMA + 1));
+    }
+}
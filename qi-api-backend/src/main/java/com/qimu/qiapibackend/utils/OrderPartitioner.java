@@ -0,0 +1,53 @@
+package com.qimu.qiapibackend.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/18 09:10:22
+ * @Version: 1.0
+ * @Description: 订单分区
+ * <p>
+ * 订单号按哈希落到固定分区；存活节点按 id 排序后轮流认领分区，每个节点只需知道存活节点列表即可算出自己的分区，
+ * 节点增减时分区自动重新分配。
+ */
+public class OrderPartitioner {
+    private OrderPartitioner() {
+    }
+
+    /**
+     * 订单所在分区，String.hashCode 的算法固定，各节点结果一致
+     *
+     * @param orderNo    订单号
+     * @param partitions 分区数
+     * @return int
+     */
+    public static int partitionOf(String orderNo, int partitions) {
+        return Math.floorMod(orderNo.hashCode(), partitions);
+    }
+
+    /**
+     * 节点认领的分区
+     *
+     * @param liveNodes  存活节点
+     * @param nodeId     当前节点
+     * @param partitions 分区数
+     * @return {@link List}<{@link Integer}> 当前节点不在存活列表中时为空
+     */
+    public static List<Integer> ownedPartitions(Collection<String> liveNodes, String nodeId, int partitions) {
+        List<String> nodes = new ArrayList<>(new TreeSet<>(liveNodes));
+        int index = nodes.indexOf(nodeId);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        List<Integer> owned = new ArrayList<>();
+        for (int partition = index; partition < partitions; partition += nodes.size()) {
+            owned.add(partition);
+        }
+        return owned;
+    }
+}
@@ -0,0 +1,101 @@
+package com.qimu.qiapibackend.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/03 15:08:37
+ * @Version: 1.0
+ * @Description: 游标分页的游标，记录排序条件和上一页最后一行的 (排序值, id)
+ * <p>
+ * 编码为 url 安全的 base64，对调用方不透明；排序值带类型标记，解码后按原类型绑定参数，避免长整型按字符串比较。
+ */
+public final class PageCursor {
+    private static final String VERSION = "1";
+    private static final String SEPARATOR = "|";
+    private static final char TYPE_LONG = 'L';
+    private static final char TYPE_DATE = 'D';
+    private static final char TYPE_STRING = 'S';
+
+    private final String sortField;
+    private final boolean ascending;
+    private final long lastId;
+    private final Object lastValue;
+
+    public PageCursor(String sortField, boolean ascending, long lastId, Object lastValue) {
+        this.sortField = sortField;
+        this.ascending = ascending;
+        this.lastId = lastId;
+        this.lastValue = lastValue;
+    }
+
+    /**
+     * 编码
+     *
+     * @return {@link String}
+     */
+    public String encode() {
+        String value;
+        if (lastValue instanceof Number) {
+            value = TYPE_LONG + String.valueOf(((Number) lastValue).longValue());
+        } else if (lastValue instanceof Date) {
+            value = TYPE_DATE + String.valueOf(((Date) lastValue).getTime());
+        } else if (lastValue instanceof String) {
+            value = TYPE_STRING + (String) lastValue;
+        } else {
+            throw new IllegalArgumentException("不支持的排序值类型：" + (lastValue == null ? null : lastValue.getClass()));
+        }
+        String raw = String.join(SEPARATOR, VERSION, sortField, ascending ? "a" : "d", String.valueOf(lastId), value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码，格式不正确时抛出 IllegalArgumentException
+     *
+     * @param cursor 游标
+     * @return {@link PageCursor}
+     */
+    public static PageCursor decode(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        // 排序值放在最后，字符串里出现分隔符也不影响
+        String[] parts = raw.split("\\|", 5);
+        if (parts.length != 5 || !VERSION.equals(parts[0]) || parts[4].isEmpty()) {
+            throw new IllegalArgumentException("游标格式错误");
+        }
+        long lastId = Long.parseLong(parts[3]);
+        String value = parts[4].substring(1);
+        Object lastValue;
+        switch (parts[4].charAt(0)) {
+            case TYPE_LONG:
+                lastValue = Long.parseLong(value);
+                break;
+            case TYPE_DATE:
+                lastValue = new Date(Long.parseLong(value));
+                break;
+            case TYPE_STRING:
+                lastValue = value;
+                break;
+            default:
+                throw new IllegalArgumentException("游标格式错误");
+        }
+        return new PageCursor(parts[1], "a".equals(parts[2]), lastId, lastValue);
+    }
+
+    public String getSortField() {
+        return sortField;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    public Object getLastValue() {
+        return lastValue;
+    }
+}
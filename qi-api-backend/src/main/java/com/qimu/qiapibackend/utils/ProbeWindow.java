@@ -0,0 +1,141 @@
+package com.qimu.qiapibackend.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/12 09:48:05
+ * @Version: 1.0
+ * @Description: 健康探测滑动窗口统计
+ * <p>
+ * 探测结果按最新在前存放在定长列表中（写入时截断，相当于环形缓冲区），每条样本编码为 时间,耗时,是否成功；
+ * 窗口只有几十条，分位数直接排序计算，不需要近似。
+ */
+public class ProbeWindow {
+    private static final String SEPARATOR = ",";
+
+    private final int samples;
+    private final int failures;
+    private final long p50Latency;
+    private final long p95Latency;
+    private final long lastProbeTime;
+    private final long lastLatency;
+    private final boolean lastSuccess;
+
+    private ProbeWindow(int samples, int failures, long p50Latency, long p95Latency, long lastProbeTime, long lastLatency, boolean lastSuccess) {
+        this.samples = samples;
+        this.failures = failures;
+        this.p50Latency = p50Latency;
+        this.p95Latency = p95Latency;
+        this.lastProbeTime = lastProbeTime;
+        this.lastLatency = lastLatency;
+        this.lastSuccess = lastSuccess;
+    }
+
+    /**
+     * 编码一条样本
+     *
+     * @param probeTime 探测时间（毫秒时间戳）
+     * @param latency   耗时（毫秒）
+     * @param success   是否成功
+     * @return {@link String}
+     */
+    public static String encode(long probeTime, long latency, boolean success) {
+        return probeTime + SEPARATOR + latency + SEPARATOR + (success ? 1 : 0);
+    }
+
+    /**
+     * 统计窗口，无法解析的样本忽略
+     *
+     * @param encodedSamples 编码后的样本，最新在前
+     * @return {@link ProbeWindow}
+     */
+    public static ProbeWindow of(List<String> encodedSamples) {
+        long[] latencies = new long[encodedSamples.size()];
+        int samples = 0;
+        int failures = 0;
+        long lastProbeTime = 0;
+        long lastLatency = 0;
+        boolean lastSuccess = false;
+        for (String encodedSample : encodedSamples) {
+            String[] parts = encodedSample.split(SEPARATOR);
+            if (parts.length != 3) {
+                continue;
+            }
+            long probeTime;
+            long latency;
+            try {
+                probeTime = Long.parseLong(parts[0]);
+                latency = Long.parseLong(parts[1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            boolean success = "1".equals(parts[2]);
+            if (samples == 0) {
+                lastProbeTime = probeTime;
+                lastLatency = latency;
+                lastSuccess = success;
+            }
+            if (!success) {
+                failures++;
+            }
+            latencies[samples++] = latency;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        return new ProbeWindow(samples, failures, quantile(sorted, 0.5), quantile(sorted, 0.95), lastProbeTime, lastLatency, lastSuccess);
+    }
+
+    private static long quantile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * 是否超出 SLO：样本不足时不判断
+     *
+     * @param minSamples       最少样本数
+     * @param maxErrorRate     最大失败率
+     * @param latencySloMillis p95 耗时上限（毫秒）
+     * @return boolean
+     */
+    public boolean violates(int minSamples, double maxErrorRate, long latencySloMillis) {
+        return samples >= minSamples && (getErrorRate() > maxErrorRate || p95Latency > latencySloMillis);
+    }
+
+    public double getErrorRate() {
+        return samples == 0 ? 0 : (double) failures / samples;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public long getP50Latency() {
+        return p50Latency;
+    }
+
+    public long getP95Latency() {
+        return p95Latency;
+    }
+
+    public long getLastProbeTime() {
+        return lastProbeTime;
+    }
+
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    public boolean isLastSuccess() {
+        return lastSuccess;
+    }
+}
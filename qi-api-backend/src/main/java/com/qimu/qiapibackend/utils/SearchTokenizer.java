@@ -0,0 +1,100 @@
+package com.qimu.qiapibackend.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/05 10:12:40
+ * @Version: 1.0
+ * @Description: 搜索分词
+ * <p>
+ * 字母数字按连续片段切成单词并转小写；为了输入单词的一部分也能搜到（如 weat 搜到 weather、ip 搜到 getIp），
+ * 索引时再输出单词的二元、三元组，查询时长于三个字符的单词再拆成三元组。
+ * 中日韩文字没有空格分隔，索引时同时输出单字和相邻二元组，查询时片段长度大于 1 只用二元组（更精确），单字查询用单字。
+ */
+public class SearchTokenizer {
+    /**
+     * 单词拆分的最长 n 元组，查询时按这个长度拆分
+     */
+    private static final int MAX_GRAM = 3;
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 索引分词
+     *
+     * @param text 文本
+     * @return {@link List}<{@link String}>
+     */
+    public static List<String> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 查询分词
+     *
+     * @param text 文本
+     * @return {@link List}<{@link String}>
+     */
+    public static List<String> tokenizeForQuery(String text) {
+        return tokenize(text, false);
+    }
+
+    private static List<String> tokenize(String text, boolean index) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT);
+        int length = normalized.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = normalized.codePointAt(i);
+            if (isCjk(codePoint)) {
+                List<String> chars = new ArrayList<>();
+                while (i < length && isCjk(codePoint = normalized.codePointAt(i))) {
+                    chars.add(new String(Character.toChars(codePoint)));
+                    i += Character.charCount(codePoint);
+                }
+                if (index || chars.size() == 1) {
+                    tokens.addAll(chars);
+                }
+                for (int j = 0; j + 1 < chars.size(); j++) {
+                    tokens.add(chars.get(j) + chars.get(j + 1));
+                }
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(codePoint = normalized.codePointAt(i)) && !isCjk(codePoint)) {
+                    i += Character.charCount(codePoint);
+                }
+                String word = normalized.substring(start, i);
+                tokens.add(word);
+                addGrams(tokens, word, index);
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 输出单词中比单词短的 n 元组：索引时输出 2 到 MAX_GRAM 元组，查询时只输出 MAX_GRAM 元组
+     */
+    private static void addGrams(List<String> tokens, String word, boolean index) {
+        int[] codePoints = word.codePoints().toArray();
+        for (int n = index ? 2 : MAX_GRAM; n <= MAX_GRAM && n < codePoints.length; n++) {
+            for (int j = 0; j + n <= codePoints.length; j++) {
+                tokens.add(new String(codePoints, j, n));
+            }
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+}
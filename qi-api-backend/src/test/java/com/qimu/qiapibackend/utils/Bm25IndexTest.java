@@ -0,0 +1,65 @@
+package com.qimu.qiapibackend.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class Bm25IndexTest {
+
+    @Test
+    void tokenizeMixedText() {
+        Assertions.assertEquals(Arrays.asList("天", "气", "查", "询", "天气", "气查", "查询", "api", "ap", "pi", "v2"),
+                SearchTokenizer.tokenizeForIndex("天气查询 API/v2"));
+        Assertions.assertEquals(Arrays.asList("天气", "气查", "查询"), SearchTokenizer.tokenizeForQuery("天气查询"));
+        Assertions.assertEquals(Collections.singletonList("天"), SearchTokenizer.tokenizeForQuery("天"));
+    }
+
+    @Test
+    void ranksByRelevanceAndSupportsUpdates() {
+        Bm25Index<String> index = new Bm25Index<>();
+        index.put(1, "online", SearchTokenizer.tokenizeForIndex("天气查询 获取城市实时天气"));
+        index.put(2, "online", SearchTokenizer.tokenizeForIndex("随机毛驴气话"));
+        index.put(3, "offline", SearchTokenizer.tokenizeForIndex("天气预报"));
+        List<String> query = SearchTokenizer.tokenizeForQuery("天气");
+        // "气话" 只含单字 "气"，不命中二元组 "天气"；较短的文档长度归一化后得分更高
+        Assertions.assertEquals(Arrays.asList(3L, 1L), index.search(query, null));
+        Assertions.assertEquals(Collections.singletonList(1L), index.search(query, "online"::equals));
+
+        index.put(2, "online", SearchTokenizer.tokenizeForIndex("天气天气"));
+        Assertions.assertEquals(2L, index.search(query, null).get(0));
+        index.remove(2);
+        Assertions.assertEquals(Arrays.asList(3L, 1L), index.search(query, null));
+        Assertions.assertTrue(index.search(SearchTokenizer.tokenizeForQuery("不存在"), null).isEmpty());
+    }
+
+    @Test
+    void matchesPartOfLatinWords() {
+        Assertions.assertEquals(Arrays.asList("weat", "wea", "eat"), SearchTokenizer.tokenizeForQuery("Weat"));
+        Bm25Index<String> index = new Bm25Index<>();
+        index.put(1, "a", SearchTokenizer.tokenizeForIndex("weather 天气"));
+        index.put(2, "a", SearchTokenizer.tokenizeForIndex("/api/name/getIp"));
+        Assertions.assertEquals(Collections.singletonList(1L), index.search(SearchTokenizer.tokenizeForQuery("weat"), null));
+        Assertions.assertEquals(Collections.singletonList(2L), index.search(SearchTokenizer.tokenizeForQuery("ip"), null));
+        // 完整单词仍然命中
+        Assertions.assertEquals(Collections.singletonList(2L), index.search(SearchTokenizer.tokenizeForQuery("getip"), null));
+    }
+
+    @Test
+    void replaceAllSwapsContent() {
+        Bm25Index<String> index = new Bm25Index<>();
+        index.put(1, "a", SearchTokenizer.tokenizeForIndex("old"));
+        Map<Long, String> sources = new HashMap<>();
+        Map<Long, List<String>> tokens = new HashMap<>();
+        sources.put(7L, "b");
+        tokens.put(7L, SearchTokenizer.tokenizeForIndex("new words"));
+        index.replaceAll(sources, tokens);
+        Assertions.assertEquals(1, index.size());
+        Assertions.assertTrue(index.search(SearchTokenizer.tokenizeForQuery("old"), null).isEmpty());
+        Assertions.assertEquals(Collections.singletonList(7L), index.search(SearchTokenizer.tokenizeForQuery("words"), null));
+    }
+}
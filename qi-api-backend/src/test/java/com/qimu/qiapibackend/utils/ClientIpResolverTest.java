@@ -0,0 +1,39 @@
+package com.qimu.qiapibackend.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class ClientIpResolverTest {
+
+    @Test
+    void ignoresForwardedHeaderFromUntrustedPeer() {
+        List<String> trusted = Collections.singletonList("10.0.0.1");
+        Assertions.assertEquals("203.0.113.9", ClientIpResolver.resolve("203.0.113.9", "1.2.3.4", trusted));
+        Assertions.assertEquals("203.0.113.9", ClientIpResolver.resolve("203.0.113.9", "1.2.3.4", Collections.emptyList()));
+        Assertions.assertEquals("10.0.0.1", ClientIpResolver.resolve("10.0.0.1", null, trusted));
+    }
+
+    @Test
+    void skipsTrustedProxiesFromTheRight() {
+        List<String> trusted = Arrays.asList("10.0.0.0/8", "192.168.1.5");
+        // 最左侧是客户端伪造的地址，取可信代理之前的第一个地址
+        Assertions.assertEquals("198.51.100.7",
+                ClientIpResolver.resolve("10.1.2.3", "6.6.6.6, 198.51.100.7, 192.168.1.5", trusted));
+        Assertions.assertEquals("198.51.100.7", ClientIpResolver.resolve("192.168.1.5", "198.51.100.7", trusted));
+        // 全部是可信代理时取最左侧
+        Assertions.assertEquals("10.9.9.9", ClientIpResolver.resolve("10.1.2.3", "10.9.9.9, 10.0.0.2", trusted));
+        Assertions.assertEquals("10.1.2.3", ClientIpResolver.resolve("10.1.2.3", " , ", trusted));
+    }
+
+    @Test
+    void matchesCidrPrefixes() {
+        Assertions.assertEquals("1.1.1.1", ClientIpResolver.resolve("172.16.5.4", "1.1.1.1", Collections.singletonList("172.16.0.0/12")));
+        Assertions.assertEquals("172.32.0.1", ClientIpResolver.resolve("172.32.0.1", "1.1.1.1", Collections.singletonList("172.16.0.0/12")));
+        Assertions.assertEquals("1.1.1.1", ClientIpResolver.resolve("8.8.8.8", "1.1.1.1", Collections.singletonList("0.0.0.0/0")));
+        Assertions.assertEquals("::1", ClientIpResolver.resolve("::1", "1.1.1.1", Collections.singletonList("10.0.0.0/8")));
+    }
+}
@@ -0,0 +1,43 @@
+package com.qimu.qiapibackend.utils;
+
+import com.qimu.qiapibackend.model.dto.user.LoginUserState;
+import com.qimu.qiapibackend.model.vo.UserVO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer(getClass().getClassLoader());
+
+    @Test
+    void roundTripCompactTypes() {
+        Object[] values = {"验证码123", 1703725200000L, 1800, Boolean.TRUE, new LoginUserState(1698354419367571457L, 3L)};
+        for (Object value : values) {
+            Assertions.assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+        }
+        Assertions.assertEquals(9, serializer.serialize(1703725200000L).length);
+        Assertions.assertEquals(17, serializer.serialize(new LoginUserState(1L, 0L)).length);
+    }
+
+    @Test
+    void readLegacyJdkValue() {
+        UserVO userVO = new UserVO();
+        userVO.setId(1698354419367571457L);
+        byte[] legacy = new JdkSerializationRedisSerializer().serialize(userVO);
+        Object value = serializer.deserialize(legacy);
+        Assertions.assertTrue(value instanceof UserVO);
+        Assertions.assertEquals(userVO.getId(), ((UserVO) value).getId());
+    }
+
+    @Test
+    void writeJdkWhenCompactWriteDisabled() {
+        CompactRedisSerializer readOnly = new CompactRedisSerializer(getClass().getClassLoader(), false);
+        byte[] bytes = readOnly.serialize(1703725200000L);
+        Assertions.assertEquals((byte) 0xAC, bytes[0]);
+        Assertions.assertEquals((byte) 0xED, bytes[1]);
+        Assertions.assertEquals(1703725200000L, readOnly.deserialize(bytes));
+        // 只读模式仍能读取其他节点已写入的紧凑编码
+        Assertions.assertEquals(1703725200000L, readOnly.deserialize(serializer.serialize(1703725200000L)));
+    }
+}
@@ -0,0 +1,36 @@
+package com.qimu.qiapibackend.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.MessageFormat;
+
+/**
+ * 邮件模板渲染吞吐对比，只输出结果；不在单元测试中运行，用 mvn test -P benchmark 执行
+ */
+class EmailTemplateBenchmark {
+
+    private static final Object[] CAPTCHA_ARGS = {"123456", "Qi-API 接口开放平台", "Qi-API Open Interface Platform", "柒木工作室",
+            "<a href='https://api.qimuu.icu/'>请联系我们</a>"};
+
+    @Test
+    void renderThroughput() throws Exception {
+        String pattern = EmailTemplateTest.load("email.html");
+        EmailTemplate template = EmailTemplate.compile(pattern);
+        int iterations = 20000;
+        long sink = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += MessageFormat.format(pattern, CAPTCHA_ARGS).length();
+            }
+            long messageFormatNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += template.render(CAPTCHA_ARGS).length();
+            }
+            long templateNanos = System.nanoTime() - start;
+            System.out.printf("round %d: MessageFormat %.0f ops/s, EmailTemplate %.0f ops/s (%d)%n", round,
+                    iterations * 1e9 / messageFormatNanos, iterations * 1e9 / templateNanos, sink);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.qimu.qiapibackend.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.stream.Collectors;
+
+class EmailTemplateTest {
+
+    private static final Object[] CAPTCHA_ARGS = {"123456", "Qi-API 接口开放平台", "Qi-API Open Interface Platform", "柒木工作室",
+            "<a href='https://api.qimuu.icu/'>请联系我们</a>"};
+
+    @Test
+    void renderMatchesMessageFormat() throws Exception {
+        for (String name : new String[]{"email.html", "pay.html"}) {
+            String pattern = load(name);
+            Assertions.assertEquals(MessageFormat.format(pattern, CAPTCHA_ARGS), EmailTemplate.compile(pattern).render(CAPTCHA_ARGS), name);
+        }
+        String pattern = "a''b '{0}' {1}-{0} 'it''s' {2}";
+        Assertions.assertEquals(MessageFormat.format(pattern, "x", "y"), EmailTemplate.compile(pattern).render("x", "y"));
+    }
+
+    @Test
+    void rejectsUnsupportedPlaceholder() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EmailTemplate.compile("{0,number}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EmailTemplate.compile("{0"));
+    }
+
+    static String load(String name) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                EmailTemplateTest.class.getClassLoader().getResourceAsStream(name), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.joining());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.qimu.qiapibackend.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LatencySketchTest {
+
+    @Test
+    void quantileWithinRelativeError() {
+        LatencySketch sketch = new LatencySketch();
+        for (int latency = 1; latency <= 1000; latency++) {
+            sketch.add(latency);
+        }
+        Assertions.assertEquals(1000, sketch.getTotal());
+        Assertions.assertEquals(500, sketch.quantile(0.5), 500 * 0.12);
+        Assertions.assertEquals(950, sketch.quantile(0.95), 950 * 0.12);
+    }
+
+    @Test
+    void mergeEqualsCombinedAndSurvivesEncoding() {
+        LatencySketch left = new LatencySketch();
+        LatencySketch right = new LatencySketch();
+        LatencySketch combined = new LatencySketch();
+        for (int latency = 0; latency < 300; latency++) {
+            (latency % 2 == 0 ? left : right).add(latency * 7L);
+            combined.add(latency * 7L);
+        }
+        LatencySketch merged = LatencySketch.decode(left.encode());
+        merged.merge(LatencySketch.decode(right.encode()));
+        Assertions.assertEquals(combined.encode(), merged.encode());
+        Assertions.assertEquals(combined.quantile(0.95), merged.quantile(0.95));
+    }
+
+    @Test
+    void emptySketch() {
+        LatencySketch sketch = LatencySketch.decode(null);
+        Assertions.assertEquals(0, sketch.quantile(0.5));
+        Assertions.assertEquals("", sketch.encode());
+    }
+}
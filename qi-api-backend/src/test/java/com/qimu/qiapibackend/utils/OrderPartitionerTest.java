@@ -0,0 +1,43 @@
+package com.qimu.qiapibackend.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class OrderPartitionerTest {
+
+    @Test
+    void partitionIsStableAndInRange() {
+        for (int i = 0; i < 1000; i++) {
+            String orderNo = "order_" + (10000000000000000L + i * 7919L);
+            int partition = OrderPartitioner.partitionOf(orderNo, 16);
+            Assertions.assertTrue(partition >= 0 && partition < 16);
+            Assertions.assertEquals(partition, OrderPartitioner.partitionOf(orderNo, 16));
+        }
+    }
+
+    @Test
+    void liveNodesCoverEveryPartitionOnce() {
+        List<String> nodes = Arrays.asList("node-c", "node-a", "node-b");
+        List<Integer> all = new ArrayList<>();
+        for (String node : nodes) {
+            all.addAll(OrderPartitioner.ownedPartitions(nodes, node, 16));
+        }
+        Collections.sort(all);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            expected.add(i);
+        }
+        Assertions.assertEquals(expected, all);
+        // 按节点 id 排序认领，与列表顺序无关
+        Assertions.assertEquals(Arrays.asList(0, 3, 6, 9, 12, 15), OrderPartitioner.ownedPartitions(nodes, "node-a", 16));
+        // 不在存活列表中的节点不认领分区
+        Assertions.assertTrue(OrderPartitioner.ownedPartitions(nodes, "node-d", 16).isEmpty());
+        // 节点多于分区时部分节点空闲
+        Assertions.assertTrue(OrderPartitioner.ownedPartitions(nodes, "node-c", 2).isEmpty());
+    }
+}
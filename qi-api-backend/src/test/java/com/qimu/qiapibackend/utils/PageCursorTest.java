@@ -0,0 +1,28 @@
+package com.qimu.qiapibackend.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+class PageCursorTest {
+
+    @Test
+    void roundTripKeepsValueType() {
+        PageCursor cursor = PageCursor.decode(new PageCursor("totalInvokes", false, 1740000000000000001L, 1740000000000000003L).encode());
+        Assertions.assertEquals("totalInvokes", cursor.getSortField());
+        Assertions.assertFalse(cursor.isAscending());
+        Assertions.assertEquals(1740000000000000001L, cursor.getLastId());
+        Assertions.assertEquals(1740000000000000003L, cursor.getLastValue());
+
+        Date createTime = new Date(1700000000000L);
+        Assertions.assertEquals(createTime, PageCursor.decode(new PageCursor("createTime", true, 7, createTime).encode()).getLastValue());
+        Assertions.assertEquals("a|b", PageCursor.decode(new PageCursor("name", true, 7, "a|b").encode()).getLastValue());
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not a cursor!"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("MnxpZHxhfDF8TDE"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.qimu.qiapibackend.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class ProbeWindowTest {
+
+    @Test
+    void summarizesNewestFirstWindow() {
+        List<String> samples = new ArrayList<>();
+        // 最新在前：第一条失败，其余 19 条成功，耗时 10..200
+        samples.add(ProbeWindow.encode(2000, 5000, false));
+        for (int i = 19; i >= 1; i--) {
+            samples.add(ProbeWindow.encode(1000 + i, i * 10L, true));
+        }
+        samples.add("broken");
+        ProbeWindow window = ProbeWindow.of(samples);
+        Assertions.assertEquals(20, window.getSamples());
+        Assertions.assertEquals(1, window.getFailures());
+        Assertions.assertEquals(0.05, window.getErrorRate(), 1e-9);
+        Assertions.assertEquals(100, window.getP50Latency());
+        Assertions.assertEquals(190, window.getP95Latency());
+        Assertions.assertEquals(2000, window.getLastProbeTime());
+        Assertions.assertFalse(window.isLastSuccess());
+
+        Assertions.assertFalse(window.violates(10, 0.1, 200));
+        Assertions.assertTrue(window.violates(10, 0.01, 200));
+        Assertions.assertTrue(window.violates(10, 0.1, 150));
+        Assertions.assertFalse(window.violates(30, 0.01, 150));
+    }
+
+    @Test
+    void emptyWindowNeverViolates() {
+        ProbeWindow window = ProbeWindow.of(Collections.emptyList());
+        Assertions.assertEquals(0, window.getSamples());
+        Assertions.assertEquals(0, window.getP95Latency());
+        Assertions.assertFalse(window.violates(0, 0, 0));
+        Assertions.assertTrue(ProbeWindow.of(Arrays.asList(ProbeWindow.encode(1, 1, false))).violates(1, 0.5, 1000));
+    }
+}
@@ -0,0 +1,47 @@
+package com.qimu.qiapicommon.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/10 09:24:51
+ * @Version: 1.0
+ * @Description: 变更事件，后端在事务提交后写入 Redis Stream，网关订阅后增量更新本地缓存
+ * <p>
+ * 事件只携带实体类型和id，网关收到后自行回源最新数据，乱序或重复投递都不会写入旧数据；
+ * version 由同一个计数器原子分配，连续递增，网关发现跳号时全量重建缓存。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 事件流
+     */
+    public static final String STREAM_KEY = "api:change:stream";
+    /**
+     * 事件版本计数器
+     */
+    public static final String VERSION_KEY = "api:change:version";
+    public static final String FIELD_ENTITY_TYPE = "type";
+    public static final String FIELD_ENTITY_ID = "id";
+    public static final String FIELD_VERSION = "version";
+
+    /**
+     * 实体类型 {@link com.qimu.qiapicommon.model.emums.ChangeEntityTypeEnum}
+     */
+    private String entityType;
+    /**
+     * 实体id
+     */
+    private Long entityId;
+    /**
+     * 事件版本
+     */
+    private Long version;
+}
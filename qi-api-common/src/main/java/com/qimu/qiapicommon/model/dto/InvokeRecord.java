@@ -0,0 +1,40 @@
+package com.qimu.qiapicommon.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/21 09:12:40
+ * @Version: 1.0
+ * @Description: 接口调用计费记录
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvokeRecord implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 请求id（幂等键）
+     */
+    private String requestId;
+    /**
+     * 接口信息id
+     */
+    private Long interfaceInfoId;
+    /**
+     * 用户id
+     */
+    private Long userId;
+    /**
+     * 扣除积分
+     */
+    private Integer reduceScore;
+    /**
+     * 调用时间（毫秒时间戳）
+     */
+    private Long invokeTime;
+}
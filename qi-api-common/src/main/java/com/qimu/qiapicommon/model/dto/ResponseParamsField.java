@@ -0,0 +1,17 @@
+package com.qimu.qiapicommon.model.dto;
+
+import lombok.Data;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/15 09:12:44
+ * @Version: 1.0
+ * @Description: 响应参数字段，fieldName 为点分路径，如 data.text
+ */
+@Data
+public class ResponseParamsField {
+    private String id;
+    private String fieldName;
+    private String type;
+    private String desc;
+}
@@ -0,0 +1,51 @@
+package com.qimu.qiapicommon.model.emums;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/10 09:18:26
+ * @Version: 1.0
+ * @Description: 变更事件实体类型枚举
+ */
+public enum ChangeEntityTypeEnum {
+
+    /**
+     * 接口信息：新增、修改、上下线、删除
+     */
+    INTERFACE("接口信息", "interface"),
+    /**
+     * 用户：更换密钥、封禁、解封等
+     */
+    USER("用户", "user");
+
+    private final String text;
+
+    private final String value;
+
+    ChangeEntityTypeEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 值
+     * @return {@link ChangeEntityTypeEnum}，未知类型返回 null
+     */
+    public static ChangeEntityTypeEnum getEnumByValue(String value) {
+        for (ChangeEntityTypeEnum entityType : values()) {
+            if (entityType.value.equals(value)) {
+                return entityType;
+            }
+        }
+        return null;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,61 @@
+package com.qimu.qiapicommon.model.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/25 09:41:17
+ * @Version: 1.0
+ * @Description: 接口调用日志表，按天分区
+ */
+@TableName(value = "interface_invoke_log")
+@Data
+public class InterfaceInvokeLog implements Serializable {
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+    /**
+     * id
+     */
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+    /**
+     * 请求id，与计费记录一致
+     */
+    private String requestId;
+    /**
+     * 接口id
+     */
+    private Long interfaceId;
+    /**
+     * 调用用户id
+     */
+    private Long userId;
+    /**
+     * 请求方法
+     */
+    private String method;
+    /**
+     * 响应状态码
+     */
+    private Integer statusCode;
+    /**
+     * 耗时（毫秒）
+     */
+    private Integer latency;
+    /**
+     * 响应字节数
+     */
+    private Long responseBytes;
+    /**
+     * 调用方ip
+     */
+    private String clientIp;
+    /**
+     * 调用时间，分区键
+     */
+    private Date createTime;
+}
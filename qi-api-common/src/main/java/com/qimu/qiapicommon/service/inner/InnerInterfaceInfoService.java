@@ -3,6 +3,8 @@ package com.qimu.qiapicommon.service.inner;
 
 import com.qimu.qiapicommon.model.entity.InterfaceInfo;
 
+import java.util.List;
+
 /**
  * @Author: QiMu
  * @Date: 2023/09/15 09:32:11
@@ -18,4 +20,19 @@ public interface InnerInterfaceInfoService {
      * @return {@link InterfaceInfo}
      */
     InterfaceInfo getInterfaceInfo(String path, String method);
+
+    /**
+     * 获取全部接口信息，供网关预热路由索引
+     *
+     * @return {@link List}<{@link InterfaceInfo}>
+     */
+    List<InterfaceInfo> listInterfaceInfo();
+
+    /**
+     * 按id获取接口信息，供网关按变更事件增量更新路由索引
+     *
+     * @param id id
+     * @return {@link InterfaceInfo}，已删除返回 null
+     */
+    InterfaceInfo getInterfaceInfoById(long id);
 }
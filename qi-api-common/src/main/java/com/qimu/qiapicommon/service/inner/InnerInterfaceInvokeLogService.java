@@ -0,0 +1,21 @@
+package com.qimu.qiapicommon.service.inner;
+
+import com.qimu.qiapicommon.model.entity.InterfaceInvokeLog;
+
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/25 09:44:02
+ * @Version: 1.0
+ * @Description: 接口调用日志服务
+ */
+public interface InnerInterfaceInvokeLogService {
+    /**
+     * 批量保存调用日志
+     *
+     * @param invokeLogList 调用日志
+     * @return int 写入条数
+     */
+    int saveInvokeLogBatch(List<InterfaceInvokeLog> invokeLogList);
+}
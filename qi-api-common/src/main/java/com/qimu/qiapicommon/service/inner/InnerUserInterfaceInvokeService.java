@@ -1,7 +1,8 @@
 package com.qimu.qiapicommon.service.inner;
 
-import com.qimu.qiapicommon.model.entity.InterfaceInfo;
-import com.qimu.qiapicommon.model.vo.UserVO;
+import com.qimu.qiapicommon.model.dto.InvokeRecord;
+
+import java.util.List;
 
 /**
  * @Author: QiMu
@@ -21,4 +22,22 @@ public interface InnerUserInterfaceInvokeService {
      * @return boolean
      */
     boolean invoke(Long interfaceInfoId, Long userId, Integer reduceScore);
+
+    /**
+     * 接口调用（幂等）
+     * 以 requestId 去重，同一请求重复提交（网关重试、本地日志重放）只会扣费一次
+     *
+     * @param invokeRecord 调用记录
+     * @return boolean 同一 requestId 仍在其他事务中计费时返回 false，需稍后重试
+     */
+    boolean invoke(InvokeRecord invokeRecord);
+
+    /**
+     * 批量接口调用（幂等）
+     * 按 用户+接口 聚合后在同一事务内批量累加调用次数、扣除积分，已计费的 requestId 会被跳过
+     *
+     * @param invokeRecords 调用记录
+     * @return boolean 有记录仍在其他事务中计费时返回 false，需稍后重试整批
+     */
+    boolean invokeBatch(List<InvokeRecord> invokeRecords);
 }
@@ -2,6 +2,8 @@ package com.qimu.qiapicommon.service.inner;
 
 import com.qimu.qiapicommon.model.vo.UserVO;
 
+import java.util.List;
+
 
 /**
  * @Author: QiMu
@@ -19,4 +21,12 @@ public interface InnerUserService {
      * @return {@link UserVO}
      */
     UserVO getInvokeUserByAccessKey(String accessKey);
+
+    /**
+     * 获取最近调用过接口的用户，供网关预热
+     *
+     * @param limit 最大数量
+     * @return {@link List}<{@link UserVO}>
+     */
+    List<UserVO> listRecentlyActiveInvokeUsers(int limit);
 }
@@ -1,20 +1,30 @@
 package com.qimu.qiapigateway;
 
+import cn.hutool.core.util.IdUtil;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.qimu.qiapicommon.common.ErrorCode;
+import com.qimu.qiapicommon.model.dto.InvokeRecord;
 import com.qimu.qiapicommon.model.dto.RequestParamsField;
 import com.qimu.qiapicommon.model.emums.InterfaceStatusEnum;
 import com.qimu.qiapicommon.model.entity.InterfaceInfo;
+import com.qimu.qiapicommon.model.entity.InterfaceInvokeLog;
 import com.qimu.qiapicommon.model.vo.UserVO;
-import com.qimu.qiapicommon.service.inner.InnerInterfaceInfoService;
 import com.qimu.qiapicommon.service.inner.InnerUserInterfaceInvokeService;
-import com.qimu.qiapicommon.service.inner.InnerUserService;
+import com.qimu.qiapigateway.cache.InterfaceRouteCache;
+import com.qimu.qiapigateway.cache.InvokeUserCache;
 import com.qimu.qiapigateway.exception.BusinessException;
+import com.qimu.qiapigateway.invokelog.InvokeLogShipper;
+import com.qimu.qiapigateway.journal.BillingJournal;
+import com.qimu.qiapigateway.schema.FieldPathTree;
+import com.qimu.qiapigateway.schema.JsonProjector;
+import com.qimu.qiapigateway.schema.ResponseSchemaRegistry;
 import com.qimu.qiapigateway.utils.RedissonLockUtil;
+import com.qimu.qiapigateway.warmup.WarmUpHealthIndicator;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.dubbo.config.annotation.DubboReference;
+import org.apache.dubbo.rpc.RpcException;
 import org.bouncycastle.util.Strings;
 import org.reactivestreams.Publisher;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
@@ -31,17 +41,27 @@ import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
 import javax.annotation.Resource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static com.qimu.qiapicommon.model.emums.UserAccountStatusEnum.BAN;
 import static com.qimu.qiapigateway.CacheBodyGatewayFilter.CACHE_REQUEST_BODY_OBJECT_KEY;
 import static com.qimu.qiapigateway.utils.NetUtils.getIp;
+import static com.qimu.qiapigateway.warmup.GatewayWarmUpRunner.WARM_UP_HEADER;
 import static icu.qimuu.qiapisdk.utils.SignUtils.getSign;
 
 
@@ -62,19 +82,39 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
      * 五分钟过期时间
      */
     private static final long FIVE_MINUTES = 5L * 60;
+    private static final Gson GSON = new Gson();
+    /**
+     * 请求开始时间，用于计算调用耗时
+     */
+    private static final String INVOKE_START_TIME_ATTR = "qiInvokeStartTime";
+    /**
+     * 只返回指定字段的查询参数
+     */
+    private static final String FIELDS_PARAM = "fields";
     @Resource
     private RedissonLockUtil redissonLockUtil;
-    @DubboReference
-    private InnerUserService innerUserService;
+    @Resource
+    private BillingJournal billingJournal;
+    @Resource
+    private InvokeUserCache invokeUserCache;
+    @Resource
+    private InterfaceRouteCache interfaceRouteCache;
+    @Resource
+    private WarmUpHealthIndicator warmUpHealthIndicator;
+    @Resource
+    private InvokeLogShipper invokeLogShipper;
+    @Resource
+    private ResponseSchemaRegistry responseSchemaRegistry;
     @DubboReference
     private InnerUserInterfaceInvokeService interfaceInvokeService;
-    @DubboReference
-    private InnerInterfaceInfoService interfaceInfoService;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        exchange.getAttributes().put(INVOKE_START_TIME_ATTR, System.currentTimeMillis());
         // 日志
         ServerHttpRequest request = exchange.getRequest();
+        // 预热合成请求只在就绪前生效，就绪后带该请求头也按正常请求处理
+        boolean warmUp = request.getHeaders().containsKey(WARM_UP_HEADER) && !warmUpHealthIndicator.isReady();
         log.info("请求唯一id：" + request.getId());
         log.info("请求方法：" + request.getMethod());
         log.info("请求路径：" + request.getPath());
@@ -82,7 +122,7 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
         log.info("请求远程地址：" + request.getRemoteAddress());
         log.info("接口请求IP：" + getIp(request));
         log.info("url:" + request.getURI());
-        return verifyParameters(exchange, chain);
+        return verifyParameters(exchange, chain, warmUp);
     }
 
     /**
@@ -90,9 +130,10 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
      *
      * @param exchange 交换
      * @param chain    链条
+     * @param warmUp   是否为预热合成请求
      * @return {@link Mono}<{@link Void}>
      */
-    private Mono<Void> verifyParameters(ServerWebExchange exchange, GatewayFilterChain chain) {
+    private Mono<Void> verifyParameters(ServerWebExchange exchange, GatewayFilterChain chain, boolean warmUp) {
         ServerHttpRequest request = exchange.getRequest();
         // 请求白名单
         // if (!WHITE_HOST_LIST.contains(getIp(request))) {
@@ -115,7 +156,7 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
             throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR, "会话已过期,请重试！");
         }
         try {
-            UserVO user = innerUserService.getInvokeUserByAccessKey(accessKey);
+            UserVO user = getInvokeUser(accessKey);
             if (user == null) {
                 throw new BusinessException(ErrorCode.FORBIDDEN_ERROR, "账号不存在");
             }
@@ -139,7 +180,7 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
             if (StringUtils.isAnyBlank(uri, method)) {
                 throw new BusinessException(ErrorCode.PARAMS_ERROR);
             }
-            InterfaceInfo interfaceInfo = interfaceInfoService.getInterfaceInfo(uri, method);
+            InterfaceInfo interfaceInfo = getInterfaceInfo(uri, method);
 
             if (interfaceInfo == null) {
                 throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "接口不存在");
@@ -152,13 +193,13 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
             }
             MultiValueMap<String, String> queryParams = request.getQueryParams();
             String requestParams = interfaceInfo.getRequestParams();
-            List<RequestParamsField> list = new Gson().fromJson(requestParams, new TypeToken<List<RequestParamsField>>() {
+            List<RequestParamsField> list = GSON.fromJson(requestParams, new TypeToken<List<RequestParamsField>>() {
             }.getType());
             if ("POST".equals(method)) {
                 Object cacheBody = exchange.getAttribute(CACHE_REQUEST_BODY_OBJECT_KEY);
                 String requestBody = getPostRequestBody((Flux<DataBuffer>) cacheBody);
                 log.info("POST请求参数：" + requestBody);
-                Map<String, Object> requestBodyMap = new Gson().fromJson(requestBody, new TypeToken<HashMap<String, Object>>() {
+                Map<String, Object> requestBodyMap = GSON.fromJson(requestBody, new TypeToken<HashMap<String, Object>>() {
                 }.getType());
                 if (StringUtils.isNotBlank(requestParams)) {
                     for (RequestParamsField requestParamsField : list) {
@@ -182,12 +223,89 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
                     }
                 }
             }
-            return handleResponse(exchange, chain, user, interfaceInfo);
+            // 在转发前校验 fields，字段不在响应参数中直接拒绝
+            FieldPathTree selection = responseSchemaRegistry.selection(interfaceInfo, queryParams.getFirst(FIELDS_PARAM));
+            if (warmUp) {
+                return handleWarmUp(exchange, user);
+            }
+            return handleResponse(stripFieldsParam(exchange), chain, user, interfaceInfo, selection);
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
             throw new BusinessException(ErrorCode.FORBIDDEN_ERROR, e.getMessage());
         }
     }
 
+    /**
+     * fields 只在网关处理，去掉后再转发给上游
+     *
+     * @param exchange 交换
+     * @return {@link ServerWebExchange}
+     */
+    private static ServerWebExchange stripFieldsParam(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!request.getQueryParams().containsKey(FIELDS_PARAM)) {
+            return exchange;
+        }
+        URI uri = UriComponentsBuilder.fromUri(request.getURI()).replaceQueryParam(FIELDS_PARAM).build(true).toUri();
+        return exchange.mutate().request(request.mutate().uri(uri).build()).build();
+    }
+
+    /**
+     * 获取调用用户，故障开放模式下后端不可用时回退到本地最后一次查到的结果
+     *
+     * @param accessKey 访问密钥
+     * @return {@link UserVO}
+     */
+    private UserVO getInvokeUser(String accessKey) {
+        try {
+            return invokeUserCache.getInvokeUser(accessKey);
+        } catch (RpcException e) {
+            UserVO user = billingJournal.isEnabled() ? invokeUserCache.getStaleInvokeUser(accessKey) : null;
+            if (user == null) {
+                throw e;
+            }
+            log.warn("后端服务不可用，使用本地缓存的调用用户：{}", user.getId());
+            return user;
+        }
+    }
+
+    /**
+     * 获取接口信息，故障开放模式下后端不可用时回退到本地最后一次查到的结果
+     *
+     * @param uri    请求地址
+     * @param method 请求方法
+     * @return {@link InterfaceInfo}
+     */
+    private InterfaceInfo getInterfaceInfo(String uri, String method) {
+        try {
+            return interfaceRouteCache.getInterfaceInfo(uri, method);
+        } catch (RpcException e) {
+            InterfaceInfo interfaceInfo = billingJournal.isEnabled() ? interfaceRouteCache.getStaleInterfaceInfo(uri, method) : null;
+            if (interfaceInfo == null) {
+                throw e;
+            }
+            log.warn("后端服务不可用，使用本地缓存的接口信息：{}", interfaceInfo.getId());
+            return interfaceInfo;
+        }
+    }
+
+    /**
+     * 处理预热合成请求：校验已经走完，计费只走一遍加锁和 Dubbo 调用，不转发、不写入计费
+     *
+     * @param exchange 交换
+     * @param user     调用用户
+     * @return {@link Mono}<{@link Void}>
+     */
+    private Mono<Void> handleWarmUp(ServerWebExchange exchange, UserVO user) {
+        redissonLockUtil.redissonDistributedLocks(("gateway_" + user.getUserAccount()).intern(), () -> {
+            // 空批次在后端直接返回，不写库
+            interfaceInvokeService.invokeBatch(Collections.emptyList());
+        }, "接口调用失败");
+        exchange.getResponse().setStatusCode(HttpStatus.NO_CONTENT);
+        return exchange.getResponse().setComplete();
+    }
+
     /**
      * 获取post请求正文
      *
@@ -208,17 +326,44 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
     /**
      * 处理响应
      *
-     * @param exchange 交换
-     * @param chain    链条
+     * @param exchange      交换
+     * @param chain         链条
+     * @param user          调用用户
+     * @param interfaceInfo 接口信息
+     * @param selection     fields 选中的字段，null 表示返回全部
      * @return {@link Mono}<{@link Void}>
      */
-    public Mono<Void> handleResponse(ServerWebExchange exchange, GatewayFilterChain chain, UserVO user, InterfaceInfo interfaceInfo) {
+    public Mono<Void> handleResponse(ServerWebExchange exchange, GatewayFilterChain chain, UserVO user, InterfaceInfo interfaceInfo, FieldPathTree selection) {
         ServerHttpResponse originalResponse = exchange.getResponse();
         // 缓存数据的工厂
         DataBufferFactory bufferFactory = originalResponse.bufferFactory();
         // 拿到响应码
         HttpStatus statusCode = originalResponse.getStatusCode();
+        // 未设置扣除积分的接口按免费计费，记录里不留 null
+        int reduceScore = interfaceInfo.getReduceScore() == null ? 0 : interfaceInfo.getReduceScore();
+        InvokeRecord invokeRecord = new InvokeRecord(IdUtil.fastSimpleUUID(), interfaceInfo.getId(), user.getId(),
+                reduceScore, System.currentTimeMillis());
+        AtomicLong responseBytes = new AtomicLong();
         if (statusCode == HttpStatus.OK) {
+            // 响应体可能分多块写出，每个请求只计费一次
+            AtomicBoolean billed = new AtomicBoolean(false);
+            boolean sampled = responseSchemaRegistry.shouldSample(interfaceInfo);
+            // 计费并读出响应内容，释放原缓冲
+            Function<DataBuffer, byte[]> billAndRead = dataBuffer -> {
+                // 扣除积分
+                if (billed.compareAndSet(false, true)) {
+                    redissonLockUtil.redissonDistributedLocks(("gateway_" + user.getUserAccount()).intern(), () -> {
+                        invokeBilling(invokeRecord);
+                    }, "接口调用失败");
+                    // 本地缓存的余额随计费扣减，余额不足的判断不必等缓存过期
+                    invokeUserCache.recordCharge(user, reduceScore);
+                }
+                byte[] content = new byte[dataBuffer.readableByteCount()];
+                dataBuffer.read(content);
+                // 释放掉内存
+                DataBufferUtils.release(dataBuffer);
+                return content;
+            };
             // 装饰，增强能力
             ServerHttpResponseDecorator decoratedResponse = new ServerHttpResponseDecorator(originalResponse) {
                 // 等调用完转发的接口后才会执行
@@ -226,20 +371,44 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
                 public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
                     if (body instanceof Flux) {
                         Flux<? extends DataBuffer> fluxBody = Flux.from(body);
+                        if (selection != null || sampled) {
+                            // 投影逐块进行，不等完整响应体；抽样校验另存一份上游原始响应
+                            JsonProjector projector;
+                            try {
+                                projector = selection == null ? null : new JsonProjector(selection);
+                            } catch (IOException e) {
+                                return Mono.error(e);
+                            }
+                            ByteArrayOutputStream sample = sampled ? new ByteArrayOutputStream() : null;
+                            if (projector != null) {
+                                // 过滤后长度会变，不论上游是否给出长度都改为分块传输
+                                getDelegate().getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                            }
+                            Flux<DataBuffer> processed = fluxBody.map(dataBuffer -> {
+                                byte[] content = billAndRead.apply(dataBuffer);
+                                if (sample != null) {
+                                    sample.write(content, 0, content.length);
+                                }
+                                return projector == null ? content : projectChunk(projector, interfaceInfo, content, false);
+                            }).concatWith(Mono.fromCallable(() -> {
+                                if (sample != null) {
+                                    responseSchemaRegistry.check(interfaceInfo, sample.toByteArray());
+                                }
+                                return projector == null ? new byte[0] : projectChunk(projector, interfaceInfo, null, true);
+                            })).map(content -> {
+                                responseBytes.addAndGet(content.length);
+                                return bufferFactory.wrap(content);
+                            });
+                            if (projector != null) {
+                                processed = processed.doFinally(signal -> closeQuietly(projector));
+                            }
+                            return super.writeWith(processed);
+                        }
                         // 往返回值里写数据
                         return super.writeWith(
                                 fluxBody.map(dataBuffer -> {
-                                    // 扣除积分
-                                    redissonLockUtil.redissonDistributedLocks(("gateway_" + user.getUserAccount()).intern(), () -> {
-                                        boolean invoke = interfaceInvokeService.invoke(interfaceInfo.getId(), user.getId(), interfaceInfo.getReduceScore());
-                                        if (!invoke) {
-                                            throw new BusinessException(ErrorCode.OPERATION_ERROR, "接口调用失败");
-                                        }
-                                    }, "接口调用失败");
-                                    byte[] content = new byte[dataBuffer.readableByteCount()];
-                                    dataBuffer.read(content);
-                                    // 释放掉内存
-                                    DataBufferUtils.release(dataBuffer);
+                                    byte[] content = billAndRead.apply(dataBuffer);
+                                    responseBytes.addAndGet(content.length);
                                     String data = new String(content, StandardCharsets.UTF_8);
                                     // 打印日志
                                     log.info("响应结果：" + data);
@@ -253,10 +422,97 @@ public class GatewayGlobalFilter implements GlobalFilter, Ordered {
                 }
             };
             // 设置 response 对象为装饰过的
-            return chain.filter(exchange.mutate().response(decoratedResponse).build());
+            return chain.filter(exchange.mutate().response(decoratedResponse).build())
+                    .doFinally(signal -> recordInvokeLog(exchange, invokeRecord, signal, responseBytes.get()));
         }
         // 降级处理返回数据
-        return chain.filter(exchange);
+        return chain.filter(exchange)
+                .doFinally(signal -> recordInvokeLog(exchange, invokeRecord, signal, responseBytes.get()));
+    }
+
+    /**
+     * 投影一块响应，响应开头就不是 JSON 时按原样返回，输出过内容后才出错则中断响应
+     *
+     * @param projector     投影器
+     * @param interfaceInfo 接口信息
+     * @param content       本块内容
+     * @param last          是否为结尾
+     * @return {@link byte[]} 本次输出的内容
+     */
+    private static byte[] projectChunk(JsonProjector projector, InterfaceInfo interfaceInfo, byte[] content, boolean last) {
+        boolean passThrough = projector.isPassThrough();
+        try {
+            byte[] projected = last ? projector.finish() : projector.feed(content);
+            if (!passThrough && projector.isPassThrough()) {
+                log.warn("接口 {} 响应不是合法的 JSON，按原样返回", interfaceInfo.getId());
+            }
+            return projected;
+        } catch (IOException e) {
+            log.warn("接口 {} 响应 JSON 不完整，中断响应：{}", interfaceInfo.getId(), e.getMessage());
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static void closeQuietly(JsonProjector projector) {
+        try {
+            projector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 记录调用日志，只入队不做任何 IO
+     *
+     * @param exchange      交换
+     * @param invokeRecord  调用记录
+     * @param signal        结束信号
+     * @param responseBytes 响应字节数
+     */
+    private void recordInvokeLog(ServerWebExchange exchange, InvokeRecord invokeRecord, SignalType signal, long responseBytes) {
+        Long startTime = exchange.getAttribute(INVOKE_START_TIME_ATTR);
+        long now = System.currentTimeMillis();
+        HttpStatus status = exchange.getResponse().getStatusCode();
+        int statusCode;
+        if (signal == SignalType.ON_ERROR) {
+            statusCode = HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } else if (signal == SignalType.CANCEL) {
+            // 客户端主动断开
+            statusCode = 499;
+        } else {
+            statusCode = status == null ? HttpStatus.OK.value() : status.value();
+        }
+        InterfaceInvokeLog invokeLog = new InterfaceInvokeLog();
+        invokeLog.setRequestId(invokeRecord.getRequestId());
+        invokeLog.setInterfaceId(invokeRecord.getInterfaceInfoId());
+        invokeLog.setUserId(invokeRecord.getUserId());
+        invokeLog.setMethod(String.valueOf(exchange.getRequest().getMethod()));
+        invokeLog.setStatusCode(statusCode);
+        invokeLog.setLatency((int) (now - (startTime == null ? invokeRecord.getInvokeTime() : startTime)));
+        invokeLog.setResponseBytes(responseBytes);
+        invokeLog.setClientIp(getIp(exchange.getRequest()));
+        invokeLog.setCreateTime(new Date(now));
+        invokeLogShipper.offer(invokeLog);
+    }
+
+    /**
+     * 计费，开启故障开放模式时后端不可用则写入本地计费日志，稍后重放
+     *
+     * @param invokeRecord 调用记录
+     */
+    private void invokeBilling(InvokeRecord invokeRecord) {
+        boolean invoke;
+        try {
+            invoke = interfaceInvokeService.invoke(invokeRecord);
+        } catch (RpcException e) {
+            if (!billingJournal.append(invokeRecord)) {
+                throw e;
+            }
+            log.warn("后端服务不可用，计费已写入本地日志：{}", invokeRecord.getRequestId());
+            return;
+        }
+        if (!invoke) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "接口调用失败");
+        }
     }
 
     @Override
@@ -0,0 +1,160 @@
+package com.qimu.qiapigateway.cache;
+
+import com.qimu.qiapicommon.model.emums.ChangeEntityTypeEnum;
+import com.qimu.qiapigateway.config.ChangeEventConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.qimu.qiapicommon.model.dto.ChangeEvent.*;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/10 10:31:47
+ * @Version: 1.0
+ * @Description: 订阅后端变更事件，增量更新本地缓存
+ * <p>
+ * 每个网关节点用 XREAD 从自己记住的最后一条事件 id 往后读，不建消费组，Redis 中不留下任何节点状态；
+ * 节点启动时从最新位置开始，之前的数据由预热和全量刷新加载。事件版本跳号或与 Redis 断开后重连时全量重建缓存。
+ */
+@Slf4j
+@Component
+public class ChangeEventSubscriber {
+    /**
+     * 流为空时的起始 id
+     */
+    private static final String STREAM_BEGIN_ID = "0-0";
+    @Resource
+    private ChangeEventConfig changeEventConfig;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private InterfaceRouteCache interfaceRouteCache;
+    @Resource
+    private InvokeUserCache invokeUserCache;
+
+    private Thread subscriberThread;
+    private volatile boolean running;
+    /**
+     * 最近读到的事件 id，null 表示尚未确定起始位置
+     */
+    private String lastId;
+    /**
+     * 最近处理的事件版本，0 表示尚未收到事件
+     */
+    private long lastVersion;
+
+    @PostConstruct
+    public void start() {
+        if (!changeEventConfig.getEnabled()) {
+            return;
+        }
+        running = true;
+        subscriberThread = new Thread(this::subscribeLoop, "change-event-subscriber");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+    }
+
+    private void subscribeLoop() {
+        StreamReadOptions readOptions = StreamReadOptions.empty()
+                .count(changeEventConfig.getBatchSize())
+                .block(Duration.ofMillis(changeEventConfig.getBlockMillis()));
+        boolean resyncNeeded = false;
+        while (running) {
+            try {
+                if (lastId == null) {
+                    lastId = latestId();
+                }
+                if (resyncNeeded) {
+                    // 断开期间的事件可能已被裁剪或随 Redis 重启丢失，全量重建，版本号重新计起
+                    resync();
+                    lastVersion = 0;
+                    resyncNeeded = false;
+                }
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        readOptions, StreamOffset.create(STREAM_KEY, ReadOffset.from(lastId)));
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                for (MapRecord<String, Object, Object> record : records) {
+                    apply(record.getValue());
+                    lastId = record.getId().getValue();
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("消费变更事件失败，稍后重试：{}", e.getMessage());
+                resyncNeeded = true;
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 流中最后一条事件的 id，流不存在或为空时从头读
+     */
+    private String latestId() {
+        List<MapRecord<String, Object, Object>> latest = stringRedisTemplate.opsForStream()
+                .reverseRange(STREAM_KEY, Range.unbounded(), RedisZSetCommands.Limit.limit().count(1));
+        return latest == null || latest.isEmpty() ? STREAM_BEGIN_ID : latest.get(0).getId().getValue();
+    }
+
+    private void apply(Map<Object, Object> value) {
+        long version = Long.parseLong(String.valueOf(value.get(FIELD_VERSION)));
+        if (lastVersion > 0 && version > lastVersion + 1) {
+            log.warn("变更事件版本跳号 {} -> {}，全量重建缓存", lastVersion, version);
+            resync();
+        }
+        lastVersion = Math.max(lastVersion, version);
+        ChangeEntityTypeEnum entityType = ChangeEntityTypeEnum.getEnumByValue(String.valueOf(value.get(FIELD_ENTITY_TYPE)));
+        if (entityType == null) {
+            return;
+        }
+        long entityId = Long.parseLong(String.valueOf(value.get(FIELD_ENTITY_ID)));
+        switch (entityType) {
+            case INTERFACE:
+                interfaceRouteCache.reload(entityId);
+                break;
+            case USER:
+                invokeUserCache.evictUser(entityId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void resync() {
+        invokeUserCache.clear();
+        interfaceRouteCache.reload();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (subscriberThread == null) {
+            return;
+        }
+        running = false;
+        subscriberThread.interrupt();
+        subscriberThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
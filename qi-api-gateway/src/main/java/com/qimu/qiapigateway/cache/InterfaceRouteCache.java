@@ -0,0 +1,231 @@
+package com.qimu.qiapigateway.cache;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import com.qimu.qiapicommon.model.emums.InterfaceStatusEnum;
+import com.qimu.qiapicommon.model.entity.InterfaceInfo;
+import com.qimu.qiapicommon.service.inner.InnerInterfaceInfoService;
+import com.qimu.qiapigateway.config.GatewayCacheConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/22 14:20:45
+ * @Version: 1.0
+ * @Description: 接口路由索引，按 请求方法+地址 在本地命中接口信息，未命中再回源
+ * <p>
+ * 只索引已上线的接口，下线、审核中的接口走回源，由过滤器给出对应的提示。
+ * 匹配规则与后端查询一致：请求地址去掉协议和参数后，被接口地址包含即命中（后端为 url like %地址%，忽略大小写）；
+ * 命中多个时与后端一样无法确定，交给后端处理。
+ */
+@Slf4j
+@Component
+public class InterfaceRouteCache {
+    /**
+     * 匹配结果缓存上限，超过后不再缓存，只按索引匹配
+     */
+    private static final int RESOLVED_CAPACITY = 10000;
+    @DubboReference
+    private InnerInterfaceInfoService interfaceInfoService;
+    @Resource
+    private GatewayCacheConfig gatewayCacheConfig;
+
+    /**
+     * 全量索引：method -> 已上线的接口
+     */
+    private volatile Map<String, List<InterfaceInfo>> routeIndex = Collections.emptyMap();
+    /**
+     * 接口id索引
+     */
+    private volatile Map<Long, InterfaceInfo> idIndex = Collections.emptyMap();
+    /**
+     * 匹配结果：method + 去掉协议和参数的地址 -> 接口信息，索引变化时整体替换
+     */
+    private volatile Map<String, InterfaceInfo> resolvedRoutes = new ConcurrentHashMap<>();
+    /**
+     * 回源结果缓存
+     */
+    private TimedCache<String, InterfaceInfo> missCache;
+    /**
+     * 回源结果的较长保留副本，后端不可用时使用
+     */
+    private TimedCache<String, InterfaceInfo> staleMissCache;
+
+    @PostConstruct
+    public void init() {
+        missCache = CacheUtil.newTimedCache(gatewayCacheConfig.getInterfaceExpireMillis());
+        missCache.schedulePrune(gatewayCacheConfig.getInterfaceExpireMillis());
+        staleMissCache = CacheUtil.newTimedCache(gatewayCacheConfig.getStaleMillis());
+        staleMissCache.schedulePrune(gatewayCacheConfig.getInterfaceExpireMillis());
+    }
+
+    /**
+     * 全量加载路由索引
+     *
+     * @return int 已上线的接口数量
+     */
+    public synchronized int reload() {
+        List<InterfaceInfo> interfaceInfoList = interfaceInfoService.listInterfaceInfo();
+        Map<String, List<InterfaceInfo>> newRouteIndex = new HashMap<>();
+        Map<Long, InterfaceInfo> newIdIndex = new HashMap<>(interfaceInfoList.size() * 2);
+        for (InterfaceInfo interfaceInfo : interfaceInfoList) {
+            if (!isOnline(interfaceInfo)) {
+                continue;
+            }
+            newRouteIndex.computeIfAbsent(interfaceInfo.getMethod(), k -> new ArrayList<>()).add(interfaceInfo);
+            newIdIndex.put(interfaceInfo.getId(), interfaceInfo);
+        }
+        publish(newRouteIndex, newIdIndex);
+        return newIdIndex.size();
+    }
+
+    /**
+     * 按id增量更新索引，接口已删除或不再上线时移出索引
+     *
+     * @param id 接口id
+     */
+    public synchronized void reload(long id) {
+        InterfaceInfo interfaceInfo = interfaceInfoService.getInterfaceInfoById(id);
+        // 写时复制，读请求始终看到完整的索引
+        Map<String, List<InterfaceInfo>> newRouteIndex = new HashMap<>(routeIndex.size() * 2);
+        routeIndex.forEach((method, methodIndex) -> {
+            List<InterfaceInfo> newMethodIndex = new ArrayList<>(methodIndex);
+            newMethodIndex.removeIf(item -> item.getId() == id);
+            if (!newMethodIndex.isEmpty()) {
+                newRouteIndex.put(method, newMethodIndex);
+            }
+        });
+        Map<Long, InterfaceInfo> newIdIndex = new HashMap<>(idIndex);
+        newIdIndex.remove(id);
+        if (interfaceInfo != null && isOnline(interfaceInfo)) {
+            newRouteIndex.computeIfAbsent(interfaceInfo.getMethod(), k -> new ArrayList<>()).add(interfaceInfo);
+            newIdIndex.put(interfaceInfo.getId(), interfaceInfo);
+        }
+        publish(newRouteIndex, newIdIndex);
+    }
+
+    /**
+     * 定时全量刷新，兜底丢失的变更事件
+     */
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    public void refresh() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("刷新接口路由索引失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 获取接口信息
+     *
+     * @param uri    请求地址
+     * @param method 请求方法
+     * @return {@link InterfaceInfo}
+     */
+    public InterfaceInfo getInterfaceInfo(String uri, String method) {
+        String path = normalize(uri);
+        String cacheKey = method + " " + path;
+        Map<String, InterfaceInfo> resolved = resolvedRoutes;
+        InterfaceInfo interfaceInfo = resolved.get(cacheKey);
+        if (interfaceInfo != null) {
+            return interfaceInfo;
+        }
+        interfaceInfo = match(routeIndex.get(method), path);
+        if (interfaceInfo != null) {
+            if (resolved.size() < RESOLVED_CAPACITY) {
+                resolved.put(cacheKey, interfaceInfo);
+            }
+            return interfaceInfo;
+        }
+        interfaceInfo = missCache.get(cacheKey, false);
+        if (interfaceInfo == null) {
+            interfaceInfo = interfaceInfoService.getInterfaceInfo(uri, method);
+            if (interfaceInfo != null) {
+                missCache.put(cacheKey, interfaceInfo);
+                staleMissCache.put(cacheKey, interfaceInfo);
+            }
+        }
+        return interfaceInfo;
+    }
+
+    /**
+     * 后端不可用时使用的最后一次回源结果，全量索引在刷新失败时保持不变，已在 {@link #getInterfaceInfo} 中查过
+     *
+     * @param uri    请求地址
+     * @param method 请求方法
+     * @return {@link InterfaceInfo} 没有或已超过保留时间时为 null
+     */
+    public InterfaceInfo getStaleInterfaceInfo(String uri, String method) {
+        return staleMissCache.get(method + " " + normalize(uri), false);
+    }
+
+    /**
+     * 已索引的接口
+     *
+     * @return {@link Map}<{@link Long}, {@link InterfaceInfo}>
+     */
+    public Map<Long, InterfaceInfo> getIdIndex() {
+        return idIndex;
+    }
+
+    /**
+     * 与后端的 url like %地址% 一致，只有唯一命中时返回
+     *
+     * @param methodIndex 同一请求方法的接口
+     * @param path        去掉协议和参数的请求地址
+     * @return {@link InterfaceInfo} 没有命中或命中多个时为 null
+     */
+    private static InterfaceInfo match(List<InterfaceInfo> methodIndex, String path) {
+        if (methodIndex == null || path.isEmpty()) {
+            return null;
+        }
+        String lowerPath = path.toLowerCase(Locale.ROOT);
+        InterfaceInfo matched = null;
+        for (InterfaceInfo interfaceInfo : methodIndex) {
+            if (interfaceInfo.getUrl() != null && interfaceInfo.getUrl().toLowerCase(Locale.ROOT).contains(lowerPath)) {
+                if (matched != null) {
+                    return null;
+                }
+                matched = interfaceInfo;
+            }
+        }
+        return matched;
+    }
+
+    private void publish(Map<String, List<InterfaceInfo>> newRouteIndex, Map<Long, InterfaceInfo> newIdIndex) {
+        routeIndex = newRouteIndex;
+        idIndex = newIdIndex;
+        resolvedRoutes = new ConcurrentHashMap<>();
+        missCache.clear();
+    }
+
+    private static boolean isOnline(InterfaceInfo interfaceInfo) {
+        return interfaceInfo.getStatus() != null && interfaceInfo.getStatus() == InterfaceStatusEnum.ONLINE.getValue();
+    }
+
+    /**
+     * 与后端查询保持一致：去掉参数和协议
+     */
+    private static String normalize(String url) {
+        String path = url.trim();
+        if (path.contains("?")) {
+            path = path.substring(0, path.indexOf("?"));
+        }
+        if (path.startsWith("http://")) {
+            path = path.substring(7);
+        }
+        if (path.startsWith("https://")) {
+            path = path.substring(8);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,136 @@
+package com.qimu.qiapigateway.cache;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import com.qimu.qiapicommon.model.vo.UserVO;
+import com.qimu.qiapicommon.service.inner.InnerUserService;
+import com.qimu.qiapigateway.config.GatewayCacheConfig;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/22 14:31:09
+ * @Version: 1.0
+ * @Description: 调用用户缓存，按 accessKey 缓存短时间，减少鉴权回源
+ * <p>
+ * 另保留一份较长时间的副本，故障开放模式下后端不可用时回退使用，变更事件同样淘汰副本。
+ */
+@Component
+public class InvokeUserCache {
+    @DubboReference
+    private InnerUserService innerUserService;
+    @Resource
+    private GatewayCacheConfig gatewayCacheConfig;
+
+    private TimedCache<String, UserVO> userCache;
+    /**
+     * 最后一次查到的结果，后端不可用时使用
+     */
+    private TimedCache<String, UserVO> staleCache;
+
+    @PostConstruct
+    public void init() {
+        userCache = CacheUtil.newTimedCache(gatewayCacheConfig.getUserExpireMillis());
+        userCache.schedulePrune(gatewayCacheConfig.getUserExpireMillis());
+        staleCache = CacheUtil.newTimedCache(gatewayCacheConfig.getStaleMillis());
+        staleCache.schedulePrune(gatewayCacheConfig.getUserExpireMillis());
+    }
+
+    /**
+     * 通过访问密钥获取调用用户
+     *
+     * @param accessKey 访问密钥
+     * @return {@link UserVO}
+     */
+    public UserVO getInvokeUser(String accessKey) {
+        UserVO user = userCache.get(accessKey, false);
+        if (user == null) {
+            user = innerUserService.getInvokeUserByAccessKey(accessKey);
+            if (user != null && user.getAccessKey() != null) {
+                userCache.put(accessKey, user);
+                staleCache.put(accessKey, user);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * 计费后扣减本地缓存的余额，扣到 0 及以下时淘汰，下次请求回源确认真实余额
+     * 其他节点的扣费不会反映到本节点，余额判断仍可能晚于实际余额，最长为缓存过期时间
+     *
+     * @param user   调用用户，即缓存中的对象
+     * @param amount 扣除积分数
+     */
+    public void recordCharge(UserVO user, int amount) {
+        if (amount <= 0) {
+            return;
+        }
+        int balance;
+        synchronized (user) {
+            balance = user.getBalance() - amount;
+            user.setBalance(balance);
+        }
+        if (balance <= 0) {
+            userCache.remove(user.getAccessKey());
+        }
+    }
+
+    /**
+     * 后端不可用时使用的最后一次查到的用户
+     *
+     * @param accessKey 访问密钥
+     * @return {@link UserVO} 没有或已超过保留时间时为 null
+     */
+    public UserVO getStaleInvokeUser(String accessKey) {
+        return staleCache.get(accessKey, false);
+    }
+
+    /**
+     * 预加载最近活跃用户
+     *
+     * @param limit 数量
+     * @return int 加载数量
+     */
+    public int preload(int limit) {
+        List<UserVO> userList = innerUserService.listRecentlyActiveInvokeUsers(limit);
+        for (UserVO user : userList) {
+            userCache.put(user.getAccessKey(), user);
+            staleCache.put(user.getAccessKey(), user);
+        }
+        return userList.size();
+    }
+
+    /**
+     * 淘汰用户的缓存，用户更换密钥后旧 accessKey 也一并淘汰
+     *
+     * @param userId 用户id
+     */
+    public void evictUser(long userId) {
+        List<String> accessKeys = new ArrayList<>();
+        for (UserVO user : staleCache) {
+            if (user.getId() != null && user.getId() == userId) {
+                accessKeys.add(user.getAccessKey());
+            }
+        }
+        for (UserVO user : userCache) {
+            if (user.getId() != null && user.getId() == userId) {
+                accessKeys.add(user.getAccessKey());
+            }
+        }
+        accessKeys.forEach(userCache::remove);
+        accessKeys.forEach(staleCache::remove);
+    }
+
+    /**
+     * 清空缓存，后端不可用时仍要用的副本保留到过期
+     */
+    public void clear() {
+        userCache.clear();
+    }
+}
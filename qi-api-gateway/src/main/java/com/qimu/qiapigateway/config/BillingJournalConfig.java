@@ -0,0 +1,33 @@
+package com.qimu.qiapigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/21 10:02:18
+ * @Version: 1.0
+ * @Description: 本地计费日志配置（故障开放模式）
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.gateway.billing-journal")
+@Data
+public class BillingJournalConfig {
+    /**
+     * 是否开启故障开放模式：后端不可用时计费写入本地日志，继续放行请求
+     */
+    private Boolean enabled = false;
+    /**
+     * 日志文件路径
+     */
+    private String path = "data/billing-journal.dat";
+    /**
+     * 日志文件容量（字节）
+     */
+    private Integer capacity = 64 * 1024 * 1024;
+    /**
+     * 每批重放条数
+     */
+    private Integer replayBatchSize = 200;
+}
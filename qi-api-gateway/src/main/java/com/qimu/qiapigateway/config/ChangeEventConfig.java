@@ -0,0 +1,29 @@
+package com.qimu.qiapigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/10 10:15:08
+ * @Version: 1.0
+ * @Description: 变更事件订阅配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.gateway.change-event")
+@Data
+public class ChangeEventConfig {
+    /**
+     * 是否订阅变更事件，关闭后只靠缓存过期和定时全量刷新
+     */
+    private Boolean enabled = true;
+    /**
+     * 每次最多读取的事件数
+     */
+    private Integer batchSize = 100;
+    /**
+     * 没有事件时阻塞等待的时间（毫秒）
+     */
+    private Long blockMillis = 2000L;
+}
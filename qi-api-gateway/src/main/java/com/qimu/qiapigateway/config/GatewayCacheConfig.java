@@ -0,0 +1,29 @@
+package com.qimu.qiapigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/22 14:05:31
+ * @Version: 1.0
+ * @Description: 网关本地缓存配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.gateway.cache")
+@Data
+public class GatewayCacheConfig {
+    /**
+     * 调用用户缓存过期时间（毫秒），过期后回源校验封禁状态和余额
+     */
+    private Long userExpireMillis = 30 * 1000L;
+    /**
+     * 接口路由缓存过期时间（毫秒）
+     */
+    private Long interfaceExpireMillis = 60 * 1000L;
+    /**
+     * 后端不可用时可使用的过期缓存保留时间（毫秒），只在故障开放模式下使用
+     */
+    private Long staleMillis = 30 * 60 * 1000L;
+}
@@ -0,0 +1,41 @@
+package com.qimu.qiapigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/22 14:06:12
+ * @Version: 1.0
+ * @Description: 网关启动预热配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.gateway.warm-up")
+@Data
+public class GatewayWarmUpConfig {
+    /**
+     * 是否开启预热
+     */
+    private Boolean enabled = true;
+    /**
+     * 预加载的最近活跃用户数
+     */
+    private Integer principalLimit = 200;
+    /**
+     * 合成请求轮数
+     */
+    private Integer syntheticRounds = 3;
+    /**
+     * 单个合成请求超时时间（毫秒）
+     */
+    private Long requestTimeoutMillis = 3000L;
+    /**
+     * 合成请求使用的预热专用账号 accessKey，为空时不发送合成请求
+     */
+    private String accessKey;
+    /**
+     * 合成请求使用的预热专用账号 secretKey
+     */
+    private String secretKey;
+}
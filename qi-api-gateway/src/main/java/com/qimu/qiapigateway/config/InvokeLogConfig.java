@@ -0,0 +1,33 @@
+package com.qimu.qiapigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/25 10:05:36
+ * @Version: 1.0
+ * @Description: 调用日志上报配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.gateway.invoke-log")
+@Data
+public class InvokeLogConfig {
+    /**
+     * 是否上报调用日志
+     */
+    private Boolean enabled = true;
+    /**
+     * 内存队列容量，队列满时丢弃新日志，不阻塞请求
+     */
+    private Integer queueCapacity = 10000;
+    /**
+     * 每批上报条数
+     */
+    private Integer batchSize = 500;
+    /**
+     * 最长攒批时间（毫秒）
+     */
+    private Long flushIntervalMillis = 1000L;
+}
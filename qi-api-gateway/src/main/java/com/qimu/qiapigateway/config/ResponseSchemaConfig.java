@@ -0,0 +1,25 @@
+package com.qimu.qiapigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/15 09:20:31
+ * @Version: 1.0
+ * @Description: 响应字段投影与结构校验配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qi.gateway.response-schema")
+@Data
+public class ResponseSchemaConfig {
+    /**
+     * 是否支持 fields 参数只返回指定字段
+     */
+    private Boolean projectionEnabled = true;
+    /**
+     * 按 responseParams 校验响应结构的抽样比例，0 关闭
+     */
+    private Double sampleRate = 0.01;
+}
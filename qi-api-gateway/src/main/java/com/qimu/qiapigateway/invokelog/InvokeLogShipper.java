@@ -0,0 +1,132 @@
+package com.qimu.qiapigateway.invokelog;
+
+import com.qimu.qiapicommon.model.entity.InterfaceInvokeLog;
+import com.qimu.qiapicommon.service.inner.InnerInterfaceInvokeLogService;
+import com.qimu.qiapigateway.config.InvokeLogConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/25 10:12:48
+ * @Version: 1.0
+ * @Description: 调用日志上报：请求线程只做非阻塞入队，后台线程攒批后通过 RPC 写入后端
+ */
+@Slf4j
+@Component
+public class InvokeLogShipper {
+    @Resource
+    private InvokeLogConfig invokeLogConfig;
+    @DubboReference
+    private InnerInterfaceInvokeLogService innerInterfaceInvokeLogService;
+
+    private BlockingQueue<InterfaceInvokeLog> queue;
+    private Thread shipperThread;
+    private volatile boolean running;
+    /**
+     * 队列满被丢弃的日志数
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        if (!invokeLogConfig.getEnabled()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(invokeLogConfig.getQueueCapacity());
+        running = true;
+        shipperThread = new Thread(this::shipLoop, "invoke-log-shipper");
+        shipperThread.setDaemon(true);
+        shipperThread.start();
+    }
+
+    /**
+     * 提交一条调用日志，队列满时直接丢弃
+     *
+     * @param invokeLog 调用日志
+     */
+    public void offer(InterfaceInvokeLog invokeLog) {
+        if (queue == null) {
+            return;
+        }
+        if (!queue.offer(invokeLog) && dropped.incrementAndGet() % 1000 == 1) {
+            log.warn("调用日志队列已满，累计丢弃 {} 条", dropped.get());
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void shipLoop() {
+        int batchSize = invokeLogConfig.getBatchSize();
+        long flushIntervalMillis = invokeLogConfig.getFlushIntervalMillis();
+        List<InterfaceInvokeLog> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                InterfaceInvokeLog first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                // 攒满一批或到达最长等待时间后上报
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    InterfaceInvokeLog next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                ship(batch);
+            } catch (InterruptedException e) {
+                // 停机时尽量把剩余日志发完
+                queue.drainTo(batch);
+                ship(batch);
+                if (!running) {
+                    return;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void ship(List<InterfaceInvokeLog> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            innerInterfaceInvokeLogService.saveInvokeLogBatch(new ArrayList<>(batch));
+        } catch (Exception e) {
+            // 调用日志不参与计费，后端不可用时丢弃本批，不影响网关
+            log.warn("上报调用日志失败，丢弃 {} 条：{}", batch.size(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (shipperThread == null) {
+            return;
+        }
+        running = false;
+        shipperThread.interrupt();
+        shipperThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
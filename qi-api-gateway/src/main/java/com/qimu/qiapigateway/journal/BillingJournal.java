@@ -0,0 +1,263 @@
+package com.qimu.qiapigateway.journal;
+
+import com.qimu.qiapicommon.model.dto.InvokeRecord;
+import com.qimu.qiapigateway.config.BillingJournalConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/21 10:15:42
+ * @Version: 1.0
+ * @Description: 本地计费日志，基于内存映射文件的追加写日志
+ * <p>
+ * 文件头：魔数(4) + 版本(4) + 纪元(4) + 保留(4) + 已重放偏移(8)
+ * 记录：长度(4) + CRC32(4) + 数据，CRC 覆盖纪元和数据，写到一半的记录和上一纪元的残留记录都会被校验丢弃
+ * 每条记录和每次提交重放进度后都会刷盘，追加返回成功时记录已落盘，机器掉电也不会丢失已放行请求的计费。
+ */
+@Slf4j
+@Component
+public class BillingJournal {
+    private static final int MAGIC = 0x51494A4C;
+    private static final int VERSION = 1;
+    private static final int EPOCH_OFFSET = 8;
+    private static final int READ_OFFSET_OFFSET = 16;
+    static final int HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    @Resource
+    private BillingJournalConfig billingJournalConfig;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int epoch;
+    private int readOffset;
+    private int writeOffset;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (billingJournalConfig != null && Boolean.TRUE.equals(billingJournalConfig.getEnabled())) {
+            open(Paths.get(billingJournalConfig.getPath()), billingJournalConfig.getCapacity());
+        }
+    }
+
+    /**
+     * 打开日志文件，恢复写入位置
+     *
+     * @param path     路径
+     * @param capacity 容量
+     * @throws IOException IOException
+     */
+    public synchronized void open(Path path, int capacity) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = (int) Math.max(capacity, channel.size());
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            epoch = 1;
+            buffer.putInt(EPOCH_OFFSET, epoch);
+            readOffset = HEADER_SIZE;
+            buffer.putLong(READ_OFFSET_OFFSET, readOffset);
+        } else {
+            epoch = buffer.getInt(EPOCH_OFFSET);
+            readOffset = (int) buffer.getLong(READ_OFFSET_OFFSET);
+        }
+        writeOffset = readOffset;
+        byte[] data;
+        while ((data = readRecord(writeOffset)) != null) {
+            writeOffset += RECORD_HEADER_SIZE + data.length;
+        }
+        log.info("计费日志已打开：{}，待重放字节数：{}", path, writeOffset - readOffset);
+    }
+
+    /**
+     * 是否开启
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * 是否已全部重放
+     *
+     * @return boolean
+     */
+    public synchronized boolean isEmpty() {
+        return buffer == null || readOffset == writeOffset;
+    }
+
+    /**
+     * 追加一条计费记录
+     *
+     * @param invokeRecord 调用记录
+     * @return boolean 日志已满或未开启时返回 false
+     */
+    public synchronized boolean append(InvokeRecord invokeRecord) {
+        if (buffer == null) {
+            return false;
+        }
+        byte[] data = encode(invokeRecord);
+        int recordSize = RECORD_HEADER_SIZE + data.length;
+        if (writeOffset + recordSize > buffer.capacity()) {
+            log.error("计费日志已满，丢弃计费记录：{}", invokeRecord);
+            return false;
+        }
+        int position = writeOffset;
+        for (int i = 0; i < data.length; i++) {
+            buffer.put(position + RECORD_HEADER_SIZE + i, data[i]);
+        }
+        buffer.putInt(position + 4, checksum(data));
+        // 最后写长度，长度不为 0 才算一条完整记录
+        buffer.putInt(position, data.length);
+        writeOffset += recordSize;
+        // 只在后端不可用时追加，刷盘开销只落在故障期间
+        buffer.force();
+        return true;
+    }
+
+    /**
+     * 读取一批待重放记录
+     *
+     * @param maxSize 最大条数
+     * @return {@link List}<{@link JournalEntry}>
+     */
+    public synchronized List<JournalEntry> readBatch(int maxSize) {
+        List<JournalEntry> entries = new ArrayList<>();
+        if (buffer == null) {
+            return entries;
+        }
+        int position = readOffset;
+        while (position < writeOffset && entries.size() < maxSize) {
+            byte[] data = readRecord(position);
+            if (data == null) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + data.length;
+            entries.add(new JournalEntry(decode(data), position));
+        }
+        return entries;
+    }
+
+    /**
+     * 提交重放进度，全部重放完成后从头开始复用文件
+     *
+     * @param offset 已重放的位置
+     */
+    public synchronized void commit(long offset) {
+        if (buffer == null || offset <= readOffset || offset > writeOffset) {
+            return;
+        }
+        readOffset = (int) offset;
+        if (readOffset == writeOffset) {
+            epoch++;
+            readOffset = HEADER_SIZE;
+            writeOffset = HEADER_SIZE;
+            buffer.putInt(EPOCH_OFFSET, epoch);
+        }
+        buffer.putLong(READ_OFFSET_OFFSET, readOffset);
+        // 进度未落盘时重启会重复重放这一批，后端按请求id去重，这里刷盘只是减少重复
+        buffer.force();
+    }
+
+    /**
+     * 刷盘
+     */
+    public synchronized void force() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * 读取指定位置的记录，记录不完整或校验失败返回 null
+     */
+    private byte[] readRecord(int position) {
+        if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = buffer.get(position + RECORD_HEADER_SIZE + i);
+        }
+        if (buffer.getInt(position + 4) != checksum(data)) {
+            return null;
+        }
+        return data;
+    }
+
+    private int checksum(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(epoch >>> 24);
+        crc32.update(epoch >>> 16);
+        crc32.update(epoch >>> 8);
+        crc32.update(epoch);
+        crc32.update(data, 0, data.length);
+        return (int) crc32.getValue();
+    }
+
+    private static byte[] encode(InvokeRecord invokeRecord) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64);
+            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+            dataOutputStream.writeUTF(invokeRecord.getRequestId());
+            dataOutputStream.writeLong(invokeRecord.getInterfaceInfoId());
+            dataOutputStream.writeLong(invokeRecord.getUserId());
+            dataOutputStream.writeInt(invokeRecord.getReduceScore() == null ? 0 : invokeRecord.getReduceScore());
+            dataOutputStream.writeLong(invokeRecord.getInvokeTime());
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static InvokeRecord decode(byte[] data) {
+        try {
+            DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(data));
+            InvokeRecord invokeRecord = new InvokeRecord();
+            invokeRecord.setRequestId(dataInputStream.readUTF());
+            invokeRecord.setInterfaceInfoId(dataInputStream.readLong());
+            invokeRecord.setUserId(dataInputStream.readLong());
+            invokeRecord.setReduceScore(dataInputStream.readInt());
+            invokeRecord.setInvokeTime(dataInputStream.readLong());
+            return invokeRecord;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
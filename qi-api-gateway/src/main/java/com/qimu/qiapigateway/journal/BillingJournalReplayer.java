@@ -0,0 +1,97 @@
+package com.qimu.qiapigateway.journal;
+
+import com.qimu.qiapicommon.model.dto.InvokeRecord;
+import com.qimu.qiapicommon.service.inner.InnerUserInterfaceInvokeService;
+import com.qimu.qiapigateway.config.BillingJournalConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.apache.dubbo.rpc.RpcException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/21 10:40:27
+ * @Version: 1.0
+ * @Description: 计费日志重放，后端恢复后按批次补扣积分
+ */
+@Slf4j
+@Component
+public class BillingJournalReplayer {
+    @Resource
+    private BillingJournal billingJournal;
+    @Resource
+    private BillingJournalConfig billingJournalConfig;
+    @DubboReference
+    private InnerUserInterfaceInvokeService interfaceInvokeService;
+
+    @Scheduled(fixedDelay = 5000)
+    public void replay() {
+        if (!billingJournal.isEnabled()) {
+            return;
+        }
+        billingJournal.force();
+        while (!billingJournal.isEmpty()) {
+            List<JournalEntry> entries = billingJournal.readBatch(billingJournalConfig.getReplayBatchSize());
+            if (entries.isEmpty()) {
+                return;
+            }
+            List<InvokeRecord> invokeRecords = entries.stream().map(JournalEntry::getInvokeRecord).collect(Collectors.toList());
+            try {
+                if (!interfaceInvokeService.invokeBatch(invokeRecords)) {
+                    log.info("部分计费记录仍在后端处理中，稍后继续重放计费日志");
+                    return;
+                }
+            } catch (RpcException e) {
+                log.warn("后端服务仍不可用，稍后继续重放计费日志：{}", e.getMessage());
+                return;
+            } catch (Exception e) {
+                // 批量失败时逐条重放，隔离个别无法计费的记录
+                if (!replayOneByOne(entries)) {
+                    return;
+                }
+                continue;
+            }
+            billingJournal.commit(entries.get(entries.size() - 1).getNextOffset());
+            log.info("计费日志重放 {} 条", entries.size());
+        }
+    }
+
+    /**
+     * 逐条重放
+     *
+     * @param entries 条目
+     * @return boolean 后端不可用或有记录仍在计费中时返回 false，已成功的部分会先提交
+     */
+    private boolean replayOneByOne(List<JournalEntry> entries) {
+        long committedOffset = -1;
+        try {
+            for (JournalEntry entry : entries) {
+                try {
+                    if (!interfaceInvokeService.invoke(entry.getInvokeRecord())) {
+                        // 仍在计费中，停在这条，下一轮再重试
+                        return false;
+                    }
+                } catch (RpcException e) {
+                    throw e;
+                } catch (Exception e) {
+                    // 业务失败重试也不会成功，记录后跳过
+                    log.error("计费日志重放失败，已跳过：{}", entry.getInvokeRecord(), e);
+                }
+                committedOffset = entry.getNextOffset();
+            }
+            return true;
+        } catch (RpcException e) {
+            log.warn("后端服务仍不可用，稍后继续重放计费日志：{}", e.getMessage());
+            return false;
+        } finally {
+            if (committedOffset > 0) {
+                billingJournal.commit(committedOffset);
+            }
+        }
+    }
+}
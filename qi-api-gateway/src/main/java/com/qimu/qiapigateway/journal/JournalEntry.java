@@ -0,0 +1,24 @@
+package com.qimu.qiapigateway.journal;
+
+import com.qimu.qiapicommon.model.dto.InvokeRecord;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/21 10:16:05
+ * @Version: 1.0
+ * @Description: 计费日志条目
+ */
+@Data
+@AllArgsConstructor
+public class JournalEntry {
+    /**
+     * 调用记录
+     */
+    private InvokeRecord invokeRecord;
+    /**
+     * 该记录结束位置，提交后即视为已重放
+     */
+    private long nextOffset;
+}
@@ -0,0 +1,78 @@
+package com.qimu.qiapigateway.schema;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/15 09:34:27
+ * @Version: 1.0
+ * @Description: 字段路径树，由点分路径编译而来，如 data.text、data.fortune.all
+ * <p>
+ * 叶子节点表示选中整个子树；数组不占路径段，路径作用于数组的每个元素。
+ */
+public class FieldPathTree {
+    private static final String SEPARATOR = ".";
+
+    private final Map<String, FieldPathTree> children = new LinkedHashMap<>();
+    private boolean leaf;
+
+    /**
+     * 编译路径，空白路径忽略
+     *
+     * @param paths 点分路径
+     * @return {@link FieldPathTree}
+     */
+    public static FieldPathTree compile(Collection<String> paths) {
+        FieldPathTree root = new FieldPathTree();
+        for (String path : paths) {
+            if (path == null || path.trim().isEmpty()) {
+                continue;
+            }
+            FieldPathTree node = root;
+            for (String segment : path.trim().split("\\" + SEPARATOR)) {
+                node = node.children.computeIfAbsent(segment.trim(), k -> new FieldPathTree());
+            }
+            node.leaf = true;
+        }
+        return root;
+    }
+
+    /**
+     * 路径的每一段是否都在树中
+     *
+     * @param path 点分路径
+     * @return boolean
+     */
+    public boolean contains(String path) {
+        FieldPathTree node = this;
+        for (String segment : path.trim().split("\\" + SEPARATOR)) {
+            node = node.children.get(segment.trim());
+            if (node == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public FieldPathTree getChild(String name) {
+        return children.get(name);
+    }
+
+    public Map<String, FieldPathTree> getChildren() {
+        return Collections.unmodifiableMap(children);
+    }
+
+    /**
+     * 选中整个子树
+     */
+    public boolean isLeaf() {
+        return leaf;
+    }
+
+    public boolean isEmpty() {
+        return children.isEmpty() && !leaf;
+    }
+}
@@ -0,0 +1,241 @@
+package com.qimu.qiapigateway.schema;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/15 09:51:08
+ * @Version: 1.0
+ * @Description: 按字段路径树流式过滤 JSON
+ * <p>
+ * 逐个 token 读取，未选中的字段直接跳过整个子树，不构建对象树；选中的路径下本是标量的位置输出 null。
+ * 输入可以分块喂入，每块处理完就返回已过滤的部分，不需要等完整响应体。
+ * 开头就不是合法 JSON 时（如 HTML 错误页）按原样返回；已经输出过内容后才出错只能抛出异常。
+ */
+public class JsonProjector implements Closeable {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] EMPTY = new byte[0];
+
+    private final FieldPathTree selection;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final JsonGenerator generator;
+    /**
+     * 正在输出的容器，跳过和整体复制的子树不入栈
+     */
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    /**
+     * 对象中下一个值对应的节点，null 表示跳过
+     */
+    private FieldPathTree nextField;
+    private int skipDepth;
+    private int copyDepth;
+    private boolean started;
+    private boolean rootDone;
+    /**
+     * 还没有输出时保留的原始输入，开头就不是合法 JSON 时原样返回
+     */
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private boolean passThrough;
+
+    public JsonProjector(FieldPathTree selection) throws IOException {
+        this.selection = selection;
+        this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.generator = JSON_FACTORY.createGenerator(out);
+    }
+
+    /**
+     * 过滤完整的 JSON
+     *
+     * @param json      JSON
+     * @param selection 选中的字段路径
+     * @return {@link byte[]} 过滤后的 JSON
+     * @throws IOException 不是合法的 JSON
+     */
+    public static byte[] project(byte[] json, FieldPathTree selection) throws IOException {
+        try (JsonProjector projector = new JsonProjector(selection)) {
+            byte[] head = projector.feed(json);
+            byte[] tail = projector.finish();
+            if (projector.isPassThrough()) {
+                throw new IOException("不是合法的 JSON");
+            }
+            byte[] projected = new byte[head.length + tail.length];
+            System.arraycopy(head, 0, projected, 0, head.length);
+            System.arraycopy(tail, 0, projected, head.length, tail.length);
+            return projected;
+        }
+    }
+
+    /**
+     * 喂入一块输入
+     *
+     * @param chunk 输入
+     * @return {@link byte[]} 本次可以输出的内容，可能为空
+     * @throws IOException 已经输出过内容后发现不是合法的 JSON
+     */
+    public byte[] feed(byte[] chunk) throws IOException {
+        if (passThrough) {
+            return chunk;
+        }
+        if (pending != null) {
+            pending.write(chunk, 0, chunk.length);
+        }
+        try {
+            feeder.feedInput(chunk, 0, chunk.length);
+            drain();
+            return takeOutput();
+        } catch (IOException e) {
+            return fallBack(e);
+        }
+    }
+
+    /**
+     * 输入结束
+     *
+     * @return {@link byte[]} 剩余的输出
+     * @throws IOException JSON 不完整
+     */
+    public byte[] finish() throws IOException {
+        if (passThrough) {
+            return EMPTY;
+        }
+        try {
+            feeder.endOfInput();
+            drain();
+            if (!started) {
+                // 只有空白，原样返回
+                byte[] raw = pending == null ? EMPTY : pending.toByteArray();
+                pending = null;
+                return raw;
+            }
+            if (!rootDone) {
+                throw new IOException("JSON 不完整");
+            }
+            return takeOutput();
+        } catch (IOException e) {
+            return fallBack(e);
+        }
+    }
+
+    /**
+     * 输入不是 JSON，按原样返回
+     */
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+        generator.close();
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (rootDone) {
+                throw new IOException("JSON 之后还有多余内容");
+            }
+            started = true;
+            handle(token);
+            rootDone = frames.isEmpty() && skipDepth == 0 && copyDepth == 0;
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (skipDepth > 0) {
+            skipDepth += depthChange(token);
+            return;
+        }
+        if (copyDepth > 0) {
+            generator.copyCurrentEvent(parser);
+            copyDepth += depthChange(token);
+            return;
+        }
+        if (token == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            nextField = frames.peek().node.getChild(fieldName);
+            if (nextField != null) {
+                generator.writeFieldName(fieldName);
+            }
+            return;
+        }
+        if (token == JsonToken.END_OBJECT) {
+            frames.pop();
+            generator.writeEndObject();
+            return;
+        }
+        if (token == JsonToken.END_ARRAY) {
+            frames.pop();
+            generator.writeEndArray();
+            return;
+        }
+        // 数组不占路径段，元素沿用数组的节点
+        Frame frame = frames.peek();
+        FieldPathTree node = frame == null ? selection : frame.array ? frame.node : nextField;
+        if (node == null) {
+            skipDepth = depthChange(token);
+        } else if (node.isLeaf()) {
+            generator.copyCurrentEvent(parser);
+            copyDepth = depthChange(token);
+        } else if (token == JsonToken.START_OBJECT) {
+            generator.writeStartObject();
+            frames.push(new Frame(node, false));
+        } else if (token == JsonToken.START_ARRAY) {
+            generator.writeStartArray();
+            frames.push(new Frame(node, true));
+        } else {
+            generator.writeNull();
+        }
+    }
+
+    private static int depthChange(JsonToken token) {
+        if (token.isStructStart()) {
+            return 1;
+        }
+        return token.isStructEnd() ? -1 : 0;
+    }
+
+    private byte[] takeOutput() throws IOException {
+        generator.flush();
+        if (out.size() == 0) {
+            return EMPTY;
+        }
+        byte[] output = out.toByteArray();
+        out.reset();
+        pending = null;
+        return output;
+    }
+
+    private byte[] fallBack(IOException e) throws IOException {
+        if (pending == null) {
+            throw e;
+        }
+        passThrough = true;
+        byte[] raw = pending.toByteArray();
+        pending = null;
+        return raw;
+    }
+
+    private static class Frame {
+        private final FieldPathTree node;
+        private final boolean array;
+
+        private Frame(FieldPathTree node, boolean array) {
+            this.node = node;
+            this.array = array;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.qimu.qiapigateway.schema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/15 10:12:36
+ * @Version: 1.0
+ * @Description: 接口响应结构，由 responseParams 编译，用于字段投影校验和响应结构抽查
+ * <p>
+ * 文档中的类型只校验能明确判断的几类（数字、字符串、布尔、数组），object 等其他写法视为任意类型；
+ * 路径经过数组时检查第一个元素，空数组视为符合。
+ */
+public class ResponseSchema {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String TYPE_NUMBER = "number";
+    private static final String TYPE_STRING = "string";
+    private static final String TYPE_BOOLEAN = "boolean";
+    private static final String TYPE_ARRAY = "array";
+
+    private final FieldPathTree fieldPathTree;
+    /**
+     * 路径 -> 归一化后的类型，null 表示不校验类型
+     */
+    private final Map<String, String> fieldTypes;
+
+    private ResponseSchema(FieldPathTree fieldPathTree, Map<String, String> fieldTypes) {
+        this.fieldPathTree = fieldPathTree;
+        this.fieldTypes = fieldTypes;
+    }
+
+    /**
+     * 编译响应结构
+     *
+     * @param documentedTypes 路径 -> 文档中的类型
+     * @return {@link ResponseSchema}
+     */
+    public static ResponseSchema compile(Map<String, String> documentedTypes) {
+        Map<String, String> fieldTypes = new LinkedHashMap<>();
+        documentedTypes.forEach((path, type) -> {
+            if (path != null && !path.trim().isEmpty()) {
+                fieldTypes.put(path.trim(), normalizeType(type));
+            }
+        });
+        return new ResponseSchema(FieldPathTree.compile(fieldTypes.keySet()), Collections.unmodifiableMap(fieldTypes));
+    }
+
+    private static String normalizeType(String type) {
+        if (type == null) {
+            return null;
+        }
+        switch (type.trim().toLowerCase(Locale.ROOT)) {
+            case "int":
+            case "integer":
+            case "long":
+            case "short":
+            case "double":
+            case "float":
+            case "number":
+            case "decimal":
+                return TYPE_NUMBER;
+            case "string":
+            case "char":
+                return TYPE_STRING;
+            case "boolean":
+            case "bool":
+                return TYPE_BOOLEAN;
+            case "array":
+            case "list":
+                return TYPE_ARRAY;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 校验响应是否符合文档
+     *
+     * @param json 响应体
+     * @return {@link List}<{@link String}> 不符合的描述，符合时为空
+     */
+    public List<String> check(byte[] json) {
+        JsonNode root;
+        try {
+            root = OBJECT_MAPPER.readTree(json);
+        } catch (IOException e) {
+            return Collections.singletonList("响应不是合法的 JSON");
+        }
+        List<String> violations = new ArrayList<>();
+        fieldTypes.forEach((path, type) -> {
+            String violation = checkPath(root, path, type);
+            if (violation != null) {
+                violations.add(violation);
+            }
+        });
+        return violations;
+    }
+
+    private static String checkPath(JsonNode root, String path, String type) {
+        JsonNode node = root;
+        for (String segment : path.split("\\.")) {
+            node = firstElement(node);
+            if (node == null || node.isNull()) {
+                // 空数组或上级为 null，无法判断
+                return null;
+            }
+            if (!node.isObject() || !node.has(segment)) {
+                return "缺少字段 " + path;
+            }
+            node = node.get(segment);
+        }
+        if (type == null || node.isNull()) {
+            return null;
+        }
+        if (!TYPE_ARRAY.equals(type)) {
+            node = firstElement(node);
+            if (node == null || node.isNull()) {
+                return null;
+            }
+        }
+        boolean matched;
+        switch (type) {
+            case TYPE_NUMBER:
+                matched = node.isNumber();
+                break;
+            case TYPE_STRING:
+                matched = node.isTextual();
+                break;
+            case TYPE_BOOLEAN:
+                matched = node.isBoolean();
+                break;
+            case TYPE_ARRAY:
+                matched = node.isArray();
+                break;
+            default:
+                matched = true;
+        }
+        return matched ? null : "字段 " + path + " 应为 " + type + "，实际为 " + node.getNodeType().name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 数组取第一个元素，空数组返回 null
+     */
+    private static JsonNode firstElement(JsonNode node) {
+        while (node != null && node.isArray()) {
+            node = node.size() == 0 ? null : node.get(0);
+        }
+        return node;
+    }
+
+    public FieldPathTree getFieldPathTree() {
+        return fieldPathTree;
+    }
+
+    public boolean isEmpty() {
+        return fieldTypes.isEmpty();
+    }
+}
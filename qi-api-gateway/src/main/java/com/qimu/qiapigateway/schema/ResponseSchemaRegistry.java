@@ -0,0 +1,193 @@
+package com.qimu.qiapigateway.schema;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.qimu.qiapicommon.common.ErrorCode;
+import com.qimu.qiapicommon.model.dto.ResponseParamsField;
+import com.qimu.qiapicommon.model.entity.InterfaceInfo;
+import com.qimu.qiapigateway.config.ResponseSchemaConfig;
+import com.qimu.qiapigateway.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Author: QiMu
+ * @Date: 2024/01/15 10:40:52
+ * @Version: 1.0
+ * @Description: 接口响应结构注册表
+ * <p>
+ * 按接口缓存由 responseParams 编译出的结构，responseParams 变化时重新编译；抽样校验上游响应，
+ * 结构漂移的接口在健康检查中列出，恢复后移除。漂移只做提示，不影响健康状态。
+ */
+@Slf4j
+@Component("schemaConformance")
+public class ResponseSchemaRegistry implements HealthIndicator {
+    private static final Gson GSON = new Gson();
+    private static final String FIELDS_SEPARATOR = ",";
+
+    @Resource
+    private ResponseSchemaConfig responseSchemaConfig;
+
+    /**
+     * 接口id -> 编译结果
+     */
+    private final Map<Long, CompiledSchema> schemaCache = new ConcurrentHashMap<>();
+    /**
+     * 接口id -> 最近一次发现的漂移
+     */
+    private final Map<Long, Drift> driftMap = new ConcurrentHashMap<>();
+
+    /**
+     * 解析 fields 参数，每个字段都须在接口的响应参数中
+     *
+     * @param interfaceInfo 接口信息
+     * @param fields        逗号分隔的点分路径
+     * @return {@link FieldPathTree}，未开启投影或未传字段返回 null
+     */
+    public FieldPathTree selection(InterfaceInfo interfaceInfo, String fields) {
+        if (!responseSchemaConfig.getProjectionEnabled() || StringUtils.isBlank(fields)) {
+            return null;
+        }
+        ResponseSchema schema = getSchema(interfaceInfo);
+        if (schema == null || schema.isEmpty()) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "该接口未提供响应参数说明，不支持 fields 参数");
+        }
+        List<String> paths = new ArrayList<>();
+        for (String path : fields.split(FIELDS_SEPARATOR)) {
+            if (StringUtils.isBlank(path)) {
+                continue;
+            }
+            if (!schema.getFieldPathTree().contains(path)) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "fields 参数有误，响应中没有字段 " + path.trim());
+            }
+            paths.add(path);
+        }
+        return paths.isEmpty() ? null : FieldPathTree.compile(paths);
+    }
+
+    /**
+     * 本次响应是否抽样校验
+     *
+     * @param interfaceInfo 接口信息
+     * @return boolean
+     */
+    public boolean shouldSample(InterfaceInfo interfaceInfo) {
+        double sampleRate = responseSchemaConfig.getSampleRate();
+        return sampleRate > 0 && StringUtils.isNotBlank(interfaceInfo.getResponseParams())
+                && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * 校验上游响应结构，记录漂移
+     *
+     * @param interfaceInfo 接口信息
+     * @param body          上游响应体
+     */
+    public void check(InterfaceInfo interfaceInfo, byte[] body) {
+        ResponseSchema schema = getSchema(interfaceInfo);
+        if (schema == null || schema.isEmpty()) {
+            return;
+        }
+        Long id = interfaceInfo.getId();
+        List<String> violations = schema.check(body);
+        if (violations.isEmpty()) {
+            if (driftMap.remove(id) != null) {
+                log.info("接口 {}({}) 响应结构已恢复", interfaceInfo.getName(), id);
+            }
+            return;
+        }
+        Drift previous = driftMap.get(id);
+        Drift drift = new Drift(interfaceInfo.getName(), violations, previous == null ? 1 : previous.count + 1);
+        driftMap.put(id, drift);
+        if (previous == null || !previous.violations.equals(violations)) {
+            log.warn("接口 {}({}) 响应结构与文档不符：{}", interfaceInfo.getName(), id, violations);
+        }
+    }
+
+    private ResponseSchema getSchema(InterfaceInfo interfaceInfo) {
+        String responseParams = interfaceInfo.getResponseParams();
+        if (StringUtils.isBlank(responseParams)) {
+            schemaCache.remove(interfaceInfo.getId());
+            return null;
+        }
+        CompiledSchema compiled = schemaCache.get(interfaceInfo.getId());
+        if (compiled == null || !Objects.equals(compiled.responseParams, responseParams)) {
+            compiled = new CompiledSchema(responseParams, compile(responseParams));
+            schemaCache.put(interfaceInfo.getId(), compiled);
+        }
+        return compiled.schema;
+    }
+
+    private static ResponseSchema compile(String responseParams) {
+        List<ResponseParamsField> fieldList;
+        try {
+            fieldList = GSON.fromJson(responseParams, new TypeToken<List<ResponseParamsField>>() {
+            }.getType());
+        } catch (JsonParseException e) {
+            log.warn("响应参数说明解析失败：{}", responseParams);
+            fieldList = null;
+        }
+        Map<String, String> documentedTypes = new LinkedHashMap<>();
+        if (fieldList != null) {
+            for (ResponseParamsField field : fieldList) {
+                documentedTypes.put(field.getFieldName(), field.getType());
+            }
+        }
+        return ResponseSchema.compile(documentedTypes);
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> drifts = new LinkedHashMap<>();
+        driftMap.forEach((id, drift) -> {
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("name", drift.name);
+            detail.put("violations", drift.violations);
+            detail.put("lastSeen", new Date(drift.lastSeen));
+            detail.put("count", drift.count);
+            drifts.put(String.valueOf(id), detail);
+        });
+        return Health.up()
+                .withDetail("sampleRate", responseSchemaConfig.getSampleRate())
+                .withDetail("drifting", drifts)
+                .build();
+    }
+
+    private static class CompiledSchema {
+        private final String responseParams;
+        private final ResponseSchema schema;
+
+        private CompiledSchema(String responseParams, ResponseSchema schema) {
+            this.responseParams = responseParams;
+            this.schema = schema;
+        }
+    }
+
+    private static class Drift {
+        private final String name;
+        private final List<String> violations;
+        private final long lastSeen = System.currentTimeMillis();
+        private final long count;
+
+        private Drift(String name, List<String> violations, long count) {
+            this.name = name;
+            this.violations = Collections.unmodifiableList(violations);
+            this.count = count;
+        }
+    }
+}
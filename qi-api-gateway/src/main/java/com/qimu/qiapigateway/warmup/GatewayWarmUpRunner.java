@@ -0,0 +1,166 @@
+package com.qimu.qiapigateway.warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.qimu.qiapicommon.model.dto.RequestParamsField;
+import com.qimu.qiapicommon.model.entity.InterfaceInfo;
+import com.qimu.qiapigateway.cache.InterfaceRouteCache;
+import com.qimu.qiapigateway.cache.InvokeUserCache;
+import com.qimu.qiapigateway.config.GatewayWarmUpConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import javax.annotation.Resource;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static icu.qimuu.qiapisdk.utils.SignUtils.getSign;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/22 15:10:26
+ * @Version: 1.0
+ * @Description: 网关启动预热，在应用就绪前建立 Dubbo、Redis 连接，预加载路由和活跃用户，并用预热专用账号的合成请求走一遍过滤器链
+ */
+@Slf4j
+@Component
+public class GatewayWarmUpRunner implements ApplicationRunner {
+    /**
+     * 合成请求标识请求头，值为接口id
+     */
+    public static final String WARM_UP_HEADER = "X-Qi-Warm-Up";
+    /**
+     * 合成请求的签名内容和必填参数占位值
+     */
+    private static final String WARM_UP_VALUE = "warmUp";
+    private static final Gson GSON = new Gson();
+
+    @Resource
+    private GatewayWarmUpConfig gatewayWarmUpConfig;
+    @Resource
+    private WarmUpHealthIndicator warmUpHealthIndicator;
+    @Resource
+    private InterfaceRouteCache interfaceRouteCache;
+    @Resource
+    private InvokeUserCache invokeUserCache;
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private Environment environment;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.currentTimeMillis();
+        int interfaceCount = 0;
+        int principalCount = 0;
+        if (Boolean.TRUE.equals(gatewayWarmUpConfig.getEnabled())) {
+            try {
+                redissonClient.getBucket("gateway:warmUp").isExists();
+            } catch (Exception e) {
+                log.warn("预热 Redis 连接失败：{}", e.getMessage());
+            }
+            try {
+                interfaceCount = interfaceRouteCache.reload();
+            } catch (Exception e) {
+                log.warn("预加载接口路由失败：{}", e.getMessage());
+            }
+            try {
+                principalCount = invokeUserCache.preload(gatewayWarmUpConfig.getPrincipalLimit());
+            } catch (Exception e) {
+                log.warn("预加载活跃用户失败：{}", e.getMessage());
+            }
+            sendSyntheticRequests();
+        }
+        long cost = System.currentTimeMillis() - start;
+        warmUpHealthIndicator.markReady(cost, interfaceCount, principalCount);
+        log.info("网关预热完成，耗时 {} ms，接口 {} 个，用户 {} 个", cost, interfaceCount, principalCount);
+    }
+
+    /**
+     * 用预热专用账号向本机发送合成请求，走完验签、用户和路由查询、计费调用，不转发、不写入计费
+     */
+    private void sendSyntheticRequests() {
+        String port = environment.getProperty("local.server.port");
+        if (port == null) {
+            return;
+        }
+        if (StringUtils.isAnyBlank(gatewayWarmUpConfig.getAccessKey(), gatewayWarmUpConfig.getSecretKey())) {
+            log.info("未配置预热专用账号，跳过合成预热请求");
+            return;
+        }
+        List<InterfaceInfo> interfaceInfoList = new ArrayList<>(interfaceRouteCache.getIdIndex().values());
+        if (interfaceInfoList.isEmpty()) {
+            return;
+        }
+        WebClient webClient = WebClient.create("http://127.0.0.1:" + port);
+        Duration timeout = Duration.ofMillis(gatewayWarmUpConfig.getRequestTimeoutMillis());
+        for (int round = 0; round < gatewayWarmUpConfig.getSyntheticRounds(); round++) {
+            for (InterfaceInfo interfaceInfo : interfaceInfoList) {
+                try {
+                    sendSyntheticRequest(webClient, interfaceInfo, timeout);
+                } catch (Exception e) {
+                    log.warn("合成预热请求失败：{}", e.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 按接口地址和方法发送一个带签名的合成请求，Host 取接口地址以命中路由，必填参数填入占位值
+     * <p>
+     * 校验不通过返回的错误响应同样走完了过滤器链，不视为失败，只有连接失败才中止预热
+     *
+     * @param webClient     客户端
+     * @param interfaceInfo 接口信息
+     * @param timeout       超时时间
+     */
+    private void sendSyntheticRequest(WebClient webClient, InterfaceInfo interfaceInfo, Duration timeout) {
+        HttpMethod method = HttpMethod.resolve(StringUtils.upperCase(interfaceInfo.getMethod()));
+        URI url = StringUtils.isBlank(interfaceInfo.getUrl()) ? null : URI.create(interfaceInfo.getUrl().trim());
+        if (method == null || url == null || url.getRawAuthority() == null) {
+            return;
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        if (StringUtils.isNotBlank(interfaceInfo.getRequestParams())) {
+            List<RequestParamsField> fields = GSON.fromJson(interfaceInfo.getRequestParams(), new TypeToken<List<RequestParamsField>>() {
+            }.getType());
+            for (RequestParamsField field : fields) {
+                if ("是".equals(field.getRequired())) {
+                    params.put(field.getFieldName(), WARM_UP_VALUE);
+                }
+            }
+        }
+        WebClient.RequestBodySpec request = webClient.method(method)
+                .uri(uriBuilder -> {
+                    uriBuilder.path(url.getRawPath());
+                    if (method == HttpMethod.GET) {
+                        params.forEach(uriBuilder::queryParam);
+                    }
+                    return uriBuilder.build();
+                })
+                .header(HttpHeaders.HOST, url.getRawAuthority())
+                .header(WARM_UP_HEADER, String.valueOf(interfaceInfo.getId()))
+                .header("accessKey", gatewayWarmUpConfig.getAccessKey())
+                .header("body", WARM_UP_VALUE)
+                .header("timestamp", String.valueOf(System.currentTimeMillis() / 1000))
+                .header("sign", getSign(WARM_UP_VALUE, gatewayWarmUpConfig.getSecretKey()));
+        WebClient.RequestHeadersSpec<?> spec = method == HttpMethod.POST
+                ? request.contentType(MediaType.APPLICATION_JSON).bodyValue(GSON.toJson(params)) : request;
+        spec.exchangeToMono(ClientResponse::releaseBody).block(timeout);
+    }
+}
@@ -0,0 +1,49 @@
+package com.qimu.qiapigateway.warmup;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * @Author: QiMu
+ * @Date: 2023/12/22 15:02:44
+ * @Version: 1.0
+ * @Description: 预热就绪健康检查，预热完成前返回 OUT_OF_SERVICE，负载均衡据此等待
+ */
+@Component("warmUp")
+public class WarmUpHealthIndicator implements HealthIndicator {
+    private volatile boolean ready = false;
+    private volatile long costMillis;
+    private volatile int interfaceCount;
+    private volatile int principalCount;
+
+    @Override
+    public Health health() {
+        if (!ready) {
+            return Health.outOfService().withDetail("warmUp", "running").build();
+        }
+        return Health.up()
+                .withDetail("costMillis", costMillis)
+                .withDetail("interfaces", interfaceCount)
+                .withDetail("principals", principalCount)
+                .build();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 标记预热完成
+     *
+     * @param costMillis     耗时
+     * @param interfaceCount 预加载接口数
+     * @param principalCount 预加载用户数
+     */
+    public void markReady(long costMillis, int interfaceCount, int principalCount) {
+        this.costMillis = costMillis;
+        this.interfaceCount = interfaceCount;
+        this.principalCount = principalCount;
+        this.ready = true;
+    }
+}
@@ -0,0 +1,64 @@
+package com.qimu.qiapigateway.journal;
+
+import com.qimu.qiapicommon.model.dto.InvokeRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+class BillingJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void appendAndReplayAfterReopen() throws Exception {
+        Path path = tempDir.resolve("billing-journal.dat");
+        BillingJournal journal = new BillingJournal();
+        journal.open(path, 4096);
+        Assertions.assertTrue(journal.append(new InvokeRecord("r1", 1L, 2L, 1, 100L)));
+        Assertions.assertTrue(journal.append(new InvokeRecord("r2", 1L, 3L, 2, 200L)));
+        List<JournalEntry> entries = journal.readBatch(1);
+        Assertions.assertEquals(1, entries.size());
+        journal.commit(entries.get(0).getNextOffset());
+        journal.close();
+
+        BillingJournal reopened = new BillingJournal();
+        reopened.open(path, 4096);
+        entries = reopened.readBatch(10);
+        Assertions.assertEquals(1, entries.size());
+        Assertions.assertEquals("r2", entries.get(0).getInvokeRecord().getRequestId());
+        Assertions.assertEquals(3L, entries.get(0).getInvokeRecord().getUserId());
+        reopened.commit(entries.get(0).getNextOffset());
+        Assertions.assertTrue(reopened.isEmpty());
+        reopened.close();
+
+        // 全部重放后文件被复用，上一纪元的残留记录不会再被读出
+        BillingJournal recycled = new BillingJournal();
+        recycled.open(path, 4096);
+        Assertions.assertTrue(recycled.isEmpty());
+        recycled.close();
+    }
+
+    @Test
+    void appendWithoutReduceScore() throws Exception {
+        BillingJournal journal = new BillingJournal();
+        journal.open(tempDir.resolve("free.dat"), 4096);
+        Assertions.assertTrue(journal.append(new InvokeRecord("r1", 1L, 2L, null, 100L)));
+        List<JournalEntry> entries = journal.readBatch(10);
+        Assertions.assertEquals(1, entries.size());
+        Assertions.assertEquals(0, entries.get(0).getInvokeRecord().getReduceScore());
+        journal.close();
+    }
+
+    @Test
+    void rejectWhenFull() throws Exception {
+        BillingJournal journal = new BillingJournal();
+        journal.open(tempDir.resolve("full.dat"), BillingJournal.HEADER_SIZE + 40);
+        Assertions.assertTrue(journal.append(new InvokeRecord("r1", 1L, 2L, 1, 100L)));
+        Assertions.assertFalse(journal.append(new InvokeRecord("r2", 1L, 2L, 1, 100L)));
+        journal.close();
+    }
+}
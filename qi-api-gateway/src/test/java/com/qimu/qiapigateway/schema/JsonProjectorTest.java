@@ -0,0 +1,93 @@
+package com.qimu.qiapigateway.schema;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class JsonProjectorTest {
+    private static final String HOROSCOPE = "{\"code\":0,\"message\":\"ok\",\"data\":{\"name\":\"白羊座\","
+            + "\"fortune\":{\"all\":4,\"love\":3,\"work\":5},\"lucky\":[{\"color\":\"红\",\"number\":7},{\"color\":\"蓝\",\"number\":3}]}}";
+
+    private static String project(String json, String... paths) throws IOException {
+        byte[] projected = JsonProjector.project(json.getBytes(StandardCharsets.UTF_8), FieldPathTree.compile(Arrays.asList(paths)));
+        return new String(projected, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void keepsOnlySelectedPaths() throws IOException {
+        Assertions.assertEquals("{\"code\":0,\"data\":{\"fortune\":{\"all\":4}}}", project(HOROSCOPE, "code", "data.fortune.all"));
+        // 选中上级时整个子树保留
+        Assertions.assertEquals("{\"data\":{\"fortune\":{\"all\":4,\"love\":3,\"work\":5}}}", project(HOROSCOPE, "data.fortune.all", "data.fortune"));
+        // 路径作用于数组的每个元素
+        Assertions.assertEquals("{\"data\":{\"lucky\":[{\"number\":7},{\"number\":3}]}}", project(HOROSCOPE, "data.lucky.number"));
+        // 选中路径下是标量时输出 null
+        Assertions.assertEquals("{\"message\":null}", project(HOROSCOPE, "message.text"));
+        Assertions.assertThrows(IOException.class, () -> project("{\"code\":", "code"));
+    }
+
+    @Test
+    void projectsChunkedInput() throws IOException {
+        FieldPathTree selection = FieldPathTree.compile(Arrays.asList("code", "data.lucky.number"));
+        byte[] json = HOROSCOPE.getBytes(StandardCharsets.UTF_8);
+        // 逐字节喂入，多字节字符和 token 都会被切开
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonProjector projector = new JsonProjector(selection)) {
+            for (byte b : json) {
+                out.write(projector.feed(new byte[]{b}));
+            }
+            out.write(projector.finish());
+        }
+        Assertions.assertEquals(new String(JsonProjector.project(json, selection), StandardCharsets.UTF_8),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+        Assertions.assertEquals("{\"code\":0,\"data\":{\"lucky\":[{\"number\":7},{\"number\":3}]}}", out.toString("UTF-8"));
+    }
+
+    @Test
+    void passesThroughNonJson() throws IOException {
+        FieldPathTree selection = FieldPathTree.compile(Collections.singletonList("code"));
+        try (JsonProjector projector = new JsonProjector(selection)) {
+            Assertions.assertEquals("<html>", new String(projector.feed("<html>".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+            Assertions.assertEquals("</html>", new String(projector.feed("</html>".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+            Assertions.assertEquals(0, projector.finish().length);
+            Assertions.assertTrue(projector.isPassThrough());
+        }
+        Assertions.assertThrows(IOException.class, () -> project("<html>", "code"));
+        Assertions.assertThrows(IOException.class, () -> project("{\"code\":0} {}", "code"));
+        Assertions.assertEquals("  ", project("  ", "code"));
+    }
+
+    @Test
+    void validatesAgainstDocumentedTree() {
+        FieldPathTree documented = FieldPathTree.compile(Arrays.asList("code", "data.fortune.all", "data.lucky"));
+        Assertions.assertTrue(documented.contains("data"));
+        Assertions.assertTrue(documented.contains("data.fortune.all"));
+        Assertions.assertFalse(documented.contains("data.fortune.love"));
+        Assertions.assertFalse(documented.contains("message"));
+    }
+
+    @Test
+    void flagsDriftingResponse() {
+        Map<String, String> documentedTypes = new LinkedHashMap<>();
+        documentedTypes.put("code", "int");
+        documentedTypes.put("data.name", "string");
+        documentedTypes.put("data.fortune.all", "int");
+        documentedTypes.put("data.lucky.color", "string");
+        documentedTypes.put("data.extra", "object");
+        ResponseSchema schema = ResponseSchema.compile(documentedTypes);
+        List<String> violations = schema.check(HOROSCOPE.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(Collections.singletonList("缺少字段 data.extra"), violations);
+
+        String drifted = "{\"code\":\"0\",\"data\":{\"name\":\"白羊座\",\"fortune\":null,\"lucky\":[],\"extra\":{}}}";
+        Assertions.assertEquals(Collections.singletonList("字段 code 应为 number，实际为 string"),
+                schema.check(drifted.getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(Collections.singletonList("响应不是合法的 JSON"), schema.check("<html>".getBytes(StandardCharsets.UTF_8)));
+    }
+}
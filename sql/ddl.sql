@@ -24,7 +24,8 @@ create table if not exists qi_api.user
     updateTime     datetime     default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
     isDelete       tinyint      default 0                 not null comment '是否删除',
     constraint uni_userAccount
-        unique (userAccount)
+        unique (userAccount),
+    index idx_createTime (createTime)
 )
     comment '用户';
 
@@ -61,7 +62,9 @@ create table if not exists qi_api.interface_info
     avatarUrl      varchar(1024)                          null comment '接口头像',
     createTime     datetime     default CURRENT_TIMESTAMP not null comment '创建时间',
     updateTime     datetime     default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
-    isDelete       tinyint      default 0                 not null comment '是否删除'
+    isDelete       tinyint      default 0                 not null comment '是否删除',
+    index idx_createTime (createTime),
+    index idx_status_isDelete_createTime (status, isDelete, createTime)
 )
     comment '接口信息';
 
@@ -80,7 +83,10 @@ create table if not exists qi_api.product_info
     expirationTime datetime                               null comment '过期时间',
     createTime     datetime     default CURRENT_TIMESTAMP not null comment '创建时间',
     updateTime     datetime     default CURRENT_TIMESTAMP not null comment '更新时间',
-    isDelete       tinyint      default 0                 not null comment '是否删除'
+    isDelete       tinyint      default 0                 not null comment '是否删除',
+    index idx_status_isDelete_total (status, isDelete, total),
+    index idx_createTime (createTime),
+    index idx_status_isDelete_createTime (status, isDelete, createTime)
 )
     comment '产品信息';
 
@@ -102,7 +108,9 @@ create table if not exists qi_api.product_order
     addPoints      bigint       default 0                 not null comment '增加积分个数',
     expirationTime datetime                               null comment '过期时间',
     createTime     datetime     default CURRENT_TIMESTAMP not null comment '创建时间',
-    updateTime     datetime     default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间'
+    updateTime     datetime     default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    index idx_orderNo (orderNo),
+    index idx_status_payType_createTime (status, payType, createTime)
 )
     comment '商品订单';
 
@@ -138,10 +146,91 @@ create table if not exists qi_api.user_interface_invoke
     status       tinyint  default 0                 not null comment '调用状态（0- 正常 1- 封号）',
     createTime   datetime default CURRENT_TIMESTAMP not null comment '创建时间',
     updateTime   datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
-    isDelete     tinyint  default 0                 not null comment '是否删除'
+    isDelete     tinyint  default 0                 not null comment '是否删除',
+    constraint uni_userId_interfaceId
+        unique (userId, interfaceId)
 )
     comment '用户接口调用表';
 
+-- 调用次数落库批次表：与增量在同一事务中写入，已写入的批次不再重复累加
+create table if not exists qi_api.invoke_flush_batch
+(
+    batchId    varchar(64)                        not null comment '批次id' primary key,
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间'
+)
+    comment '调用次数落库批次表';
+
+-- 钱包流水表
+create table if not exists qi_api.wallet_ledger
+(
+    id         bigint auto_increment comment 'id' primary key,
+    userId     bigint                             not null comment '用户id',
+    amount     int                                not null comment '变动积分，增加为正，扣除为负',
+    bizType    varchar(32)                        not null comment '业务类型',
+    compacted  tinyint  default 0                 not null comment '是否已合并到用户余额（0- 未合并 1- 已合并）',
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    index idx_compacted_id (compacted, id),
+    index idx_userId_compacted (userId, compacted)
+)
+    comment '钱包流水表';
+
+-- 接口调用日志表（按天分区，分区由 InvokeLogPartitionJob 维护）
+create table if not exists qi_api.interface_invoke_log
+(
+    id            bigint                not null comment 'id',
+    requestId     varchar(64)           not null comment '请求id',
+    interfaceId   bigint                not null comment '接口id',
+    userId        bigint                not null comment '调用用户id',
+    method        varchar(16)           null comment '请求方法',
+    statusCode    int                   not null comment '响应状态码',
+    latency       int       default 0   not null comment '耗时（毫秒）',
+    responseBytes bigint    default 0   not null comment '响应字节数',
+    clientIp      varchar(64)           null comment '调用方ip',
+    createTime    datetime              not null comment '调用时间',
+    primary key (id, createTime),
+    index idx_interfaceId_createTime (interfaceId, createTime),
+    index idx_userId_createTime (userId, createTime)
+)
+    comment '接口调用日志表'
+    partition by range (to_days(createTime)) (
+        partition pmax values less than maxvalue
+        );
+
+-- 接口调用统计表（分钟/小时/天，userId = 0 为接口总量）
+create table if not exists qi_api.interface_invoke_rollup
+(
+    id            bigint auto_increment comment 'id' primary key,
+    granularity   varchar(8)                         not null comment '统计粒度 MINUTE/HOUR/DAY',
+    bucketTime    datetime                           not null comment '统计桶开始时间',
+    interfaceId   bigint                             not null comment '接口id',
+    userId        bigint                             not null comment '用户id，0 表示全部用户',
+    totalCount    bigint   default 0                 not null comment '调用次数',
+    errorCount    bigint   default 0                 not null comment '失败次数',
+    totalBytes    bigint   default 0                 not null comment '响应字节数',
+    latencySketch varchar(1024)                      null comment '耗时分布（对数分桶，桶下标:次数）',
+    updateTime    datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    constraint uni_granularity_interfaceId_userId_bucketTime unique (granularity, interfaceId, userId, bucketTime),
+    index idx_granularity_bucketTime_userId (granularity, bucketTime, userId)
+)
+    comment '接口调用统计表';
+
+-- 待发邮件表
+create table if not exists qi_api.mail_outbox
+(
+    id            bigint                             not null comment 'id' primary key,
+    toAddress     varchar(256)                       not null comment '收件人',
+    subject       varchar(256)                       not null comment '主题',
+    content       text                               not null comment '正文（html）',
+    status        tinyint  default 0                 not null comment '状态 0-待发送 1-发送中 2-已发送 3-发送失败',
+    retryCount    int      default 0                 not null comment '已重试次数',
+    nextRetryTime datetime default CURRENT_TIMESTAMP not null comment '下次发送时间',
+    lastError     varchar(512)                       null comment '最近一次失败原因',
+    createTime    datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    updateTime    datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    index idx_status_nextRetryTime (status, nextRetryTime)
+)
+    comment '待发邮件表';
+
 -- 充值活动表
 create table if not exists qi_api.recharge_activity
 (
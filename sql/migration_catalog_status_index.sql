@@ -0,0 +1,9 @@
+-- 公开目录按状态过滤后排序，(status, isDelete, 排序列) 联合索引
+-- 升级已有数据库时执行一次，新库直接使用 ddl.sql
+use qi_api;
+
+alter table interface_info
+    add index idx_status_isDelete_createTime (status, isDelete, createTime);
+
+alter table product_info
+    add index idx_status_isDelete_total (status, isDelete, total);
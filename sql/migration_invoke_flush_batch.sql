@@ -0,0 +1,10 @@
+-- 调用次数落库批次表：与增量在同一事务中写入，落库后清理 Redis 失败时不会重复累加
+-- 升级已有数据库时执行一次，新库直接使用 ddl.sql
+use qi_api;
+
+create table if not exists invoke_flush_batch
+(
+    batchId    varchar(64)                        not null comment '批次id' primary key,
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间'
+)
+    comment '调用次数落库批次表';
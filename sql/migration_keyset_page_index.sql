@@ -0,0 +1,14 @@
+-- 游标分页按 (createTime, id) 翻页，二级索引自带主键 id，单列索引即可覆盖排序；
+-- 非管理员只看已上线的，另需 (status, isDelete, createTime) 索引，接口表的该索引由之后的 migration_catalog_status_index.sql 添加
+-- 升级已有数据库时执行一次，新库直接使用 ddl.sql
+use qi_api;
+
+alter table user
+    add index idx_createTime (createTime);
+
+alter table interface_info
+    add index idx_createTime (createTime);
+
+alter table product_info
+    add index idx_createTime (createTime),
+    add index idx_status_isDelete_createTime (status, isDelete, createTime);
@@ -0,0 +1,7 @@
+-- 到期订单按订单号回查；兜底扫描按 (status, payType, createTime) 查超时未支付订单
+-- 升级已有数据库时执行一次，新库直接使用 ddl.sql
+use qi_api;
+
+alter table product_order
+    add index idx_orderNo (orderNo),
+    add index idx_status_payType_createTime (status, payType, createTime);
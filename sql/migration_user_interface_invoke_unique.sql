@@ -0,0 +1,22 @@
+-- 用户接口调用表：合并重复的 (userId, interfaceId) 记录并添加唯一键
+-- 升级已有数据库时执行一次，新库直接使用 ddl.sql
+use qi_api;
+
+-- 把重复记录的调用次数累加到 id 最小的那一条
+update user_interface_invoke keep
+    join (select min(id) as id, userId, interfaceId, sum(totalInvokes) as totalInvokes
+          from user_interface_invoke
+          group by userId, interfaceId
+          having count(*) > 1) dup on keep.id = dup.id
+set keep.totalInvokes = dup.totalInvokes;
+
+-- 删除其余重复记录
+delete extra
+from user_interface_invoke extra
+         join user_interface_invoke keep
+              on extra.userId = keep.userId
+                  and extra.interfaceId = keep.interfaceId
+                  and extra.id > keep.id;
+
+alter table user_interface_invoke
+    add constraint uni_userId_interfaceId unique (userId, interfaceId);